@@ -65,6 +65,7 @@ import net.preibisch.mvrecon.fiji.plugin.Apply_Transformation;
 import net.preibisch.mvrecon.fiji.plugin.util.GUIHelper;
 import net.preibisch.mvrecon.fiji.spimdata.SpimData2;
 import net.preibisch.mvrecon.fiji.spimdata.boundingbox.BoundingBoxes;
+import net.preibisch.mvrecon.fiji.spimdata.imgloaders.LazyLightSheetZ1ImgLoader;
 import net.preibisch.mvrecon.fiji.spimdata.imgloaders.LightSheetZ1ImgLoader;
 import net.preibisch.mvrecon.fiji.spimdata.intensityadjust.IntensityAdjustments;
 import net.preibisch.mvrecon.fiji.spimdata.interestpoints.ViewInterestPoints;
@@ -82,8 +83,10 @@ public class LightSheetZ1 implements MultiViewDatasetDefinition
 	public static boolean defaultRotAxis = false;
 	public static boolean defaultApplyRotAxis = true;
 	public static boolean defaultFixBioformats = false;
+	public static boolean defaultLazyLoading = false;
 
 	private boolean fixBioformats = false;
+	private boolean lazyLoading = false;
 
 	@Override
 	public String getTitle() { return "Zeiss Lightsheet Z.1 Dataset Loader (Bioformats)"; }
@@ -131,7 +134,13 @@ public class LightSheetZ1 implements MultiViewDatasetDefinition
 
 		// instantiate the sequencedescription
 		final SequenceDescription sequenceDescription = new SequenceDescription( timepoints, setups, null, missingViews );
-		final ImgLoader imgLoader = new LightSheetZ1ImgLoader( cziFile, imgFactory, sequenceDescription );
+		final ImgLoader imgLoader;
+
+		if ( lazyLoading )
+			imgLoader = new LazyLightSheetZ1ImgLoader( cziFile, sequenceDescription );
+		else
+			imgLoader = new LightSheetZ1ImgLoader( cziFile, imgFactory, sequenceDescription );
+
 		sequenceDescription.setImgLoader( imgLoader );
 
 		// get the minimal resolution of all calibrations
@@ -320,6 +329,7 @@ public class LightSheetZ1 implements MultiViewDatasetDefinition
 			defaultFixBioformats = true;
 		}
 		gd.addCheckbox( "Fix_Bioformats image stack size bug", defaultFixBioformats );
+		gd.addCheckbox( "Load_images_lazily (cell-based, multiresolution)", defaultLazyLoading );
 
 		gd.addMessage( "Acquisition Objective: " + meta.objective(), new Font( Font.SANS_SERIF, Font.ITALIC, 11 ) );
 		gd.addMessage( "Rotation axis: " + meta.rotationAxisName() + " axis", new Font( Font.SANS_SERIF, Font.ITALIC, 11 ) );
@@ -361,6 +371,7 @@ public class LightSheetZ1 implements MultiViewDatasetDefinition
 
 		// TODO: Remove BIOFORMATS bug workaround
 		fixBioformats = defaultFixBioformats = gd.getNextBoolean();
+		lazyLoading = defaultLazyLoading = gd.getNextBoolean();
 
 		if ( modifyAxis || modifyCal )
 		{
@@ -53,6 +53,7 @@ import net.preibisch.mvrecon.process.deconvolution.init.PsiInitFactory;
 import net.preibisch.mvrecon.process.deconvolution.iteration.ComputeBlockThreadFactory;
 import net.preibisch.mvrecon.process.deconvolution.iteration.mul.ComputeBlockMulThreadCPUFactory;
 import net.preibisch.mvrecon.process.deconvolution.iteration.sequential.ComputeBlockSeqThread;
+import net.preibisch.mvrecon.process.deconvolution.util.DeconvolutionCheckpoint;
 import net.preibisch.mvrecon.process.deconvolution.util.PSFPreparation;
 import net.preibisch.mvrecon.process.deconvolution.util.ProcessInputImages;
 import net.preibisch.mvrecon.process.export.Calibrateable;
@@ -190,7 +191,8 @@ public class Image_Deconvolution implements PlugIn
 			final int debugInterval = decon.getDebugInterval();
 			final ComputeBlockThreadFactory< ? > cptf = decon.getComputeBlockThreadFactory();
 			final boolean mul = decon.isMultiplicative();
-			final PsiInitFactory psiInitFactory = decon.getPsiInitFactory();
+			final DeconvolutionCheckpoint checkpoint = decon.getCheckpoint( deconGroup );
+			final PsiInitFactory psiInitFactory = decon.getPsiInitFactory( checkpoint );
 
 			IOFunctions.println( "(" + new Date(System.currentTimeMillis()) + "): Grouping, and transforming PSF's " );
 
@@ -255,6 +257,10 @@ public class Image_Deconvolution implements PlugIn
 					return false;
 				mvDecon.setDebug( debug );
 				mvDecon.setDebugInterval( debugInterval );
+
+				if ( decon.writeCheckpoints() )
+					mvDecon.setCheckpoint( checkpoint, decon.getCheckpointInterval() );
+
 				mvDecon.runIterations();
 
 				if ( !export( mvDecon.getPSI(), decon, exporter, deconGroup ) )
@@ -63,6 +63,7 @@ import net.preibisch.mvrecon.fiji.plugin.queryXML.LoadParseQueryXML;
 import net.preibisch.mvrecon.fiji.spimdata.SpimData2;
 import net.preibisch.mvrecon.process.export.Calibrateable;
 import net.preibisch.mvrecon.process.export.DisplayImage;
+import net.preibisch.mvrecon.process.export.ExportN5;
 import net.preibisch.mvrecon.process.export.ImgExport;
 import net.preibisch.mvrecon.process.fusion.FusionTools;
 import net.preibisch.mvrecon.process.fusion.transformed.nonrigid.NonRigidTools;
@@ -313,7 +314,7 @@ public class Image_Fusion implements PlugIn
 	{
 		RandomAccessibleInterval< T > processedOutput = null;
 
-		if ( fusion.getCacheType() == 0 ) // Virtual
+		if ( fusion.getCacheType() == 0 || ExportN5.class.isInstance( exporter ) ) // Virtual (N5 export computes the fused image blockwise itself)
 			processedOutput = output;
 		else if ( fusion.getCacheType() == 1 ) // Cached
 			processedOutput = FusionTools.cacheRandomAccessibleInterval( output, FusionGUI.maxCacheSize, type, FusionGUI.cellDim );
@@ -464,8 +464,7 @@ public class Interest_Point_Registration implements PlugIn
 
 	public void identifySubsets( final PairwiseSetup< ViewId > setup, final OverlapDetection< ViewId > overlapDetection )
 	{
-		IOFunctions.println( "Defined pairs, removed " + setup.definePairs().size() + " redundant view pairs." );
-		IOFunctions.println( "Removed " + setup.removeNonOverlappingPairs( overlapDetection ).size() + " pairs because they do not overlap (Strategy='" + overlapDetection.getClass().getSimpleName() + "')" );
+		IOFunctions.println( "Defined overlapping pairs (Strategy='" + overlapDetection.getClass().getSimpleName() + "'), removed " + setup.definePairs( overlapDetection ).size() + " redundant view pairs." );
 		setup.reorderPairs();
 		setup.detectSubsets();
 		setup.sortSubsets();
@@ -52,6 +52,7 @@ import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Util;
 import net.preibisch.legacy.io.IOFunctions;
 import net.preibisch.mvrecon.fiji.plugin.resave.PluginHelper;
+import net.preibisch.mvrecon.fiji.plugin.Image_Fusion;
 import net.preibisch.mvrecon.fiji.plugin.util.GUIHelper;
 import net.preibisch.mvrecon.fiji.spimdata.SpimData2;
 import net.preibisch.mvrecon.fiji.spimdata.boundingbox.BoundingBox;
@@ -68,11 +69,13 @@ import net.preibisch.mvrecon.process.deconvolution.init.PsiInitAvgApproxFactory;
 import net.preibisch.mvrecon.process.deconvolution.init.PsiInitAvgPreciseFactory;
 import net.preibisch.mvrecon.process.deconvolution.init.PsiInitBlurredFusedFactory;
 import net.preibisch.mvrecon.process.deconvolution.init.PsiInitFactory;
+import net.preibisch.mvrecon.process.deconvolution.init.PsiInitFromCheckpointFactory;
 import net.preibisch.mvrecon.process.deconvolution.init.PsiInitFromFileFactory;
 import net.preibisch.mvrecon.process.deconvolution.iteration.ComputeBlockThreadFactory;
 import net.preibisch.mvrecon.process.deconvolution.iteration.mul.ComputeBlockMulThreadCPUFactory;
 import net.preibisch.mvrecon.process.deconvolution.iteration.sequential.ComputeBlockSeqThreadCPUFactory;
 import net.preibisch.mvrecon.process.deconvolution.iteration.sequential.ComputeBlockSeqThreadCUDAFactory;
+import net.preibisch.mvrecon.process.deconvolution.util.DeconvolutionCheckpoint;
 import net.preibisch.mvrecon.process.export.AppendSpimData2HDF5;
 import net.preibisch.mvrecon.process.export.DisplayImage;
 import net.preibisch.mvrecon.process.export.ExportSpimData2HDF5;
@@ -111,6 +114,10 @@ public class DeconvolutionGUI implements FusionExportInterface
 			"CPU (Java)",
 			"GPU (Nvidia CUDA via JNA)" };
 
+	public static String[] imgStorageChoice = new String[]{
+			"In memory (CellImg)",
+			"Out-of-core (disk-cached CellImg, for images larger than RAM)" };
+
 	public static String[] osemspeedupChoice = new String[]{
 			"1 (balanced)",
 			"minimal number of overlapping views",
@@ -135,7 +142,8 @@ public class DeconvolutionGUI implements FusionExportInterface
 			"Blurred, fused image (suggested, higher compute effort)",
 			"Average intensity (higer compute effort)",
 			"Approximated average intensity (fast option)",
-			"From TIFF file (dimensions must match bounding box)" };
+			"From TIFF file (dimensions must match bounding box)",
+			"From checkpoint (resume a previous deconvolution)" };
 
 	public static String[] splittingTypes = new String[]{
 			"Each timepoint & channel",
@@ -164,6 +172,9 @@ public class DeconvolutionGUI implements FusionExportInterface
 	public static int defaultCacheMaxNumBlocks = MultiViewDeconvolution.maxCacheSize;
 	public static int defaultPsiCopyBlockSize = MultiViewDeconvolution.cellDim * 2;
 	public static int defaultComputeOnIndex = 0;
+	public static int defaultImgStorageIndex = 0;
+	public static String defaultOutOfCoreDirectory = "";
+	public static int defaultOutOfCoreMaxNumBlocks = 4096;
 	public static boolean defaultAdjustBlending = false;
 	public static float defaultBlendingRange = MultiViewDeconvolution.defaultBlendingRange;
 	public static float defaultBlendingBorder = MultiViewDeconvolution.defaultBlendingBorder;
@@ -174,6 +185,9 @@ public class DeconvolutionGUI implements FusionExportInterface
 	public static int defaultImgExportAlgorithm = 0;
 	public static String defaultPsiStartFile = "";
 	public static boolean defaultPreciseAvgMax = true;
+	public static boolean defaultWriteCheckpoints = false;
+	public static int defaultCheckpointInterval = 5;
+	public static String defaultCheckpointDirectory = "";
 
 
 	protected int boundingBox = defaultBB;
@@ -196,8 +210,14 @@ public class DeconvolutionGUI implements FusionExportInterface
 	protected int cacheBlockSize = defaultCacheBlockSize;
 	protected int cacheMaxNumBlocks = defaultCacheMaxNumBlocks;
 	protected int psiCopyBlockSize = defaultPsiCopyBlockSize;
+	protected int imgStorageIndex = defaultImgStorageIndex;
+	protected String outOfCoreDirectory = defaultOutOfCoreDirectory;
+	protected int outOfCoreMaxNumBlocks = defaultOutOfCoreMaxNumBlocks;
 	protected int computeOnIndex = defaultComputeOnIndex;
 	protected ImgFactory< FloatType > psiFactory = null;
+	protected boolean writeCheckpoints = defaultWriteCheckpoints;
+	protected int checkpointInterval = defaultCheckpointInterval;
+	protected String checkpointDirectory = defaultCheckpointDirectory;
 	protected ImgFactory< FloatType > copyFactory = null;
 	protected ImgFactory< FloatType > blockFactory = new ArrayImgFactory<>();
 	protected ComputeBlockThreadFactory< ? > computeFactory = null;
@@ -300,6 +320,9 @@ public class DeconvolutionGUI implements FusionExportInterface
 	public int getCacheBlockSize() { return cacheBlockSize; }
 	public int getCacheMaxNumBlocks(){ return cacheMaxNumBlocks; }
 	public int getPsiCopyBlockSize() { return psiCopyBlockSize; }
+	public boolean isOutOfCore() { return imgStorageIndex == 1; }
+	public String getOutOfCoreDirectory() { return outOfCoreDirectory; }
+	public int getOutOfCoreMaxNumBlocks() { return outOfCoreMaxNumBlocks; }
 	public ImgFactory< FloatType > getBlockFactory() { return blockFactory; }
 	public ImgFactory< FloatType > getPsiFactory() { return psiFactory; }
 	public ImgFactory< FloatType > getCopyFactory() { return copyFactory; }
@@ -311,7 +334,26 @@ public class DeconvolutionGUI implements FusionExportInterface
 	public boolean groupTiles() { return groupTiles; }
 	public boolean groupIllums() { return groupIllums; }
 	public NonRigidParametersGUI getNonRigidParameters() { return nrgui; }
-	public PsiInitFactory getPsiInitFactory()
+	public boolean writeCheckpoints() { return writeCheckpoints; }
+	public int getCheckpointInterval() { return checkpointInterval; }
+
+	/**
+	 * @param group - the group that is deconvolved
+	 * @return the checkpoint for this group (one N5 container per group), or null if no checkpoints are written or read
+	 */
+	public DeconvolutionCheckpoint getCheckpoint( final Group< ViewDescription > group )
+	{
+		if ( !writeCheckpoints && PsiInitType.values()[ psiInit ] != PsiInitType.FROM_CHECKPOINT )
+			return null;
+
+		return new DeconvolutionCheckpoint( new File( checkpointDirectory, Image_Fusion.getTitle( getSplittingType(), group ) + ".n5" ) );
+	}
+
+	/**
+	 * @param checkpoint - the checkpoint to resume from (only used when initializing from a checkpoint)
+	 * @return the factory for the psi init
+	 */
+	public PsiInitFactory getPsiInitFactory( final DeconvolutionCheckpoint checkpoint )
 	{
 		final PsiInitType psiInitType = PsiInitType.values()[ psiInit ];
 
@@ -321,6 +363,8 @@ public class DeconvolutionGUI implements FusionExportInterface
 			return new PsiInitAvgPreciseFactory();
 		else if ( psiInitType == PsiInitType.APPROX_AVG )
 			return new PsiInitAvgApproxFactory();
+		else if ( psiInitType == PsiInitType.FROM_CHECKPOINT )
+			return new PsiInitFromCheckpointFactory( checkpoint );
 		else
 			return new PsiInitFromFileFactory( new File( psiStartFile ), preciseAvgMax );
 	}
@@ -381,6 +425,7 @@ public class DeconvolutionGUI implements FusionExportInterface
 		gd.addNumericField( "OSEM_acceleration", defaultOsemSpeedup, 1 );
 		gd.addNumericField( "Number_of_iterations", defaultNumIterations, 0 );
 		gd.addCheckbox( "Debug_mode", defaultDebugMode );
+		gd.addCheckbox( "Write_checkpoints (to resume later)", defaultWriteCheckpoints );
 		gd.addCheckbox( "Use_Tikhonov_regularization", defaultUseTikhonovRegularization );
 		gd.addNumericField( "Tikhonov_parameter", defaultLambda, 4 );
 
@@ -390,6 +435,7 @@ public class DeconvolutionGUI implements FusionExportInterface
 		if ( !PluginHelper.isHeadless() ) blockChoice = (Choice)gd.getChoices().lastElement();
 		gd.addChoice( "Compute_on", computationOnChoice, computationOnChoice[ defaultComputeOnIndex ] );
 		if ( !PluginHelper.isHeadless() ) computeOnChoice = (Choice)gd.getChoices().lastElement();
+		gd.addChoice( "Deconvolved_&_precomputed_images", imgStorageChoice, imgStorageChoice[ defaultImgStorageIndex ] );
 		gd.addCheckbox( "Adjust_blending & grouping parameters", defaultAdjustBlending );
 
 		gd.addMessage( "" );
@@ -447,10 +493,12 @@ public class DeconvolutionGUI implements FusionExportInterface
 		osemSpeedup = defaultOsemSpeedup = gd.getNextNumber();
 		numIterations = defaultNumIterations = (int)Math.round( gd.getNextNumber() );
 		debugMode = defaultDebugMode = gd.getNextBoolean();
+		writeCheckpoints = defaultWriteCheckpoints = gd.getNextBoolean();
 		useTikhonov = defaultUseTikhonovRegularization = gd.getNextBoolean();
 		lambda = defaultLambda = gd.getNextNumber();
 		blockSizeIndex = defaultBlockSizeIndex = gd.getNextChoiceIndex();
 		computeOnIndex = defaultComputeOnIndex = gd.getNextChoiceIndex();
+		imgStorageIndex = defaultImgStorageIndex = gd.getNextChoiceIndex();
 		adjustBlending = defaultAdjustBlending = gd.getNextBoolean();
 		splittingType = defaultSplittingType = gd.getNextChoiceIndex();
 		imgExport = defaultImgExportAlgorithm = gd.getNextChoiceIndex();
@@ -474,11 +522,27 @@ public class DeconvolutionGUI implements FusionExportInterface
 		if ( !getDebug() )
 			return false;
 
+		if ( !getCheckpointParameters() )
+			return false;
+
 		if ( !getBlocks() )
 			return false;
 
-		psiFactory = new CellImgFactory<>( psiCopyBlockSize );
-		copyFactory = new CellImgFactory<>( psiCopyBlockSize );
+		if ( isOutOfCore() )
+		{
+			if ( !getOutOfCore() )
+				return false;
+
+			final File tmpDir = outOfCoreDirectory.trim().length() == 0 ? null : new File( outOfCoreDirectory );
+
+			psiFactory = FusionTools.createDiskCachedFactory( tmpDir, outOfCoreMaxNumBlocks, new FloatType(), psiCopyBlockSize );
+			copyFactory = FusionTools.createDiskCachedFactory( tmpDir, outOfCoreMaxNumBlocks, new FloatType(), psiCopyBlockSize );
+		}
+		else
+		{
+			psiFactory = new CellImgFactory<>( psiCopyBlockSize );
+			copyFactory = new CellImgFactory<>( psiCopyBlockSize );
+		}
 
 		if ( !getBlendingAndGrouping() )
 			return false;
@@ -500,6 +564,9 @@ public class DeconvolutionGUI implements FusionExportInterface
 		IOFunctions.println( "Num Iterations: " + numIterations );
 		IOFunctions.println( "Debug Mode: " + debugMode );
 		if ( debugMode ) IOFunctions.println( "DebugInterval: " + debugInterval );
+		IOFunctions.println( "Write checkpoints: " + writeCheckpoints );
+		if ( writeCheckpoints ) IOFunctions.println( "Checkpoint interval: " + checkpointInterval );
+		if ( writeCheckpoints || PsiInitType.values()[ psiInit ] == PsiInitType.FROM_CHECKPOINT ) IOFunctions.println( "Checkpoint directory: " + checkpointDirectory );
 		IOFunctions.println( "use Tikhonov: " + useTikhonov );
 		if ( useTikhonov ) IOFunctions.println( "Tikhonov Lambda: " + lambda );
 		IOFunctions.println( "Compute block size: " + Util.printCoordinates( blockSize ) );
@@ -507,6 +574,9 @@ public class DeconvolutionGUI implements FusionExportInterface
 		IOFunctions.println( "Cache block size: " + cacheBlockSize );
 		IOFunctions.println( "Cache max num blocks: " + cacheMaxNumBlocks );
 		IOFunctions.println( "Deconvolved/Copy block size: " + psiCopyBlockSize );
+		IOFunctions.println( "Deconvolved/Copy images: " + imgStorageChoice[ imgStorageIndex ] );
+		if ( isOutOfCore() ) IOFunctions.println( "Out-of-core directory: " + ( outOfCoreDirectory.trim().length() == 0 ? "(system temp directory)" : outOfCoreDirectory ) );
+		if ( isOutOfCore() ) IOFunctions.println( "Out-of-core max num blocks in RAM (per image): " + outOfCoreMaxNumBlocks );
 		IOFunctions.println( "Compute on: " + computationOnChoice[ computeOnIndex ] );
 		IOFunctions.println( "ComputeBlockThread Factory: " + computeFactory.getClass().getSimpleName() + ": " + computeFactory );
 		IOFunctions.println( "Blending range: " + blendingRange );
@@ -583,6 +653,57 @@ public class DeconvolutionGUI implements FusionExportInterface
 		return true;
 	}
 
+	protected boolean getOutOfCore()
+	{
+		final GenericDialogPlus gd = new GenericDialogPlus( "Out-of-core options" );
+
+		gd.addDirectoryField( "Temporary_directory", defaultOutOfCoreDirectory, 80 );
+		gd.addNumericField( "Max_blocks_in_RAM (per image)", defaultOutOfCoreMaxNumBlocks, 0 );
+
+		final double mbPerBlock = ( 4.0 * psiCopyBlockSize * psiCopyBlockSize * psiCopyBlockSize ) / ( 1024.0 * 1024.0 );
+		gd.addMessage( "Note: each block is " + psiCopyBlockSize + "x" + psiCopyBlockSize + "x" + psiCopyBlockSize + " pixels (" + mbPerBlock + " MB). Evicted blocks are written\n"
+				+ "to the temporary directory (empty = system default), it needs space for the deconvolved image\n"
+				+ "and all precomputed images. It is deleted when Fiji exits.", GUIHelper.smallStatusFont );
+
+		gd.showDialog();
+
+		if ( gd.wasCanceled() )
+			return false;
+
+		defaultOutOfCoreDirectory = outOfCoreDirectory = gd.getNextString();
+		defaultOutOfCoreMaxNumBlocks = outOfCoreMaxNumBlocks = Math.max( 1, (int)Math.round( gd.getNextNumber() ) );
+
+		return true;
+	}
+
+	protected boolean getCheckpointParameters()
+	{
+		final boolean resume = PsiInitType.values()[ psiInit ] == PsiInitType.FROM_CHECKPOINT;
+
+		if ( !writeCheckpoints && !resume )
+			return true;
+
+		final GenericDialogPlus gd = new GenericDialogPlus( "Checkpoint options" );
+		gd.addDirectoryField( "Checkpoint_directory", defaultCheckpointDirectory, 80 );
+
+		if ( writeCheckpoints )
+			gd.addNumericField( "Write_checkpoint every n'th iteration, n = ", defaultCheckpointInterval, 0 );
+
+		gd.addMessage( "Note: one N5 container per fused image is used, named like the fused image.", GUIHelper.smallStatusFont );
+
+		gd.showDialog();
+
+		if ( gd.wasCanceled() )
+			return false;
+
+		defaultCheckpointDirectory = checkpointDirectory = gd.getNextString();
+
+		if ( writeCheckpoints )
+			defaultCheckpointInterval = checkpointInterval = Math.max( 1, (int)Math.round( gd.getNextNumber() ) );
+
+		return true;
+	}
+
 	protected boolean getDebug()
 	{
 		if ( debugMode )
@@ -59,6 +59,7 @@ import net.preibisch.mvrecon.process.export.DisplayImage;
 import net.preibisch.mvrecon.process.fusion.FusionTools;
 import net.preibisch.mvrecon.process.fusion.transformed.TransformVirtual;
 import net.preibisch.mvrecon.process.interestpointdetection.InterestPointTools;
+import net.preibisch.mvrecon.process.interestpointdetection.methods.InterestPointParameters;
 import net.preibisch.mvrecon.process.downsampling.DownsampleTools;
 import net.preibisch.mvrecon.process.interestpointregistration.TransformationTools;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
@@ -100,6 +101,7 @@ public abstract class DifferenceOfGUI extends InterestPointDetectionGUI
 	protected double imageSigmaX, imageSigmaY, imageSigmaZ;
 	protected double minIntensity, maxIntensity;
 	protected int maxDetections, maxDetectionsTypeIndex;
+	protected double memoryPercent = InterestPointParameters.defaultMemoryFraction * 100;
 
 	// downsampleXYIndex == 0 : a bit less then z-resolution
 	// downsampleXYIndex == -1 : a bit more then z-resolution
@@ -217,6 +219,8 @@ public abstract class DifferenceOfGUI extends InterestPointDetectionGUI
 			gd.addChoice( "Type_of_detections_to_use", InterestPointTools.limitDetectionChoice, InterestPointTools.limitDetectionChoice[ defaultMaxDetectionsTypeIndex ] );
 		}
 
+		gd.addNumericField( "Memory_for_parallel_detection (% of Java heap)", InterestPointParameters.defaultMemoryFraction * 100, 0 );
+
 		addAddtionalParameters( gd );
 
 		gd.showDialog();
@@ -298,6 +302,9 @@ public abstract class DifferenceOfGUI extends InterestPointDetectionGUI
 			maxDetectionsTypeIndex = defaultMaxDetectionsTypeIndex = gd.getNextChoiceIndex();
 		}
 
+		memoryPercent = Math.max( 1, Math.min( 100, gd.getNextNumber() ) );
+		InterestPointParameters.defaultMemoryFraction = memoryPercent / 100.0;
+
 		if ( !queryAdditionalParameters( gd ) )
 			return false;
 		else
@@ -37,8 +37,6 @@ import net.preibisch.mvrecon.process.cuda.CUDATools;
 import net.preibisch.mvrecon.process.cuda.NativeLibraryTools;
 import net.preibisch.mvrecon.process.interestpointdetection.methods.dog.DoG;
 import net.preibisch.mvrecon.process.interestpointdetection.methods.dog.DoGParameters;
-import net.preibisch.mvrecon.process.downsampling.DownsampleTools;
-import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
 
 import ij.ImagePlus;
 import ij.gui.GenericDialog;
@@ -122,33 +120,17 @@ public class DifferenceOfGaussianGUI extends DifferenceOfGUI implements GenericD
 
 		final HashMap< ViewId, List< InterestPoint > > interestPoints = new HashMap< ViewId, List< InterestPoint > >();
 
-		for ( final ViewDescription vd : SpimData2.getAllViewIdsForTimePointSorted( spimData, viewIdsToProcess, t ) )
-		{
-			// make sure not everything crashes if one file is missing
-			try
-			{
-				if ( !vd.isPresent() )
-					continue;
+		dog.toProcess.addAll( SpimData2.getAllViewIdsForTimePointSorted( spimData, viewIdsToProcess, t ) );
 
-				dog.toProcess.clear();
-				dog.toProcess.add( vd );
+		// downsampleXY == 0 : a bit less then z-resolution
+		// downsampleXY == -1 : a bit more then z-resolution
+		// (resolved for each view individually)
+		dog.downsampleXY = downsampleXYIndex;
 
-				// downsampleXY == 0 : a bit less then z-resolution
-				// downsampleXY == -1 : a bit more then z-resolution
-				if ( downsampleXYIndex < 1 )
-					dog.downsampleXY = DownsampleTools.downsampleFactor( downsampleXYIndex, downsampleZ, vd.getViewSetup().getVoxelSize() );
-				else
-					dog.downsampleXY = downsampleXYIndex;
+		dog.memoryBudget = Math.round( Runtime.getRuntime().maxMemory() * ( memoryPercent / 100.0 ) );
 
-				DoG.addInterestPoints( interestPoints, dog );
-			}
-			catch ( Exception  e )
-			{
-				IOFunctions.println( "An error occured (DOG): " + e ); 
-				IOFunctions.println( "Failed to segment viewId: " + Group.pvid( vd ) + ". Continuing with next one." );
-				e.printStackTrace();
-			}
-		}
+		// views are processed in parallel
+		DoG.addInterestPoints( interestPoints, dog );
 
 		return interestPoints;
 	}
@@ -26,13 +26,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
-import net.preibisch.legacy.io.IOFunctions;
 import net.preibisch.legacy.segmentation.InteractiveIntegral;
 import net.preibisch.mvrecon.fiji.spimdata.SpimData2;
 import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
 import net.preibisch.mvrecon.process.interestpointdetection.methods.dom.DoM;
 import net.preibisch.mvrecon.process.interestpointdetection.methods.dom.DoMParameters;
-import net.preibisch.mvrecon.process.downsampling.DownsampleTools;
 
 import ij.ImagePlus;
 import ij.gui.GenericDialog;
@@ -97,36 +95,17 @@ public class DifferenceOfMeanGUI extends DifferenceOfGUI
 
 		final HashMap< ViewId, List< InterestPoint > > interestPoints = new HashMap< ViewId, List< InterestPoint > >();
 
-		for ( final ViewDescription vd : SpimData2.getAllViewIdsForTimePointSorted( spimData, viewIdsToProcess, t ) )
-		{
-			// make sure not everything crashes if one file is missing
-			try
-			{
-				if ( !vd.isPresent() )
-					continue;
+		dom.toProcess.addAll( SpimData2.getAllViewIdsForTimePointSorted( spimData, viewIdsToProcess, t ) );
 
-				dom.toProcess.clear();
-				dom.toProcess.add( vd );
+		// downsampleXY == 0 : a bit less then z-resolution
+		// downsampleXY == -1 : a bit more then z-resolution
+		// (resolved for each view individually)
+		dom.downsampleXY = downsampleXYIndex;
 
-				// downsampleXY == 0 : a bit less then z-resolution
-				// downsampleXY == -1 : a bit more then z-resolution
-				if ( downsampleXYIndex < 1 )
-					dom.downsampleXY = DownsampleTools.downsampleFactor( downsampleXYIndex, downsampleZ, vd.getViewSetup().getVoxelSize() );
-				else
-					dom.downsampleXY = downsampleXYIndex;
+		dom.memoryBudget = Math.round( Runtime.getRuntime().maxMemory() * ( memoryPercent / 100.0 ) );
 
-				DoM.addInterestPoints( interestPoints, dom );
-			}
-			catch ( Exception  e )
-			{
-				IOFunctions.println( "An error occured (DOM): " + e ); 
-				IOFunctions.println( "Failed to segment angleId: " + 
-						vd.getViewSetup().getAngle().getId() + " channelId: " +
-						vd.getViewSetup().getChannel().getId() + " illumId: " +
-						vd.getViewSetup().getIllumination().getId() + ". Continuing with next one." );
-				e.printStackTrace();
-			}
-		}
+		// views are processed in parallel
+		DoM.addInterestPoints( interestPoints, dom );
 
 		return interestPoints;
 	}
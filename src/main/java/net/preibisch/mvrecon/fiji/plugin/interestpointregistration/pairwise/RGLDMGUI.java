@@ -82,6 +82,7 @@ public class RGLDMGUI extends PairwiseGUI
 		gd.addSlider( "Number_of_neighbors for the descriptors", 1, 10, RGLDMParameters.numNeighbors );
 		gd.addSlider( "Redundancy for descriptor matching", 0, 10, RGLDMParameters.redundancy );
 		gd.addSlider( "Significance required for a descriptor match", 1.0, 10.0, RGLDMParameters.ratioOfDistance );
+		gd.addNumericField( "Descriptor_search_approximation (0 = exact, larger = faster)", RGLDMParameters.indexApproximation, 2 );
 
 		gd.addMessage( "" );
 		gd.addMessage( "Parameters for robust model-based outlier removal (RANSAC)", new Font( Font.SANS_SERIF, Font.BOLD, 12 ) );
@@ -112,6 +113,7 @@ public class RGLDMGUI extends PairwiseGUI
 		final int numNeighbors = RGLDMParameters.numNeighbors = (int)Math.round( gd.getNextNumber() );
 		final int redundancy = RGLDMParameters.redundancy = (int)Math.round( gd.getNextNumber() );
 		final float ratioOfDistance = RGLDMParameters.ratioOfDistance = (float)gd.getNextNumber();
+		final double indexApproximation = RGLDMParameters.indexApproximation = Math.max( 0, gd.getNextNumber() );
 		final float maxEpsilon = RANSACParameters.max_epsilon = (float)gd.getNextNumber();
 		final int ransacIterations = RANSACParameters.ransacChoicesIterations[ defaultRANSACIterationChoice = gd.getNextChoiceIndex() ];
 
@@ -123,7 +125,7 @@ public class RGLDMGUI extends PairwiseGUI
 		else
 			minInlierRatio = RANSACParameters.min_inlier_ratio / 100;
 
-		this.parameters = new RGLDMParameters( model.getModel(), RGLDMParameters.differenceThreshold, ratioOfDistance, numNeighbors, redundancy );
+		this.parameters = new RGLDMParameters( model.getModel(), RGLDMParameters.differenceThreshold, ratioOfDistance, numNeighbors, redundancy, RGLDMParameters.useIndex, indexApproximation );
 		this.ransacParams = new RANSACParameters( maxEpsilon, minInlierRatio, RANSACParameters.min_inlier_factor, ransacIterations );
 
 		IOFunctions.println( "Selected Paramters:" );
@@ -131,6 +133,7 @@ public class RGLDMGUI extends PairwiseGUI
 		IOFunctions.println( "numNeighbors: " + numNeighbors );
 		IOFunctions.println( "redundancy: " + redundancy );
 		IOFunctions.println( "ratioOfDistance: " + ratioOfDistance );
+		IOFunctions.println( "indexApproximation: " + indexApproximation + " (useIndex: " + RGLDMParameters.useIndex + ")" );
 		IOFunctions.println( "maxEpsilon: " + maxEpsilon );
 		IOFunctions.println( "ransacIterations: " + ransacIterations );
 		IOFunctions.println( "minInlierRatio: " + minInlierRatio );
@@ -118,16 +118,7 @@ public class N5Parameters
 			n5params.saveData = gdp.getNextBoolean();
 		}
 
-		if ( compression == 0 ) // "Bzip2", "Gzip", "Lz4", "Raw (no compression)", "Xz"
-			n5params.compression = new Bzip2Compression();
-		else if ( compression == 1 )
-			n5params.compression = new GzipCompression();
-		else if ( compression == 2 )
-			n5params.compression = new Lz4Compression();
-		else if ( compression == 4 )
-			n5params.compression = new XzCompression();
-		else
-			n5params.compression = new RawCompression();
+		n5params.compression = getCompression( compression );
 
 		final int[][] resolutions = PluginHelper.parseResolutionsString( subsampling );
 		final int[][] subdivisions = PluginHelper.parseResolutionsString( chunkSizes );
@@ -156,6 +147,20 @@ public class N5Parameters
 		return n5params;
 	}
 
+	public static Compression getCompression( final int compression )
+	{
+		if ( compression == 0 ) // "Bzip2", "Gzip", "Lz4", "Raw (no compression)", "Xz"
+			return new Bzip2Compression();
+		else if ( compression == 1 )
+			return new GzipCompression();
+		else if ( compression == 2 )
+			return new Lz4Compression();
+		else if ( compression == 4 )
+			return new XzCompression();
+		else
+			return new RawCompression();
+	}
+
 	public static Map< Integer, ExportMipmapInfo > createProposedMipMaps(
 			final int[][] resolutions,
 			final int[][] subdivisions,
@@ -34,8 +34,6 @@ import java.util.List;
 import net.preibisch.legacy.io.IOFunctions;
 import net.preibisch.mvrecon.fiji.spimdata.boundingbox.BoundingBoxes;
 import net.preibisch.mvrecon.fiji.spimdata.intensityadjust.IntensityAdjustments;
-import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPointList;
-import net.preibisch.mvrecon.fiji.spimdata.interestpoints.ViewInterestPointLists;
 import net.preibisch.mvrecon.fiji.spimdata.interestpoints.ViewInterestPoints;
 import net.preibisch.mvrecon.fiji.spimdata.pointspreadfunctions.PointSpreadFunctions;
 import net.preibisch.mvrecon.fiji.spimdata.stitchingresults.StitchingResults;
@@ -518,18 +516,8 @@ public class SpimData2 extends SpimData
 		final String xml = new File( data.getBasePath(), new File( xmlFileName ).getName() ).getAbsolutePath();
 		try
 		{
-			for ( final ViewId viewId : data.getViewInterestPoints().getViewInterestPoints().keySet() )
-			{
-				final ViewInterestPointLists vipl = data.getViewInterestPoints().getViewInterestPoints().get( viewId );
-				for ( final String label : vipl.getHashMap().keySet() )
-				{
-					final InterestPointList ipl = vipl.getHashMap().get( label );
-
-					// save if interestpoints were loaded or created, potentially modified
-					ipl.saveInterestPoints( false );
-					ipl.saveCorrespondingInterestPoints( false );
-				}
-			}
+			// save if interestpoints were loaded or created, potentially modified (before the XML that references them)
+			data.getViewInterestPoints().saveInterestPoints( false );
 
 			io.save( data, xml );
 			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Saved xml '" + io.lastFileName() + "'." );
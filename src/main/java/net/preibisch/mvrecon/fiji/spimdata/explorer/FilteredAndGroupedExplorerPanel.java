@@ -57,9 +57,6 @@ import net.preibisch.mvrecon.fiji.spimdata.explorer.ViewSetupExplorerInfoBox;
 import net.preibisch.mvrecon.fiji.spimdata.explorer.bdv.BDVFlyThrough;
 import net.preibisch.mvrecon.fiji.spimdata.explorer.popup.BDVPopup;
 import net.preibisch.mvrecon.fiji.spimdata.explorer.popup.ExplorerWindowSetable;
-import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPointList;
-import net.preibisch.mvrecon.fiji.spimdata.interestpoints.ViewInterestPointLists;
-import net.preibisch.mvrecon.fiji.spimdata.interestpoints.ViewInterestPoints;
 import net.preibisch.mvrecon.process.interestpointregistration.TransformationTools;
 import bdv.BigDataViewer;
 import bdv.tools.HelpDialog;
@@ -506,26 +503,15 @@ public abstract class FilteredAndGroupedExplorerPanel<AS extends AbstractSpimDat
 	{
 		try
 		{
+			// the interest points first, so the XML never references files that were not written
+			if ( SpimData2.class.isInstance( data ) )
+				( (SpimData2)data ).getViewInterestPoints().saveInterestPoints( false );
+
 			io.save( data, xml );
 
 			for ( final SelectedViewDescriptionListener< AS > l : listeners )
 				l.save();
 
-			if ( SpimData2.class.isInstance( data ) )
-			{
-				final ViewInterestPoints vip = ( (SpimData2) data ).getViewInterestPoints();
-
-				for ( final ViewInterestPointLists vipl : vip.getViewInterestPoints().values() )
-				{
-					for ( final String label : vipl.getHashMap().keySet() )
-					{
-						final InterestPointList ipl = vipl.getInterestPointList( label );
-						ipl.saveInterestPoints( false );
-						ipl.saveCorrespondingInterestPoints( false );
-					}
-				}
-			}
-
 			IOFunctions.println( "Saved XML '" + xml + "'." );
 		}
 		catch ( SpimDataException e )
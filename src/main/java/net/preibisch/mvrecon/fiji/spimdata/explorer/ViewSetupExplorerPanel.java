@@ -105,9 +105,6 @@ import net.preibisch.mvrecon.fiji.spimdata.explorer.popup.VisualizeDetectionsPop
 import net.preibisch.mvrecon.fiji.spimdata.explorer.popup.VisualizeNonRigid;
 import net.preibisch.mvrecon.fiji.spimdata.explorer.util.ColorStream;
 import net.preibisch.mvrecon.fiji.spimdata.imgloaders.filemap2.FileMapImgLoaderLOCI2;
-import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPointList;
-import net.preibisch.mvrecon.fiji.spimdata.interestpoints.ViewInterestPointLists;
-import net.preibisch.mvrecon.fiji.spimdata.interestpoints.ViewInterestPoints;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
 
 
@@ -587,27 +584,15 @@ public class ViewSetupExplorerPanel< AS extends AbstractSpimData< ? >, X extends
 	{
 		try
 		{
+			// the interest points first, so the XML never references files that were not written
+			if ( SpimData2.class.isInstance( data ) )
+				( (SpimData2)data ).getViewInterestPoints().saveInterestPoints( false );
+
 			io.save( data, xml );
 
 			for ( final SelectedViewDescriptionListener< AS > l : listeners )
 				l.save();
 
-			if ( SpimData2.class.isInstance( data ) )
-			{
-				final ViewInterestPoints vip = ( (SpimData2)data ).getViewInterestPoints();
-				
-				for ( final ViewInterestPointLists vipl : vip.getViewInterestPoints().values() )
-				{
-					for ( final String label : vipl.getHashMap().keySet() )
-					{
-						final InterestPointList ipl = vipl.getInterestPointList( label );
-
-						ipl.saveInterestPoints( false );
-						ipl.saveCorrespondingInterestPoints( false );
-					}
-				}
-			}
-
 			IOFunctions.println( "Saved XML '" + xml + "'." );
 		}
 		catch ( SpimDataException e )
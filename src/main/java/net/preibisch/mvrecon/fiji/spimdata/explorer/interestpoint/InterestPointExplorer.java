@@ -40,6 +40,7 @@ import net.preibisch.mvrecon.fiji.spimdata.explorer.FilteredAndGroupedExplorer;
 import net.preibisch.mvrecon.fiji.spimdata.explorer.SelectedViewDescriptionListener;
 import net.preibisch.mvrecon.fiji.spimdata.explorer.popup.BasicBDVPopup;
 import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPointList;
+import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPointsN5;
 
 import bdv.BigDataViewer;
 import mpicbg.spim.data.generic.XmlIoAbstractSpimData;
@@ -114,12 +115,12 @@ public class InterestPointExplorer< AS extends SpimData2, X extends XmlIoAbstrac
 			final File ip = new File( list.getA().getBaseDir(), list.getA().getFile().toString() + list.getA().getInterestPointsExt() );
 			final File corr = new File( list.getA().getBaseDir(), list.getA().getFile().toString() + list.getA().getCorrespondencesExt() );
 
-			if ( ip.delete() )
+			if ( InterestPointsN5.delete( ip ) )
 				IOFunctions.println( "Deleted: " + ip.getAbsolutePath() );
 			else
 				IOFunctions.println( "FAILED to delete: " + ip.getAbsolutePath() );
 
-			if ( corr.delete() )
+			if ( InterestPointsN5.delete( corr ) )
 				IOFunctions.println( "Deleted: " + corr.getAbsolutePath() );
 			else
 				IOFunctions.println( "FAILED to delete: " + corr.getAbsolutePath() );
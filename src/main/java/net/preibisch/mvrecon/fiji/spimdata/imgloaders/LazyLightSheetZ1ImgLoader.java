@@ -0,0 +1,617 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.fiji.spimdata.imgloaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import bdv.export.ProposeMipmaps;
+import bdv.util.MipmapTransforms;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
+import mpicbg.spim.data.generic.sequence.BasicViewDescription;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
+import mpicbg.spim.data.generic.sequence.ImgLoaderHints;
+import mpicbg.spim.data.sequence.Angle;
+import mpicbg.spim.data.sequence.Channel;
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import mpicbg.spim.data.sequence.Illumination;
+import mpicbg.spim.data.sequence.MultiResolutionImgLoader;
+import mpicbg.spim.data.sequence.MultiResolutionSetupImgLoader;
+import mpicbg.spim.data.sequence.Tile;
+import mpicbg.spim.data.sequence.ViewId;
+import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.Cursor;
+import net.imglib2.Dimensions;
+import net.imglib2.FinalDimensions;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.Threads;
+import net.preibisch.mvrecon.fiji.datasetmanager.LightSheetZ1;
+import net.preibisch.mvrecon.headless.definedataset.LightSheetZ1MetaData;
+import net.preibisch.mvrecon.process.fusion.FusionTools;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
+import net.preibisch.mvrecon.process.interestpointdetection.methods.weightedgauss.Lazy;
+import util.ImgLib2Tools;
+
+/**
+ * Lazy mode of the {@link LightSheetZ1ImgLoader}: every view is a cached cell image whose cells are groups of z-planes that are
+ * read with Bio-Formats when they are accessed the first time. A pool of readers (each with the CZI opened) allows several
+ * threads to read different views or planes at the same time.
+ *
+ * Lower resolutions are created on the fly by averaging the previous level (the resolutions are proposed like for
+ * the HDF5 export), so the loader can be used as a {@link MultiResolutionImgLoader} for BDV and downsampled processing.
+ */
+public class LazyLightSheetZ1ImgLoader implements MultiResolutionImgLoader
+{
+	public static int defaultPlanesPerCell = 1;
+	public static int defaultNumReaders = Threads.numThreads();
+
+	// the cell size of the downsampled levels
+	public static int[] downsampledBlockSize = new int[] { 64, 64, 64 };
+
+	final File cziFile;
+	final AbstractSequenceDescription< ?, ?, ? > sequenceDescription;
+	final int planesPerCell, numReaders;
+
+	// once the metadata is loaded for one view, it is available for all other ones
+	LightSheetZ1MetaData meta;
+
+	// idle readers, at most numReaders are created
+	final LinkedBlockingQueue< IFormatReader > readers = new LinkedBlockingQueue<>();
+	int numCreatedReaders = 0;
+
+	// all levels of all views that were requested, so the cell caches are shared
+	final HashMap< ViewId, HashMap< Integer, RandomAccessibleInterval< UnsignedShortType > > > images = new HashMap<>();
+	final HashMap< Integer, double[][] > mipmapResolutions = new HashMap<>();
+
+	public LazyLightSheetZ1ImgLoader(
+			final File cziFile,
+			final AbstractSequenceDescription< ?, ?, ? > sequenceDescription )
+	{
+		this( cziFile, sequenceDescription, defaultPlanesPerCell, defaultNumReaders );
+	}
+
+	/**
+	 * @param cziFile - the (first) CZI file
+	 * @param sequenceDescription - the sequence description
+	 * @param planesPerCell - how many z-planes form one cell
+	 * @param numReaders - the maximal number of Bio-Formats readers that are opened at the same time
+	 */
+	public LazyLightSheetZ1ImgLoader(
+			final File cziFile,
+			final AbstractSequenceDescription< ?, ?, ? > sequenceDescription,
+			final int planesPerCell,
+			final int numReaders )
+	{
+		this.cziFile = cziFile;
+		this.sequenceDescription = sequenceDescription;
+		this.planesPerCell = Math.max( 1, planesPerCell );
+		this.numReaders = Math.max( 1, numReaders );
+	}
+
+	public File getCZIFile() { return cziFile; }
+	public int getPlanesPerCell() { return planesPerCell; }
+	public int getNumReaders() { return numReaders; }
+
+	@Override
+	public LazyLightSheetZ1SetupImgLoader getSetupImgLoader( final int setupId )
+	{
+		return new LazyLightSheetZ1SetupImgLoader( setupId );
+	}
+
+	/**
+	 * Closes all readers that are not in use, they are reopened if necessary
+	 */
+	public void close()
+	{
+		synchronized ( readers )
+		{
+			IFormatReader r;
+
+			while ( ( r = readers.poll() ) != null )
+			{
+				try { r.close(); } catch ( IOException e ) { e.printStackTrace(); }
+				--numCreatedReaders;
+			}
+		}
+	}
+
+	protected synchronized LightSheetZ1MetaData getMetaData()
+	{
+		if ( meta == null )
+		{
+			IOFunctions.println( new Date( System.currentTimeMillis() ) + ": Investigating file '" + cziFile.getAbsolutePath() + "' (loading metadata)." );
+
+			final LightSheetZ1MetaData meta = new LightSheetZ1MetaData();
+
+			if ( !meta.loadMetaData( cziFile ) )
+				throw new RuntimeException( "Failed to analyze file: '" + cziFile.getAbsolutePath() + "'." );
+
+			this.meta = meta;
+		}
+
+		return meta;
+	}
+
+	protected IFormatReader acquireReader() throws Exception
+	{
+		final IFormatReader idle = readers.poll();
+
+		if ( idle != null )
+			return idle;
+
+		final boolean create;
+
+		synchronized ( readers )
+		{
+			create = numCreatedReaders < numReaders;
+
+			if ( create )
+				++numCreatedReaders;
+		}
+
+		// wait for another thread to release its reader
+		if ( !create )
+			return readers.take();
+
+		try
+		{
+			IOFunctions.println( new Date( System.currentTimeMillis() ) + ": Opening '" + cziFile.getName() + "' for reading image data (reader " + numCreatedReaders + "/" + numReaders + ")." );
+
+			final IFormatReader r = LegacyLightSheetZ1ImgLoader.instantiateImageReader();
+			r.setId( cziFile.getAbsolutePath() );
+
+			return r;
+		}
+		catch ( Exception e )
+		{
+			synchronized ( readers ) { --numCreatedReaders; }
+			throw e;
+		}
+	}
+
+	protected void releaseReader( final IFormatReader r )
+	{
+		readers.offer( r );
+	}
+
+	protected int[] getDimensions( final BasicViewDescription< ? > vd )
+	{
+		final BasicViewSetup vs = vd.getViewSetup();
+
+		if ( vs.hasSize() )
+		{
+			final int[] dim = new int[ vs.getSize().numDimensions() ];
+
+			for ( int d = 0; d < dim.length; ++d )
+				dim[ d ] = (int)vs.getSize().dimension( d );
+
+			return dim;
+		}
+		else
+		{
+			return getMetaData().imageSizes().get( LegacyLightSheetZ1ImgLoader.getAngle( vd ).getId() );
+		}
+	}
+
+	/**
+	 * Reads consecutive z-planes of a view into an array
+	 *
+	 * @param vd - the view
+	 * @param width - width of the view
+	 * @param height - height of the view
+	 * @param z0 - the first plane
+	 * @param numPlanes - the number of planes
+	 * @param target - the array, planes are stored consecutively
+	 * @param offset - the index of the first pixel in target
+	 * @throws Exception if the reading failed
+	 */
+	protected void readPlanes(
+			final BasicViewDescription< ? > vd,
+			final int width,
+			final int height,
+			final int z0,
+			final int numPlanes,
+			final short[] target,
+			final int offset ) throws Exception
+	{
+		final LightSheetZ1MetaData meta = getMetaData();
+
+		final int t = vd.getTimePoint().getId();
+		final Channel c = LegacyLightSheetZ1ImgLoader.getChannel( vd );
+		final Illumination i = LegacyLightSheetZ1ImgLoader.getIllumination( vd );
+		final Tile tile = LegacyLightSheetZ1ImgLoader.getTile( vd );
+
+		// see LegacyLightSheetZ1ImgLoader, i0( c0, c1, c2 ), i1( c0, c1, c2 )
+		final int ch = i.getId() * meta.numChannels() + c.getId();
+
+		final int numPx = width * height;
+		final byte[] b = new byte[ numPx * meta.bytesPerPixel() ];
+
+		final IFormatReader r = acquireReader();
+
+		try
+		{
+			r.setSeries( tile.getId() );
+
+			for ( int z = z0; z < z0 + numPlanes; ++z )
+			{
+				r.openBytes( r.getIndex( z, ch, t ), b );
+				toUnsignedShorts( b, target, offset + ( z - z0 ) * numPx, numPx, meta.pixelType(), meta.isLittleEndian() );
+			}
+		}
+		finally
+		{
+			releaseReader( r );
+		}
+	}
+
+	/**
+	 * Converts a plane read by Bio-Formats to unsigned short, with the same result as LegacyLightSheetZ1ImgLoader
+	 * writing it into an UnsignedShortType image
+	 *
+	 * @param b - the bytes of the plane
+	 * @param target - the target array
+	 * @param offset - index of the first pixel in target
+	 * @param numPx - number of pixels
+	 * @param pixelType - Bio-Formats pixel type
+	 * @param isLittleEndian - byte order
+	 */
+	public static void toUnsignedShorts( final byte[] b, final short[] target, final int offset, final int numPx, final int pixelType, final boolean isLittleEndian )
+	{
+		if ( pixelType == FormatTools.UINT8 )
+		{
+			for ( int j = 0; j < numPx; ++j )
+				target[ offset + j ] = (short)( b[ j ] & 0xff );
+		}
+		else if ( pixelType == FormatTools.UINT16 || pixelType == FormatTools.INT16 )
+		{
+			for ( int j = 0; j < numPx; ++j )
+				target[ offset + j ] = LegacyStackImgLoaderLOCI.getShortValue( b, j * 2, isLittleEndian );
+		}
+		else if ( pixelType == FormatTools.UINT32 )
+		{
+			for ( int j = 0; j < numPx; ++j )
+				target[ offset + j ] = UnsignedShortType.getCodedSignedShort( LegacyStackImgLoaderLOCI.getIntValue( b, j * 4, isLittleEndian ) );
+		}
+		else if ( pixelType == FormatTools.FLOAT )
+		{
+			for ( int j = 0; j < numPx; ++j )
+				target[ offset + j ] = UnsignedShortType.getCodedSignedShort( (int)Util.round( LegacyStackImgLoaderLOCI.getFloatValue( b, j * 4, isLittleEndian ) ) );
+		}
+	}
+
+	protected synchronized double[][] getMipmapResolutions( final int setupId )
+	{
+		double[][] resolutions = mipmapResolutions.get( setupId );
+
+		if ( resolutions == null )
+		{
+			final BasicViewSetup setup = sequenceDescription.getViewSetups().get( setupId );
+			final int[][] proposed = ProposeMipmaps.proposeMipmaps( setup ).getExportResolutions();
+
+			resolutions = new double[ proposed.length ][ 3 ];
+
+			for ( int l = 0; l < proposed.length; ++l )
+				for ( int d = 0; d < 3; ++d )
+					resolutions[ l ][ d ] = proposed[ l ][ d ];
+
+			mipmapResolutions.put( setupId, resolutions );
+		}
+
+		return resolutions;
+	}
+
+	protected RandomAccessibleInterval< UnsignedShortType > getLazyImage( final ViewId viewId, final int level )
+	{
+		synchronized ( images )
+		{
+			HashMap< Integer, RandomAccessibleInterval< UnsignedShortType > > levels = images.get( viewId );
+
+			if ( levels == null )
+			{
+				levels = new HashMap<>();
+				images.put( viewId, levels );
+			}
+
+			RandomAccessibleInterval< UnsignedShortType > img = levels.get( level );
+
+			if ( img == null )
+			{
+				if ( level == 0 )
+				{
+					final BasicViewDescription< ? > vd = sequenceDescription.getViewDescriptions().get( viewId );
+					final int[] dim = getDimensions( vd );
+
+					IOFunctions.println(
+							new Date( System.currentTimeMillis() ) + ": Lazy image for '" + cziFile.getName() + "' [" + Util.printCoordinates( dim ) +
+							" angle=" + LegacyLightSheetZ1ImgLoader.getAngle( vd ).getName() + " tp=" + vd.getTimePoint().getName() +
+							" planesPerCell=" + planesPerCell + "]" );
+
+					img = Lazy.createImg(
+							new FinalInterval( dim[ 0 ], dim[ 1 ], dim[ 2 ] ),
+							new int[] { dim[ 0 ], dim[ 1 ], planesPerCell },
+							new UnsignedShortType(),
+							AccessFlags.setOf(),
+							cell -> readPlanes(
+									vd, dim[ 0 ], dim[ 1 ],
+									(int)cell.min( 2 ), (int)cell.dimension( 2 ),
+									( (ShortArray)cell.update( null ) ).getCurrentStorageArray(), 0 ) );
+				}
+				else
+				{
+					final double[][] resolutions = getMipmapResolutions( viewId.getViewSetupId() );
+					final int[] f = new int[ 3 ];
+
+					for ( int d = 0; d < 3; ++d )
+						f[ d ] = (int)Math.round( resolutions[ level ][ d ] / resolutions[ level - 1 ][ d ] );
+
+					img = downsample( getLazyImage( viewId, level - 1 ), f, downsampledBlockSize );
+				}
+
+				levels.put( level, img );
+			}
+
+			return img;
+		}
+	}
+
+	/**
+	 * Lazily averages blocks of f[0]xf[1]xf[2] pixels, the pixel centers are consistent with
+	 * {@link MipmapTransforms#getMipmapTransformDefault(double[])}
+	 *
+	 * @param input - the image
+	 * @param f - downsampling factor in each dimension
+	 * @param blockSize - cell size of the result
+	 * @return the downsampled, cached image
+	 */
+	public static RandomAccessibleInterval< UnsignedShortType > downsample(
+			final RandomAccessibleInterval< UnsignedShortType > input,
+			final int[] f,
+			final int[] blockSize )
+	{
+		final int n = input.numDimensions();
+		final long[] dim = new long[ n ];
+
+		for ( int d = 0; d < n; ++d )
+			dim[ d ] = Math.max( 1, input.dimension( d ) / f[ d ] );
+
+		return Lazy.process(
+				new FinalInterval( dim ),
+				blockSize,
+				new UnsignedShortType(),
+				AccessFlags.setOf(),
+				cell -> {
+					final RandomAccess< UnsignedShortType > ra = input.randomAccess();
+					final Cursor< UnsignedShortType > cursor = Views.flatIterable( cell ).localizingCursor();
+
+					final long[] min = new long[ n ];
+					final long[] max = new long[ n ];
+					final long[] pos = new long[ n ];
+
+					while ( cursor.hasNext() )
+					{
+						cursor.fwd();
+
+						for ( int d = 0; d < n; ++d )
+						{
+							min[ d ] = input.min( d ) + cursor.getLongPosition( d ) * f[ d ];
+							max[ d ] = Math.min( input.max( d ), min[ d ] + f[ d ] - 1 );
+							pos[ d ] = min[ d ];
+						}
+
+						double sum = 0;
+						long count = 0;
+
+						// iterate the box
+						while ( pos[ n - 1 ] <= max[ n - 1 ] )
+						{
+							ra.setPosition( pos );
+							sum += ra.get().get();
+							++count;
+
+							for ( int d = 0; d < n; ++d )
+							{
+								if ( ++pos[ d ] <= max[ d ] || d == n - 1 )
+									break;
+
+								pos[ d ] = min[ d ];
+							}
+						}
+
+						cursor.get().set( (int)Math.round( sum / count ) );
+					}
+				} );
+	}
+
+	public class LazyLightSheetZ1SetupImgLoader implements MultiResolutionSetupImgLoader< UnsignedShortType >
+	{
+		final int setupId;
+
+		public LazyLightSheetZ1SetupImgLoader( final int setupId )
+		{
+			this.setupId = setupId;
+		}
+
+		@Override
+		public RandomAccessibleInterval< UnsignedShortType > getImage( final int timepointId, final int level, final ImgLoaderHint... hints )
+		{
+			final ViewId viewId = new ViewId( timepointId, setupId );
+
+			boolean loadCompletely = false;
+
+			for ( final ImgLoaderHint hint : hints )
+				if ( hint == ImgLoaderHints.LOAD_COMPLETELY )
+					loadCompletely = true;
+
+			if ( loadCompletely && level == 0 )
+			{
+				final BasicViewDescription< ? > vd = sequenceDescription.getViewDescriptions().get( viewId );
+				final int[] dim = getDimensions( vd );
+
+				if ( (long)dim[ 0 ] * dim[ 1 ] * dim[ 2 ] < Integer.MAX_VALUE )
+				{
+					// read groups of planes in parallel (limited by the number of readers) directly into one array
+					final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( dim[ 0 ], dim[ 1 ], dim[ 2 ] );
+					final short[] data = img.update( null ).getCurrentStorageArray();
+					final ArrayList< Callable< Void > > tasks = new ArrayList<>();
+
+					for ( int z = 0; z < dim[ 2 ]; z += planesPerCell )
+					{
+						final int z0 = z;
+						final int numPlanes = Math.min( planesPerCell, dim[ 2 ] - z );
+
+						tasks.add( () ->
+						{
+							readPlanes( vd, dim[ 0 ], dim[ 1 ], z0, numPlanes, data, z0 * dim[ 0 ] * dim[ 1 ] );
+							return null;
+						});
+					}
+
+					FusionTools.execTasks( tasks, numReaders, "load " + Group.pvid( viewId ) );
+
+					return img;
+				}
+			}
+
+			return getLazyImage( viewId, level );
+		}
+
+		@Override
+		public RandomAccessibleInterval< FloatType > getFloatImage( final int timepointId, final int level, final boolean normalize, final ImgLoaderHint... hints )
+		{
+			if ( normalize )
+				return ImgLib2Tools.normalizeVirtual( getImage( timepointId, level, hints ) );
+			else
+				return ImgLib2Tools.convertVirtual( getImage( timepointId, level, hints ) );
+		}
+
+		@Override
+		public RandomAccessibleInterval< UnsignedShortType > getImage( final int timepointId, final ImgLoaderHint... hints )
+		{
+			return getImage( timepointId, 0, hints );
+		}
+
+		@Override
+		public RandomAccessibleInterval< FloatType > getFloatImage( final int timepointId, final boolean normalize, final ImgLoaderHint... hints )
+		{
+			return getFloatImage( timepointId, 0, normalize, hints );
+		}
+
+		@Override
+		public double[][] getMipmapResolutions()
+		{
+			return LazyLightSheetZ1ImgLoader.this.getMipmapResolutions( setupId );
+		}
+
+		@Override
+		public AffineTransform3D[] getMipmapTransforms()
+		{
+			final double[][] resolutions = getMipmapResolutions();
+			final AffineTransform3D[] transforms = new AffineTransform3D[ resolutions.length ];
+
+			for ( int l = 0; l < resolutions.length; ++l )
+				transforms[ l ] = MipmapTransforms.getMipmapTransformDefault( resolutions[ l ] );
+
+			return transforms;
+		}
+
+		@Override
+		public int numMipmapLevels()
+		{
+			return getMipmapResolutions().length;
+		}
+
+		@Override
+		public Dimensions getImageSize( final int timepointId, final int level )
+		{
+			final Dimensions size = getImageSize( timepointId );
+			final double[][] resolutions = getMipmapResolutions();
+			final long[] dim = new long[ size.numDimensions() ];
+
+			// successive integer factors, same as downsample()
+			for ( int d = 0; d < dim.length; ++d )
+			{
+				dim[ d ] = size.dimension( d );
+
+				for ( int l = 1; l <= level; ++l )
+					dim[ d ] = Math.max( 1, dim[ d ] / Math.round( resolutions[ l ][ d ] / resolutions[ l - 1 ][ d ] ) );
+			}
+
+			return new FinalDimensions( dim );
+		}
+
+		@Override
+		public UnsignedShortType getImageType()
+		{
+			return new UnsignedShortType();
+		}
+
+		@Override
+		public Dimensions getImageSize( final int timepointId )
+		{
+			final BasicViewDescription< ? > vd = sequenceDescription.getViewDescriptions().get( new ViewId( timepointId, setupId ) );
+			final int[] dim = getDimensions( vd );
+
+			return new FinalDimensions( dim[ 0 ], dim[ 1 ], dim[ 2 ] );
+		}
+
+		@Override
+		public VoxelDimensions getVoxelSize( final int timepointId )
+		{
+			final BasicViewSetup vs = sequenceDescription.getViewSetups().get( setupId );
+
+			if ( vs.hasVoxelSize() )
+				return vs.getVoxelSize();
+
+			final LightSheetZ1MetaData meta = getMetaData();
+
+			return new FinalVoxelDimensions( meta.calUnit(), meta.calX(), meta.calY(), meta.calZ() );
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return new LightSheetZ1().getTitle() + ", lazy (" + planesPerCell + " planes per cell, " + numReaders + " readers)";
+	}
+}
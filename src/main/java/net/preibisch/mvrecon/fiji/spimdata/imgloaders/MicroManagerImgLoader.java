@@ -23,26 +23,232 @@
 package net.preibisch.mvrecon.fiji.spimdata.imgloaders;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Date;
 
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
 import mpicbg.spim.data.generic.sequence.BasicViewDescription;
 import mpicbg.spim.data.generic.sequence.BasicViewSetup;
-import mpicbg.spim.data.legacy.LegacyImgLoaderWrapper;
+import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
+import mpicbg.spim.data.generic.sequence.ImgLoaderHints;
+import mpicbg.spim.data.sequence.Angle;
+import mpicbg.spim.data.sequence.Channel;
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import mpicbg.spim.data.sequence.Illumination;
+import mpicbg.spim.data.sequence.ImgLoader;
+import mpicbg.spim.data.sequence.SetupImgLoader;
+import mpicbg.spim.data.sequence.ViewId;
+import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.Dimensions;
+import net.imglib2.FinalDimensions;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.fiji.datasetmanager.MicroManager;
+import net.preibisch.mvrecon.process.interestpointdetection.methods.weightedgauss.Lazy;
+import util.ImgLib2Tools;
 
-public class MicroManagerImgLoader extends LegacyImgLoaderWrapper< UnsignedShortType, LegacyMicroManagerImgLoader >
+/**
+ * Virtual ImgLoader for Micro-Manager multipage TIFFs. Every view is a lazily loaded cell image with one cell per plane,
+ * a plane is memory-mapped from the file and copied into the cell when it is accessed the first time
+ * (see {@link MultipageTiffReader#readPlane(String, short[], int)}), so only the planes that are used are read.
+ *
+ * All views share one {@link MultipageTiffReader} that is opened when the first image is requested and released by {@link #close()}.
+ */
+public class MicroManagerImgLoader implements ImgLoader
 {
+	final File mmFile;
+	final AbstractSequenceDescription< ? extends BasicViewSetup, ? extends BasicViewDescription< ? >, ? > sequenceDescription;
+
+	MultipageTiffReader reader = null;
+
 	public MicroManagerImgLoader(
 			final File mmFile,
 			final AbstractSequenceDescription< ? extends BasicViewSetup, ? extends BasicViewDescription< ? >, ? > sequenceDescription )
 	{
-		super( new LegacyMicroManagerImgLoader( mmFile, sequenceDescription ) );
+		this.mmFile = mmFile;
+		this.sequenceDescription = sequenceDescription;
 	}
 
-	public File getFile() { return legacyImgLoader.getFile(); }
+	public File getFile() { return mmFile; }
+
+	protected synchronized MultipageTiffReader getReader() throws IOException
+	{
+		if ( reader == null )
+			reader = new MultipageTiffReader( mmFile );
+
+		return reader;
+	}
+
+	/**
+	 * Closes the files and drops the memory-mapped windows, they are reopened if necessary
+	 */
+	public synchronized void close()
+	{
+		if ( reader != null )
+		{
+			try { reader.close(); } catch ( IOException e ) { e.printStackTrace(); }
+			reader = null;
+		}
+	}
 
 	@Override
-	public String toString() {
-		return legacyImgLoader.toString();
+	public MicroManagerSetupImgLoader getSetupImgLoader( final int setupId )
+	{
+		return new MicroManagerSetupImgLoader( setupId );
+	}
+
+	public class MicroManagerSetupImgLoader implements SetupImgLoader< UnsignedShortType >
+	{
+		final int setupId;
+
+		public MicroManagerSetupImgLoader( final int setupId )
+		{
+			this.setupId = setupId;
+		}
+
+		@Override
+		public RandomAccessibleInterval< UnsignedShortType > getImage( final int timepointId, final ImgLoaderHint... hints )
+		{
+			final BasicViewDescription< ? > vd = sequenceDescription.getViewDescriptions().get( new ViewId( timepointId, setupId ) );
+
+			try
+			{
+				final MultipageTiffReader r = getReader();
+
+				final int width = r.width();
+				final int height = r.height();
+				final int depth = r.depth();
+
+				final int t = vd.getTimePoint().getId();
+				final int a = vd.getViewSetup().getAttribute( Angle.class ).getId();
+				final int c = vd.getViewSetup().getAttribute( Channel.class ).getId();
+				final int i = vd.getViewSetup().getAttribute( Illumination.class ).getId();
+				final int channel = r.interleavedId( c, a );
+
+				boolean loadCompletely = false;
+
+				for ( final ImgLoaderHint hint : hints )
+					if ( hint == ImgLoaderHints.LOAD_COMPLETELY )
+						loadCompletely = true;
+
+				if ( loadCompletely )
+				{
+					// read all planes directly into one array
+					final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( width, height, depth );
+					final short[] data = img.update( null ).getCurrentStorageArray();
+
+					for ( int z = 0; z < depth; ++z )
+						readPlane( r, MultipageTiffReader.generateLabel( channel, z, t, i ), data, z * width * height, z, vd );
+
+					return img;
+				}
+
+				return Lazy.createImg(
+						new FinalInterval( width, height, depth ),
+						new int[] { width, height, 1 },
+						new UnsignedShortType(),
+						AccessFlags.setOf(),
+						cell -> {
+							final int z = (int)cell.min( 2 );
+							final short[] data = ( (ShortArray)cell.update( null ) ).getCurrentStorageArray();
+
+							try
+							{
+								// the loader might have been closed in the meantime
+								readPlane( getReader(), MultipageTiffReader.generateLabel( channel, z, t, i ), data, 0, z, vd );
+							}
+							catch ( final IOException e )
+							{
+								IOFunctions.println( "Failed to reopen '" + mmFile.getAbsolutePath() + "' for viewsetup=" + setupId + " timepoint=" + timepointId + ": " + e );
+								e.printStackTrace();
+							}
+						} );
+			}
+			catch ( final Exception e )
+			{
+				IOFunctions.println( "Failed to load viewsetup=" + setupId + " timepoint=" + timepointId + ": " + e );
+				e.printStackTrace();
+				return null;
+			}
+		}
+
+		@Override
+		public UnsignedShortType getImageType()
+		{
+			return new UnsignedShortType();
+		}
+
+		@Override
+		public RandomAccessibleInterval< FloatType > getFloatImage( final int timepointId, final boolean normalize, final ImgLoaderHint... hints )
+		{
+			if ( normalize )
+				return ImgLib2Tools.normalizeVirtual( getImage( timepointId, hints ) );
+			else
+				return ImgLib2Tools.convertVirtual( getImage( timepointId, hints ) );
+		}
+
+		@Override
+		public Dimensions getImageSize( final int timepointId )
+		{
+			final BasicViewDescription< ? > vd = sequenceDescription.getViewDescriptions().get( new ViewId( timepointId, setupId ) );
+
+			if ( vd.getViewSetup().hasSize() )
+				return vd.getViewSetup().getSize();
+
+			try
+			{
+				final MultipageTiffReader r = getReader();
+				return new FinalDimensions( r.width(), r.height(), r.depth() );
+			}
+			catch ( final IOException e )
+			{
+				IOFunctions.println( "Failed to load metadata for viewsetup=" + setupId + " timepoint=" + timepointId + ": " + e );
+				e.printStackTrace();
+				return null;
+			}
+		}
+
+		@Override
+		public VoxelDimensions getVoxelSize( final int timepointId )
+		{
+			final BasicViewDescription< ? > vd = sequenceDescription.getViewDescriptions().get( new ViewId( timepointId, setupId ) );
+
+			if ( vd.getViewSetup().hasVoxelSize() )
+				return vd.getViewSetup().getVoxelSize();
+
+			try
+			{
+				final MultipageTiffReader r = getReader();
+				return new FinalVoxelDimensions( r.calUnit(), r.calX(), r.calY(), r.calZ() );
+			}
+			catch ( final IOException e )
+			{
+				IOFunctions.println( "Failed to load metadata for viewsetup=" + setupId + " timepoint=" + timepointId + ": " + e );
+				e.printStackTrace();
+				return null;
+			}
+		}
+	}
+
+	protected static void readPlane( final MultipageTiffReader r, final String label, final short[] data, final int offset, final int z, final BasicViewDescription< ? > vd )
+	{
+		// leave the slice empty
+		if ( !r.readPlane( label, data, offset ) )
+			IOFunctions.println(
+					"(" + new Date( System.currentTimeMillis() ) + "): WARNING!!! DROPPED FRAME in timepoint=" + vd.getTimePointId() +
+					" viewsetup=" + vd.getViewSetupId() + " slice=" + z );
+	}
+
+	@Override
+	public String toString()
+	{
+		return new MicroManager().getTitle() + ", virtual (memory-mapped planes)";
 	}
 }
@@ -54,6 +54,7 @@ import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -77,6 +78,12 @@ public class MultipageTiffReader
 {
 	private static final long BIGGEST_INT_BIT = (long) Math.pow(2, 31);
 
+	/*
+	 * Files are memory-mapped in windows of twice this size that start at multiples of it,
+	 * so every plane that is not bigger than one step lies completely inside one window
+	 */
+	private static final long MAP_WINDOW_STEP = 1l << 29;
+
 	public static final int INDEX_MAP_HEADER = 3453623;
 	public static final int DISPLAY_SETTINGS_OFFSET_HEADER = 483765892;
 	public static final int DISPLAY_SETTINGS_HEADER = 347834724;
@@ -118,6 +125,7 @@ public class MultipageTiffReader
 	protected List< String > channelNames = null;
 
 	private HashMap< String, Pair< Long, FileChannel > > indexMap_;
+	private final HashMap< FileChannel, HashMap< Long, MappedByteBuffer > > mappedWindows_ = new HashMap<>();
 
 	/*
 	 * This constructor is used for opening datasets that have already been
@@ -285,6 +293,110 @@ public class MultipageTiffReader
 		}
 	}
 
+	/**
+	 * Reads the pixels of a plane directly into a (part of an) array, 8 bit data is expanded to unsigned 16 bit. The pixels are
+	 * sliced from a memory-mapped window of the file (each window is mapped only once) and the image metadata is not parsed,
+	 * so it is much cheaper than {@link #readImage(String)}. It can be called from several threads at the same time.
+	 *
+	 * @param label - the label of the plane, see {@link #generateLabel(int, int, int, int)}
+	 * @param target - the array to write to
+	 * @param offset - the index of the first pixel of the plane in target
+	 * @return true if the plane exists and was read, false if it was dropped or could not be read
+	 */
+	public boolean readPlane( final String label, final short[] target, final int offset )
+	{
+		final Pair< Long, FileChannel > entry = indexMap_.get( label );
+
+		if ( entry == null || entry.getB() == null )
+			return false;
+
+		try
+		{
+			final FileChannel fileChannel = entry.getB();
+			final IFDData data = readIFD( entry.getA(), fileChannel );
+
+			if ( byteDepth_ == 0 )
+				getRGBAndByteDepth( null );
+
+			if ( rgb_ )
+			{
+				IOFunctions.println( "RGB types not supported." );
+				return false;
+			}
+
+			final ByteBuffer pixelBuffer = mapPlane( fileChannel, data.pixelOffset, data.bytesPerImage );
+
+			final int numPixels = (int)Math.min( data.bytesPerImage / byteDepth_, target.length - offset );
+
+			if ( byteDepth_ == 1 )
+			{
+				for ( int i = 0; i < numPixels; ++i )
+					target[ offset + i ] = (short)( pixelBuffer.get( i ) & 0xff );
+			}
+			else
+			{
+				pixelBuffer.asShortBuffer().get( target, offset, numPixels );
+			}
+
+			return true;
+		}
+		catch ( IOException ex )
+		{
+			IOFunctions.println( ex );
+			return false;
+		}
+	}
+
+	private ByteBuffer mapPlane( final FileChannel fileChannel, final long pixelOffset, final long bytesPerImage ) throws IOException
+	{
+		// does not fit into a window, map it on its own
+		if ( bytesPerImage > MAP_WINDOW_STEP )
+			return fileChannel.map( FileChannel.MapMode.READ_ONLY, pixelOffset, bytesPerImage ).order( byteOrder_ );
+
+		final long windowIndex = pixelOffset / MAP_WINDOW_STEP;
+		final MappedByteBuffer window = getMappedWindow( fileChannel, windowIndex );
+
+		final int start = (int)( pixelOffset - windowIndex * MAP_WINDOW_STEP );
+		final int end = start + (int)bytesPerImage;
+
+		if ( end > window.capacity() )
+			throw new IOException( "Plane at offset " + pixelOffset + " exceeds the size of file: " + getFileForFileChannel( fileChannel ).getName() );
+
+		// duplicate() so concurrent readers do not share position and limit
+		final ByteBuffer plane = window.duplicate();
+		plane.position( start );
+		plane.limit( end );
+
+		return plane.slice().order( byteOrder_ );
+	}
+
+	private synchronized MappedByteBuffer getMappedWindow( final FileChannel fileChannel, final long windowIndex ) throws IOException
+	{
+		HashMap< Long, MappedByteBuffer > windows = mappedWindows_.get( fileChannel );
+
+		if ( windows == null )
+		{
+			windows = new HashMap<>();
+			mappedWindows_.put( fileChannel, windows );
+		}
+
+		MappedByteBuffer window = windows.get( windowIndex );
+
+		if ( window == null )
+		{
+			final long windowStart = windowIndex * MAP_WINDOW_STEP;
+			final long windowSize = Math.min( 2 * MAP_WINDOW_STEP, fileChannel.size() - windowStart );
+
+			if ( windowSize <= 0 )
+				throw new IOException( "Offset " + windowStart + " is beyond the end of file: " + getFileForFileChannel( fileChannel ).getName() );
+
+			window = fileChannel.map( FileChannel.MapMode.READ_ONLY, windowStart, windowSize );
+			windows.put( windowIndex, window );
+		}
+
+		return window;
+	}
+
 	public Set<String> getIndexKeys() {
 		if (indexMap_ == null)
 			return null;
@@ -588,8 +700,19 @@ public class MultipageTiffReader
 		return unsignInt( tiffHeader.getInt( 4 ) );
 	}
 
+	/**
+	 * Closes all files. The memory-mapped windows are dropped and unmapped once they are garbage-collected,
+	 * planes cannot be read anymore afterwards.
+	 *
+	 * @throws IOException - if a file cannot be closed
+	 */
 	public void close() throws IOException
 	{
+		synchronized ( this )
+		{
+			this.mappedWindows_.clear();
+		}
+
 		for ( final FileChannel fileChannel : this.fileChannels )
 			if ( fileChannel != null )
 				fileChannel.close();
@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.fiji.spimdata.imgloaders;
+
+import static mpicbg.spim.data.XmlHelpers.loadPath;
+import static mpicbg.spim.data.XmlKeys.IMGLOADER_FORMAT_ATTRIBUTE_NAME;
+
+import java.io.File;
+
+import org.jdom2.Element;
+
+import mpicbg.spim.data.XmlHelpers;
+import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
+import mpicbg.spim.data.generic.sequence.ImgLoaderIo;
+import mpicbg.spim.data.generic.sequence.XmlIoBasicImgLoader;
+
+@ImgLoaderIo( format = "spimreconstruction.lightsheetz1.lazy", type = LazyLightSheetZ1ImgLoader.class )
+public class XmlIoLazyLightSheetZ1ImgLoader implements XmlIoBasicImgLoader< LazyLightSheetZ1ImgLoader >
+{
+	public static final String DIRECTORY_TAG = "imagedirectory";
+	public static final String MASTER_FILE_TAG = "masterfile";
+	public static final String PLANES_PER_CELL_TAG = "planespercell";
+	public static final String NUM_READERS_TAG = "numreaders";
+
+	@Override
+	public Element toXml( final LazyLightSheetZ1ImgLoader imgLoader, final File basePath )
+	{
+		final Element elem = new Element( "ImageLoader" );
+		elem.setAttribute( IMGLOADER_FORMAT_ATTRIBUTE_NAME, this.getClass().getAnnotation( ImgLoaderIo.class ).format() );
+
+		elem.addContent( XmlHelpers.pathElement( DIRECTORY_TAG, imgLoader.getCZIFile().getParentFile(), basePath ) );
+		elem.addContent( XmlHelpers.textElement( MASTER_FILE_TAG, imgLoader.getCZIFile().getName() ) );
+		elem.addContent( XmlHelpers.intElement( PLANES_PER_CELL_TAG, imgLoader.getPlanesPerCell() ) );
+		elem.addContent( XmlHelpers.intElement( NUM_READERS_TAG, imgLoader.getNumReaders() ) );
+
+		return elem;
+	}
+
+	@Override
+	public LazyLightSheetZ1ImgLoader fromXml(
+			final Element elem, File basePath,
+			final AbstractSequenceDescription<?, ?, ?> sequenceDescription )
+	{
+		try
+		{
+			final File path = loadPath( elem, DIRECTORY_TAG, basePath );
+			final String masterFile = XmlHelpers.getText( elem, MASTER_FILE_TAG );
+			final int planesPerCell = XmlHelpers.getInt( elem, PLANES_PER_CELL_TAG, LazyLightSheetZ1ImgLoader.defaultPlanesPerCell );
+			final int numReaders = XmlHelpers.getInt( elem, NUM_READERS_TAG, LazyLightSheetZ1ImgLoader.defaultNumReaders );
+
+			return new LazyLightSheetZ1ImgLoader( new File( path, masterFile ), sequenceDescription, planesPerCell, numReaders );
+		}
+		catch ( final Exception e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+}
@@ -67,6 +67,7 @@ public class FileMapImgLoaderLOCI2 implements ImgLoader, FileMapGettable
 	private boolean allTimepointsInSingleFiles;
 	private final File tempDir;
 	public boolean zGrouped;
+	private long planeCacheMaxBytes = -1;
 
 	public FileMapImgLoaderLOCI2(Map<? extends ViewId, Pair<File, Pair<Integer, Integer>>> fileMap,
 			final ImgFactory< ? extends NativeType< ? > > imgFactory, // FIXME: remove this, only here to test quick replacement
@@ -113,6 +114,22 @@ public class FileMapImgLoaderLOCI2 implements ImgLoader, FileMapGettable
 	}
 	
 
+	/**
+	 * Sets the size of the plane cache that is shared by all LOCI loaders (it is global, the last call wins)
+	 *
+	 * @param planeCacheMaxBytes - maximal size in bytes, or -1 for the default (see {@link LOCIPlaneCache#defaultMaxBytes()})
+	 */
+	public void setPlaneCacheMaxBytes( final long planeCacheMaxBytes )
+	{
+		this.planeCacheMaxBytes = planeCacheMaxBytes;
+		LOCIPlaneCache.getInstance().setMaxBytes( planeCacheMaxBytes > 0 ? planeCacheMaxBytes : LOCIPlaneCache.defaultMaxBytes() );
+	}
+
+	/**
+	 * @return the plane cache size requested for this loader, -1 means default
+	 */
+	public long getPlaneCacheMaxBytes() { return planeCacheMaxBytes; }
+
 	@Override
 	public SetupImgLoader< ? > getSetupImgLoader(int setupId)
 	{
@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.fiji.spimdata.imgloaders.filemap2;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A least-recently-used cache of raw Bio-Formats planes (byte[]) that is bounded by the total number of bytes
+ * and shared by all virtual LOCI images (all views, all setup loaders).
+ *
+ * The maximal size can be set using {@link #setMaxBytes(long)}, the XML of the {@link FileMapImgLoaderLOCI2}
+ * or the system property {@value #MAX_BYTES_PROPERTY}; by default a quarter of the Java heap is used.
+ */
+public class LOCIPlaneCache
+{
+	public static final String MAX_BYTES_PROPERTY = "mvrecon.loci.planecache.maxbytes";
+
+	private static final LOCIPlaneCache instance = new LOCIPlaneCache( defaultMaxBytes() );
+
+	public static LOCIPlaneCache getInstance() { return instance; }
+
+	public static long defaultMaxBytes()
+	{
+		final Long maxBytes = Long.getLong( MAX_BYTES_PROPERTY );
+
+		if ( maxBytes != null && maxBytes > 0 )
+			return maxBytes;
+		else
+			return Runtime.getRuntime().maxMemory() / 4;
+	}
+
+	private final LinkedHashMap< PlaneKey, byte[] > planes = new LinkedHashMap<>( 16, 0.75f, true );
+
+	private long maxBytes;
+	private long currentBytes = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public LOCIPlaneCache( final long maxBytes )
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param file - the file (or file pattern) the plane is read from
+	 * @param series - the series in the file
+	 * @param index - the Bio-Formats plane index (see IFormatReader.getIndex)
+	 * @param loader - reads the plane if it is not cached (the cache never modifies the returned array)
+	 * @return the plane, must not be modified
+	 */
+	public byte[] get( final File file, final int series, final int index, final Supplier< byte[] > loader )
+	{
+		final PlaneKey key = new PlaneKey( file.getAbsolutePath(), series, index );
+
+		synchronized ( this )
+		{
+			final byte[] plane = planes.get( key );
+
+			if ( plane != null )
+			{
+				hits.incrementAndGet();
+				return plane;
+			}
+		}
+
+		misses.incrementAndGet();
+
+		// load outside of the lock, so other planes can be served in the meantime
+		final byte[] plane = loader.get();
+
+		synchronized ( this )
+		{
+			final byte[] existing = planes.get( key );
+
+			if ( existing != null )
+				return existing;
+
+			planes.put( key, plane );
+			currentBytes += plane.length;
+
+			evict();
+		}
+
+		return plane;
+	}
+
+	public synchronized void setMaxBytes( final long maxBytes )
+	{
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	public synchronized long getMaxBytes() { return maxBytes; }
+	public synchronized long getCurrentBytes() { return currentBytes; }
+	public synchronized int getNumPlanes() { return planes.size(); }
+
+	public long getHits() { return hits.get(); }
+	public long getMisses() { return misses.get(); }
+	public long getEvictions() { return evictions.get(); }
+
+	public synchronized void clear()
+	{
+		planes.clear();
+		currentBytes = 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "LOCIPlaneCache: " + getNumPlanes() + " planes, " + ( getCurrentBytes() / ( 1024 * 1024 ) ) + "/" + ( getMaxBytes() / ( 1024 * 1024 ) ) +
+				" MB, hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions();
+	}
+
+	// must hold the lock; always keeps the most recently used plane
+	private void evict()
+	{
+		final Iterator< Entry< PlaneKey, byte[] > > it = planes.entrySet().iterator();
+
+		while ( currentBytes > maxBytes && planes.size() > 1 && it.hasNext() )
+		{
+			currentBytes -= it.next().getValue().length;
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	private static class PlaneKey
+	{
+		final String file;
+		final int series, index;
+		final int hashCode;
+
+		PlaneKey( final String file, final int series, final int index )
+		{
+			this.file = file;
+			this.series = series;
+			this.index = index;
+			this.hashCode = 31 * ( 31 * file.hashCode() + series ) + index;
+		}
+
+		@Override
+		public int hashCode() { return hashCode; }
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( !( o instanceof PlaneKey ) )
+				return false;
+
+			final PlaneKey k = (PlaneKey)o;
+
+			return index == k.index && series == k.series && file.equals( k.file );
+		}
+	}
+}
@@ -47,9 +47,19 @@ class VirtualRandomAccessibleIntervalLOCI<T extends RealType< T > & NativeType<
 	private final int timepoint;
 	private final T type;
 	private final TriConsumer< T, byte[], Integer > byteConverter;
+	private final LOCIPlaneCache planeCache;
 
 	VirtualRandomAccessibleIntervalLOCI(IFormatReader reader, File file, long[] dims, int series, int channel,
 			int timepoint, T type, final TriConsumer< T, byte[], Integer > byteConverter)
+	{
+		this( reader, file, dims, series, channel, timepoint, type, byteConverter, null );
+	}
+
+	/**
+	 * @param planeCache - planes are requested from this (shared) cache, if null every RandomAccess reads the planes it needs itself
+	 */
+	VirtualRandomAccessibleIntervalLOCI(IFormatReader reader, File file, long[] dims, int series, int channel,
+			int timepoint, T type, final TriConsumer< T, byte[], Integer > byteConverter, final LOCIPlaneCache planeCache)
 	{
 		super( dims );
 		this.reader = reader;
@@ -59,6 +69,7 @@ class VirtualRandomAccessibleIntervalLOCI<T extends RealType< T > & NativeType<
 		this.timepoint = timepoint;
 		this.type = type;
 		this.byteConverter = byteConverter;
+		this.planeCache = planeCache;
 	}
 
 	@Override
@@ -79,6 +90,7 @@ class VirtualRandomAccessibleIntervalLOCI<T extends RealType< T > & NativeType<
 		private byte[] buffer;
 		private T type;
 		private int currentZ = -1;
+		private int currentRGBOffset = 0;
 
 		private VirtualRandomAccessLOCI()
 		{
@@ -88,57 +100,95 @@ class VirtualRandomAccessibleIntervalLOCI<T extends RealType< T > & NativeType<
 
 		}
 
-		private void readIntoBuffer()
+		private byte[] readPlane()
 		{
-
 			VirtualRAIFactoryLOCI.setReaderFileAndSeriesIfNecessary( reader, file, series );
 
 			int siz = reader.getBitsPerPixel() / 8 * reader.getRGBChannelCount() * reader.getSizeX()
 					* reader.getSizeY();
-			buffer = new byte[siz];
+			final byte[] plane = new byte[siz];
 
 //			System.out.println( "reading z plane " + position[2] + " from series " + series + " in file " + file.getAbsolutePath() );
 
-			// FIX for XYZ <-> XYT mixup in rare cases
-			int actualTP = (!reader.isOrderCertain() && reader.getSizeZ() <= 1 && reader.getSizeT() > 1 ) ? (int) position[2] : timepoint;
-			int actualZ = (!reader.isOrderCertain() && reader.getSizeZ() <= 1 && reader.getSizeT() > 1 ) ? timepoint : (int) position[2];
-
 			try
 			{
-				// the image is RGB -> we have to read bytes for all channels at once?
-				if (reader.getRGBChannelCount() == reader.getSizeC())
-					reader.openBytes( reader.getIndex( actualZ, 0, actualTP), buffer );
-				// normal image -> read specified channel
-				else
-					reader.openBytes( reader.getIndex( actualZ, channel, actualTP), buffer );
+				reader.openBytes( planeIndex(), plane );
 			}
 			catch ( FormatException | IOException e )
 			{
 				e.printStackTrace();
 			}
+
+			return plane;
+		}
+
+		// the reader must be set to the right file and series
+		private int planeIndex()
+		{
+			// FIX for XYZ <-> XYT mixup in rare cases
+			int actualTP = (!reader.isOrderCertain() && reader.getSizeZ() <= 1 && reader.getSizeT() > 1 ) ? (int) position[2] : timepoint;
+			int actualZ = (!reader.isOrderCertain() && reader.getSizeZ() <= 1 && reader.getSizeT() > 1 ) ? timepoint : (int) position[2];
+
+			// the image is RGB -> we have to read bytes for all channels at once?
+			if (reader.getRGBChannelCount() == reader.getSizeC())
+				return reader.getIndex( actualZ, 0, actualTP);
+			// normal image -> read specified channel
+			else
+				return reader.getIndex( actualZ, channel, actualTP);
 		}
 
 		@Override
 		public T get()
 		{
-			// prevent multithreaded overwriting of buffer
-			synchronized ( reader )
+			final int rgbOffset;
+
+			if ( planeCache != null )
 			{
-				if ( position[2] != currentZ  || !VirtualRAIFactoryLOCI.checkReaderFileAndSeries( reader, file, series ))
+				if ( position[2] != currentZ )
 				{
+					final int index, sizeC;
+					final boolean isRGB;
+
+					// everything that depends on the file and series of the reader must be queried in one lock,
+					// other views sharing the reader can switch it in between
+					synchronized ( reader )
+					{
+						VirtualRAIFactoryLOCI.setReaderFileAndSeriesIfNecessary( reader, file, series );
+						index = planeIndex();
+						isRGB = reader.getRGBChannelCount() == reader.getSizeC();
+						sizeC = reader.getSizeC();
+					}
+
+					// the cached plane is never modified, so we can read from it without holding the lock
+					buffer = planeCache.get( file, series, index, () -> { synchronized ( reader ) { return readPlane(); } } );
 					currentZ = (int) position[2];
-					readIntoBuffer();
+					currentRGBOffset = isRGB ? channel * buffer.length / sizeC : 0;
 				}
 
-				int rgbOffset = 0;
-				if (reader.getRGBChannelCount() == reader.getSizeC())
-					rgbOffset = channel * buffer.length / reader.getSizeC();
-					
-				// pixel index (we do not care about bytesPerPixel here, byteCOnverter should take care of that)
-				final int i = (int) (rgbOffset + position[0] + position[1] * VirtualRandomAccessibleIntervalLOCI.this.dimension( 0 ) );
-				byteConverter.accept( type, buffer, i );
-				return this.type;
+				rgbOffset = currentRGBOffset;
 			}
+			else
+			{
+				// prevent multithreaded overwriting of buffer
+				synchronized ( reader )
+				{
+					if ( position[2] != currentZ  || !VirtualRAIFactoryLOCI.checkReaderFileAndSeries( reader, file, series ))
+					{
+						currentZ = (int) position[2];
+						buffer = readPlane();
+					}
+
+					if (reader.getRGBChannelCount() == reader.getSizeC())
+						rgbOffset = channel * buffer.length / reader.getSizeC();
+					else
+						rgbOffset = 0;
+				}
+			}
+
+			// pixel index (we do not care about bytesPerPixel here, byteCOnverter should take care of that)
+			final int i = (int) (rgbOffset + position[0] + position[1] * VirtualRandomAccessibleIntervalLOCI.this.dimension( 0 ) );
+			byteConverter.accept( type, buffer, i );
+			return this.type;
 		}
 
 		@Override
@@ -53,6 +53,7 @@ public class XmlIOFileMapImgLoaderLOCI2 implements XmlIoBasicImgLoader< FileMapI
 	public static final String MAPPING_SERIES_TAG = "series";
 	public static final String MAPPING_C_TAG = "channel";
 	public static final String ZGROUPED_TAG = "ZGrouped";
+	public static final String PLANE_CACHE_TAG = "PlaneCacheMaxBytes";
 
 	@Override
 	public Element toXml(FileMapImgLoaderLOCI2 imgLoader, File basePath)
@@ -64,6 +65,9 @@ public class XmlIOFileMapImgLoaderLOCI2 implements XmlIoBasicImgLoader< FileMapI
 				this.getClass().getAnnotation( ImgLoaderIo.class ).format() );
 		wholeElem.addContent( XmlHelpers.booleanElement( ZGROUPED_TAG, imgLoader.zGrouped ) );
 
+		if ( imgLoader.getPlaneCacheMaxBytes() > 0 )
+			wholeElem.addContent( XmlHelpers.textElement( PLANE_CACHE_TAG, Long.toString( imgLoader.getPlaneCacheMaxBytes() ) ) );
+
 		final Element filesElement = new Element( FILES_TAG );
 
 		for ( ViewId vid : fileMap.keySet() )
@@ -114,7 +118,15 @@ public class XmlIOFileMapImgLoaderLOCI2 implements XmlIoBasicImgLoader< FileMapI
 			fileMap.put( vd, p );
 		}
 
-		return new FileMapImgLoaderLOCI2( fileMap, null, sequenceDescription, zGrouped );
+		final FileMapImgLoaderLOCI2 imgLoader = new FileMapImgLoaderLOCI2( fileMap, null, sequenceDescription, zGrouped );
+
+		// optional, otherwise the system property or default of LOCIPlaneCache is used
+		final String planeCacheMaxBytes = elem.getChildText( PLANE_CACHE_TAG );
+
+		if ( planeCacheMaxBytes != null )
+			imgLoader.setPlaneCacheMaxBytes( Long.parseLong( planeCacheMaxBytes.trim() ) );
+
+		return imgLoader;
 	}
 
 }
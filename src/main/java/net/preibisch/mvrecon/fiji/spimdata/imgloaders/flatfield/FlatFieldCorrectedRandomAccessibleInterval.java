@@ -3,6 +3,7 @@ package net.preibisch.mvrecon.fiji.spimdata.imgloaders.flatfield;
 import net.imglib2.AbstractInterval;
 import net.imglib2.Cursor;
 import net.imglib2.Interval;
+import net.imglib2.Localizable;
 import net.imglib2.Point;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
@@ -24,6 +25,12 @@ public class FlatFieldCorrectedRandomAccessibleInterval <O extends RealType< O >
 	private final double meanBrightCorrected;
 	private final O type;
 
+	// precomputed per-plane correction (corrected = source * gain + offset), null if bright and dark are used directly
+	private final float[] gain;
+	private final float[] offset;
+	private final long minX, minY;
+	private final int width;
+
 	/*
 	 * TODO: add option to not drop last dimension (for 2D input)
 	 */
@@ -37,6 +44,35 @@ public class FlatFieldCorrectedRandomAccessibleInterval <O extends RealType< O >
 
 		meanBrightCorrected = getMeanCorrected( brightImg, darkImg );
 		type = outputType;
+
+		this.gain = this.offset = null;
+		this.minX = this.minY = 0;
+		this.width = 0;
+	}
+
+	/**
+	 * Flat-field correction using a precomputed gain and offset per pixel of the xy-plane (see {@link #precomputeGainOffset(Interval, RandomAccessibleInterval, RandomAccessibleInterval)}),
+	 * i.e. for flat-field images that are constant along z. The correction of a pixel then is a single multiply-add.
+	 *
+	 * @param outputType - the output type (values are clamped to its range)
+	 * @param sourceImg - the image to correct (at least 2d)
+	 * @param gainOffset - gain and offset for every pixel of the xy-plane of sourceImg, x varies fastest
+	 */
+	public FlatFieldCorrectedRandomAccessibleInterval(O outputType, RandomAccessibleInterval< T > sourceImg, Pair< float[], float[] > gainOffset )
+	{
+		super( sourceImg );
+		this.sourceImg = sourceImg;
+		this.brightImg = null;
+		this.darkImg = null;
+
+		meanBrightCorrected = 0;
+		type = outputType;
+
+		this.gain = gainOffset.getA();
+		this.offset = gainOffset.getB();
+		this.minX = sourceImg.min( 0 );
+		this.minY = sourceImg.min( 1 );
+		this.width = (int)sourceImg.dimension( 0 );
 	}
 
 	@Override
@@ -51,60 +87,207 @@ public class FlatFieldCorrectedRandomAccessibleInterval <O extends RealType< O >
 		return randomAccess();
 	}
 	
+	/*
+	 * All moves are forwarded to the source and (for the first dimensions) to the bright and dark RandomAccesses,
+	 * so get() neither allocates nor has to set the full position of every RandomAccess again.
+	 */
 	private class FlatFieldCorrectedRandomAccess extends Point implements RandomAccess< O >
 	{
-		/*
-		 * TODO: manually implement move methods
-		 */
-		
 		private final RandomAccess< T > sourceRA;
 		private final RandomAccess< S > brightRA;
 		private final RandomAccess< R > darkRA;
 		private final O value;
+		private final double minValue, maxValue;
 
+		// NB: the flat field images seem to be 3D with 1 z slice
+		// if they were truly 2D, we would use position.length - 1
 		private final int nDimBright;
 		private final int nDimDark;
 
+		// reused for forwarding absolute positions to bright and dark
+		private final long[] tmp;
+
 		public FlatFieldCorrectedRandomAccess()
 		{
 			super( sourceImg.numDimensions() );
 			sourceRA = sourceImg.randomAccess();
-			brightRA = brightImg.randomAccess();
-			darkRA = darkImg.randomAccess();
 			value = type.createVariable();
-			nDimBright = brightImg.numDimensions();
-			nDimDark = darkImg.numDimensions();
+			minValue = value.getMinValue();
+			maxValue = value.getMaxValue();
+
+			if ( gain == null )
+			{
+				brightRA = brightImg.randomAccess();
+				darkRA = darkImg.randomAccess();
+				nDimBright = brightImg.numDimensions();
+				nDimDark = darkImg.numDimensions();
+			}
+			else
+			{
+				brightRA = null;
+				darkRA = null;
+				nDimBright = nDimDark = 0;
+			}
+
+			tmp = new long[ Math.max( nDimBright, nDimDark ) ];
+
+			// all RandomAccesses start at the same position
+			setPosition( position );
 		}
 
 		@Override
 		public O get()
 		{
-			// NB: the flat field images seem to be 3D with 1 z slice
-			// if they were truly 2D, we would use position.length - 1
-			final long[] positionBright = new long[ nDimBright ];
-			final long[] positionDark = new long[ nDimDark ];
-			// only copy position of n-1 dimensions
-			System.arraycopy( position, 0, positionBright, 0, nDimBright );
-			System.arraycopy( position, 0, positionDark, 0, nDimDark );
+			final double corr;
 
-			sourceRA.setPosition( position );
-			brightRA.setPosition( positionBright );
-			darkRA.setPosition( positionDark );
-
-			final double corrBright = brightRA.get().getRealDouble() - darkRA.get().getRealDouble();
-			final double corrImg = sourceRA.get().getRealDouble() - darkRA.get().getRealDouble();
-
-			if (corrBright == 0)
-				value.setReal( 0.0 );
+			if ( gain != null )
+			{
+				final int i = (int)( ( position[ 0 ] - minX ) + ( position[ 1 ] - minY ) * width );
+				corr = sourceRA.get().getRealDouble() * gain[ i ] + offset[ i ];
+			}
 			else
 			{
-				final double corr = Math.min( Math.max( corrImg * meanBrightCorrected / corrBright, value.getMinValue() ), value.getMaxValue() );
-				value.setReal( corr );
+				final double dark = darkRA.get().getRealDouble();
+				final double corrBright = brightRA.get().getRealDouble() - dark;
+
+				if ( corrBright == 0 )
+				{
+					value.setReal( 0.0 );
+					return value;
+				}
+
+				corr = ( sourceRA.get().getRealDouble() - dark ) * meanBrightCorrected / corrBright;
 			}
 
+			value.setReal( Math.min( Math.max( corr, minValue ), maxValue ) );
+
 			return value;
 		}
 
+		@Override
+		public void fwd( final int d )
+		{
+			super.fwd( d );
+			sourceRA.fwd( d );
+
+			if ( d < nDimBright )
+				brightRA.fwd( d );
+
+			if ( d < nDimDark )
+				darkRA.fwd( d );
+		}
+
+		@Override
+		public void bck( final int d )
+		{
+			super.bck( d );
+			sourceRA.bck( d );
+
+			if ( d < nDimBright )
+				brightRA.bck( d );
+
+			if ( d < nDimDark )
+				darkRA.bck( d );
+		}
+
+		@Override
+		public void move( final int distance, final int d )
+		{
+			move( (long)distance, d );
+		}
+
+		@Override
+		public void move( final long distance, final int d )
+		{
+			super.move( distance, d );
+			sourceRA.move( distance, d );
+
+			if ( d < nDimBright )
+				brightRA.move( distance, d );
+
+			if ( d < nDimDark )
+				darkRA.move( distance, d );
+		}
+
+		@Override
+		public void move( final Localizable localizable )
+		{
+			for ( int d = 0; d < n; ++d )
+				move( localizable.getLongPosition( d ), d );
+		}
+
+		@Override
+		public void move( final int[] distance )
+		{
+			for ( int d = 0; d < n; ++d )
+				move( (long)distance[ d ], d );
+		}
+
+		@Override
+		public void move( final long[] distance )
+		{
+			for ( int d = 0; d < n; ++d )
+				move( distance[ d ], d );
+		}
+
+		@Override
+		public void setPosition( final Localizable localizable )
+		{
+			super.setPosition( localizable );
+			forwardPosition();
+		}
+
+		@Override
+		public void setPosition( final int[] pos )
+		{
+			super.setPosition( pos );
+			forwardPosition();
+		}
+
+		@Override
+		public void setPosition( final long[] pos )
+		{
+			super.setPosition( pos );
+			forwardPosition();
+		}
+
+		@Override
+		public void setPosition( final int pos, final int d )
+		{
+			setPosition( (long)pos, d );
+		}
+
+		@Override
+		public void setPosition( final long pos, final int d )
+		{
+			super.setPosition( pos, d );
+			sourceRA.setPosition( pos, d );
+
+			if ( d < nDimBright )
+				brightRA.setPosition( pos, d );
+
+			if ( d < nDimDark )
+				darkRA.setPosition( pos, d );
+		}
+
+		private void forwardPosition()
+		{
+			sourceRA.setPosition( position );
+
+			// only copy position of n-1 dimensions
+			if ( nDimBright > 0 )
+			{
+				System.arraycopy( position, 0, tmp, 0, nDimBright );
+				brightRA.setPosition( tmp );
+			}
+
+			if ( nDimDark > 0 )
+			{
+				System.arraycopy( position, 0, tmp, 0, nDimDark );
+				darkRA.setPosition( tmp );
+			}
+		}
+
 		@Override
 		public Sampler< O > copy()
 		{
@@ -120,6 +303,77 @@ public class FlatFieldCorrectedRandomAccessibleInterval <O extends RealType< O >
 		}
 		
 	}
+
+	/**
+	 * Precomputes gain and offset for every pixel of the xy-plane of an interval, so that
+	 * (source - dark) * mean( bright - dark ) / ( bright - dark ) == source * gain + offset
+	 *
+	 * @param interval - the interval of the image to correct (at least 2d), the first two dimensions define the plane
+	 * @param brightImg - the bright image, must cover the plane (e.g. extended), constant along all other dimensions
+	 * @param darkImg - the dark image, must cover the plane (e.g. extended), constant along all other dimensions
+	 * @return gain and offset, x varies fastest
+	 */
+	public static Pair< float[], float[] > precomputeGainOffset(
+			final Interval interval,
+			final RandomAccessibleInterval< ? extends RealType< ? > > brightImg,
+			final RandomAccessibleInterval< ? extends RealType< ? > > darkImg )
+	{
+		final int w = (int)interval.dimension( 0 );
+		final int h = (int)interval.dimension( 1 );
+
+		final float[] gain = new float[ w * h ];
+		final float[] offset = new float[ w * h ];
+
+		final RandomAccess< ? extends RealType< ? > > brightRA = brightImg.randomAccess();
+		final RandomAccess< ? extends RealType< ? > > darkRA = darkImg.randomAccess();
+
+		for ( int d = 2; d < brightImg.numDimensions(); ++d )
+			brightRA.setPosition( interval.min( d ), d );
+
+		for ( int d = 2; d < darkImg.numDimensions(); ++d )
+			darkRA.setPosition( interval.min( d ), d );
+
+		// first pass: store bright - dark in gain, dark in offset
+		final RealSum sum = new RealSum();
+
+		for ( int y = 0, i = 0; y < h; ++y )
+		{
+			brightRA.setPosition( interval.min( 1 ) + y, 1 );
+			darkRA.setPosition( interval.min( 1 ) + y, 1 );
+
+			for ( int x = 0; x < w; ++x, ++i )
+			{
+				brightRA.setPosition( interval.min( 0 ) + x, 0 );
+				darkRA.setPosition( interval.min( 0 ) + x, 0 );
+
+				final double dark = darkRA.get().getRealDouble();
+				final double corrBright = brightRA.get().getRealDouble() - dark;
+
+				sum.add( corrBright );
+				gain[ i ] = (float)corrBright;
+				offset[ i ] = (float)dark;
+			}
+		}
+
+		final double meanBrightCorrected = gain.length == 0 ? 0.0 : sum.getSum() / gain.length;
+
+		// second pass: gain = mean / ( bright - dark ), offset = -dark * gain
+		for ( int i = 0; i < gain.length; ++i )
+		{
+			if ( gain[ i ] == 0 )
+			{
+				gain[ i ] = 0;
+				offset[ i ] = 0;
+			}
+			else
+			{
+				gain[ i ] = (float)( meanBrightCorrected / gain[ i ] );
+				offset[ i ] = -offset[ i ] * gain[ i ];
+			}
+		}
+
+		return new ValuePair<>( gain, offset );
+	}
 	
 	public static <P extends RealType< P >, Q extends RealType< Q >> double getMeanCorrected(RandomAccessibleInterval< P > brightImg, RandomAccessibleInterval< Q > darkImg)
 	{
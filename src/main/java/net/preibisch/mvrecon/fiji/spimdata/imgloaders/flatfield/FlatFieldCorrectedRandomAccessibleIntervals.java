@@ -8,6 +8,7 @@ import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Pair;
 import net.imglib2.view.Views;
 
 public class FlatFieldCorrectedRandomAccessibleIntervals
@@ -59,6 +60,20 @@ public class FlatFieldCorrectedRandomAccessibleIntervals
 			intervalDark = new FinalInterval( minsDark, maxsDark );
 		}
 
+		// flat fields that are constant along z (the usual case): precompute gain and offset once per plane
+		if ( sourceImg.numDimensions() >= 2 && sourceImg.dimension( 0 ) * sourceImg.dimension( 1 ) <= Integer.MAX_VALUE && isPlanar( brightImg ) && isPlanar( darkImg ) )
+		{
+			final ConstantRandomAccessible< FloatType > constantBright = new ConstantRandomAccessible<FloatType>( new FloatType(1.0f), sourceImg.numDimensions() );
+			final ConstantRandomAccessible< FloatType > constantDark = new ConstantRandomAccessible<FloatType>( new FloatType(0.0f), sourceImg.numDimensions() );
+
+			final RandomAccessibleInterval< ? extends RealType< ? > > bright = brightImg == null ? Views.interval( constantBright, sourceImg ) : Views.interval( Views.extendBorder( brightImg ), intervalBright );
+			final RandomAccessibleInterval< ? extends RealType< ? > > dark = darkImg == null ? Views.interval( constantDark, sourceImg ) : Views.interval( Views.extendBorder( darkImg ), intervalDark );
+
+			final Pair< float[], float[] > gainOffset = FlatFieldCorrectedRandomAccessibleInterval.precomputeGainOffset( sourceImg, bright, dark );
+
+			return new FlatFieldCorrectedRandomAccessibleInterval< O, R, FloatType, FloatType >( outputType, sourceImg, gainOffset );
+		}
+
 		if (brightImg == null && darkImg == null)
 		{
 			// assume bright and dark images constant -> should return original
@@ -82,4 +97,20 @@ public class FlatFieldCorrectedRandomAccessibleIntervals
 			
 		return new FlatFieldCorrectedRandomAccessibleInterval<>(outputType, sourceImg, Views.interval( Views.extendBorder( brightImg ), intervalBright ), Views.interval( Views.extendBorder( darkImg ), intervalDark ) );
 	}
+
+	/**
+	 * @param img - a flat-field image (or null)
+	 * @return true if the image is null or has size 1 in all dimensions but x and y
+	 */
+	public static boolean isPlanar( final RandomAccessibleInterval< ? > img )
+	{
+		if ( img == null )
+			return true;
+
+		for ( int d = 2; d < img.numDimensions(); ++d )
+			if ( img.dimension( d ) != 1 )
+				return false;
+
+		return true;
+	}
 }
@@ -31,6 +31,11 @@ public class SplitImgLoader implements ImgLoader
 	 */
 	private final HashMap< Integer, SplitSetupImgLoader< ? > > splitSetupImgLoaders;
 
+	/**
+	 * Images of the underlying views, shared by all splits of a view
+	 */
+	private final SplitSourceCache sourceCache;
+
 	public SplitImgLoader(
 			final ImgLoader underlyingImgLoader,
 			final HashMap< Integer, Integer > new2oldSetupId,
@@ -41,9 +46,15 @@ public class SplitImgLoader implements ImgLoader
 		this.new2oldSetupId = new2oldSetupId;
 		this.newSetupId2Interval = newSetupId2Interval;
 		this.splitSetupImgLoaders = new HashMap<>();
+		this.sourceCache = new SplitSourceCache();
 		this.oldSD = oldSD;
 	}
 
+	/**
+	 * @return the cache of the images of the underlying views
+	 */
+	public SplitSourceCache getSourceCache() { return sourceCache; }
+
 	@Override
 	public SplitSetupImgLoader< ? > getSetupImgLoader( final int setupId )
 	{
@@ -55,14 +66,14 @@ public class SplitImgLoader implements ImgLoader
 		SplitSetupImgLoader< ? > sil = splitSetupImgLoaders.get( newSetupId );
 		if ( sil == null )
 		{
-			sil = createNewSetupImgLoader( underlyingImgLoader.getSetupImgLoader( oldSetupId ), interval );
+			sil = createNewSetupImgLoader( underlyingImgLoader.getSetupImgLoader( oldSetupId ), oldSetupId, interval );
 			splitSetupImgLoaders.put( newSetupId, sil );
 		}
 		return sil;
 	}
 
-	private final synchronized < T > SplitSetupImgLoader< ? > createNewSetupImgLoader( final SetupImgLoader< T > setupImgLoader, final Interval interval )
+	private final synchronized < T > SplitSetupImgLoader< ? > createNewSetupImgLoader( final SetupImgLoader< T > setupImgLoader, final int oldSetupId, final Interval interval )
 	{
-		return new SplitSetupImgLoader< T >( setupImgLoader, interval );
+		return new SplitSetupImgLoader< T >( setupImgLoader, interval, sourceCache, oldSetupId );
 	}
 }
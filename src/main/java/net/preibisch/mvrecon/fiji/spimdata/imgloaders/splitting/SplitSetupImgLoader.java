@@ -17,10 +17,31 @@ public class SplitSetupImgLoader< T > implements SetupImgLoader< T >
 	final Interval interval;
 	final Dimensions size;
 
+	// shared by all splits of the source view (can be null)
+	final SplitSourceCache cache;
+	final int underlyingSetupId;
+
 	public SplitSetupImgLoader( final SetupImgLoader< T > underlyingSetupImgLoader, final Interval interval )
+	{
+		this( underlyingSetupImgLoader, interval, null, -1 );
+	}
+
+	/**
+	 * @param underlyingSetupImgLoader - the setup imgloader of the source view
+	 * @param interval - the interval of the split inside the source view
+	 * @param cache - cache for the images of the source views (can be null)
+	 * @param underlyingSetupId - the setup id of the source view (key of the cache)
+	 */
+	public SplitSetupImgLoader(
+			final SetupImgLoader< T > underlyingSetupImgLoader,
+			final Interval interval,
+			final SplitSourceCache cache,
+			final int underlyingSetupId )
 	{
 		this.underlyingSetupImgLoader = underlyingSetupImgLoader;
 		this.interval = interval;
+		this.cache = cache;
+		this.underlyingSetupId = underlyingSetupId;
 
 		final long[] dim = new long[ interval.numDimensions() ];
 		interval.dimensions( dim );
@@ -31,7 +52,14 @@ public class SplitSetupImgLoader< T > implements SetupImgLoader< T >
 	@Override
 	public RandomAccessibleInterval< T > getImage( final int timepointId, final ImgLoaderHint... hints )
 	{
-		return Views.zeroMin( Views.interval( underlyingSetupImgLoader.getImage( timepointId, hints ), interval ) );
+		final RandomAccessibleInterval< T > source;
+
+		if ( cache == null )
+			source = underlyingSetupImgLoader.getImage( timepointId, hints );
+		else
+			source = cache.get( underlyingSetupId, timepointId, false, hints, () -> underlyingSetupImgLoader.getImage( timepointId, hints ) );
+
+		return Views.zeroMin( Views.interval( source, interval ) );
 	}
 
 	@Override
@@ -43,7 +71,14 @@ public class SplitSetupImgLoader< T > implements SetupImgLoader< T >
 	@Override
 	public RandomAccessibleInterval< FloatType > getFloatImage( final int timepointId, final boolean normalize, final ImgLoaderHint... hints )
 	{
-		final RandomAccessibleInterval< FloatType > img = Views.zeroMin( Views.interval( underlyingSetupImgLoader.getFloatImage( timepointId, false, hints ), interval ) );
+		final RandomAccessibleInterval< FloatType > source;
+
+		if ( cache == null )
+			source = underlyingSetupImgLoader.getFloatImage( timepointId, false, hints );
+		else
+			source = cache.get( underlyingSetupId, timepointId, true, hints, () -> underlyingSetupImgLoader.getFloatImage( timepointId, false, hints ) );
+
+		final RandomAccessibleInterval< FloatType > img = Views.zeroMin( Views.interval( source, interval ) );
 
 		// TODO: this is stupid, remove capablitity to get FloatType images!
 		if ( normalize )
@@ -0,0 +1,129 @@
+package net.preibisch.mvrecon.fiji.spimdata.imgloaders.splitting;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
+import net.imglib2.RandomAccessibleInterval;
+
+/**
+ * Bounded cache of the images of the underlying (source) views, shared by all split views of a SplitImgLoader, so that
+ * all splits of one source view are served from a single load even if the underlying ImgLoader does not cache.
+ *
+ * The least recently used entries are dropped if more than maxNumSources images are cached, the images are only softly
+ * referenced so they can be reclaimed under memory pressure. Concurrent requests of the same image wait for one load.
+ * Images requested with different ImgLoaderHints (e.g. virtual vs. LOAD_COMPLETELY) are cached separately.
+ */
+public class SplitSourceCache
+{
+	public static int defaultMaxNumSources = 4;
+
+	protected static class Key
+	{
+		final int setupId, timepointId;
+		final boolean floatType;
+		final Set< ImgLoaderHint > hints;
+
+		public Key( final int setupId, final int timepointId, final boolean floatType, final ImgLoaderHint... hints )
+		{
+			this.setupId = setupId;
+			this.timepointId = timepointId;
+			this.floatType = floatType;
+			this.hints = hints == null || hints.length == 0 ? Collections.emptySet() : new HashSet<>( Arrays.asList( hints ) );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ( ( setupId * 31 + timepointId ) * 2 + ( floatType ? 1 : 0 ) ) * 31 + hints.hashCode();
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( !( o instanceof Key ) )
+				return false;
+
+			final Key k = (Key)o;
+
+			return k.setupId == setupId && k.timepointId == timepointId && k.floatType == floatType && k.hints.equals( hints );
+		}
+	}
+
+	protected static class Entry
+	{
+		SoftReference< RandomAccessibleInterval< ? > > ref = null;
+
+		public synchronized RandomAccessibleInterval< ? > get( final Supplier< ? extends RandomAccessibleInterval< ? > > loader )
+		{
+			RandomAccessibleInterval< ? > img = ref == null ? null : ref.get();
+
+			if ( img == null )
+			{
+				img = loader.get();
+				ref = new SoftReference<>( img );
+			}
+
+			return img;
+		}
+	}
+
+	final LinkedHashMap< Key, Entry > entries;
+
+	public SplitSourceCache( final int maxNumSources )
+	{
+		// access-ordered, drops the least recently used source
+		this.entries = new LinkedHashMap< Key, Entry >( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Key, Entry > eldest )
+			{
+				return size() > maxNumSources;
+			}
+		};
+	}
+
+	public SplitSourceCache()
+	{
+		this( defaultMaxNumSources );
+	}
+
+	/**
+	 * @param setupId - the setup id of the source view
+	 * @param timepointId - the timepoint id of the source view
+	 * @param floatType - if the FloatType image is requested (otherwise the native type)
+	 * @param hints - the ImgLoaderHints the image is loaded with (part of the key)
+	 * @param loader - loads the image of the source view if it is not cached
+	 * @param <T> - pixel type
+	 * @return the image of the source view
+	 */
+	@SuppressWarnings( "unchecked" )
+	public < T > RandomAccessibleInterval< T > get( final int setupId, final int timepointId, final boolean floatType, final ImgLoaderHint[] hints, final Supplier< RandomAccessibleInterval< T > > loader )
+	{
+		final Entry entry;
+
+		synchronized ( entries )
+		{
+			entry = entries.computeIfAbsent( new Key( setupId, timepointId, floatType, hints ), k -> new Entry() );
+		}
+
+		// only blocks requests for the same image while it is loaded
+		return (RandomAccessibleInterval< T >)entry.get( loader );
+	}
+
+	public void clear()
+	{
+		synchronized ( entries )
+		{
+			entries.clear();
+		}
+	}
+}
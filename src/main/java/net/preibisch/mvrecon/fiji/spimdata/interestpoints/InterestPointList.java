@@ -26,6 +26,9 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -34,14 +37,22 @@ import net.preibisch.legacy.io.IOFunctions;
 import net.preibisch.legacy.io.TextFileAccess;
 
 /**
- * A list of interest points for a certain label, can save and load from textfile as specified in the XML
+ * A list of interest points for a certain label, can save and load from textfile or N5 ({@link InterestPointsN5}) as specified in the XML
  * 
  * @author Stephan Preibisch (stephan.preibisch@gmx.de)
  *
  */
 public class InterestPointList
 {
+	public static enum StorageFormat { TEXT, N5 }
+
+	/**
+	 * the format of newly created lists
+	 */
+	public static StorageFormat defaultStorageFormat = StorageFormat.TEXT;
+
 	File baseDir, file;
+	StorageFormat storageFormat;
 	List< InterestPoint > interestPoints;
 	List< CorrespondingInterestPoints > correspondingInterestPoints;
 	String parameters;
@@ -56,9 +67,22 @@ public class InterestPointList
 	 * for interestpoints and correspondences
 	 */
 	public InterestPointList( final File baseDir, final File file )
+	{
+		this( baseDir, file, defaultStorageFormat );
+	}
+
+	/**
+	 * Instantiates a new {@link InterestPointList}
+	 * 
+	 * @param baseDir - the path where the xml is
+	 * @param file - relative path to the file to load/save the list from, an extension is added automatically
+	 * @param storageFormat - text files (.ip.txt &amp;&amp; .corr.txt) or N5 containers (.ip.n5 &amp;&amp; .corr.n5)
+	 */
+	public InterestPointList( final File baseDir, final File file, final StorageFormat storageFormat )
 	{
 		this.baseDir = baseDir;
 		this.file = file;
+		this.storageFormat = storageFormat;
 		this.interestPoints = null;
 		this.correspondingInterestPoints = null;
 		this.parameters = "";
@@ -128,8 +152,32 @@ public class InterestPointList
 		this.modifiedInterestPoints = true;
 	}
 
-	public String getInterestPointsExt() { return ".ip.txt"; }
-	public String getCorrespondencesExt() { return ".corr.txt"; }
+	public StorageFormat getStorageFormat() { return storageFormat; }
+
+	/**
+	 * Changes the format, the interest points and correspondences are loaded (in the old format) if necessary
+	 * and written in the new format on the next save
+	 *
+	 * @param storageFormat - the new format
+	 */
+	public synchronized void setStorageFormat( final StorageFormat storageFormat )
+	{
+		if ( this.storageFormat == storageFormat )
+			return;
+
+		if ( this.interestPoints == null )
+			loadInterestPoints();
+
+		if ( this.correspondingInterestPoints == null )
+			loadCorrespondences();
+
+		this.storageFormat = storageFormat;
+		this.modifiedCorrespondingInterestPoints = true;
+		this.modifiedInterestPoints = true;
+	}
+
+	public String getInterestPointsExt() { return storageFormat == StorageFormat.N5 ? ".ip.n5" : ".ip.txt"; }
+	public String getCorrespondencesExt() { return storageFormat == StorageFormat.N5 ? ".corr.n5" : ".corr.txt"; }
 
 	public boolean saveInterestPoints( final boolean forceWrite )
 	{
@@ -152,16 +200,32 @@ public class InterestPointList
 			}
 
 			final File f = new File( getBaseDir(), getFile().toString() + getInterestPointsExt() );
-			final PrintWriter out = TextFileAccess.openFileWriteEx( f );
 
-			// header
-			out.println( "id" + "\t" + "x" + "\t" + "y" + "\t" + "z" );
+			// write to a temporary file and rename it, so a crash never leaves a truncated file behind
+			final File tmp = tmpFile( f );
 
-			// id && coordinates in the local image stack for each interestpoint
-			for ( final InterestPoint p : list )
-				out.println( Integer.toString( p.getId() ).concat( "\t" ).concat( Double.toString( p.getL()[0] ) ).concat( "\t" ).concat( Double.toString( p.getL()[1] ) ).concat( "\t" ).concat( Double.toString( p.getL()[2] ) ) );
+			if ( storageFormat == StorageFormat.N5 )
+			{
+				InterestPointsN5.saveInterestPoints( tmp, list );
+			}
+			else
+			{
+				try ( final PrintWriter out = TextFileAccess.openFileWriteEx( tmp ) )
+				{
+					// header
+					out.println( "id" + "\t" + "x" + "\t" + "y" + "\t" + "z" );
+
+					// id && coordinates in the local image stack for each interestpoint
+					for ( final InterestPoint p : list )
+						out.println( Integer.toString( p.getId() ).concat( "\t" ).concat( Double.toString( p.getL()[0] ) ).concat( "\t" ).concat( Double.toString( p.getL()[1] ) ).concat( "\t" ).concat( Double.toString( p.getL()[2] ) ) );
+
+					// PrintWriter does not throw, never replace a file with an incomplete one
+					if ( out.checkError() )
+						throw new IOException( "Could not write '" + tmp + "'." );
+				}
+			}
 
-			out.close();
+			replace( tmp, f );
 
 			modifiedInterestPoints = false;
 
@@ -199,21 +263,36 @@ public class InterestPointList
 
 			final File f = new File( getBaseDir(), getFile().toString() + getCorrespondencesExt() );
 
-			final PrintWriter out = TextFileAccess.openFileWriteEx( f );
+			// write to a temporary file and rename it, so a crash never leaves a truncated file behind
+			final File tmp = tmpFile( f );
 
-			// header
-			out.println( "id" + "\t" + "corresponding_timepoint_id" + "\t" + "corresponding_viewsetup_id" + "\t" + "corresponding_label" + "\t" + "corresponding_id" );
-
-			// id of the interestpoint from this List && for the corresponding interestpoint viewid(timepointId, viewsetupId), label, and id
-			for ( final CorrespondingInterestPoints p : list )
-				out.println(
-						Integer.toString( p.getDetectionId() ).concat( "\t" ).concat(
-						Integer.toString( p.getCorrespondingViewId().getTimePointId() ) ).concat( "\t" ).concat(
-						Integer.toString( p.getCorrespondingViewId().getViewSetupId() ) ).concat( "\t" ).concat(
-						p.getCorrespodingLabel() ).concat( "\t" ).concat(
-						Integer.toString( p.getCorrespondingDetectionId() ) ) );
+			if ( storageFormat == StorageFormat.N5 )
+			{
+				InterestPointsN5.saveCorrespondences( tmp, list );
+			}
+			else
+			{
+				try ( final PrintWriter out = TextFileAccess.openFileWriteEx( tmp ) )
+				{
+					// header
+					out.println( "id" + "\t" + "corresponding_timepoint_id" + "\t" + "corresponding_viewsetup_id" + "\t" + "corresponding_label" + "\t" + "corresponding_id" );
+
+					// id of the interestpoint from this List && for the corresponding interestpoint viewid(timepointId, viewsetupId), label, and id
+					for ( final CorrespondingInterestPoints p : list )
+						out.println(
+								Integer.toString( p.getDetectionId() ).concat( "\t" ).concat(
+								Integer.toString( p.getCorrespondingViewId().getTimePointId() ) ).concat( "\t" ).concat(
+								Integer.toString( p.getCorrespondingViewId().getViewSetupId() ) ).concat( "\t" ).concat(
+								p.getCorrespodingLabel() ).concat( "\t" ).concat(
+								Integer.toString( p.getCorrespondingDetectionId() ) ) );
+
+					// PrintWriter does not throw, never replace a file with an incomplete one
+					if ( out.checkError() )
+						throw new IOException( "Could not write '" + tmp + "'." );
+				}
+			}
 
-			out.close();
+			replace( tmp, f );
 
 			modifiedCorrespondingInterestPoints = false;
 
@@ -229,13 +308,80 @@ public class InterestPointList
 		}
 	}
 
+	protected static File tmpFile( final File f )
+	{
+		final File tmp = new File( f.getAbsolutePath() + ".tmp" );
+
+		// left over from a crash
+		if ( tmp.exists() )
+			InterestPointsN5.delete( tmp );
+
+		return tmp;
+	}
+
+	/**
+	 * Atomically replaces a file with a newly written one. N5 containers are directories that cannot be replaced
+	 * atomically, the old one is renamed first and deleted once the new one is in place.
+	 *
+	 * @param tmp - the newly written file or directory
+	 * @param f - the file or directory to replace
+	 * @throws IOException if a rename fails
+	 */
+	protected static void replace( final File tmp, final File f ) throws IOException
+	{
+		if ( tmp.isDirectory() && f.exists() )
+		{
+			final File old = new File( f.getAbsolutePath() + ".old" );
+
+			if ( old.exists() )
+				InterestPointsN5.delete( old );
+
+			move( f, old, false );
+			move( tmp, f, false );
+
+			InterestPointsN5.delete( old );
+		}
+		else
+		{
+			move( tmp, f, true );
+		}
+	}
+
+	protected static void move( final File source, final File target, final boolean replaceExisting ) throws IOException
+	{
+		try
+		{
+			if ( replaceExisting )
+				Files.move( source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+			else
+				Files.move( source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE );
+		}
+		catch ( final AtomicMoveNotSupportedException e )
+		{
+			if ( replaceExisting )
+				Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			else
+				Files.move( source.toPath(), target.toPath() );
+		}
+	}
+
 	protected boolean loadCorrespondences()
 	{
 		try
 		{
+			final File f = new File( getBaseDir(), getFile().toString() + getCorrespondencesExt() );
+
+			if ( storageFormat == StorageFormat.N5 )
+			{
+				this.correspondingInterestPoints = InterestPointsN5.loadCorrespondences( f );
+				modifiedCorrespondingInterestPoints = false;
+
+				return true;
+			}
+
 			final ArrayList< CorrespondingInterestPoints > correspondingInterestPoints = new ArrayList<>();
 
-			final BufferedReader in = TextFileAccess.openFileReadEx( new File( getBaseDir(), getFile().toString() + getCorrespondencesExt() ) );
+			final BufferedReader in = TextFileAccess.openFileReadEx( f );
 
 			// the header
 			do {} while ( !in.readLine().startsWith( "id" ) );
@@ -276,9 +422,19 @@ public class InterestPointList
 	{
 		try
 		{
+			final File f = new File( getBaseDir(), getFile().toString() + getInterestPointsExt() );
+
+			if ( storageFormat == StorageFormat.N5 )
+			{
+				this.interestPoints = InterestPointsN5.loadInterestPoints( f );
+				modifiedInterestPoints = false;
+
+				return true;
+			}
+
 			final ArrayList< InterestPoint > interestPoints = new ArrayList<>();
 
-			final BufferedReader in = TextFileAccess.openFileReadEx( new File( getBaseDir(), getFile().toString() + getInterestPointsExt() ) );
+			final BufferedReader in = TextFileAccess.openFileReadEx( f );
 
 			// the header
 			do {} while ( !in.readLine().startsWith( "id" ) );
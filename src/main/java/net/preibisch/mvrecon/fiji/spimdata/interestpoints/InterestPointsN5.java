@@ -0,0 +1,370 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.fiji.spimdata.interestpoints;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DoubleArrayDataBlock;
+import org.janelia.saalfeldlab.n5.IntArrayDataBlock;
+import org.janelia.saalfeldlab.n5.Lz4Compression;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+
+import mpicbg.spim.data.sequence.ViewId;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.fiji.spimdata.SpimData2;
+import net.preibisch.mvrecon.fiji.spimdata.XmlIoSpimData2;
+import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPointList.StorageFormat;
+
+/**
+ * Binary storage of interest points and correspondences in N5 containers (one per {@link InterestPointList}
+ * for the interest points and one for the correspondences), selected with {@link InterestPointList#setStorageFormat(StorageFormat)}.
+ *
+ * Interest points: dataset "id" (int32, N) and dataset "loc" (float64, 3xN), both chunked along the points.
+ * Correspondences: dataset "data" (int32, 3xM) with detection id, index into the attribute "idMap" (timepoint,setup,label of
+ * the corresponding view) and corresponding detection id.
+ *
+ * Both datasets can be opened lazily as imglib2 images ({@link #openIds(File)}, {@link #openLocations(File)}) so large
+ * lists can be processed without loading them completely.
+ */
+public class InterestPointsN5
+{
+	public static int defaultBlockSize = 300000;
+
+	public static final String countKey = "count";
+	public static final String idMapKey = "idMap";
+
+	public static final String idDataset = "id";
+	public static final String locDataset = "loc";
+	public static final String corrDataset = "data";
+
+	public static void saveInterestPoints( final File container, final List< InterestPoint > list ) throws IOException
+	{
+		final N5Writer n5 = new N5FSWriter( container.getAbsolutePath() );
+
+		removeIfExists( n5, idDataset );
+		removeIfExists( n5, locDataset );
+
+		final int n = list.size();
+
+		if ( n > 0 )
+		{
+			final int blockSize = defaultBlockSize;
+
+			n5.createDataset( idDataset, new long[] { n }, new int[] { blockSize }, DataType.INT32, new Lz4Compression() );
+			n5.createDataset( locDataset, new long[] { 3, n }, new int[] { 3, blockSize }, DataType.FLOAT64, new Lz4Compression() );
+
+			final DatasetAttributes idAttributes = n5.getDatasetAttributes( idDataset );
+			final DatasetAttributes locAttributes = n5.getDatasetAttributes( locDataset );
+
+			for ( int b = 0; b * (long)blockSize < n; ++b )
+			{
+				final int offset = b * blockSize;
+				final int size = Math.min( blockSize, n - offset );
+
+				final int[] ids = new int[ size ];
+				final double[] loc = new double[ size * 3 ];
+
+				for ( int i = 0; i < size; ++i )
+				{
+					final InterestPoint p = list.get( offset + i );
+					final double[] l = p.getL();
+
+					ids[ i ] = p.getId();
+					loc[ i * 3 ] = l[ 0 ];
+					loc[ i * 3 + 1 ] = l[ 1 ];
+					loc[ i * 3 + 2 ] = l[ 2 ];
+				}
+
+				n5.writeBlock( idDataset, idAttributes, new IntArrayDataBlock( new int[] { size }, new long[] { b }, ids ) );
+				n5.writeBlock( locDataset, locAttributes, new DoubleArrayDataBlock( new int[] { 3, size }, new long[] { 0, b }, loc ) );
+			}
+		}
+
+		n5.setAttribute( "/", countKey, n );
+	}
+
+	public static ArrayList< InterestPoint > loadInterestPoints( final File container ) throws IOException
+	{
+		final N5Reader n5 = openReader( container );
+		final int n = getCount( n5, container );
+
+		final ArrayList< InterestPoint > list = new ArrayList<>( n );
+
+		if ( n == 0 )
+			return list;
+
+		final DatasetAttributes idAttributes = n5.getDatasetAttributes( idDataset );
+		final DatasetAttributes locAttributes = n5.getDatasetAttributes( locDataset );
+		final int blockSize = idAttributes.getBlockSize()[ 0 ];
+
+		for ( int b = 0; b * (long)blockSize < n; ++b )
+		{
+			final int[] ids = (int[])n5.readBlock( idDataset, idAttributes, b ).getData();
+			final double[] loc = (double[])n5.readBlock( locDataset, locAttributes, 0, b ).getData();
+
+			for ( int i = 0; i < ids.length; ++i )
+				list.add( new InterestPoint( ids[ i ], new double[] { loc[ i * 3 ], loc[ i * 3 + 1 ], loc[ i * 3 + 2 ] } ) );
+		}
+
+		return list;
+	}
+
+	public static void saveCorrespondences( final File container, final List< CorrespondingInterestPoints > list ) throws IOException
+	{
+		final N5Writer n5 = new N5FSWriter( container.getAbsolutePath() );
+
+		removeIfExists( n5, corrDataset );
+
+		// every corresponding view and label is stored once
+		final ArrayList< String > idMap = new ArrayList<>();
+		final HashMap< String, Integer > idMapLookup = new HashMap<>();
+
+		final int m = list.size();
+
+		if ( m > 0 )
+		{
+			final int blockSize = defaultBlockSize;
+
+			n5.createDataset( corrDataset, new long[] { 3, m }, new int[] { 3, blockSize }, DataType.INT32, new Lz4Compression() );
+
+			final DatasetAttributes attributes = n5.getDatasetAttributes( corrDataset );
+
+			for ( int b = 0; b * (long)blockSize < m; ++b )
+			{
+				final int offset = b * blockSize;
+				final int size = Math.min( blockSize, m - offset );
+
+				final int[] data = new int[ size * 3 ];
+
+				for ( int i = 0; i < size; ++i )
+				{
+					final CorrespondingInterestPoints p = list.get( offset + i );
+					final String key = idMapKey( p.getCorrespondingViewId(), p.getCorrespodingLabel() );
+
+					Integer index = idMapLookup.get( key );
+
+					if ( index == null )
+					{
+						index = idMap.size();
+						idMap.add( key );
+						idMapLookup.put( key, index );
+					}
+
+					data[ i * 3 ] = p.getDetectionId();
+					data[ i * 3 + 1 ] = index;
+					data[ i * 3 + 2 ] = p.getCorrespondingDetectionId();
+				}
+
+				n5.writeBlock( corrDataset, attributes, new IntArrayDataBlock( new int[] { 3, size }, new long[] { 0, b }, data ) );
+			}
+		}
+
+		n5.setAttribute( "/", idMapKey, idMap.toArray( new String[ idMap.size() ] ) );
+		n5.setAttribute( "/", countKey, m );
+	}
+
+	public static ArrayList< CorrespondingInterestPoints > loadCorrespondences( final File container ) throws IOException
+	{
+		final N5Reader n5 = openReader( container );
+		final int m = getCount( n5, container );
+
+		final ArrayList< CorrespondingInterestPoints > list = new ArrayList<>( m );
+
+		if ( m == 0 )
+			return list;
+
+		final String[] idMapEntries = n5.getAttribute( "/", idMapKey, String[].class );
+
+		if ( idMapEntries == null )
+			throw new IOException( "N5 container '" + container.getAbsolutePath() + "' has no attribute '" + idMapKey + "'." );
+		final ViewId[] viewIds = new ViewId[ idMapEntries.length ];
+		final String[] labels = new String[ idMapEntries.length ];
+
+		for ( int j = 0; j < idMapEntries.length; ++j )
+		{
+			final String[] entry = idMapEntries[ j ].split( ",", 3 );
+			viewIds[ j ] = new ViewId( Integer.parseInt( entry[ 0 ] ), Integer.parseInt( entry[ 1 ] ) );
+			labels[ j ] = entry[ 2 ];
+		}
+
+		final DatasetAttributes attributes = n5.getDatasetAttributes( corrDataset );
+		final int blockSize = attributes.getBlockSize()[ 1 ];
+
+		for ( int b = 0; b * (long)blockSize < m; ++b )
+		{
+			final int[] data = (int[])n5.readBlock( corrDataset, attributes, 0, b ).getData();
+
+			for ( int i = 0; i < data.length / 3; ++i )
+			{
+				final int index = data[ i * 3 + 1 ];
+				list.add( new CorrespondingInterestPoints( data[ i * 3 ], viewIds[ index ], labels[ index ], data[ i * 3 + 2 ] ) );
+			}
+		}
+
+		return list;
+	}
+
+	/**
+	 * @param container - the N5 container of the interest points
+	 * @return the ids (N), loaded lazily block by block, or null if the list is empty
+	 * @throws IOException if the container cannot be read
+	 */
+	public static RandomAccessibleInterval< IntType > openIds( final File container ) throws IOException
+	{
+		final N5Reader n5 = openReader( container );
+
+		if ( !n5.datasetExists( idDataset ) )
+			return null;
+
+		return N5Utils.open( n5, idDataset );
+	}
+
+	/**
+	 * @param container - the N5 container of the interest points
+	 * @return the locations (3xN), loaded lazily block by block, or null if the list is empty
+	 * @throws IOException if the container cannot be read
+	 */
+	public static RandomAccessibleInterval< DoubleType > openLocations( final File container ) throws IOException
+	{
+		final N5Reader n5 = openReader( container );
+
+		if ( !n5.datasetExists( locDataset ) )
+			return null;
+
+		return N5Utils.open( n5, locDataset );
+	}
+
+	/**
+	 * Converts all interest point lists of a dataset to a storage format (the lists are loaded in the current format
+	 * and written in the new one when the XML is saved, the old files are not deleted)
+	 *
+	 * @param data - the dataset
+	 * @param format - the new format
+	 * @return the number of lists that were converted
+	 */
+	public static int convert( final SpimData2 data, final StorageFormat format )
+	{
+		int count = 0;
+
+		for ( final ViewInterestPointLists vipl : data.getViewInterestPoints().getViewInterestPoints().values() )
+			for ( final InterestPointList ipl : vipl.getHashMap().values() )
+				if ( ipl.getStorageFormat() != format )
+				{
+					ipl.setStorageFormat( format );
+					++count;
+				}
+
+		return count;
+	}
+
+	/**
+	 * @param container - an N5 container (or text file)
+	 * @return true if it was deleted including all its contents
+	 */
+	public static boolean delete( final File container )
+	{
+		final File[] files = container.listFiles();
+
+		if ( files != null )
+			for ( final File f : files )
+				delete( f );
+
+		return container.delete();
+	}
+
+	protected static String idMapKey( final ViewId viewId, final String label )
+	{
+		return viewId.getTimePointId() + "," + viewId.getViewSetupId() + "," + label;
+	}
+
+	protected static N5Reader openReader( final File container ) throws IOException
+	{
+		if ( !container.exists() )
+			throw new IOException( "N5 container '" + container.getAbsolutePath() + "' does not exist." );
+
+		return new N5FSReader( container.getAbsolutePath() );
+	}
+
+	// the count is written last, a container without it is incomplete
+	protected static int getCount( final N5Reader n5, final File container ) throws IOException
+	{
+		final Integer count = n5.getAttribute( "/", countKey, Integer.class );
+
+		if ( count == null )
+			throw new IOException( "N5 container '" + container.getAbsolutePath() + "' has no attribute '" + countKey + "'." );
+
+		return count;
+	}
+
+	protected static void removeIfExists( final N5Writer n5, final String dataset ) throws IOException
+	{
+		if ( n5.exists( dataset ) )
+			n5.remove( dataset );
+	}
+
+	/**
+	 * One-shot conversion of all interest points and correspondences of a dataset from text files to N5 (or back)
+	 *
+	 * @param args - the XML, optionally "text" to convert back to text files
+	 */
+	public static void main( String[] args )
+	{
+		if ( args.length < 1 )
+		{
+			System.out.println( "usage: InterestPointsN5 dataset.xml [n5|text]" );
+			return;
+		}
+
+		final StorageFormat format = args.length > 1 && args[ 1 ].equalsIgnoreCase( "text" ) ? StorageFormat.TEXT : StorageFormat.N5;
+
+		try
+		{
+			final SpimData2 data = new XmlIoSpimData2( "" ).load( args[ 0 ] );
+
+			final int count = convert( data, format );
+
+			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Converting " + count + " interest point lists to " + format );
+
+			SpimData2.saveXML( data, new File( args[ 0 ] ).getName(), "" );
+		}
+		catch ( Exception e )
+		{
+			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Could not convert interest points of '" + args[ 0 ] + "': " + e );
+			e.printStackTrace();
+		}
+	}
+}
@@ -22,12 +22,19 @@
  */
 package net.preibisch.mvrecon.fiji.spimdata.interestpoints;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import mpicbg.spim.data.sequence.ViewDescription;
 import mpicbg.spim.data.sequence.ViewId;
+import net.preibisch.legacy.io.IOFunctions;
 
 /**
  * A class that organizes all interest point detections of all {@link ViewDescription}s (which extend {@link ViewId})
@@ -37,6 +44,11 @@ import mpicbg.spim.data.sequence.ViewId;
  */
 public class ViewInterestPoints
 {
+	/**
+	 * how many interest point lists are written at the same time by {@link #saveInterestPoints(boolean)}
+	 */
+	public static int numIOThreads = 8;
+
 	protected final Map< ViewId, ViewInterestPointLists > interestPointCollectionLookup;
 
 	public ViewInterestPoints()
@@ -81,4 +93,50 @@ public class ViewInterestPoints
 			if ( viewDescription.isPresent() )
 				interestPointCollectionLookup.put( viewDescription, new ViewInterestPointLists( viewDescription.getTimePointId(), viewDescription.getViewSetupId() ) );
 	}
+
+	/**
+	 * Saves all (modified) interest points and correspondences in parallel, using at most {@link #numIOThreads} threads.
+	 * Every file is written to a temporary file first and renamed, call this before saving the XML that references them.
+	 *
+	 * @param forceWrite - save also the lists that were not modified
+	 * @return true if all lists were saved successfully
+	 */
+	public boolean saveInterestPoints( final boolean forceWrite )
+	{
+		final ArrayList< Callable< Boolean > > tasks = new ArrayList<>();
+
+		for ( final ViewInterestPointLists vipl : interestPointCollectionLookup.values() )
+			for ( final InterestPointList ipl : vipl.getHashMap().values() )
+				if ( forceWrite || ipl.hasModifiedInterestPoints() || ipl.hasModifiedCorrespondingInterestPoints() )
+					tasks.add( () -> ipl.saveInterestPoints( forceWrite ) & ipl.saveCorrespondingInterestPoints( forceWrite ) );
+
+		if ( tasks.size() == 0 )
+			return true;
+
+		IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Saving " + tasks.size() + " interest point lists using " + Math.min( numIOThreads, tasks.size() ) + " threads ... " );
+
+		final ExecutorService service = Executors.newFixedThreadPool( Math.max( 1, Math.min( numIOThreads, tasks.size() ) ) );
+
+		boolean success = true;
+
+		try
+		{
+			for ( final Future< Boolean > future : service.invokeAll( tasks ) )
+				success &= future.get();
+		}
+		catch ( final Exception e )
+		{
+			IOFunctions.println( "Failed to save interest points: " + e );
+			e.printStackTrace();
+			success = false;
+		}
+		finally
+		{
+			service.shutdown();
+		}
+
+		IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Saved interest points" + ( success ? "." : " (with errors)." ) );
+
+		return success;
+	}
 }
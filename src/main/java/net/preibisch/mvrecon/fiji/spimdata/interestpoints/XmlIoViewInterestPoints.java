@@ -23,6 +23,7 @@
 package net.preibisch.mvrecon.fiji.spimdata.interestpoints;
 
 import static net.preibisch.mvrecon.fiji.spimdata.interestpoints.XmlKeysInterestPoints.VIEWINTERESTPOINTSFILE_TAG;
+import static net.preibisch.mvrecon.fiji.spimdata.interestpoints.XmlKeysInterestPoints.VIEWINTERESTPOINTS_FORMAT_ATTRIBUTE_NAME;
 import static net.preibisch.mvrecon.fiji.spimdata.interestpoints.XmlKeysInterestPoints.VIEWINTERESTPOINTS_LABEL_ATTRIBUTE_NAME;
 import static net.preibisch.mvrecon.fiji.spimdata.interestpoints.XmlKeysInterestPoints.VIEWINTERESTPOINTS_PARAMETERS_ATTRIBUTE_NAME;
 import static net.preibisch.mvrecon.fiji.spimdata.interestpoints.XmlKeysInterestPoints.VIEWINTERESTPOINTS_SETUP_ATTRIBUTE_NAME;
@@ -39,6 +40,7 @@ import mpicbg.spim.data.generic.base.XmlIoSingleton;
 import mpicbg.spim.data.sequence.ViewDescription;
 import mpicbg.spim.data.sequence.ViewId;
 import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPointList.StorageFormat;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
 
 import org.jdom2.Element;
@@ -88,6 +90,10 @@ public class XmlIoViewInterestPoints extends XmlIoSingleton< ViewInterestPoints
 			final String label = viewInterestPointsElement.getAttributeValue( VIEWINTERESTPOINTS_LABEL_ATTRIBUTE_NAME );
 			final String parameters = viewInterestPointsElement.getAttributeValue( VIEWINTERESTPOINTS_PARAMETERS_ATTRIBUTE_NAME );
 
+			// text files if not specified (older XMLs)
+			final String format = viewInterestPointsElement.getAttributeValue( VIEWINTERESTPOINTS_FORMAT_ATTRIBUTE_NAME );
+			final StorageFormat storageFormat = format == null ? StorageFormat.TEXT : StorageFormat.valueOf( format.toUpperCase() );
+
 			final String interestPointFileName = viewInterestPointsElement.getTextTrim();
 
 			final ViewId viewId = new ViewId( timepointId, setupId );
@@ -100,7 +106,7 @@ public class XmlIoViewInterestPoints extends XmlIoSingleton< ViewInterestPoints
 			}
 
 			// we do not load the interestpoints nor the correspondinginterestpoints, we just do that once it is requested
-			final InterestPointList list = new InterestPointList( basePath, new File( interestPointFileName ) );
+			final InterestPointList list = new InterestPointList( basePath, new File( interestPointFileName ), storageFormat );
 			list.setParameters( parameters );
 			collection.addInterestPointList( label, list );
 		}
@@ -115,6 +121,10 @@ public class XmlIoViewInterestPoints extends XmlIoSingleton< ViewInterestPoints
 		elem.setAttribute( VIEWINTERESTPOINTS_SETUP_ATTRIBUTE_NAME, Integer.toString( viewId ) );
 		elem.setAttribute( VIEWINTERESTPOINTS_LABEL_ATTRIBUTE_NAME, label );
 		elem.setAttribute( VIEWINTERESTPOINTS_PARAMETERS_ATTRIBUTE_NAME, interestPointList.getParameters() );
+
+		if ( interestPointList.getStorageFormat() != StorageFormat.TEXT )
+			elem.setAttribute( VIEWINTERESTPOINTS_FORMAT_ATTRIBUTE_NAME, interestPointList.getStorageFormat().name().toLowerCase() );
+
 		// a hack so that windows does not put its backslashes in
 		elem.setText( interestPointList.getFile().toString().replace( "\\", "/" ) );
 
@@ -23,6 +23,7 @@
 package net.preibisch.mvrecon.process.boundingbox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Vector;
@@ -30,6 +31,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import ij.ImageJ;
 import ij.ImagePlus;
@@ -37,12 +39,14 @@ import mpicbg.spim.data.sequence.ViewId;
 import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.img.display.imagej.ImageJFunctions;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 import net.preibisch.legacy.io.IOFunctions;
@@ -65,7 +69,12 @@ public class BoundingBoxMinFilterThreshold implements BoundingBoxEstimation
 	final boolean displaySegmentationImage;
 	final int downsampling;
 
+	// estimate the bounding box block by block instead of fusing the entire (downsampled) bounding box into memory
+	public static boolean streaming = true;
+	public static int defaultBlockSize = 128;
+
 	double extraSpaceFactor = 3;
+	int blockSize = defaultBlockSize;
 	float[] minmax;
 
 	public BoundingBoxMinFilterThreshold(
@@ -99,45 +108,62 @@ public class BoundingBoxMinFilterThreshold implements BoundingBoxEstimation
 		final BoundingBox maxBB = new BoundingBoxMaximal( views, spimData ).estimate( "Maximum bounding box used for initalization" );
 		IOFunctions.println( maxBB );
 
-		// fuse the dataset
-		Img< FloatType > img =
-				FusionTools.copyImgNoTranslation(
-						FusionTools.fuseVirtual( spimData, views, true, false, 1, maxBB, downsampling, null ).getA(),
-						new ArrayImgFactory<>(),
-						new FloatType(),
-						service );
+		// fuse the dataset (virtually, each view is opened at the lowest resolution level suitable for the downsampling)
+		final RandomAccessibleInterval< FloatType > fused = FusionTools.fuseVirtual( spimData, views, true, false, 1, maxBB, downsampling, null ).getA();
 
-		final float[] minmax = FusionTools.minMax( img );
 		final int effR = Math.max( radiusMin / downsampling, 1 );
-		final double threshold = (minmax[ 1 ] - minmax[ 0 ]) * ( background / 100.0 ) + minmax[ 0 ];
+		final int n = fused.numDimensions();
 
-		IOFunctions.println( "Fused image minimum: " + minmax[ 0 ] );
-		IOFunctions.println( "Fused image maximum: " + minmax[ 1 ] );
-		IOFunctions.println( "Threshold: " + threshold );
+		final int[] min = new int[ n ];
+		final int[] max = new int[ n ];
+		final float[] minmax;
 
-		if ( displaySegmentationImage )
-			DisplayImage.getImagePlusInstance( img, false, "Fused input", minmax[ 0 ], minmax[ 1 ] ).show();
+		if ( streaming && !displaySegmentationImage )
+		{
+			IOFunctions.println( "Computing minimum filter with effective radius of " + effR + " (downsampling=" + downsampling + ") in blocks of " + blockSize + " px" );
 
-		IOFunctions.println( "Computing minimum filter with effective radius of " + effR + " (downsampling=" + downsampling + ")" );
+			minmax = computeMinFilterBoundingBox( fused, effR, background, blockSize, min, max, service );
 
-		img = computeLazyMinFilter( img, effR );
+			if ( minmax == null )
+				return null;
 
-		if ( displaySegmentationImage )
-		{
-			final ImagePlus imp = DisplayImage.getImagePlusInstance( img, false, "Segmentation image", minmax[ 0 ], minmax[ 1 ] );
-			imp.show();
+			IOFunctions.println( "Fused image minimum: " + minmax[ 0 ] );
+			IOFunctions.println( "Fused image maximum: " + minmax[ 1 ] );
+			IOFunctions.println( "Threshold: " + threshold( minmax, background ) );
 		}
+		else
+		{
+			// the segmentation image can only be displayed if the fused image is held in memory
+			Img< FloatType > img = FusionTools.copyImgNoTranslation( fused, new ArrayImgFactory<>(), new FloatType(), service );
+
+			minmax = FusionTools.minMax( img );
+			final double threshold = threshold( minmax, background );
+
+			IOFunctions.println( "Fused image minimum: " + minmax[ 0 ] );
+			IOFunctions.println( "Fused image maximum: " + minmax[ 1 ] );
+			IOFunctions.println( "Threshold: " + threshold );
+
+			if ( displaySegmentationImage )
+				DisplayImage.getImagePlusInstance( img, false, "Fused input", minmax[ 0 ], minmax[ 1 ] ).show();
+
+			IOFunctions.println( "Computing minimum filter with effective radius of " + effR + " (downsampling=" + downsampling + ")" );
 
-		final int[] min = new int[ img.numDimensions() ];
-		final int[] max = new int[ img.numDimensions() ];
+			img = computeLazyMinFilter( img, effR );
 
-		if ( !computeBoundingBox( img, threshold, min, max ) )
-			return null;
+			if ( displaySegmentationImage )
+			{
+				final ImagePlus imp = DisplayImage.getImagePlusInstance( img, false, "Segmentation image", minmax[ 0 ], minmax[ 1 ] );
+				imp.show();
+			}
+
+			if ( !computeBoundingBox( img, threshold, min, max ) )
+				return null;
+		}
 
 		IOFunctions.println( "Bounding box dim scaled: [" + Util.printCoordinates( min ) + "] >> [" + Util.printCoordinates( max ) + "]" );
 
 		// adjust bounding box for downsampling and global coordinates
-		for ( int d = 0; d < img.numDimensions(); ++d )
+		for ( int d = 0; d < n; ++d )
 		{
 			// downsampling
 			min[ d ] *= downsampling;
@@ -163,6 +189,14 @@ public class BoundingBoxMinFilterThreshold implements BoundingBoxEstimation
 	public double getExtraSpaceFactor() { return extraSpaceFactor; }
 	public void setExtraSpaceFactor( final double esf ) { this.extraSpaceFactor = esf; }
 
+	public int getBlockSize() { return blockSize; }
+	public void setBlockSize( final int blockSize ) { this.blockSize = blockSize; }
+
+	public static double threshold( final float[] minmax, final double background )
+	{
+		return (minmax[ 1 ] - minmax[ 0 ]) * ( background / 100.0 ) + minmax[ 0 ];
+	}
+
 	public float getMinIntensity()
 	{
 		if ( minmax != null && minmax.length == 2 )
@@ -264,6 +298,319 @@ public class BoundingBoxMinFilterThreshold implements BoundingBoxEstimation
 		return true;
 	}
 	
+	/**
+	 * Computes the same bounding box as {@link #computeLazyMinFilter(Img, int)} followed by
+	 * {@link #computeBoundingBox(Img, double, int[], int[])} with the threshold relative to the min and max of the image, but
+	 * without holding the image or the min filtered image in memory. The image is processed in blocks (plus a halo of the
+	 * filter radius) in parallel, every block only keeps the maximal filtered value of each row/column/plane, from which the
+	 * extent above the threshold follows once the global min and max are known.
+	 *
+	 * @param img - the (virtual) input image, every pixel is read once (plus the halos)
+	 * @param radius - the integer radius of the min filter
+	 * @param background - the threshold in percent between min and max of the image
+	 * @param blockSize - the size of the blocks in each dimension
+	 * @param min - the min of the bounding box (relative to the min of img)
+	 * @param max - the max of the bounding box (relative to the min of img)
+	 * @param service - the ExecutorService or null
+	 * @param <T> pixel type
+	 * @return min and max of the image or null if it failed
+	 */
+	public static < T extends RealType< T > > float[] computeMinFilterBoundingBox(
+			final RandomAccessibleInterval< T > img,
+			final int radius,
+			final double background,
+			final int blockSize,
+			final int[] min,
+			final int[] max,
+			final ExecutorService service )
+	{
+		final int n = img.numDimensions();
+		final long[] dim = new long[ n ];
+		final long[] offset = new long[ n ];
+		final int[] blockDim = new int[ n ];
+		final long[] numBlocks = new long[ n ];
+		long totalBlocks = 1;
+
+		img.dimensions( dim );
+		img.min( offset );
+
+		for ( int d = 0; d < n; ++d )
+		{
+			blockDim[ d ] = (int)Math.min( blockSize, dim[ d ] );
+			numBlocks[ d ] = ( dim[ d ] + blockDim[ d ] - 1 ) / blockDim[ d ];
+			totalBlocks *= numBlocks[ d ];
+		}
+
+		final long numBlocksTotal = totalBlocks;
+		final RandomAccessible< T > input = Views.extendZero( img );
+
+		final int nThreads = (int)Math.min( Threads.numThreads(), numBlocksTotal );
+		final AtomicLong nextBlock = new AtomicLong( 0 );
+
+		// per thread: min and max of the image, maximal filtered value for each position in each dimension
+		final float[][] minmaxThread = new float[ nThreads ][];
+		final float[][][] projThread = new float[ nThreads ][][];
+
+		final ArrayList< Callable< Void > > tasks = new ArrayList< Callable< Void > >();
+
+		for ( int t = 0; t < nThreads; ++t )
+		{
+			final int thread = t;
+
+			tasks.add( new Callable< Void >()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					final float[] minmax = new float[] { Float.MAX_VALUE, -Float.MAX_VALUE };
+					final float[][] proj = new float[ n ][];
+
+					for ( int d = 0; d < n; ++d )
+					{
+						proj[ d ] = new float[ (int)dim[ d ] ];
+						Arrays.fill( proj[ d ], -Float.MAX_VALUE );
+					}
+
+					// block plus halo, reused for all blocks of this thread
+					final int[] haloDim = new int[ n ];
+					int maxLength = 0, size = 1;
+
+					for ( int d = 0; d < n; ++d )
+					{
+						size *= blockDim[ d ] + 2 * radius;
+						maxLength = Math.max( maxLength, blockDim[ d ] + 2 * radius );
+					}
+
+					final float[] block = new float[ size ];
+					final float[] line = new float[ maxLength ];
+
+					final long[] blockMin = new long[ n ];
+					final long[] haloMin = new long[ n ];
+					final long[] haloMax = new long[ n ];
+
+					// inside the image and inside the block (without halo), in block coordinates
+					final int[] validFrom = new int[ n ], validTo = new int[ n ];
+					final int[] innerFrom = new int[ n ], innerTo = new int[ n ];
+
+					for ( long b = nextBlock.getAndIncrement(); b < numBlocksTotal; b = nextBlock.getAndIncrement() )
+					{
+						long index = b;
+
+						for ( int d = 0; d < n; ++d )
+						{
+							blockMin[ d ] = ( index % numBlocks[ d ] ) * blockDim[ d ];
+							index /= numBlocks[ d ];
+
+							final long blockMax = Math.min( blockMin[ d ] + blockDim[ d ], dim[ d ] ) - 1;
+
+							haloMin[ d ] = blockMin[ d ] - radius;
+							haloMax[ d ] = blockMax + radius;
+							haloDim[ d ] = (int)( haloMax[ d ] - haloMin[ d ] + 1 );
+
+							validFrom[ d ] = (int)Math.max( 0, -haloMin[ d ] );
+							validTo[ d ] = (int)( Math.min( haloMax[ d ], dim[ d ] - 1 ) - haloMin[ d ] );
+
+							innerFrom[ d ] = radius;
+							innerTo[ d ] = radius + (int)( blockMax - blockMin[ d ] );
+
+							haloMin[ d ] += offset[ d ];
+							haloMax[ d ] += offset[ d ];
+						}
+
+						// pixels outside of the image are zero, like Views.extendZero() in computeLazyMinFilter()
+						final Cursor< T > c = Views.flatIterable( Views.interval( input, haloMin, haloMax ) ).cursor();
+						final int numPixels = (int)Intervals.numElements( haloDim );
+
+						for ( int i = 0; i < numPixels; ++i )
+							block[ i ] = c.next().getRealFloat();
+
+						updateMinMax( block, haloDim, innerFrom, innerTo, minmax );
+
+						for ( int d = 0; d < n; ++d )
+							minFilter( block, line, haloDim, d, radius, validFrom, validTo );
+
+						updateProjections( block, haloDim, innerFrom, innerTo, blockMin, radius, proj );
+					}
+
+					minmaxThread[ thread ] = minmax;
+					projThread[ thread ] = proj;
+
+					return null;
+				}
+			});
+		}
+
+		if ( service == null )
+			FusionTools.execTasks( tasks, nThreads, "compute min filter bounding box" );
+		else
+			FusionTools.execTasks( tasks, service, "compute min filter bounding box" );
+
+		final float[] minmax = new float[] { Float.MAX_VALUE, -Float.MAX_VALUE };
+
+		for ( int t = 0; t < nThreads; ++t )
+		{
+			if ( minmaxThread[ t ] == null )
+			{
+				IOFunctions.println( "Failed to compute bounding box by thresholding." );
+				return null;
+			}
+
+			minmax[ 0 ] = Math.min( minmax[ 0 ], minmaxThread[ t ][ 0 ] );
+			minmax[ 1 ] = Math.max( minmax[ 1 ], minmaxThread[ t ][ 1 ] );
+		}
+
+		final double threshold = threshold( minmax, background );
+
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = (int)dim[ d ];
+			max[ d ] = 0;
+
+			for ( int i = 0; i < dim[ d ]; ++i )
+			{
+				float v = -Float.MAX_VALUE;
+
+				for ( int t = 0; t < nThreads; ++t )
+					v = Math.max( v, projThread[ t ][ d ][ i ] );
+
+				if ( v > threshold )
+				{
+					min[ d ] = Math.min( min[ d ], i );
+					max[ d ] = Math.max( max[ d ], i );
+				}
+			}
+		}
+
+		return minmax;
+	}
+
+	/*
+	 * Min filter along dimension d of a block in place, only pixels inside the image (validFrom-validTo) are written,
+	 * all others stay zero. Close to the border of the block the window is cut off, these pixels are not used later on.
+	 */
+	protected static void minFilter( final float[] block, final float[] line, final int[] dim, final int d, final int radius, final int[] validFrom, final int[] validTo )
+	{
+		final int n = dim.length;
+		final int length = dim[ d ];
+
+		int stride = 1;
+
+		for ( int e = 0; e < d; ++e )
+			stride *= dim[ e ];
+
+		final int numLines = (int)( Intervals.numElements( dim ) / length );
+
+		for ( int l = 0; l < numLines; ++l )
+		{
+			final int lower = l % stride;
+			final int upper = l / stride;
+
+			// skip lines outside of the image
+			boolean inside = true;
+
+			for ( int e = 0, s = lower; e < d && inside; ++e )
+			{
+				final int p = s % dim[ e ];
+				s /= dim[ e ];
+				inside = p >= validFrom[ e ] && p <= validTo[ e ];
+			}
+
+			for ( int e = d + 1, s = upper; e < n && inside; ++e )
+			{
+				final int p = s % dim[ e ];
+				s /= dim[ e ];
+				inside = p >= validFrom[ e ] && p <= validTo[ e ];
+			}
+
+			if ( !inside )
+				continue;
+
+			final int start = upper * stride * length + lower;
+
+			for ( int i = 0, j = start; i < length; ++i, j += stride )
+				line[ i ] = block[ j ];
+
+			for ( int i = validFrom[ d ], j = start + validFrom[ d ] * stride; i <= validTo[ d ]; ++i, j += stride )
+			{
+				final int to = Math.min( length - 1, i + radius );
+				float min = Float.MAX_VALUE;
+
+				for ( int k = Math.max( 0, i - radius ); k <= to; ++k )
+					min = Math.min( min, line[ k ] );
+
+				block[ j ] = min;
+			}
+		}
+	}
+
+	protected static void updateMinMax( final float[] block, final int[] dim, final int[] from, final int[] to, final float[] minmax )
+	{
+		final int[] pos = from.clone();
+
+		do
+		{
+			for ( int i = from[ 0 ], j = index( pos, dim ); i <= to[ 0 ]; ++i, ++j )
+			{
+				minmax[ 0 ] = Math.min( minmax[ 0 ], block[ j ] );
+				minmax[ 1 ] = Math.max( minmax[ 1 ], block[ j ] );
+			}
+		}
+		while ( nextLine( pos, from, to ) );
+	}
+
+	protected static void updateProjections( final float[] block, final int[] dim, final int[] from, final int[] to, final long[] blockMin, final int radius, final float[][] proj )
+	{
+		final int n = dim.length;
+		final int[] pos = from.clone();
+
+		do
+		{
+			float lineMax = -Float.MAX_VALUE;
+
+			for ( int i = from[ 0 ], j = index( pos, dim ); i <= to[ 0 ]; ++i, ++j )
+			{
+				final int x = (int)blockMin[ 0 ] + i - radius;
+				proj[ 0 ][ x ] = Math.max( proj[ 0 ][ x ], block[ j ] );
+				lineMax = Math.max( lineMax, block[ j ] );
+			}
+
+			for ( int d = 1; d < n; ++d )
+			{
+				final int x = (int)blockMin[ d ] + pos[ d ] - radius;
+				proj[ d ][ x ] = Math.max( proj[ d ][ x ], lineMax );
+			}
+		}
+		while ( nextLine( pos, from, to ) );
+	}
+
+	// index of the first pixel of the line at pos (dimension 0 is ignored)
+	protected static int index( final int[] pos, final int[] dim )
+	{
+		int index = 0;
+
+		for ( int d = dim.length - 1; d > 0; --d )
+			index = ( index + pos[ d ] ) * dim[ d - 1 ];
+
+		return index + pos[ 0 ];
+	}
+
+	// moves pos to the next line along dimension 0 within from-to, returns false if there is none
+	protected static boolean nextLine( final int[] pos, final int[] from, final int[] to )
+	{
+		for ( int d = 1; d < pos.length; ++d )
+		{
+			if ( pos[ d ] < to[ d ] )
+			{
+				++pos[ d ];
+				return true;
+			}
+
+			pos[ d ] = from[ d ];
+		}
+
+		return false;
+	}
+
 	/**
 	 * By lazy I mean I was lazy to use a second image, one could of course implement it
 	 * on a n-d line by line basis @TODO
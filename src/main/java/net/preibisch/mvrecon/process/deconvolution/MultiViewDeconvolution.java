@@ -38,8 +38,11 @@ import net.preibisch.legacy.io.IOFunctions;
 import net.preibisch.mvrecon.process.cuda.Block;
 import net.preibisch.mvrecon.process.deconvolution.init.PsiInit;
 import net.preibisch.mvrecon.process.deconvolution.init.PsiInitFactory;
+import net.preibisch.mvrecon.process.deconvolution.init.PsiInitFromCheckpoint;
 import net.preibisch.mvrecon.process.deconvolution.iteration.ComputeBlockThread;
+import net.preibisch.mvrecon.process.deconvolution.iteration.ComputeBlockThread.IterationStatistics;
 import net.preibisch.mvrecon.process.deconvolution.iteration.ComputeBlockThreadFactory;
+import net.preibisch.mvrecon.process.deconvolution.util.DeconvolutionCheckpoint;
 import net.preibisch.mvrecon.process.export.DisplayImage;
 
 public abstract class MultiViewDeconvolution< C extends ComputeBlockThread >
@@ -73,6 +76,16 @@ public abstract class MultiViewDeconvolution< C extends ComputeBlockThread >
 	final int numIterations;
 	final double avgMax;
 
+	// the average in the overlapping area as computed by the psi init
+	final double avg;
+
+	// statistics of the last iteration (all views)
+	IterationStatistics lastIterationStatistics = null;
+
+	// write a checkpoint every n iterations (if checkpoint != null)
+	DeconvolutionCheckpoint checkpoint = null;
+	int checkpointInterval = 1;
+
 	boolean debug = false;
 	int debugInterval = 1;
 
@@ -119,10 +132,20 @@ public abstract class MultiViewDeconvolution< C extends ComputeBlockThread >
 		{
 			this.max = null;
 			this.avgMax = 0;
+			this.avg = 0;
 		}
 		else
 		{
 			this.max = psiInit.getMax();
+			this.avg = psiInit.getAvg();
+
+			// resume where the checkpoint was written
+			if ( PsiInitFromCheckpoint.class.isInstance( psiInit ) )
+			{
+				this.it = ((PsiInitFromCheckpoint)psiInit).getIteration();
+				this.lastIterationStatistics = ((PsiInitFromCheckpoint)psiInit).getIterationStatistics();
+				IOFunctions.println( "(" + new Date(System.currentTimeMillis()) + "): Resuming deconvolution after iteration " + it + " of " + numIterations );
+			}
 	
 			double avgMaxIntensity = 0;
 			for ( int i = 0; i < max.length; ++i )
@@ -139,6 +162,18 @@ public abstract class MultiViewDeconvolution< C extends ComputeBlockThread >
 	public void setDebug( final boolean debug ) { this.debug = debug; }
 	public CompositeImage getDebugImage() { return ci; }
 	public void setDebugInterval( final int debugInterval ) { this.debugInterval = debugInterval; }
+	public int getCurrentIteration() { return it; }
+	public IterationStatistics getLastIterationStatistics() { return lastIterationStatistics; }
+
+	/**
+	 * @param checkpoint - where to write the checkpoints, null means no checkpoints are written
+	 * @param checkpointInterval - write a checkpoint every n'th iteration (and after the last one)
+	 */
+	public void setCheckpoint( final DeconvolutionCheckpoint checkpoint, final int checkpointInterval )
+	{
+		this.checkpoint = checkpoint;
+		this.checkpointInterval = Math.max( 1, checkpointInterval );
+	}
 
 	public void runIterations()
 	{
@@ -190,6 +225,9 @@ public abstract class MultiViewDeconvolution< C extends ComputeBlockThread >
 			}
 
 			runNextIteration();
+
+			if ( checkpoint != null && ( it % checkpointInterval == 0 || it == numIterations ) )
+				checkpoint.write( psi, it, lastIterationStatistics, max, avg, views.getExecutorService() );
 		}
 
 		// TODO: IOFunctions.println( "Masking never updated pixels." );
@@ -242,5 +242,7 @@ public class MultiViewDeconvolutionMul extends MultiViewDeconvolution< ComputeBl
 
 		IOFunctions.println( "iteration: " + it + " --- sum change: " + is.sumChange + " --- max change per pixel: " + is.maxChange );
 
+		this.lastIterationStatistics = is;
+
 	}
 }
@@ -66,6 +66,9 @@ public class MultiViewDeconvolutionSeq extends MultiViewDeconvolution< ComputeBl
 
 		int v = 0;
 
+		// statistics over all views
+		final IterationStatistics itStats = new IterationStatistics();
+
 		for ( final DeconView view : views.getViews() )
 		{
 			final int viewNum = v;
@@ -175,7 +178,12 @@ public class MultiViewDeconvolutionSeq extends MultiViewDeconvolution< ComputeBl
 			else
 				IOFunctions.println( "iteration: " + it + ", view: " + viewNum + " --- sum change: " + is.sumChange + " --- max change per pixel: " + is.maxChange );
 
+			itStats.sumChange += is.sumChange;
+			itStats.maxChange = Math.max( itStats.maxChange, is.maxChange );
+
 			++v;
 		}// finish view
+
+		this.lastIterationStatistics = itStats;
 	}
 }
@@ -31,7 +31,7 @@ import net.preibisch.mvrecon.process.deconvolution.DeconView;
 
 public interface PsiInit
 {
-	public enum PsiInitType { FUSED_BLURRED, AVG, APPROX_AVG, FROM_FILE, FROM_RAI };
+	public enum PsiInitType { FUSED_BLURRED, AVG, APPROX_AVG, FROM_FILE, FROM_CHECKPOINT, FROM_RAI };
 
 	public boolean runInitialization( final Img< FloatType > psi, final List< DeconView > views, final ExecutorService service );
 
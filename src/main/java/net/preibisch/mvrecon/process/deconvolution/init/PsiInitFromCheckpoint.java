@@ -0,0 +1,84 @@
+package net.preibisch.mvrecon.process.deconvolution.init;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.process.deconvolution.DeconView;
+import net.preibisch.mvrecon.process.deconvolution.iteration.ComputeBlockThread.IterationStatistics;
+import net.preibisch.mvrecon.process.deconvolution.util.DeconvolutionCheckpoint;
+
+public class PsiInitFromCheckpoint implements PsiInit
+{
+	final DeconvolutionCheckpoint checkpoint;
+
+	float[] max;
+	double avg;
+	int iteration;
+	IterationStatistics stats;
+
+	/**
+	 * @param checkpoint - the checkpoint that is used to restore the deconvolved image, avg, max[] and the iteration
+	 */
+	public PsiInitFromCheckpoint( final DeconvolutionCheckpoint checkpoint )
+	{
+		this.checkpoint = checkpoint;
+	}
+
+	@Override
+	public boolean runInitialization(
+			final Img< FloatType > psi,
+			final List< DeconView > views,
+			final ExecutorService service )
+	{
+		if ( checkpoint == null )
+		{
+			IOFunctions.println( "No checkpoint defined to resume the deconvolution from." );
+			return false;
+		}
+
+		if ( !checkpoint.restore( psi, service ) )
+			return false;
+
+		this.iteration = checkpoint.getIteration();
+		this.max = checkpoint.getMax();
+		this.avg = checkpoint.getAvg();
+		this.stats = checkpoint.getIterationStatistics();
+
+		if ( iteration < 0 || Double.isNaN( avg ) )
+		{
+			IOFunctions.println( "Checkpoint '" + checkpoint.getN5Path().getAbsolutePath() + "' is incomplete (iteration or avg missing)." );
+			this.max = null;
+			return false;
+		}
+
+		if ( max == null || max.length != views.size() )
+		{
+			IOFunctions.println( "Checkpoint does not match the number of views: " + ( max == null ? 0 : max.length ) + " != " + views.size() );
+			this.max = null;
+			return false;
+		}
+
+		IOFunctions.println( "Restored checkpoint '" + checkpoint.getN5Path().getAbsolutePath() + "' after iteration " + iteration + "." );
+
+		return true;
+	}
+
+	/**
+	 * @return the number of iterations that were already computed when the checkpoint was written
+	 */
+	public int getIteration() { return iteration; }
+
+	/**
+	 * @return the statistics of the last iteration before the checkpoint was written, or null if not available
+	 */
+	public IterationStatistics getIterationStatistics() { return stats; }
+
+	@Override
+	public double getAvg() { return avg; }
+
+	@Override
+	public float[] getMax() { return max; }
+}
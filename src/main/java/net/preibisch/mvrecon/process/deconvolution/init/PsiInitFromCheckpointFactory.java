@@ -0,0 +1,22 @@
+package net.preibisch.mvrecon.process.deconvolution.init;
+
+import net.preibisch.mvrecon.process.deconvolution.util.DeconvolutionCheckpoint;
+
+public class PsiInitFromCheckpointFactory implements PsiInitFactory
+{
+	final DeconvolutionCheckpoint checkpoint;
+
+	/**
+	 * @param checkpoint - the checkpoint from which the deconvolution is resumed
+	 */
+	public PsiInitFromCheckpointFactory( final DeconvolutionCheckpoint checkpoint )
+	{
+		this.checkpoint = checkpoint;
+	}
+
+	@Override
+	public PsiInitFromCheckpoint createPsiInitialization()
+	{
+		return new PsiInitFromCheckpoint( checkpoint );
+	}
+}
@@ -38,7 +38,7 @@ import net.imglib2.view.Views;
 import net.preibisch.mvrecon.process.deconvolution.DeconView;
 import net.preibisch.mvrecon.process.fusion.FusionTools;
 import net.preibisch.mvrecon.process.fusion.ImagePortion;
-import util.FFTConvolution;
+import util.FFTConvolutionWorkspace;
 
 public class ComputeBlockMulThreadCPU extends ComputeBlockMulThreadAbstract
 {
@@ -46,6 +46,7 @@ public class ComputeBlockMulThreadCPU extends ComputeBlockMulThreadAbstract
 	final ArrayList< Callable< Void > > tasks;
 	final ArrayList< ImagePortion > portions;
 	final ImgFactory< ComplexFloatType > fftFactory;
+	final FFTConvolutionWorkspace fftWorkspace;
 	final ArrayList< Img< FloatType > > tmp1, tmp2;
 	final float lambda;
 
@@ -81,6 +82,9 @@ public class ComputeBlockMulThreadCPU extends ComputeBlockMulThreadAbstract
 			e.printStackTrace();
 			throw new RuntimeException( "Cannot transform ImgFactory to ComplexFloatType." );
 		}
+
+		// the padded complex image is kept for all blocks, views and iterations of this thread
+		this.fftWorkspace = new FFTConvolutionWorkspace( fftFactory );
 	}
 
 	@Override
@@ -193,18 +197,13 @@ public class ComputeBlockMulThreadCPU extends ComputeBlockMulThreadAbstract
 			final Img< ComplexFloatType > kernelFFT,
 			final Img< FloatType > result )
 	{
-		final FFTConvolution< FloatType > fftConvolution =
-				new FFTConvolution< FloatType >(
-						Views.extendMirrorSingle( image ),
-						image,
-						Views.extendZero( kernel ),
-						kernel,
-						result,
-						fftFactory );
-		fftConvolution.setExecutorService( service );
-		fftConvolution.setKeepImgFFT( false );
-		fftConvolution.setKernelFFT( kernelFFT );
-		fftConvolution.convolve();
+		fftWorkspace.convolve(
+				Views.extendMirrorSingle( image ),
+				image,
+				kernel,
+				kernelFFT,
+				result,
+				service );
 	}
 
 	public void convolve2(
@@ -213,18 +212,13 @@ public class ComputeBlockMulThreadCPU extends ComputeBlockMulThreadAbstract
 			final Img< ComplexFloatType > kernelFFT,
 			final Img< FloatType > result )
 	{
-		final FFTConvolution< FloatType > fftConvolution =
-				new FFTConvolution< FloatType >(
-						Views.extendValue( image, new FloatType( 1.0f ) ), // ratio outside of the deconvolved space (psi) is 1, shouldn't matter here though
-						image,
-						Views.extendZero( kernel ),
-						kernel,
-						result,
-						fftFactory );
-		fftConvolution.setExecutorService( service );
-		fftConvolution.setKeepImgFFT( false );
-		fftConvolution.setKernelFFT( kernelFFT );
-		fftConvolution.convolve();
+		fftWorkspace.convolve(
+				Views.extendValue( image, new FloatType( 1.0f ) ), // ratio outside of the deconvolved space (psi) is 1, shouldn't matter here though
+				image,
+				kernel,
+				kernelFFT,
+				result,
+				service );
 	}
 
 }
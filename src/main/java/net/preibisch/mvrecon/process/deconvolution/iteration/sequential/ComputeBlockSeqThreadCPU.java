@@ -39,7 +39,7 @@ import net.preibisch.mvrecon.process.deconvolution.DeconView;
 import net.preibisch.mvrecon.process.fusion.FusionTools;
 import net.preibisch.mvrecon.process.fusion.ImagePortion;
 
-import util.FFTConvolution;
+import util.FFTConvolutionWorkspace;
 
 public class ComputeBlockSeqThreadCPU extends ComputeBlockSeqThreadAbstract
 {
@@ -47,7 +47,11 @@ public class ComputeBlockSeqThreadCPU extends ComputeBlockSeqThreadAbstract
 	final ArrayList< Callable< Void > > tasks;
 	final ArrayList< ImagePortion > portions;
 	final ImgFactory< ComplexFloatType > fftFactory;
+	final FFTConvolutionWorkspace fftWorkspace;
 	final Img< FloatType > tmp1, tmp2;
+
+	// storage arrays of psi, tmp1 and tmp2 if the blocks are array-backed (null otherwise)
+	final float[] psiArray, tmp1Array, tmp2Array;
 	final float lambda;
 
 	public ComputeBlockSeqThreadCPU(
@@ -68,11 +72,29 @@ public class ComputeBlockSeqThreadCPU extends ComputeBlockSeqThreadAbstract
 		this.lambda = lambda;
 
 		this.portions.addAll( FusionTools.divideIntoPortions( tmp1.size() ) );
+
+		final float[] psiArray = DeconvolutionMethods.floatArray( getPsiBlockTmp() );
+		final float[] tmp1Array = DeconvolutionMethods.floatArray( tmp1 );
+		final float[] tmp2Array = DeconvolutionMethods.floatArray( tmp2 );
+
+		if ( psiArray != null && tmp1Array != null && tmp2Array != null )
+		{
+			this.psiArray = psiArray;
+			this.tmp1Array = tmp1Array;
+			this.tmp2Array = tmp2Array;
+		}
+		else
+		{
+			this.psiArray = this.tmp1Array = this.tmp2Array = null;
+		}
 		try { this.fftFactory = blockFactory.imgFactory( new ComplexFloatType() ); } catch ( IncompatibleTypeException e )
 		{
 			e.printStackTrace();
 			throw new RuntimeException( "Cannot transform ImgFactory to ComplexFloatType." );
 		}
+
+		// the padded complex image is kept for all blocks, views and iterations of this thread
+		this.fftWorkspace = new FFTConvolutionWorkspace( fftFactory );
 	}
 
 	@Override
@@ -105,7 +127,10 @@ public class ComputeBlockSeqThreadCPU extends ComputeBlockSeqThreadAbstract
 				@Override
 				public Void call() throws Exception
 				{
-					DeconvolutionMethods.computeQuotient( portion.getStartPosition(), portion.getLoopSize(), tmp1, imgBlock );
+					if ( tmp1Array != null )
+						DeconvolutionMethods.computeQuotient( portion.getStartPosition(), portion.getLoopSize(), tmp1Array, imgBlock );
+					else
+						DeconvolutionMethods.computeQuotient( portion.getStartPosition(), portion.getLoopSize(), tmp1, imgBlock );
 					return null;
 				}
 			});
@@ -139,16 +164,28 @@ public class ComputeBlockSeqThreadCPU extends ComputeBlockSeqThreadAbstract
 				@Override
 				public Void call() throws Exception
 				{
-					DeconvolutionMethods.computeFinalValues(
-							portion.getStartPosition(),
-							portion.getLoopSize(),
-							getPsiBlockTmp(),
-							tmp2,
-							weightBlock,
-							lambda,
-							getMinValue(),
-							maxIntensityView,
-							sumMax[ portionId ] );
+					if ( psiArray != null )
+						DeconvolutionMethods.computeFinalValues(
+								portion.getStartPosition(),
+								portion.getLoopSize(),
+								psiArray,
+								tmp2Array,
+								weightBlock,
+								lambda,
+								getMinValue(),
+								maxIntensityView,
+								sumMax[ portionId ] );
+					else
+						DeconvolutionMethods.computeFinalValues(
+								portion.getStartPosition(),
+								portion.getLoopSize(),
+								getPsiBlockTmp(),
+								tmp2,
+								weightBlock,
+								lambda,
+								getMinValue(),
+								maxIntensityView,
+								sumMax[ portionId ] );
 					return null;
 				}
 			});
@@ -174,18 +211,13 @@ public class ComputeBlockSeqThreadCPU extends ComputeBlockSeqThreadAbstract
 			final Img< ComplexFloatType > kernelFFT,
 			final Img< FloatType > result )
 	{
-		final FFTConvolution< FloatType > fftConvolution =
-				new FFTConvolution< FloatType >(
-						Views.extendMirrorSingle( image ),
-						image,
-						Views.extendZero( kernel ),
-						kernel,
-						result,
-						fftFactory );
-		fftConvolution.setExecutorService( service );
-		fftConvolution.setKeepImgFFT( false );
-		fftConvolution.setKernelFFT( kernelFFT );
-		fftConvolution.convolve();
+		fftWorkspace.convolve(
+				Views.extendMirrorSingle( image ),
+				image,
+				kernel,
+				kernelFFT,
+				result,
+				service );
 	}
 
 	public void convolve2(
@@ -194,18 +226,13 @@ public class ComputeBlockSeqThreadCPU extends ComputeBlockSeqThreadAbstract
 			final Img< ComplexFloatType > kernelFFT,
 			final Img< FloatType > result )
 	{
-		final FFTConvolution< FloatType > fftConvolution =
-				new FFTConvolution< FloatType >(
-						Views.extendValue( image, new FloatType( 1.0f ) ), // ratio outside of the deconvolved space (psi) is 1, shouldn't matter here though
-						image,
-						Views.extendZero( kernel ),
-						kernel,
-						result,
-						fftFactory );
-		fftConvolution.setExecutorService( service );
-		fftConvolution.setKeepImgFFT( false );
-		fftConvolution.setKernelFFT( kernelFFT );
-		fftConvolution.convolve();
+		fftWorkspace.convolve(
+				Views.extendValue( image, new FloatType( 1.0f ) ), // ratio outside of the deconvolved space (psi) is 1, shouldn't matter here though
+				image,
+				kernel,
+				kernelFFT,
+				result,
+				service );
 	}
 
 }
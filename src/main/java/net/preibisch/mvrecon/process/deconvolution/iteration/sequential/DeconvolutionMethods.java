@@ -29,6 +29,8 @@ import net.imglib2.Cursor;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
@@ -181,6 +183,113 @@ public class DeconvolutionMethods
 		sumMax[ 1 ] = maxChange;
 	}
 
+	/**
+	 * @param img - an image
+	 * @return the storage array if img is an ArrayImg backed by a FloatArray, otherwise null
+	 */
+	public static float[] floatArray( final RandomAccessibleInterval< FloatType > img )
+	{
+		if ( img instanceof ArrayImg && ( (ArrayImg< ?, ? >)img ).update( null ) instanceof FloatArray )
+			return ( (FloatArray)( (ArrayImg< ?, ? >)img ).update( null ) ).getCurrentStorageArray();
+		else
+			return null;
+	}
+
+	/**
+	 * Same as {@link #computeQuotient(long, long, RandomAccessibleInterval, RandomAccessibleInterval)} directly on the
+	 * array of an array-backed block (the convolution output), the observed image is accessed as array if it is
+	 * array-backed as well, otherwise in flat iteration order with a single cursor.
+	 * 
+	 * @param start - the start position in pixels for this thread
+	 * @param loopSize - how many consecutive pixels to process
+	 * @param psiBlurred - the blurred psi input (storage array of the block)
+	 * @param observedImg - the observed image
+	 */
+	protected static final void computeQuotient(
+			final long start,
+			final long loopSize,
+			final float[] psiBlurred,
+			final RandomAccessibleInterval< FloatType > observedImg )
+	{
+		final int first = (int)start;
+		final int last = (int)( start + loopSize );
+
+		final float[] img = floatArray( observedImg );
+
+		if ( img != null )
+		{
+			for ( int i = first; i < last; ++i )
+			{
+				final float imgValue = img[ i ];
+				psiBlurred[ i ] = imgValue > 0 ? imgValue / psiBlurred[ i ] : 1; // no image data, quotient=1
+			}
+		}
+		else
+		{
+			final Cursor< FloatType > cursorImg = Views.flatIterable( observedImg ).cursor();
+			cursorImg.jumpFwd( start );
+
+			for ( int i = first; i < last; ++i )
+			{
+				final float imgValue = cursorImg.next().get();
+				psiBlurred[ i ] = imgValue > 0 ? imgValue / psiBlurred[ i ] : 1; // no image data, quotient=1
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link #computeFinalValues(long, long, RandomAccessibleInterval, RandomAccessibleInterval, RandomAccessibleInterval, double, float, float, double[])}
+	 * directly on the arrays of array-backed blocks, computes the update and the statistics in a single pass. The weights
+	 * are accessed as array if they are array-backed as well, otherwise in flat iteration order with a single cursor.
+	 */
+	protected static final void computeFinalValues(
+			final long start,
+			final long loopSize,
+			final float[] psi,
+			final float[] integral,
+			final RandomAccessibleInterval< FloatType > weight,
+			final double lambda,
+			final float minIntensity,
+			final float maxIntensity,
+			final double[] sumMax )
+	{
+		double sumChange = 0;
+		double maxChange = -1;
+
+		final int first = (int)start;
+		final int last = (int)( start + loopSize );
+
+		final float[] weightArray = floatArray( weight );
+		final Cursor< FloatType > cursorWeight;
+
+		if ( weightArray == null )
+		{
+			cursorWeight = Views.flatIterable( weight ).cursor();
+			cursorWeight.jumpFwd( start );
+		}
+		else
+		{
+			cursorWeight = null;
+		}
+
+		for ( int i = first; i < last; ++i )
+		{
+			final float w = weightArray == null ? cursorWeight.next().get() : weightArray[ i ];
+
+			final float lastPsiValue = psi[ i ];
+			final float nextPsiValue = computeNextValue( lastPsiValue, integral[ i ], w, lambda, minIntensity, maxIntensity );
+
+			psi[ i ] = nextPsiValue;
+
+			final float change = change( lastPsiValue, nextPsiValue );
+			sumChange += change;
+			maxChange = Math.max( maxChange, change );
+		}
+
+		sumMax[ 0 ] = sumChange;
+		sumMax[ 1 ] = maxChange;
+	}
+
 	/*
 	 * One thread of a method to compute the final values of one iteration of the multiview deconvolution
 	 */
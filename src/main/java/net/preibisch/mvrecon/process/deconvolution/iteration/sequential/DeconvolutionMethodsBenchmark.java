@@ -0,0 +1,152 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.deconvolution.iteration.sequential;
+
+import java.util.Random;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * Compares the cursor-based quotient and update of one block iteration to the flat array implementation, using
+ * the same kind of input as MultiViewDeconvolutionSeq (the image and weights are views of a larger image).
+ *
+ * Arguments (optional): block size, number of repetitions
+ */
+public class DeconvolutionMethodsBenchmark
+{
+	public static void main( String[] args )
+	{
+		final int size = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 256;
+		final int repetitions = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 10;
+
+		final long[] blockSize = new long[] { size, size, size };
+		final long numPixels = (long)size * size * size;
+
+		final Random rnd = new Random( 123 );
+
+		// the input image and weights are larger than the block, the block is a view as in MultiViewDeconvolutionSeq
+		final ArrayImg< FloatType, FloatArray > img = ArrayImgs.floats( size + 20, size + 20, size + 20 );
+		final ArrayImg< FloatType, FloatArray > weight = ArrayImgs.floats( size + 20, size + 20, size + 20 );
+
+		fill( img.update( null ).getCurrentStorageArray(), rnd, 0.0f, 1000.0f );
+		fill( weight.update( null ).getCurrentStorageArray(), rnd, 0.0f, 1.0f );
+
+		final FinalInterval block = new FinalInterval( new long[] { 10, 10, 10 }, new long[] { size + 9, size + 9, size + 9 } );
+		final RandomAccessibleInterval< FloatType > imgBlock = Views.zeroMin( Views.interval( Views.extendZero( img ), block ) );
+		final RandomAccessibleInterval< FloatType > weightBlock = Views.zeroMin( Views.interval( Views.extendZero( weight ), block ) );
+
+		final ArrayImg< FloatType, FloatArray > psi = ArrayImgs.floats( blockSize );
+		final ArrayImg< FloatType, FloatArray > blurred = ArrayImgs.floats( blockSize );
+		final ArrayImg< FloatType, FloatArray > integral = ArrayImgs.floats( blockSize );
+
+		final float[] psiInit = new float[ (int)numPixels ];
+		final float[] blurredInit = new float[ (int)numPixels ];
+		final float[] integralInit = new float[ (int)numPixels ];
+
+		fill( psiInit, rnd, 1.0f, 1000.0f );
+		fill( blurredInit, rnd, 1.0f, 1000.0f );
+		fill( integralInit, rnd, 0.5f, 1.5f );
+
+		final double lambda = 0.0006;
+		final float minValue = 0.0001f;
+		final float maxIntensity = 1000.0f;
+
+		final double[] sumMaxCursor = new double[ 2 ];
+		final double[] sumMaxFlat = new double[ 2 ];
+
+		System.out.println( "block size: " + size + "^3, repetitions: " + repetitions );
+
+		long timeCursor = 0, timeFlat = 0;
+
+		// the first round is warm-up
+		for ( int r = 0; r <= repetitions; ++r )
+		{
+			reset( psi, blurred, integral, psiInit, blurredInit, integralInit );
+
+			long time = System.nanoTime();
+
+			DeconvolutionMethods.computeQuotient( 0, numPixels, blurred, imgBlock );
+			DeconvolutionMethods.computeFinalValues( 0, numPixels, psi, integral, weightBlock, lambda, minValue, maxIntensity, sumMaxCursor );
+
+			if ( r > 0 )
+				timeCursor += System.nanoTime() - time;
+
+			final float[] quotientCursor = blurred.update( null ).getCurrentStorageArray().clone();
+			final float[] psiCursor = psi.update( null ).getCurrentStorageArray().clone();
+
+			reset( psi, blurred, integral, psiInit, blurredInit, integralInit );
+
+			time = System.nanoTime();
+
+			DeconvolutionMethods.computeQuotient( 0, numPixels, blurred.update( null ).getCurrentStorageArray(), imgBlock );
+			DeconvolutionMethods.computeFinalValues( 0, numPixels, psi.update( null ).getCurrentStorageArray(), integral.update( null ).getCurrentStorageArray(), weightBlock, lambda, minValue, maxIntensity, sumMaxFlat );
+
+			if ( r > 0 )
+				timeFlat += System.nanoTime() - time;
+
+			if ( r == 0 )
+				System.out.println(
+						"max difference quotient: " + maxDifference( quotientCursor, blurred.update( null ).getCurrentStorageArray() ) +
+						", psi: " + maxDifference( psiCursor, psi.update( null ).getCurrentStorageArray() ) +
+						", sumChange: " + sumMaxCursor[ 0 ] + " vs " + sumMaxFlat[ 0 ] + ", maxChange: " + sumMaxCursor[ 1 ] + " vs " + sumMaxFlat[ 1 ] );
+		}
+
+		System.out.println( "cursor: " + ( timeCursor / 1000000 / repetitions ) + " ms per block" );
+		System.out.println( "flat: " + ( timeFlat / 1000000 / repetitions ) + " ms per block (speedup " + ( (double)timeCursor / Math.max( 1, timeFlat ) ) + "x)" );
+	}
+
+	protected static void fill( final float[] array, final Random rnd, final float min, final float max )
+	{
+		for ( int i = 0; i < array.length; ++i )
+			array[ i ] = min + rnd.nextFloat() * ( max - min );
+	}
+
+	protected static void reset(
+			final ArrayImg< FloatType, FloatArray > psi,
+			final ArrayImg< FloatType, FloatArray > blurred,
+			final ArrayImg< FloatType, FloatArray > integral,
+			final float[] psiInit,
+			final float[] blurredInit,
+			final float[] integralInit )
+	{
+		System.arraycopy( psiInit, 0, psi.update( null ).getCurrentStorageArray(), 0, psiInit.length );
+		System.arraycopy( blurredInit, 0, blurred.update( null ).getCurrentStorageArray(), 0, blurredInit.length );
+		System.arraycopy( integralInit, 0, integral.update( null ).getCurrentStorageArray(), 0, integralInit.length );
+	}
+
+	protected static double maxDifference( final float[] a, final float[] b )
+	{
+		double max = 0;
+
+		for ( int i = 0; i < a.length; ++i )
+			max = Math.max( max, Math.abs( a[ i ] - b[ i ] ) );
+
+		return max;
+	}
+}
@@ -0,0 +1,248 @@
+package net.preibisch.mvrecon.process.deconvolution.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.Lz4Compression;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.process.deconvolution.iteration.ComputeBlockThread.IterationStatistics;
+import net.preibisch.mvrecon.process.fusion.FusionTools;
+
+/**
+ * Writes the current state of a multi-view deconvolution (psi, the iteration and the statistics of the last iteration)
+ * into an N5 container so a deconvolution can be resumed after it crashed or was killed.
+ *
+ * Two datasets are written alternately, the root attribute 'latest' is only updated once a checkpoint was written
+ * completely. This way a crash while writing a checkpoint never destroys the previous one.
+ */
+public class DeconvolutionCheckpoint
+{
+	final public static String[] datasets = new String[]{ "psi-0", "psi-1" };
+
+	final public static String latestKey = "latest";
+	final public static String iterationKey = "iteration";
+	final public static String sumChangeKey = "sumChange";
+	final public static String maxChangeKey = "maxChange";
+	final public static String maxKey = "max";
+	final public static String avgKey = "avg";
+
+	public static int defaultBlockSize = 64;
+
+	final File n5Path;
+	final int[] blockSize;
+	final Compression compression;
+
+	/**
+	 * @param n5Path - the N5 container (directory) the checkpoints are written to
+	 * @param blockSize - the N5 block size for psi
+	 * @param compression - the N5 compression
+	 */
+	public DeconvolutionCheckpoint( final File n5Path, final int[] blockSize, final Compression compression )
+	{
+		this.n5Path = n5Path;
+		this.blockSize = blockSize;
+		this.compression = compression;
+	}
+
+	public DeconvolutionCheckpoint( final File n5Path )
+	{
+		this( n5Path, new int[]{ defaultBlockSize, defaultBlockSize, defaultBlockSize }, new Lz4Compression() );
+	}
+
+	public File getN5Path() { return n5Path; }
+
+	/**
+	 * @return true if there is at least one complete checkpoint
+	 */
+	public boolean exists()
+	{
+		return getLatestDataset() != null;
+	}
+
+	/**
+	 * Writes a checkpoint
+	 *
+	 * @param psi - the current deconvolved image
+	 * @param iteration - the number of iterations that are completed
+	 * @param stats - the statistics of the last iteration (can be null)
+	 * @param max - the maximal intensities of the views
+	 * @param avg - the average intensity in the overlapping area
+	 * @param service - the ExecutorService for writing the blocks in parallel
+	 * @return true if the checkpoint was written
+	 */
+	public boolean write(
+			final RandomAccessibleInterval< FloatType > psi,
+			final int iteration,
+			final IterationStatistics stats,
+			final float[] max,
+			final double avg,
+			final ExecutorService service )
+	{
+		final long time = System.currentTimeMillis();
+
+		try
+		{
+			final N5Writer n5 = new N5FSWriter( n5Path.getAbsolutePath() );
+
+			// never overwrite the latest complete checkpoint
+			final String latest = getLatestDataset();
+			final String dataset = datasets[ 0 ].equals( latest ) ? datasets[ 1 ] : datasets[ 0 ];
+
+			N5Utils.save( Views.zeroMin( psi ), n5, dataset, blockSize, compression, service );
+
+			n5.setAttribute( dataset, iterationKey, iteration );
+			n5.setAttribute( dataset, maxKey, max );
+			n5.setAttribute( dataset, avgKey, avg );
+
+			if ( stats != null )
+			{
+				n5.setAttribute( dataset, sumChangeKey, stats.sumChange );
+				n5.setAttribute( dataset, maxChangeKey, stats.maxChange );
+			}
+
+			// only now the checkpoint is complete
+			n5.setAttribute( "/", latestKey, dataset );
+
+			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Wrote checkpoint for iteration " + iteration + " to '" + n5Path.getAbsolutePath() + "/" + dataset + "', took " + ( System.currentTimeMillis() - time ) + " ms." );
+
+			return true;
+		}
+		catch ( Exception e )
+		{
+			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Could not write checkpoint to '" + n5Path.getAbsolutePath() + "': " + e );
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Copies the latest checkpoint into psi
+	 *
+	 * @param psi - the deconvolved image to restore
+	 * @param service - the ExecutorService used for copying
+	 * @return true if successful
+	 */
+	public boolean restore( final RandomAccessibleInterval< FloatType > psi, final ExecutorService service )
+	{
+		final String dataset = getLatestDataset();
+
+		if ( dataset == null )
+		{
+			IOFunctions.println( "No complete checkpoint found in '" + n5Path.getAbsolutePath() + "'." );
+			return false;
+		}
+
+		try
+		{
+			final N5Reader n5 = new N5FSReader( n5Path.getAbsolutePath() );
+			final RandomAccessibleInterval< FloatType > input = N5Utils.open( n5, dataset );
+
+			for ( int d = 0; d < psi.numDimensions(); ++d )
+				if ( input.dimension( d ) != psi.dimension( d ) )
+				{
+					IOFunctions.println( "Checkpoint dimensions do not match: " + Util.printInterval( input ) + " != " + Util.printInterval( psi ) );
+					return false;
+				}
+
+			FusionTools.copyImg( Views.zeroMin( input ), Views.zeroMin( psi ), service );
+
+			return true;
+		}
+		catch ( IOException e )
+		{
+			IOFunctions.println( "Cannot load checkpoint '" + n5Path.getAbsolutePath() + "/" + dataset + "': " + e );
+			return false;
+		}
+	}
+
+	/**
+	 * @return the number of iterations that were completed when the latest checkpoint was written, or -1 if there is none
+	 */
+	public int getIteration()
+	{
+		final Integer iteration = getLatestAttribute( iterationKey, Integer.class );
+		return iteration == null ? -1 : iteration;
+	}
+
+	/**
+	 * @return the maximal intensities of the views of the latest checkpoint, or null if there is none
+	 */
+	public float[] getMax() { return getLatestAttribute( maxKey, float[].class ); }
+
+	/**
+	 * @return the average intensity in the overlapping area of the latest checkpoint, or NaN if there is none
+	 */
+	public double getAvg()
+	{
+		final Double avg = getLatestAttribute( avgKey, Double.class );
+		return avg == null ? Double.NaN : avg;
+	}
+
+	/**
+	 * @return the statistics of the iteration before the latest checkpoint, or null if none were written
+	 */
+	public IterationStatistics getIterationStatistics()
+	{
+		final Double sumChange = getLatestAttribute( sumChangeKey, Double.class );
+		final Double maxChange = getLatestAttribute( maxChangeKey, Double.class );
+
+		if ( sumChange == null && maxChange == null )
+			return null;
+
+		final IterationStatistics stats = new IterationStatistics();
+
+		if ( sumChange != null )
+			stats.sumChange = sumChange;
+
+		if ( maxChange != null )
+			stats.maxChange = maxChange;
+
+		return stats;
+	}
+
+	protected < A > A getLatestAttribute( final String key, final Class< A > clazz )
+	{
+		final String dataset = getLatestDataset();
+
+		if ( dataset == null )
+			return null;
+
+		try
+		{
+			return new N5FSReader( n5Path.getAbsolutePath() ).getAttribute( dataset, key, clazz );
+		}
+		catch ( IOException e )
+		{
+			IOFunctions.println( "Cannot read attribute '" + key + "' of checkpoint '" + n5Path.getAbsolutePath() + "/" + dataset + "': " + e );
+			return null;
+		}
+	}
+
+	protected String getLatestDataset()
+	{
+		if ( !n5Path.exists() )
+			return null;
+
+		try
+		{
+			return new N5FSReader( n5Path.getAbsolutePath() ).getAttribute( "/", latestKey, String.class );
+		}
+		catch ( IOException e )
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,578 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+
+import bdv.export.ExportMipmapInfo;
+import bdv.export.ProposeMipmaps;
+import bdv.img.n5.BdvN5Format;
+import bdv.img.n5.N5ImageLoader;
+import fiji.util.gui.GenericDialogPlus;
+import ij.IJ;
+import mpicbg.spim.data.SpimDataException;
+import mpicbg.spim.data.registration.ViewRegistration;
+import mpicbg.spim.data.registration.ViewTransform;
+import mpicbg.spim.data.registration.ViewTransformAffine;
+import mpicbg.spim.data.sequence.TimePoint;
+import mpicbg.spim.data.sequence.ViewId;
+import mpicbg.spim.data.sequence.ViewSetup;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Pair;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.Threads;
+import net.preibisch.mvrecon.fiji.plugin.fusion.FusionExportInterface;
+import net.preibisch.mvrecon.fiji.plugin.queryXML.LoadParseQueryXML;
+import net.preibisch.mvrecon.fiji.plugin.resave.N5Parameters;
+import net.preibisch.mvrecon.fiji.plugin.resave.PluginHelper;
+import net.preibisch.mvrecon.fiji.plugin.resave.Resave_HDF5;
+import net.preibisch.mvrecon.fiji.plugin.util.GUIHelper;
+import net.preibisch.mvrecon.fiji.spimdata.SpimData2;
+import net.preibisch.mvrecon.fiji.spimdata.XmlIoSpimData2;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
+
+/**
+ * Exports the fused image into an N5 container as a new XML project (BDV format). The (virtual) fused image is
+ * computed block by block in parallel and every block is written directly into the N5 dataset, the downsampled
+ * pyramid levels are computed from the blocks that were written before. The fused image is therefore never
+ * held completely in memory, which is why Image_Fusion always passes the virtual image to this exporter.
+ */
+public class ExportN5 implements ImgExport
+{
+	public static String defaultXMLPath = null;
+	public static String defaultN5Path = null;
+
+	private FusionExportInterface fusion;
+
+	private List< TimePoint > newTimepoints;
+	private List< ViewSetup > newViewSetups;
+
+	private SpimData2 newSpimData;
+
+	private File xmlFile, n5File;
+	private Compression compression;
+	private int[][] resolutions, blockSizes;
+	private int numThreads;
+
+	@Override
+	public < T extends RealType< T > & NativeType< T > > boolean exportImage(
+			final RandomAccessibleInterval< T > img,
+			final Interval bb,
+			final double downsampling,
+			final double anisoF,
+			final String title,
+			final Group< ? extends ViewId > fusionGroup )
+	{
+		return exportImage( img, bb, downsampling, anisoF, title, fusionGroup, Double.NaN, Double.NaN );
+	}
+
+	@Override
+	public < T extends RealType< T > & NativeType< T > > boolean exportImage(
+			final RandomAccessibleInterval< T > img,
+			final Interval bb,
+			final double downsampling,
+			final double anisoF,
+			final String title,
+			final Group< ? extends ViewId > fusionGroup,
+			final double min,
+			final double max )
+	{
+		if ( img == null )
+			return true;
+
+		final ViewId newViewId = ExportSpimData2TIFF.identifyNewViewId( newTimepoints, newViewSetups, fusionGroup, fusion );
+
+		IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Writing '" + title + "' as setup=" + newViewId.getViewSetupId() + ", timepoint=" + newViewId.getTimePointId() + " into '" + n5File.getAbsolutePath() + "'" );
+
+		final ExecutorService taskExecutor = Executors.newFixedThreadPool( numThreads );
+
+		try
+		{
+			final N5Writer n5 = new N5FSWriter( n5File.getAbsolutePath() );
+
+			writeSetupAttributes( n5, newViewId.getViewSetupId(), resolutions, N5Utils.dataType( Util.getTypeFromInterval( img ) ) );
+
+			// full resolution, the fused image is computed block by block while writing
+			final String dataset0 = BdvN5Format.getPathName( newViewId.getViewSetupId(), newViewId.getTimePointId(), 0 );
+
+			if ( !writeBlocks( Views.zeroMin( img ), n5, dataset0, resolutions[ 0 ], blockSizes[ 0 ], compression, taskExecutor ) )
+				return false;
+
+			// the pyramid, always computed from the previous level that was just written
+			for ( int level = 1; level < resolutions.length; ++level )
+			{
+				final String previousDataset = BdvN5Format.getPathName( newViewId.getViewSetupId(), newViewId.getTimePointId(), level - 1 );
+				final String dataset = BdvN5Format.getPathName( newViewId.getViewSetupId(), newViewId.getTimePointId(), level );
+
+				final int[] relativeFactors = new int[ resolutions[ level ].length ];
+
+				for ( int d = 0; d < relativeFactors.length; ++d )
+					relativeFactors[ d ] = resolutions[ level ][ d ] / resolutions[ level - 1 ][ d ];
+
+				IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Computing pyramid level " + level + " " + Util.printCoordinates( resolutions[ level ] ) );
+
+				final RandomAccessibleInterval< T > previous = N5Utils.open( n5, previousDataset );
+
+				if ( !writeDownsampledBlocks( previous, relativeFactors, n5, dataset, resolutions[ level ], blockSizes[ level ], compression, taskExecutor ) )
+					return false;
+			}
+
+			n5.setAttribute( BdvN5Format.getPathName( newViewId.getViewSetupId(), newViewId.getTimePointId() ), N5Parameters.finishedAttrib, true );
+		}
+		catch ( IOException e )
+		{
+			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Could not write '" + title + "' to N5: " + e );
+			e.printStackTrace();
+			return false;
+		}
+		finally
+		{
+			taskExecutor.shutdown();
+		}
+
+		// update the registrations
+		final ViewRegistration vr = newSpimData.getViewRegistrations().getViewRegistration( newViewId );
+
+		final double scale = Double.isNaN( downsampling ) ? 1.0 : downsampling;
+		final double ai = Double.isNaN( anisoF ) ? 1.0 : anisoF;
+
+		final AffineTransform3D m = new AffineTransform3D();
+		m.set( scale, 0.0f, 0.0f, bb.min( 0 ),
+			   0.0f, scale, 0.0f, bb.min( 1 ),
+			   0.0f, 0.0f, scale * ai, bb.min( 2 ) * ai ); // TODO: bb * ai is right?
+		final ViewTransform vt = new ViewTransformAffine( "fusion bounding box", m );
+
+		vr.getTransformList().clear();
+		vr.getTransformList().add( vt );
+
+		return true;
+	}
+
+	/**
+	 * Writes the attributes required by the N5ImageLoader for one ViewSetup
+	 *
+	 * @param n5 - the N5 writer
+	 * @param setupId - the id of the ViewSetup
+	 * @param resolutions - the absolute downsampling factors of all pyramid levels
+	 * @param dataType - the N5 datatype
+	 * @throws IOException if the attributes cannot be written
+	 */
+	public static void writeSetupAttributes( final N5Writer n5, final int setupId, final int[][] resolutions, final DataType dataType ) throws IOException
+	{
+		final String pathName = BdvN5Format.getPathName( setupId );
+
+		n5.createGroup( pathName );
+		n5.setAttribute( pathName, BdvN5Format.DOWNSAMPLING_FACTORS_KEY, resolutions );
+		n5.setAttribute( pathName, BdvN5Format.DATA_TYPE_KEY, dataType );
+	}
+
+	/**
+	 * Computes and writes an image block by block (multithreaded). Only the blocks that are currently processed
+	 * are in memory, virtual inputs are evaluated while writing.
+	 *
+	 * @param img - the (zero-min) input image
+	 * @param n5 - the N5 writer
+	 * @param dataset - the name of the dataset
+	 * @param downsamplingFactors - the absolute downsampling factors of this level (stored as attribute)
+	 * @param blockSize - the N5 block size
+	 * @param compression - the N5 compression
+	 * @param taskExecutor - the ExecutorService
+	 * @param <T> pixel type
+	 * @return true if all blocks were written successfully
+	 * @throws IOException if the dataset cannot be created
+	 */
+	public static < T extends RealType< T > & NativeType< T > > boolean writeBlocks(
+			final RandomAccessibleInterval< T > img,
+			final N5Writer n5,
+			final String dataset,
+			final int[] downsamplingFactors,
+			final int[] blockSize,
+			final Compression compression,
+			final ExecutorService taskExecutor ) throws IOException
+	{
+		final long[] dimensions = new long[ img.numDimensions() ];
+		img.dimensions( dimensions );
+
+		final DatasetAttributes attributes = createDataset( n5, dataset, dimensions, downsamplingFactors, blockSize, N5Utils.dataType( Util.getTypeFromInterval( img ) ), compression );
+
+		final ArrayList< Callable< Void > > tasks = new ArrayList<>();
+
+		for ( final long[][] block : createGrid( dimensions, blockSize ) )
+		{
+			tasks.add( () ->
+			{
+				N5Utils.saveBlock( Views.interval( img, Intervals.createMinSize( block[ 0 ], block[ 1 ] ) ), n5, dataset, attributes, block[ 2 ] );
+				return null;
+			});
+		}
+
+		return execTasks( tasks, taskExecutor, "write blocks of '" + dataset + "'" );
+	}
+
+	/**
+	 * Downsamples an image block by block (multithreaded) by averaging and writes every block directly to N5.
+	 *
+	 * @param previous - the (zero-min) higher resolution level
+	 * @param relativeFactors - the downsampling relative to the previous level
+	 * @param n5 - the N5 writer
+	 * @param dataset - the name of the dataset
+	 * @param downsamplingFactors - the absolute downsampling factors of this level (stored as attribute)
+	 * @param blockSize - the N5 block size
+	 * @param compression - the N5 compression
+	 * @param taskExecutor - the ExecutorService
+	 * @param <T> pixel type
+	 * @return true if all blocks were written successfully
+	 * @throws IOException if the dataset cannot be created
+	 */
+	public static < T extends RealType< T > & NativeType< T > > boolean writeDownsampledBlocks(
+			final RandomAccessibleInterval< T > previous,
+			final int[] relativeFactors,
+			final N5Writer n5,
+			final String dataset,
+			final int[] downsamplingFactors,
+			final int[] blockSize,
+			final Compression compression,
+			final ExecutorService taskExecutor ) throws IOException
+	{
+		final int n = previous.numDimensions();
+		final long[] dimensions = new long[ n ];
+
+		// round up, the last (partial) block of pixels is averaged over the remaining pixels
+		for ( int d = 0; d < n; ++d )
+			dimensions[ d ] = Math.max( 1, ( previous.dimension( d ) + relativeFactors[ d ] - 1 ) / relativeFactors[ d ] );
+
+		final T type = Util.getTypeFromInterval( previous );
+		final DatasetAttributes attributes = createDataset( n5, dataset, dimensions, downsamplingFactors, blockSize, N5Utils.dataType( type ), compression );
+
+		final ArrayList< Callable< Void > > tasks = new ArrayList<>();
+
+		for ( final long[][] block : createGrid( dimensions, blockSize ) )
+		{
+			tasks.add( () ->
+			{
+				final Img< T > out = new ArrayImgFactory<>( type ).create( block[ 1 ] );
+				final Cursor< T > cursor = out.localizingCursor();
+				final RandomAccess< T > ra = previous.randomAccess();
+
+				final long[] pos = new long[ n ];
+				final long[] min = new long[ n ];
+				final long[] max = new long[ n ];
+
+				while ( cursor.hasNext() )
+				{
+					cursor.fwd();
+					cursor.localize( pos );
+
+					for ( int d = 0; d < n; ++d )
+					{
+						min[ d ] = ( pos[ d ] + block[ 0 ][ d ] ) * relativeFactors[ d ];
+						max[ d ] = Math.min( min[ d ] + relativeFactors[ d ], previous.dimension( d ) ) - 1;
+						pos[ d ] = min[ d ];
+					}
+
+					cursor.get().setReal( average( ra, pos, min, max ) );
+				}
+
+				N5Utils.saveBlock( out, n5, dataset, attributes, block[ 2 ] );
+				return null;
+			});
+		}
+
+		return execTasks( tasks, taskExecutor, "write downsampled blocks of '" + dataset + "'" );
+	}
+
+	protected static < T extends RealType< T > > double average( final RandomAccess< T > ra, final long[] pos, final long[] min, final long[] max )
+	{
+		double sum = 0;
+		long count = 0;
+
+		ra.setPosition( pos );
+
+		while ( true )
+		{
+			sum += ra.get().getRealDouble();
+			++count;
+
+			// iterate the (small) region of the previous level in raster order
+			int d = 0;
+			for ( ; d < pos.length; ++d )
+			{
+				if ( pos[ d ] < max[ d ] )
+				{
+					++pos[ d ];
+					ra.fwd( d );
+					break;
+				}
+				else
+				{
+					ra.move( min[ d ] - pos[ d ], d );
+					pos[ d ] = min[ d ];
+				}
+			}
+
+			if ( d == pos.length )
+				return sum / count;
+		}
+	}
+
+	protected static DatasetAttributes createDataset(
+			final N5Writer n5,
+			final String dataset,
+			final long[] dimensions,
+			final int[] downsamplingFactors,
+			final int[] blockSize,
+			final DataType dataType,
+			final Compression compression ) throws IOException
+	{
+		n5.createDataset( dataset, dimensions, blockSize, dataType, compression );
+		n5.setAttribute( dataset, BdvN5Format.DOWNSAMPLING_FACTORS_KEY, downsamplingFactors );
+
+		return n5.getDatasetAttributes( dataset );
+	}
+
+	/**
+	 * @param dimensions - the dimensions of the image
+	 * @param blockSize - the blocksize
+	 * @return for each block: min, size and the position in the block grid
+	 */
+	public static ArrayList< long[][] > createGrid( final long[] dimensions, final int[] blockSize )
+	{
+		final int n = dimensions.length;
+		final long[] gridPosition = new long[ n ];
+		final long[] numBlocks = new long[ n ];
+
+		for ( int d = 0; d < n; ++d )
+			numBlocks[ d ] = ( dimensions[ d ] + blockSize[ d ] - 1 ) / blockSize[ d ];
+
+		final ArrayList< long[][] > grid = new ArrayList<>();
+
+		while ( true )
+		{
+			final long[] min = new long[ n ];
+			final long[] size = new long[ n ];
+
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = gridPosition[ d ] * blockSize[ d ];
+				size[ d ] = Math.min( blockSize[ d ], dimensions[ d ] - min[ d ] );
+			}
+
+			grid.add( new long[][]{ min, size, gridPosition.clone() } );
+
+			int d = 0;
+			for ( ; d < n; ++d )
+			{
+				if ( ++gridPosition[ d ] < numBlocks[ d ] )
+					break;
+				else
+					gridPosition[ d ] = 0;
+			}
+
+			if ( d == n )
+				return grid;
+		}
+	}
+
+	protected static boolean execTasks( final ArrayList< Callable< Void > > tasks, final ExecutorService taskExecutor, final String jobDescription )
+	{
+		final AtomicInteger progress = new AtomicInteger( 0 );
+		final ArrayList< Callable< Void > > tasksWithProgress = new ArrayList<>();
+
+		for ( final Callable< Void > task : tasks )
+			tasksWithProgress.add( () ->
+			{
+				task.call();
+				IJ.showProgress( (double)progress.incrementAndGet() / tasks.size() );
+				return null;
+			});
+
+		try
+		{
+			// invokeAll() returns when all tasks are complete
+			for ( final Future< Void > future : taskExecutor.invokeAll( tasksWithProgress ) )
+				future.get();
+
+			return true;
+		}
+		catch ( final Exception e )
+		{
+			IOFunctions.println( "Failed to " + jobDescription + ": " + e );
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	@Override
+	public boolean finish()
+	{
+		newSpimData.getSequenceDescription().setImgLoader( new N5ImageLoader( n5File, newSpimData.getSequenceDescription() ) );
+
+		final XmlIoSpimData2 io = new XmlIoSpimData2( "" );
+
+		try
+		{
+			io.save( newSpimData, xmlFile.getAbsolutePath() );
+
+			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Saved xml '" + io.lastFileName() + "'." );
+
+			// this spimdata object was not modified, we just wrote a new one
+			return false;
+		}
+		catch ( SpimDataException e )
+		{
+			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Could not save xml '" + io.lastFileName() + "'." );
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	@Override
+	public boolean queryParameters( final FusionExportInterface fusion )
+	{
+		this.fusion = fusion; // we need it later to find the right new ViewId for a FusionGroup
+
+		// define new timepoints and viewsetups
+		final Pair< List< TimePoint >, List< ViewSetup > > newStructure = ExportSpimData2TIFF.defineNewViewSetups( fusion, fusion.getDownsampling(), fusion.getAnisotropyFactor() );
+		this.newTimepoints = newStructure.getA();
+		this.newViewSetups = newStructure.getB();
+
+		final Map< Integer, ExportMipmapInfo > perSetupExportMipmapInfo = Resave_HDF5.proposeMipmaps( newViewSetups );
+		final ExportMipmapInfo autoMipmapSettings = perSetupExportMipmapInfo.get( newViewSetups.get( 0 ).getId() );
+
+		// block size should be bigger than hdf5
+		for ( final int[] row : autoMipmapSettings.getSubdivisions() )
+		{
+			Arrays.fill( row, N5Parameters.defaultBlockSize );
+			row[ 0 ] = N5Parameters.defaultBlockSizeXY;
+			if ( row.length >= 2 )
+				row[ 1 ] = N5Parameters.defaultBlockSizeXY;
+		}
+
+		if ( defaultXMLPath == null || defaultN5Path == null )
+		{
+			String fn = LoadParseQueryXML.defaultXMLfilename;
+			if ( fn.endsWith( ".xml" ) )
+				fn = fn.substring( 0, fn.length() - ".xml".length() );
+
+			for ( int i = 0;; ++i )
+			{
+				defaultXMLPath = String.format( "%s-f%d.xml", fn, i );
+				defaultN5Path = String.format( "%s-f%d.n5", fn, i );
+
+				if ( !new File( defaultXMLPath ).exists() && !new File( defaultN5Path ).exists() )
+					break;
+			}
+		}
+
+		final GenericDialogPlus gdp = new GenericDialogPlus( "Export fused image as N5" );
+
+		gdp.addFileField( "Export_path_XML", defaultXMLPath, 75 );
+		gdp.addDirectoryField( "Export_path_N5", defaultN5Path, 75 );
+		gdp.addChoice( "Compression", N5Parameters.compressions, N5Parameters.compressions[ N5Parameters.defaultCompression ] );
+		gdp.addStringField( "Subsampling_factors", ProposeMipmaps.getArrayString( autoMipmapSettings.getExportResolutions() ), 40 );
+		gdp.addStringField( "N5_block_sizes", ProposeMipmaps.getArrayString( autoMipmapSettings.getSubdivisions() ), 40 );
+		gdp.addNumericField( "Number_of_threads (CPUs:" + Runtime.getRuntime().availableProcessors() + ")", Threads.numThreads(), 0 );
+
+		gdp.addMessage( "Note: the fused image is always computed block by block while writing, caching options are ignored.", GUIHelper.smallStatusFont );
+
+		gdp.showDialog();
+
+		if ( gdp.wasCanceled() )
+			return false;
+
+		this.xmlFile = new File( defaultXMLPath = gdp.getNextString() );
+		this.n5File = new File( defaultN5Path = gdp.getNextString() );
+		this.compression = N5Parameters.getCompression( N5Parameters.defaultCompression = gdp.getNextChoiceIndex() );
+
+		final String subsampling = gdp.getNextString();
+		final String chunkSizes = gdp.getNextString();
+
+		this.numThreads = Math.max( 1, (int)Math.round( gdp.getNextNumber() ) );
+
+		this.resolutions = PluginHelper.parseResolutionsString( subsampling );
+		this.blockSizes = PluginHelper.parseResolutionsString( chunkSizes );
+
+		if ( resolutions.length == 0 )
+		{
+			IOFunctions.println( "Cannot parse subsampling factors " + subsampling );
+			return false;
+		}
+		if ( blockSizes.length == 0 )
+		{
+			IOFunctions.println( "Cannot parse N5 block sizes " + chunkSizes );
+			return false;
+		}
+		else if ( resolutions.length != blockSizes.length )
+		{
+			IOFunctions.println( "subsampling factors and N5 block sizes must have the same number of elements" );
+			return false;
+		}
+
+		for ( int level = 1; level < resolutions.length; ++level )
+			for ( int d = 0; d < resolutions[ level ].length; ++d )
+				if ( resolutions[ level ][ d ] % resolutions[ level - 1 ][ d ] != 0 )
+				{
+					IOFunctions.println( "subsampling factors must be multiples of the previous level: " + subsampling );
+					return false;
+				}
+
+		this.newSpimData = ExportSpimData2TIFF.assembleSpimData2( newTimepoints, newViewSetups, xmlFile.getParentFile() );
+
+		return newSpimData != null;
+	}
+
+	@Override
+	public ImgExport newInstance() { return new ExportN5(); }
+
+	@Override
+	public String getDescription() { return "Save as new XML Project (N5)"; }
+}
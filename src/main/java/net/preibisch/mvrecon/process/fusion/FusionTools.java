@@ -22,6 +22,7 @@
  */
 package net.preibisch.mvrecon.process.fusion;
 
+import java.io.File;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -63,6 +64,9 @@ import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.DiskCachedCellImgFactory;
+import net.imglib2.cache.img.DiskCachedCellImgOptions;
+import net.imglib2.cache.img.DiskCachedCellImgOptions.CacheType;
 import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
 import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
 import net.imglib2.cache.img.SingleCellArrayImg;
@@ -113,6 +117,12 @@ public class FusionTools
 	public static double defaultContentBasedSigma1 = 20;
 	public static double defaultContentBasedSigma2 = 40;
 
+	// compute the content-based weights on a downsampled image, block by block (see DownsampledContentBasedRealRandomAccessible)
+	public static boolean downsampledContentBased = true;
+
+	// if not null, the downsampled content-based weights of each view are saved to and reused from this N5 container
+	public static File contentBasedWeightsN5 = null;
+
 	public static long numPixels( final Interval bb, final double downsampling )
 	{
 		final long[] min = new long[ bb.numDimensions() ];
@@ -390,6 +400,7 @@ public class FusionTools
 
 		final ArrayList< RandomAccessibleInterval< FloatType > > images = new ArrayList<>();
 		final ArrayList< RandomAccessibleInterval< FloatType > > weights = new ArrayList<>();
+		final ArrayList< Interval > viewIntervals = new ArrayList<>();
 
 		for ( final ViewId viewId : views )
 		{
@@ -414,6 +425,9 @@ public class FusionTools
 
 			images.add( TransformView.transformView( inputImg, model, bb, 0, interpolation ) );
 
+			// the part of the output this view contributes to, so each block only iterates overlapping views
+			viewIntervals.add( TransformView.transformedInterval( inputImg, model, bb ) );
+
 			// add all (or no) weighting schemes
 			if ( useBlending || useContentBased )
 			{
@@ -440,7 +454,10 @@ public class FusionTools
 					// adjust both for z-scaling (anisotropy), downsampling, and registrations itself
 					adjustContentBased( viewDescriptions.get( viewId ), sigma1, sigma2, model );
 
-					transformedContentBased = TransformWeight.transformContentBased( inputImg, new CellImgFactory< ComplexFloatType >(), sigma1, sigma2, model, bb );
+					if ( downsampledContentBased )
+						transformedContentBased = TransformWeight.transformContentBased( inputImg, sigma1, sigma2, contentBasedWeightsN5, contentBasedWeightsDataset( viewId ), model, bb );
+					else
+						transformedContentBased = TransformWeight.transformContentBased( inputImg, new CellImgFactory< ComplexFloatType >(), sigma1, sigma2, model, bb );
 				}
 
 				if ( useContentBased && useBlending )
@@ -469,7 +486,7 @@ public class FusionTools
 			}
 		}
 
-		return new ValuePair<>( new FusedRandomAccessibleInterval( new FinalInterval( getFusedZeroMinInterval( bb ) ), images, weights ), bbTransform );
+		return new ValuePair<>( new FusedRandomAccessibleInterval( new FinalInterval( getFusedZeroMinInterval( bb ) ), images, weights, viewIntervals ), bbTransform );
 	}
 
 	@SuppressWarnings("unchecked")
@@ -606,6 +623,15 @@ public class FusionTools
 		}
 	}
 
+	/**
+	 * @param viewId - the view
+	 * @return the dataset of the content-based weights of a view in contentBasedWeightsN5
+	 */
+	public static String contentBasedWeightsDataset( final ViewId viewId )
+	{
+		return "setup" + viewId.getViewSetupId() + "/timepoint" + viewId.getTimePointId();
+	}
+
 	/**
 	 * Compute how much sigma in the input has to be applied so the target values of sigma1 and 2 are achieved in the fused image
 	 *
@@ -705,7 +731,7 @@ public class FusionTools
 			public void load( final SingleCellArrayImg< T, ? > cell ) throws Exception
 			{
 				final Cursor< T > cursor = cell.localizingCursor();
-				final RandomAccess< T > ra = in.randomAccess();
+				final RandomAccess< T > ra = in.randomAccess( cell );
 				
 				while( cursor.hasNext() )
 				{
@@ -722,6 +748,38 @@ public class FusionTools
 		return translateIfNecessary( input, factory.create( dim, type, loader ) );
 	}
 
+	/**
+	 * Creates an ImgFactory for writable images that are larger than RAM. Only maxCacheSize cells are held in memory
+	 * (LRU), all other cells are written to a temporary directory when they are evicted and loaded again on access.
+	 * The temporary files are deleted when the JVM exits.
+	 *
+	 * @param tempDirectory - where to write the evicted cells (null means the system default temp directory)
+	 * @param maxCacheSize - max number of cells in RAM
+	 * @param type - the type
+	 * @param cellDim - the cell size
+	 * @param <T> pixel type
+	 * @return the factory
+	 */
+	public static < T extends NativeType< T > > DiskCachedCellImgFactory< T > createDiskCachedFactory(
+			final File tempDirectory,
+			final long maxCacheSize,
+			final T type,
+			final int... cellDim )
+	{
+		DiskCachedCellImgOptions options = DiskCachedCellImgOptions.options()
+				.cellDimensions( cellDim )
+				.cacheType( CacheType.BOUNDED )
+				.maxCacheSize( maxCacheSize )
+				.dirtyAccesses( true )
+				.tempDirectoryPrefix( "mvr-cache-" )
+				.deleteCacheDirectoryOnExit( true );
+
+		if ( tempDirectory != null )
+			options = options.tempDirectory( tempDirectory.toPath() );
+
+		return new DiskCachedCellImgFactory<>( type, options );
+	}
+
 	public static < T extends Type< T > > RandomAccessibleInterval< T > copyImg( final RandomAccessibleInterval< T > input, final ImgFactory< T > factory, final T type, final ExecutorService service  )
 	{
 		return copyImg( input, factory, type, service, false );
@@ -7,13 +7,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import mpicbg.models.Affine1D;
 import mpicbg.models.AffineModel1D;
 import mpicbg.models.IllDefinedDataPointsException;
 import mpicbg.models.Model;
 import mpicbg.models.NotEnoughDataPointsException;
-import mpicbg.models.Point;
 import mpicbg.models.PointMatch;
 import mpicbg.models.Tile;
 import mpicbg.models.TileConfiguration;
@@ -33,8 +35,10 @@ import net.imglib2.util.Util;
 import net.imglib2.util.ValuePair;
 import net.imglib2.view.Views;
 import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.Threads;
 import net.preibisch.mvrecon.fiji.spimdata.intensityadjust.IntensityAdjustments;
 import net.preibisch.mvrecon.process.fusion.FusionTools;
+import net.preibisch.mvrecon.process.fusion.ImagePortion;
 import net.preibisch.mvrecon.process.fusion.transformed.TransformView;
 import net.preibisch.mvrecon.process.fusion.transformed.TransformVirtual;
 import net.preibisch.mvrecon.process.downsampling.DownsampleTools;
@@ -59,6 +63,41 @@ public class IntensityAdjustmentTools
 			double downsampling,
 			final int maxMatches,
 			final Map< ? extends ViewId, AffineModel1D > existingAdjustments )
+	{
+		final ExecutorService service = Threads.createFixedExecutorService();
+
+		final HashMap< ViewId, AffineModel1D > newModels = computeIntensityAdjustment( spimData, viewIds, intensityModel, bb, downsampling, maxMatches, existingAdjustments, service );
+
+		service.shutdown();
+
+		return newModels;
+	}
+
+	/**
+	 * Computes intensity adjustments for all views using corresponding intensities in the overlapping areas. The bounding box
+	 * is sampled in parallel (in blocks), at most maxMatches randomly selected corresponding intensities are kept for each pair
+	 * of views (reservoir sampling).
+	 *
+	 * @param spimData - the data
+	 * @param viewIds - the views to adjust
+	 * @param intensityModel - the intensity model
+	 * @param bb - the bounding box in which the intensities are compared
+	 * @param downsampling - downsampling for the comparison (Double.NaN means no downsampling)
+	 * @param maxMatches - maximal number of corresponding intensities per pair of views
+	 * @param existingAdjustments - existing adjustments that are applied first and are updated (can be null)
+	 * @param service - the ExecutorService
+	 * @param <M> - which model type
+	 * @return the adjustments for each view
+	 */
+	public static < M extends Model< M > & Affine1D< M > > HashMap< ViewId, AffineModel1D > computeIntensityAdjustment(
+			final AbstractSpimData< ? > spimData,
+			final List< ? extends ViewId > viewIds,
+			final M intensityModel,
+			Interval bb,
+			double downsampling,
+			final int maxMatches,
+			final Map< ? extends ViewId, AffineModel1D > existingAdjustments,
+			final ExecutorService service )
 	{
 		if ( !Double.isNaN( downsampling ) )
 			bb = TransformVirtual.scaleBoundingBox( bb, 1.0 / downsampling );
@@ -99,57 +138,102 @@ public class IntensityAdjustmentTools
 		final int m = images.size();
 
 		final HashMap< Integer, ViewId > viewMap = new HashMap<>();
-		final Cursor< FloatType > cursor = Views.iterable( images.get( 0 ) ).localizingCursor();
-		final ArrayList< RandomAccess< FloatType > > accesses = new ArrayList<>();
 
 		for ( int i = 0; i < m; ++i )
-		{
-			accesses.add( images.get( i ).randomAccess() );
 			viewMap.put( i, viewIds.get( i ) );
-		}
 
-		final HashMap< Pair< Integer, Integer >, ArrayList< PointMatch > > intensityMatches = new HashMap<>();
+		// one reservoir for each pair i < j, indexed by i * m + j
+		final IntensityReservoir[] reservoirs = new IntensityReservoir[ m * m ];
 
 		for ( int i = 0; i < m - 1; ++i )
 			for ( int j = i + 1; j < m; ++j )
-				intensityMatches.put( new ValuePair< Integer, Integer >( i, j ), new ArrayList<>() );
+				reservoirs[ i * m + j ] = new IntensityReservoir( maxMatches );
 
-		final ArrayList< Pair< Integer, Float > > values = new ArrayList<>();
+		final Vector< ImagePortion > portions = FusionTools.divideIntoPortions( Views.iterable( images.get( 0 ) ).size() );
+		final ArrayList< Callable< Void > > tasks = new ArrayList<>();
 
-		while ( cursor.hasNext() )
-		{
-			cursor.fwd();
+		IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Sampling corresponding intensities in " + portions.size() + " blocks ... " );
 
-			values.clear();
+		for ( int p = 0; p < portions.size(); ++p )
+		{
+			final ImagePortion portion = portions.get( p );
+			final long seed = 344 + p;
 
-			for ( int i = 0; i < m; ++i )
+			tasks.add( new Callable< Void >()
 			{
-				final RandomAccess< FloatType > r = accesses.get( i );
-				r.setPosition( cursor );
+				@Override
+				public Void call() throws Exception
+				{
+					final Random rnd = new Random( seed );
 
-				final float value = r.get().get();
+					// reservoirs of this block, only created for pairs that actually overlap here
+					final IntensityReservoir[] local = new IntensityReservoir[ m * m ];
 
-				if ( value >= 0 )
-					values.add( new ValuePair< Integer, Float >( i, value ) );
-			}
+					final Cursor< FloatType > cursor = Views.iterable( images.get( 0 ) ).localizingCursor();
+					final ArrayList< RandomAccess< FloatType > > accesses = new ArrayList<>();
+
+					for ( int i = 0; i < m; ++i )
+						accesses.add( images.get( i ).randomAccess() );
 
-			// there are corresponding intensities
-			if ( values.size() > 1 )
-				for ( int i = 0; i < values.size() - 1; ++i )
-					for ( int j = i + 1; j < values.size(); ++j )
+					final int[] index = new int[ m ];
+					final float[] value = new float[ m ];
+
+					cursor.jumpFwd( portion.getStartPosition() );
+
+					for ( long l = 0; l < portion.getLoopSize(); ++l )
 					{
-						final ArrayList< PointMatch > matches = intensityMatches.get( new ValuePair< Integer, Integer >( values.get( i ).getA(), values.get( j ).getA() ) );
-						matches.add( new PointMatch( new Point( new double[] { values.get( i ).getB() } ), new Point( new double[] { values.get( j ).getB() } ) ) );
+						cursor.fwd();
+
+						int numValues = 0;
+
+						for ( int i = 0; i < m; ++i )
+						{
+							final RandomAccess< FloatType > r = accesses.get( i );
+							r.setPosition( cursor );
+
+							final float v = r.get().get();
+
+							if ( v >= 0 )
+							{
+								index[ numValues ] = i;
+								value[ numValues++ ] = v;
+							}
+						}
+
+						// there are corresponding intensities
+						for ( int i = 0; i < numValues - 1; ++i )
+							for ( int j = i + 1; j < numValues; ++j )
+							{
+								final int pair = index[ i ] * m + index[ j ];
+
+								if ( local[ pair ] == null )
+									local[ pair ] = new IntensityReservoir( maxMatches );
+
+								local[ pair ].add( value[ i ], value[ j ], rnd.nextDouble() );
+							}
 					}
-		}
 
-		final Random rnd = new Random( 344 );
-		for ( final ArrayList< PointMatch > matches : intensityMatches.values() )
-		{
-			while ( matches.size() >= maxMatches )
-				matches.remove( rnd.nextInt( matches.size() ) );
+					for ( int pair = 0; pair < local.length; ++pair )
+						if ( local[ pair ] != null )
+							synchronized ( reservoirs[ pair ] )
+							{
+								reservoirs[ pair ].addAll( local[ pair ] );
+							}
+
+					return null;
+				}
+			});
 		}
 
+		FusionTools.execTasks( tasks, service, "sample corresponding intensities" );
+
+		// only now create the PointMatches for the retained samples
+		final HashMap< Pair< Integer, Integer >, ArrayList< PointMatch > > intensityMatches = new HashMap<>();
+
+		for ( int i = 0; i < m - 1; ++i )
+			for ( int j = i + 1; j < m; ++j )
+				intensityMatches.put( new ValuePair< Integer, Integer >( i, j ), reservoirs[ i * m + j ].toPointMatches() );
+
 		final HashMap< ViewId, AffineModel1D > newModels = runGlobal( intensityMatches, viewMap, intensityModel );
 
 		if ( existingAdjustments != null )
@@ -0,0 +1,157 @@
+package net.preibisch.mvrecon.process.fusion.intensityadjust;
+
+import java.util.ArrayList;
+
+import mpicbg.models.Point;
+import mpicbg.models.PointMatch;
+
+/**
+ * Uniform random sample (of at most capacity entries) of corresponding intensity pairs, stored in primitive arrays.
+ *
+ * Every added pair gets a random key, the reservoir keeps the pairs with the smallest keys (bottom-k sampling)
+ * organized as a max-heap. This way two reservoirs of disjoint streams can be merged into a uniform sample of
+ * the union by simply adding all entries of one to the other, so every thread can sample its own part of the image.
+ */
+public class IntensityReservoir
+{
+	final int capacity;
+
+	float[] a, b;
+	double[] key;
+	int size = 0;
+	long seen = 0;
+
+	public IntensityReservoir( final int capacity )
+	{
+		this.capacity = Math.max( 1, capacity );
+
+		final int initialSize = Math.min( this.capacity, 16 );
+		this.a = new float[ initialSize ];
+		this.b = new float[ initialSize ];
+		this.key = new double[ initialSize ];
+	}
+
+	/**
+	 * @return number of retained pairs
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @return number of pairs that were offered to this reservoir (including merged reservoirs)
+	 */
+	public long numSeen() { return seen; }
+
+	/**
+	 * @param va - intensity in image A
+	 * @param vb - intensity in image B
+	 * @param k - a uniformly distributed random key
+	 */
+	public void add( final float va, final float vb, final double k )
+	{
+		++seen;
+		offer( va, vb, k );
+	}
+
+	/**
+	 * Adds all retained entries of another reservoir (of a disjoint stream)
+	 *
+	 * @param other - the other reservoir
+	 */
+	public void addAll( final IntensityReservoir other )
+	{
+		for ( int i = 0; i < other.size; ++i )
+			offer( other.a[ i ], other.b[ i ], other.key[ i ] );
+
+		seen += other.seen;
+	}
+
+	/**
+	 * @return a new PointMatch for every retained pair
+	 */
+	public ArrayList< PointMatch > toPointMatches()
+	{
+		final ArrayList< PointMatch > matches = new ArrayList<>( size );
+
+		for ( int i = 0; i < size; ++i )
+			matches.add( new PointMatch( new Point( new double[] { a[ i ] } ), new Point( new double[] { b[ i ] } ) ) );
+
+		return matches;
+	}
+
+	protected void offer( final float va, final float vb, final double k )
+	{
+		if ( size < capacity )
+		{
+			if ( size == key.length )
+				grow();
+
+			// append and sift up
+			int i = size++;
+
+			while ( i > 0 )
+			{
+				final int parent = ( i - 1 ) / 2;
+
+				if ( key[ parent ] >= k )
+					break;
+
+				set( i, parent );
+				i = parent;
+			}
+
+			a[ i ] = va;
+			b[ i ] = vb;
+			key[ i ] = k;
+		}
+		else if ( k < key[ 0 ] )
+		{
+			// replace the largest key and sift down
+			int i = 0;
+
+			while ( true )
+			{
+				final int left = 2 * i + 1;
+
+				if ( left >= size )
+					break;
+
+				final int right = left + 1;
+				final int child = ( right < size && key[ right ] > key[ left ] ) ? right : left;
+
+				if ( key[ child ] <= k )
+					break;
+
+				set( i, child );
+				i = child;
+			}
+
+			a[ i ] = va;
+			b[ i ] = vb;
+			key[ i ] = k;
+		}
+	}
+
+	protected void set( final int to, final int from )
+	{
+		a[ to ] = a[ from ];
+		b[ to ] = b[ from ];
+		key[ to ] = key[ from ];
+	}
+
+	protected void grow()
+	{
+		final int newSize = (int)Math.min( capacity, Math.max( 16l, 2l * key.length ) );
+
+		final float[] newA = new float[ newSize ];
+		final float[] newB = new float[ newSize ];
+		final double[] newKey = new double[ newSize ];
+
+		System.arraycopy( a, 0, newA, 0, size );
+		System.arraycopy( b, 0, newB, 0, size );
+		System.arraycopy( key, 0, newKey, 0, size );
+
+		this.a = newA;
+		this.b = newB;
+		this.key = newKey;
+	}
+}
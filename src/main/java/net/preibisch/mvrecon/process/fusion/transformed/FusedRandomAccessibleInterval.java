@@ -22,6 +22,7 @@
  */
 package net.preibisch.mvrecon.process.fusion.transformed;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import net.imglib2.Interval;
@@ -40,10 +41,21 @@ public class FusedRandomAccessibleInterval implements RandomAccessibleInterval<
 	final List< ? extends RandomAccessible< FloatType > > images;
 	final List< ? extends RandomAccessible< FloatType > > weights;
 
+	// the area of the fused image each view contributes to (or null if unknown)
+	final List< ? extends Interval > viewIntervals;
+
+	/**
+	 * @param interval - the interval of the fused image
+	 * @param images - the transformed images
+	 * @param weights - the transformed weights (or null)
+	 * @param viewIntervals - for each image the interval of the fused image it contributes to, used to only
+	 * iterate views that overlap a requested block when calling randomAccess( interval ) (or null to always iterate all views)
+	 */
 	public FusedRandomAccessibleInterval(
 			final Interval interval,
 			final List< ? extends RandomAccessible< FloatType > > images,
-			final List< ? extends RandomAccessible< FloatType > > weights )
+			final List< ? extends RandomAccessible< FloatType > > weights,
+			final List< ? extends Interval > viewIntervals )
 	{
 		this.n = interval.numDimensions();
 		this.interval = interval;
@@ -59,6 +71,19 @@ public class FusedRandomAccessibleInterval implements RandomAccessibleInterval<
 			if ( this.images.size() != this.weights.size() )
 				throw new RuntimeException( "Images and weights do not have the same size: " + images.size() + " != " + weights.size() );
 		}
+
+		if ( viewIntervals != null && viewIntervals.size() != images.size() )
+			throw new RuntimeException( "Images and view intervals do not have the same size: " + images.size() + " != " + viewIntervals.size() );
+
+		this.viewIntervals = viewIntervals;
+	}
+
+	public FusedRandomAccessibleInterval(
+			final Interval interval,
+			final List< ? extends RandomAccessible< FloatType > > images,
+			final List< ? extends RandomAccessible< FloatType > > weights )
+	{
+		this( interval, images, weights, null );
 	}
 
 	public FusedRandomAccessibleInterval(
@@ -71,6 +96,7 @@ public class FusedRandomAccessibleInterval implements RandomAccessibleInterval<
 	public Interval getInterval() { return interval; }
 	public List< ? extends RandomAccessible< FloatType > > getImages() { return images; }
 	public List< ? extends RandomAccessible< FloatType > > getWeights() { return weights; }
+	public List< ? extends Interval > getViewIntervals() { return viewIntervals; }
 
 	@Override
 	public int numDimensions()
@@ -87,10 +113,43 @@ public class FusedRandomAccessibleInterval implements RandomAccessibleInterval<
 			return new FusedRandomAccess( n, images, weights );
 	}
 
+	/**
+	 * Returns a RandomAccess that is only valid inside the requested interval. If the intervals of the views
+	 * are known, only those views that overlap the interval are iterated for each pixel.
+	 */
 	@Override
-	public RandomAccess< FloatType > randomAccess( Interval interval )
+	public RandomAccess< FloatType > randomAccess( final Interval interval )
 	{
-		return randomAccess();
+		if ( viewIntervals == null )
+			return randomAccess();
+
+		final ArrayList< RandomAccessible< FloatType > > overlappingImages = new ArrayList<>();
+		final ArrayList< RandomAccessible< FloatType > > overlappingWeights = new ArrayList<>();
+
+		for ( int j = 0; j < images.size(); ++j )
+		{
+			if ( overlaps( viewIntervals.get( j ), interval ) )
+			{
+				overlappingImages.add( images.get( j ) );
+
+				if ( weights != null )
+					overlappingWeights.add( weights.get( j ) );
+			}
+		}
+
+		if ( weights == null )
+			return new FusedRandomAccessNoWeights( n, overlappingImages );
+		else
+			return new FusedRandomAccess( n, overlappingImages, overlappingWeights );
+	}
+
+	public static boolean overlaps( final Interval a, final Interval b )
+	{
+		for ( int d = 0; d < a.numDimensions(); ++d )
+			if ( a.max( d ) < b.min( d ) || a.min( d ) > b.max( d ) )
+				return false;
+
+		return true;
 	}
 
 	@Override
@@ -0,0 +1,210 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.fusion.transformed;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Keeps track of the inverse-transformed position of a RandomAccess that is moved in raster order, so the
+ * 3x4 matrix multiplication is only necessary after an absolute setPosition(). Every fwd/bck/move just adds the
+ * corresponding column of the inverse matrix.
+ *
+ * It also remembers for how many more steps along x the transformed position is known to stay inside (or outside)
+ * of an interval, so the intersection test can be skipped for whole runs of a line.
+ */
+public class InverseAffineStepper
+{
+	final double i00, i01, i02, i03, i10, i11, i12, i13, i20, i21, i22, i23;
+
+	final double[] t = new double[ 3 ];
+	boolean valid = false;
+
+	// number of fwd(0) steps for which the inside/outside state is known, -1 if unknown
+	long run = -1;
+	boolean runInside;
+	private double lo, hi;
+
+	public InverseAffineStepper( final AffineTransform3D transform )
+	{
+		final double[] imatrix = transform.inverse().getRowPackedCopy();
+
+		this.i00 = imatrix[ 0 ];
+		this.i01 = imatrix[ 1 ];
+		this.i02 = imatrix[ 2 ];
+		this.i03 = imatrix[ 3 ];
+
+		this.i10 = imatrix[ 4 ];
+		this.i11 = imatrix[ 5 ];
+		this.i12 = imatrix[ 6 ];
+		this.i13 = imatrix[ 7 ];
+
+		this.i20 = imatrix[ 8 ];
+		this.i21 = imatrix[ 9 ];
+		this.i22 = imatrix[ 10 ];
+		this.i23 = imatrix[ 11 ];
+	}
+
+	/**
+	 * Call after an absolute position change, the transformed position is recomputed on the next get()
+	 */
+	public void invalidate()
+	{
+		valid = false;
+		run = -1;
+	}
+
+	public void fwd( final int d )
+	{
+		if ( valid )
+			add( 1, d );
+
+		if ( d == 0 && run > 0 )
+			--run;
+		else
+			run = -1;
+	}
+
+	public void bck( final int d )
+	{
+		if ( valid )
+			add( -1, d );
+
+		run = -1;
+	}
+
+	public void move( final long distance, final int d )
+	{
+		if ( valid )
+			add( distance, d );
+
+		if ( d == 0 && distance >= 0 && distance <= run )
+			run -= distance;
+		else
+			run = -1;
+	}
+
+	/**
+	 * @param x - position (including offset) in the output coordinate system
+	 * @param y - position (including offset) in the output coordinate system
+	 * @param z - position (including offset) in the output coordinate system
+	 * @return the inverse-transformed position (pixel coordinates of the input), do not modify
+	 */
+	public double[] get( final double x, final double y, final double z )
+	{
+		if ( !valid )
+		{
+			t[ 0 ] = x * i00 + y * i01 + z * i02 + i03;
+			t[ 1 ] = x * i10 + y * i11 + z * i12 + i13;
+			t[ 2 ] = x * i20 + y * i21 + z * i22 + i23;
+
+			valid = true;
+		}
+
+		return t;
+	}
+
+	/**
+	 * Same result as AbstractTransformedIntervalRandomAccess.intersectsLinearInterpolation() for the current
+	 * transformed position (get() must have been called), but only tests once per run along x.
+	 *
+	 * @param minX - min of the input interval
+	 * @param minY - min of the input interval
+	 * @param minZ - min of the input interval
+	 * @param maxX - max of the input interval
+	 * @param maxY - max of the input interval
+	 * @param maxZ - max of the input interval
+	 * @return true if strictly inside
+	 */
+	public boolean isInside( final long minX, final long minY, final long minZ, final long maxX, final long maxY, final long maxZ )
+	{
+		if ( run >= 0 )
+			return runInside;
+
+		final boolean inside =
+				t[ 0 ] > minX && t[ 1 ] > minY && t[ 2 ] > minZ &&
+				t[ 0 ] < maxX && t[ 1 ] < maxY && t[ 2 ] < maxZ;
+
+		// the open interval ( lo, hi ) of steps j along x for which the position is inside (the interval is convex)
+		lo = Double.NEGATIVE_INFINITY;
+		hi = Double.POSITIVE_INFINITY;
+
+		clip( t[ 0 ], i00, minX, maxX );
+		clip( t[ 1 ], i10, minY, maxY );
+		clip( t[ 2 ], i20, minZ, maxZ );
+
+		// one step of safety margin, afterwards the exact test is done again
+		final double steps;
+
+		if ( inside )
+			steps = Math.ceil( hi ) - 2;
+		else if ( lo >= hi || hi <= 0 )
+			steps = Double.POSITIVE_INFINITY;
+		else
+			steps = Math.floor( lo ) - 1;
+
+		run = steps >= 0 ? (long)Math.min( steps, Long.MAX_VALUE / 2 ) : -1;
+		runInside = inside;
+
+		return inside;
+	}
+
+	// intersects ( lo, hi ) with the steps j for which min < c + j * step < max
+	private void clip( final double c, final double step, final double min, final double max )
+	{
+		if ( step == 0 )
+		{
+			if ( !( c > min && c < max ) )
+				lo = Double.POSITIVE_INFINITY;
+		}
+		else
+		{
+			final double a = ( min - c ) / step;
+			final double b = ( max - c ) / step;
+
+			lo = Math.max( lo, Math.min( a, b ) );
+			hi = Math.min( hi, Math.max( a, b ) );
+		}
+	}
+
+	protected void add( final long distance, final int d )
+	{
+		if ( d == 0 )
+		{
+			t[ 0 ] += distance * i00;
+			t[ 1 ] += distance * i10;
+			t[ 2 ] += distance * i20;
+		}
+		else if ( d == 1 )
+		{
+			t[ 0 ] += distance * i01;
+			t[ 1 ] += distance * i11;
+			t[ 2 ] += distance * i21;
+		}
+		else
+		{
+			t[ 0 ] += distance * i02;
+			t[ 1 ] += distance * i12;
+			t[ 2 ] += distance * i22;
+		}
+	}
+}
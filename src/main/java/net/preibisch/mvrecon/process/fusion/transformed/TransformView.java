@@ -30,6 +30,7 @@ import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealInterval;
 import net.imglib2.interpolation.InterpolatorFactory;
 import net.imglib2.outofbounds.OutOfBoundsFactory;
 import net.imglib2.realtransform.AffineTransform3D;
@@ -40,6 +41,33 @@ import net.preibisch.mvrecon.process.downsampling.DownsampleTools;
 
 public class TransformView
 {
+	/**
+	 * Computes the part of the (zero-min) transformed image that an input image can contribute to.
+	 * 
+	 * @param input - the interval of the input image
+	 * @param transform - the affine transformation
+	 * @param boundingBox - the bounding box (after transformation)
+	 * @return the interval relative to the bounding box, enlarged by one pixel to account for interpolation
+	 */
+	public static Interval transformedInterval(
+			final Interval input,
+			final AffineTransform3D transform,
+			final Interval boundingBox )
+	{
+		final RealInterval bounds = transform.estimateBounds( input );
+
+		final long[] min = new long[ input.numDimensions() ];
+		final long[] max = new long[ input.numDimensions() ];
+
+		for ( int d = 0; d < min.length; ++d )
+		{
+			min[ d ] = (long)Math.floor( bounds.realMin( d ) ) - boundingBox.min( d ) - 1;
+			max[ d ] = (long)Math.ceil( bounds.realMax( d ) ) - boundingBox.min( d ) + 1;
+		}
+
+		return new FinalInterval( min, max );
+	}
+
 	/**
 	 * Creates a virtual construct that transforms and zero-mins.
 	 * 
@@ -22,6 +22,8 @@
  */
 package net.preibisch.mvrecon.process.fusion.transformed;
 
+import java.io.File;
+
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
@@ -35,6 +37,7 @@ import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.view.Views;
 import net.preibisch.mvrecon.process.fusion.transformed.weights.BlendingRealRandomAccessible;
 import net.preibisch.mvrecon.process.fusion.transformed.weights.ContentBasedRealRandomAccessible;
+import net.preibisch.mvrecon.process.fusion.transformed.weights.DownsampledContentBasedRealRandomAccessible;
 import net.preibisch.mvrecon.process.fusion.transformed.weights.TransformedRasteredRandomAccessible;
 import util.RealViews;
 
@@ -63,6 +66,44 @@ public class TransformWeight
 		}
 	}
 
+	/**
+	 * Content-based weights computed on a downsampled image, see {@link DownsampledContentBasedRealRandomAccessible}
+	 *
+	 * @param inputImg - the input image
+	 * @param sigma1 - first sigma
+	 * @param sigma2 - second sigma
+	 * @param n5Path - N5 container to save and reuse the weights (can be null)
+	 * @param dataset - the dataset in the N5 container (can be null)
+	 * @param transform - the affine transformation
+	 * @param boundingBox - the interval in which to create a transformed, rastered image
+	 * @param <T> pixel type
+	 * @return a zero-min RandomAccessibleInterval
+	 */
+	public static < T extends RealType< T > > RandomAccessibleInterval< FloatType > transformContentBased(
+			final RandomAccessibleInterval< T > inputImg,
+			final double[] sigma1,
+			final double[] sigma2,
+			final File n5Path,
+			final String dataset,
+			final AffineTransform3D transform,
+			final Interval boundingBox )
+	{
+		if ( inputImg.dimension( 2 ) == 1 && inputImg.min( 2 ) == 0 )
+		{
+			final double[] sigma1_2d = new double[]{ sigma1[ 0 ], sigma1[ 1 ] };
+			final double[] sigma2_2d = new double[]{ sigma2[ 0 ], sigma2[ 1 ] };
+
+			final DownsampledContentBasedRealRandomAccessible< T > content =
+					new DownsampledContentBasedRealRandomAccessible< T >( Views.hyperSlice( inputImg, 2, 0 ), sigma1_2d, sigma2_2d, n5Path, dataset );
+
+			return transformWeight( RealViews.addDimension( content ), transform, boundingBox );
+		}
+		else
+		{
+			return transformWeight( new DownsampledContentBasedRealRandomAccessible< T >( inputImg, sigma1, sigma2, n5Path, dataset ), transform, boundingBox );
+		}
+	}
+
 	public static RandomAccessibleInterval< FloatType > transformBlending(
 			final Interval inputImgInterval,
 			final float[] border,
@@ -51,9 +51,11 @@ public class TransformedInputGeneralRandomAccess< T extends RealType< T > > exte
 	final InterpolatorFactory< FloatType, RandomAccessible< FloatType > > interpolatorFactory;
 	final AffineTransform3D transform;
 	final long[] offset;
-	final float[] s, t;
 	final FloatType v;
 
+	// the inverse-transformed position is updated incrementally while moving
+	final InverseAffineStepper stepper;
+
 	final RealRandomAccess< FloatType > ir;
 	final int offsetX, offsetY, offsetZ;
 	final int imgMinX, imgMinY, imgMinZ;
@@ -86,8 +88,7 @@ public class TransformedInputGeneralRandomAccess< T extends RealType< T > > exte
 		this.interpolatorFactory = interpolatorFactory;
 		this.transform = transform;
 		this.offset = offset;
-		this.s = new float[ n ];
-		this.t = new float[ n ];
+		this.stepper = new InverseAffineStepper( transform );
 		this.v = new FloatType();
 
 		// extend input image and convert to floats
@@ -113,15 +114,9 @@ public class TransformedInputGeneralRandomAccess< T extends RealType< T > > exte
 	@Override
 	public FloatType get()
 	{
-		// go from PSI(Decon)_image local coordinate system to world coordinate system
-		s[ 0 ] = position[ 0 ] + offsetX;
-		s[ 1 ] = position[ 1 ] + offsetY;
-		s[ 2 ] = position[ 2 ] + offsetZ;
-
-		// go from world coordinate system to local coordinate system of input image (pixel coordinates)
-		transform.applyInverse( t, s );
-
-		ir.setPosition( t );
+		// go from PSI(Decon)_image local coordinate system to world coordinate system,
+		// and from world coordinate system to local coordinate system of input image (pixel coordinates)
+		ir.setPosition( stepper.get( position[ 0 ] + offsetX, position[ 1 ] + offsetY, position[ 2 ] + offsetZ ) );
 		return ir.get();
 	}
 
@@ -140,42 +135,59 @@ public class TransformedInputGeneralRandomAccess< T extends RealType< T > > exte
 	}
 
 	@Override
-	public void fwd( final int d ) { ++position[ d ]; }
+	public void fwd( final int d )
+	{
+		++position[ d ];
+		stepper.fwd( d );
+	}
 
 	@Override
-	public void bck( final int d ) { --position[ d ]; }
+	public void bck( final int d )
+	{
+		--position[ d ];
+		stepper.bck( d );
+	}
 
 	@Override
-	public void move( final int distance, final int d ) { position[ d ] += distance; }
+	public void move( final int distance, final int d )
+	{
+		position[ d ] += distance;
+		stepper.move( distance, d );
+	}
 
 	@Override
-	public void move( final long distance, final int d ) { position[ d ] += distance; }
+	public void move( final long distance, final int d )
+	{
+		position[ d ] += distance;
+		stepper.move( distance, d );
+	}
 
 	@Override
 	public void move( final Localizable localizable )
 	{
 		for ( int d = 0; d < n; ++d )
-			position[ d ] += localizable.getIntPosition( d );
+			move( localizable.getIntPosition( d ), d );
 	}
 
 	@Override
 	public void move( final int[] distance )
 	{
 		for ( int d = 0; d < n; ++d )
-			position[ d ] += distance[ d ];
+			move( distance[ d ], d );
 	}
 
 	@Override
 	public void move( final long[] distance )
 	{
 		for ( int d = 0; d < n; ++d )
-			position[ d ] += distance[ d ];
+			move( distance[ d ], d );
 	}
 
 	@Override
 	public void setPosition( final Localizable localizable )
 	{
 		localizable.localize( position );
+		stepper.invalidate();
 	}
 
 	@Override
@@ -183,6 +195,8 @@ public class TransformedInputGeneralRandomAccess< T extends RealType< T > > exte
 	{
 		for ( int d = 0; d < n; ++d )
 			position[ d ] = pos[ d ];
+
+		stepper.invalidate();
 	}
 
 	@Override
@@ -190,17 +204,21 @@ public class TransformedInputGeneralRandomAccess< T extends RealType< T > > exte
 	{
 		for ( int d = 0; d < n; ++d )
 			position[ d ] = ( int ) pos[ d ];
+
+		stepper.invalidate();
 	}
 
 	@Override
 	public void setPosition( final int pos, final int d )
 	{
 		position[ d ] = pos;
+		stepper.invalidate();
 	}
 
 	@Override
 	public void setPosition( final long pos, final int d )
 	{
 		position[ d ] = ( int ) pos;
+		stepper.invalidate();
 	}
 }
@@ -22,6 +22,7 @@
  */
 package net.preibisch.mvrecon.process.fusion.transformed;
 
+import net.imglib2.Localizable;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.interpolation.InterpolatorFactory;
@@ -39,7 +40,9 @@ import net.imglib2.type.numeric.real.FloatType;
 public class TransformedInputRandomAccess< T extends RealType< T > > extends AbstractTransformedImgRandomAccess< T >
 {
 	final AffineTransform3D transform;
-	final double[] s, t;
+
+	// the inverse-transformed position is updated incrementally while moving
+	final InverseAffineStepper stepper;
 
 	public TransformedInputRandomAccess(
 			final RandomAccessibleInterval< T > img, // from ImgLoader
@@ -53,23 +56,18 @@ public class TransformedInputRandomAccess< T extends RealType< T > > extends Abs
 		super( img, interpolatorFactory, hasMinValue, minValue, outside, offset );
 
 		this.transform = transform;
-		this.s = new double[ n ];
-		this.t = new double[ n ];
+		this.stepper = new InverseAffineStepper( transform );
 	}
 
 	@Override
 	public FloatType get()
 	{
-		// go from PSI(Decon)_image local coordinate system to world coordinate system
-		s[ 0 ] = position[ 0 ] + offsetX;
-		s[ 1 ] = position[ 1 ] + offsetY;
-		s[ 2 ] = position[ 2 ] + offsetZ;
-
-		// go from world coordinate system to local coordinate system of input image (pixel coordinates)
-		transform.applyInverse( t, s );
+		// go from PSI(Decon)_image local coordinate system to world coordinate system,
+		// and from world coordinate system to local coordinate system of input image (pixel coordinates)
+		final double[] t = stepper.get( position[ 0 ] + offsetX, position[ 1 ] + offsetY, position[ 2 ] + offsetZ );
 
 		// check if position t is inside of the input image (pixel coordinates)
-		if ( intersectsLinearInterpolation( t[ 0 ], t[ 1 ], t[ 2 ], imgMinX, imgMinY, imgMinZ, imgMaxX, imgMaxY, imgMaxZ ) )
+		if ( stepper.isInside( imgMinX, imgMinY, imgMinZ, imgMaxX, imgMaxY, imgMaxZ ) )
 		{
 			ir.setPosition( t );
 
@@ -81,6 +79,90 @@ public class TransformedInputRandomAccess< T extends RealType< T > > extends Abs
 		}
 	}
 
+	@Override
+	public void fwd( final int d )
+	{
+		super.fwd( d );
+		stepper.fwd( d );
+	}
+
+	@Override
+	public void bck( final int d )
+	{
+		super.bck( d );
+		stepper.bck( d );
+	}
+
+	@Override
+	public void move( final int distance, final int d )
+	{
+		super.move( distance, d );
+		stepper.move( distance, d );
+	}
+
+	@Override
+	public void move( final long distance, final int d )
+	{
+		super.move( distance, d );
+		stepper.move( distance, d );
+	}
+
+	@Override
+	public void move( final Localizable localizable )
+	{
+		for ( int d = 0; d < n; ++d )
+			move( localizable.getLongPosition( d ), d );
+	}
+
+	@Override
+	public void move( final int[] distance )
+	{
+		for ( int d = 0; d < n; ++d )
+			move( distance[ d ], d );
+	}
+
+	@Override
+	public void move( final long[] distance )
+	{
+		for ( int d = 0; d < n; ++d )
+			move( distance[ d ], d );
+	}
+
+	@Override
+	public void setPosition( final Localizable localizable )
+	{
+		super.setPosition( localizable );
+		stepper.invalidate();
+	}
+
+	@Override
+	public void setPosition( final int[] pos )
+	{
+		super.setPosition( pos );
+		stepper.invalidate();
+	}
+
+	@Override
+	public void setPosition( final long[] pos )
+	{
+		super.setPosition( pos );
+		stepper.invalidate();
+	}
+
+	@Override
+	public void setPosition( final int pos, final int d )
+	{
+		super.setPosition( pos, d );
+		stepper.invalidate();
+	}
+
+	@Override
+	public void setPosition( final long pos, final int d )
+	{
+		super.setPosition( pos, d );
+		stepper.invalidate();
+	}
+
 	@Override
 	public TransformedInputRandomAccess< T > copy()
 	{
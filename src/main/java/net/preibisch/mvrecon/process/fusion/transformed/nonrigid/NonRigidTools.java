@@ -55,6 +55,7 @@ import net.preibisch.mvrecon.process.fusion.transformed.weightcombination.Combin
 import net.preibisch.mvrecon.process.fusion.transformed.weightcombination.CombineWeightsRandomAccessibleInterval.CombineType;
 import net.preibisch.mvrecon.process.fusion.transformed.weights.BlendingRealRandomAccessible;
 import net.preibisch.mvrecon.process.fusion.transformed.weights.ContentBasedRealRandomAccessible;
+import net.preibisch.mvrecon.process.fusion.transformed.weights.DownsampledContentBasedRealRandomAccessible;
 import net.preibisch.mvrecon.process.downsampling.DownsampleTools;
 import net.preibisch.mvrecon.process.interestpointregistration.TransformationTools;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
@@ -373,12 +374,21 @@ public class NonRigidTools
 
 					IOFunctions.println( new Date( System.currentTimeMillis() ) + ": Estimating Entropy for " + Group.pvid( viewId ) );
 
-					if ( grid == null )
+					if ( grid == null && FusionTools.downsampledContentBased )
+						transformedContentBased = TransformWeight.transformContentBased( inputImg, sigma1, sigma2, FusionTools.contentBasedWeightsN5, FusionTools.contentBasedWeightsDataset( viewId ), modelAffine, bbDS );
+					else if ( grid == null )
 						transformedContentBased = TransformWeight.transformContentBased( inputImg, new CellImgFactory<>( new ComplexFloatType() ), sigma1, sigma2, modelAffine, bbDS );
 					else
 						transformedContentBased = 
 								NonRigidWeightTools.transformWeightNonRigidInterpolated(
-									new ContentBasedRealRandomAccessible(
+									FusionTools.downsampledContentBased ?
+										new DownsampledContentBasedRealRandomAccessible(
+											inputImg,
+											sigma1,
+											sigma2,
+											FusionTools.contentBasedWeightsN5,
+											FusionTools.contentBasedWeightsDataset( viewId ) ) :
+										new ContentBasedRealRandomAccessible(
 											inputImg,
 											new CellImgFactory<>( new ComplexFloatType() ),
 											sigma1,
@@ -0,0 +1,501 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.fusion.transformed.weights;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.n5.Lz4Compression;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealInterval;
+import net.imglib2.RealPoint;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.algorithm.convolution.kernel.SeparableSymmetricConvolution;
+import net.imglib2.algorithm.gauss3.Gauss3;
+import net.imglib2.converter.Converters;
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.Threads;
+import net.preibisch.mvrecon.process.fusion.FusionTools;
+import net.preibisch.mvrecon.process.fusion.ImagePortion;
+import net.preibisch.mvrecon.process.interestpointdetection.methods.weightedgauss.Lazy;
+
+/**
+ * Computes the content-based fusion weights like {@link ContentBasedRealRandomAccessible}, but on a downsampled copy of the
+ * input (the entropy approximation is very smooth anyway). The downsampled image and the weights are lazily computed blocks
+ * (real-space gaussian convolutions with a halo) held in a memory-sensitive cache, only the normalization needs one pass
+ * over all blocks. The weights are linearly interpolated up to the resolution of the input.
+ *
+ * Optionally the (normalized, downsampled) weights are saved into an N5 container and reused as long as the input interval,
+ * the sigmas and the downsampling are identical.
+ *
+ * @param <T> pixel type
+ */
+public class DownsampledContentBasedRealRandomAccessible< T extends RealType< T > > implements RealRandomAccessible< FloatType >
+{
+	// the sigmas in the downsampled image should not get smaller than this
+	public static double minDownsampledSigma = 4.0;
+	public static int defaultBlockSize = 32;
+
+	final public static String sigma1Key = "sigma1";
+	final public static String sigma2Key = "sigma2";
+	final public static String downsamplingKey = "downsampling";
+	final public static String inputMinKey = "inputMin";
+	final public static String inputMaxKey = "inputMax";
+
+	final int n;
+	final long[] min, max;
+	final int[] downsampling;
+
+	/**
+	 * The normalized, downsampled content-based weights (zero-min)
+	 */
+	final RandomAccessibleInterval< FloatType > weights;
+
+	public DownsampledContentBasedRealRandomAccessible(
+			final RandomAccessibleInterval< T > input,
+			final double[] sigma1,
+			final double[] sigma2 )
+	{
+		this( input, sigma1, sigma2, null, null );
+	}
+
+	/**
+	 * @param input - the input image
+	 * @param sigma1 - first sigma (in pixels of the input)
+	 * @param sigma2 - second sigma (in pixels of the input)
+	 * @param n5Path - N5 container to save and reuse the weights (can be null)
+	 * @param dataset - the dataset in the N5 container (can be null)
+	 */
+	public DownsampledContentBasedRealRandomAccessible(
+			final RandomAccessibleInterval< T > input,
+			final double[] sigma1,
+			final double[] sigma2,
+			final File n5Path,
+			final String dataset )
+	{
+		this.n = input.numDimensions();
+		this.min = Intervals.minAsLongArray( input );
+		this.max = Intervals.maxAsLongArray( input );
+		this.downsampling = downsamplingFor( sigma1 );
+
+		final RandomAccessibleInterval< FloatType > loaded = ( n5Path == null || dataset == null ) ? null : load( n5Path, dataset, sigma1, sigma2 );
+
+		if ( loaded != null )
+		{
+			this.weights = loaded;
+		}
+		else
+		{
+			this.weights = approximateEntropy( input, sigma1, sigma2 );
+
+			if ( n5Path != null && dataset != null )
+				save( n5Path, dataset, sigma1, sigma2 );
+		}
+	}
+
+	public RandomAccessibleInterval< FloatType > getDownsampledContentBasedImg() { return weights; }
+	public int[] getDownsampling() { return downsampling.clone(); }
+
+	/**
+	 * @param sigma1 - the first sigma of the content-based fusion
+	 * @return the downsampling per dimension so the first sigma is not smaller than minDownsampledSigma
+	 */
+	public static int[] downsamplingFor( final double[] sigma1 )
+	{
+		final int[] downsampling = new int[ sigma1.length ];
+
+		for ( int d = 0; d < sigma1.length; ++d )
+			downsampling[ d ] = Math.max( 1, (int)Math.floor( sigma1[ d ] / minDownsampledSigma ) );
+
+		return downsampling;
+	}
+
+	protected RandomAccessibleInterval< FloatType > approximateEntropy(
+			final RandomAccessibleInterval< T > input,
+			final double[] sigma1,
+			final double[] sigma2 )
+	{
+		final RandomAccessibleInterval< T > in = Views.zeroMin( input );
+		final long[] dim = Intervals.dimensionsAsLongArray( input );
+
+		final long[] dimDS = new long[ n ];
+		final double[] sigma1DS = new double[ n ];
+		final double[] sigma2DS = new double[ n ];
+
+		for ( int d = 0; d < n; ++d )
+		{
+			dimDS[ d ] = ( dim[ d ] + downsampling[ d ] - 1 ) / downsampling[ d ];
+			sigma1DS[ d ] = sigma1[ d ] / downsampling[ d ];
+			sigma2DS[ d ] = sigma2[ d ] / downsampling[ d ];
+		}
+
+		final int[] blockSize = Util.getArrayFromValue( defaultBlockSize, n );
+		final FinalInterval intervalDS = new FinalInterval( dimDS );
+
+		final RandomAccessibleInterval< FloatType > inputDS = Lazy.process(
+				intervalDS, blockSize, new FloatType(), AccessFlags.setOf(),
+				cell -> downsample( in, dim, downsampling, cell ) );
+
+		final RandomAccessibleInterval< FloatType > entropy = Lazy.process(
+				intervalDS, blockSize, new FloatType(), AccessFlags.setOf(),
+				cell -> approximateEntropy( Views.extendMirrorSingle( inputDS ), sigma1DS, sigma2DS, cell ) );
+
+		IOFunctions.println(
+				"(" + new Date( System.currentTimeMillis() ) + "): Approximating entropy on " + Util.printInterval( intervalDS ) +
+				" (downsampling " + Util.printCoordinates( downsampling ) + ")" );
+
+		// computes all blocks once, they stay in the cache as long as there is enough memory
+		final float[] minMax = minMax( entropy );
+		final float minE = minMax[ 0 ];
+		final float diff = minMax[ 1 ] - minMax[ 0 ];
+
+		if ( Float.isNaN( diff ) || Float.isInfinite( diff ) || diff == 0 )
+		{
+			IOFunctions.println( "Cannot normalize image, min=" + minMax[ 0 ] + "  + max=" + minMax[ 1 ] );
+			return entropy;
+		}
+
+		// normalize to [0...1]
+		return Converters.convert( entropy, ( a, b ) -> b.set( ( a.get() - minE ) / diff ), new FloatType() );
+	}
+
+	/**
+	 * Computes ( ( I - I*sigma1 )^2 ) * sigma2 for one block
+	 *
+	 * @param input - the (downsampled) input, must be defined outside of the block
+	 * @param sigma1 - first sigma
+	 * @param sigma2 - second sigma
+	 * @param block - the block to compute
+	 */
+	public static void approximateEntropy(
+			final RandomAccessible< FloatType > input,
+			final double[] sigma1,
+			final double[] sigma2,
+			final RandomAccessibleInterval< FloatType > block )
+	{
+		final int n = block.numDimensions();
+		final double[][] halfkernels2 = Gauss3.halfkernels( sigma2 );
+
+		// ( I - I*sigma1 )^2 is needed for the block plus the support of the second gaussian
+		final long[] minTmp = new long[ n ];
+		final long[] dimTmp = new long[ n ];
+
+		for ( int d = 0; d < n; ++d )
+		{
+			minTmp[ d ] = block.min( d ) - ( halfkernels2[ d ].length - 1 );
+			dimTmp[ d ] = block.dimension( d ) + 2 * ( halfkernels2[ d ].length - 1 );
+		}
+
+		final Img< FloatType > tmpImg = ArrayImgs.floats( dimTmp );
+		final RandomAccessibleInterval< FloatType > tmp = Views.translate( tmpImg, minTmp );
+
+		// the blocks are computed by the threads that access them, so each block is computed single-threaded
+		final ExecutorService service = Executors.newSingleThreadExecutor();
+
+		try
+		{
+			// compute I*sigma1
+			SeparableSymmetricConvolution.convolve( Gauss3.halfkernels( sigma1 ), input, tmp, service );
+
+			// compute ( I - I*sigma1 )^2
+			final Cursor< FloatType > c = Views.flatIterable( tmp ).cursor();
+			final Cursor< FloatType > i = Views.flatIterable( Views.interval( input, tmp ) ).cursor();
+
+			while ( c.hasNext() )
+			{
+				final FloatType t = c.next();
+				final float diff = t.get() - i.next().get();
+				t.set( diff * diff );
+			}
+
+			// compute ( ( I - I*sigma1 )^2 ) * sigma2
+			SeparableSymmetricConvolution.convolve( halfkernels2, Views.extendMirrorSingle( tmp ), block, service );
+		}
+		catch ( final IncompatibleTypeException e )
+		{
+			throw new RuntimeException( e );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	/**
+	 * Computes one block of the downsampled image, every pixel is the average of the corresponding input pixels
+	 *
+	 * @param input - the zero-min input
+	 * @param dim - dimensions of the input
+	 * @param downsampling - downsampling per dimension
+	 * @param block - the block of the downsampled image to compute
+	 * @param <T> pixel type
+	 */
+	public static < T extends RealType< T > > void downsample(
+			final RandomAccessibleInterval< T > input,
+			final long[] dim,
+			final int[] downsampling,
+			final RandomAccessibleInterval< FloatType > block )
+	{
+		final int n = block.numDimensions();
+
+		final long[] blockMin = Intervals.minAsLongArray( block );
+		final long[] blockDim = Intervals.dimensionsAsLongArray( block );
+
+		final long[] inMin = new long[ n ];
+		final long[] inMax = new long[ n ];
+
+		for ( int d = 0; d < n; ++d )
+		{
+			inMin[ d ] = blockMin[ d ] * downsampling[ d ];
+			inMax[ d ] = Math.min( ( blockMin[ d ] + blockDim[ d ] ) * downsampling[ d ], dim[ d ] ) - 1;
+		}
+
+		final double[] sum = new double[ (int)Intervals.numElements( block ) ];
+		final int[] count = new int[ sum.length ];
+
+		final Cursor< T > c = Views.flatIterable( Views.interval( input, inMin, inMax ) ).localizingCursor();
+
+		while ( c.hasNext() )
+		{
+			final double v = c.next().getRealDouble();
+
+			int i = 0;
+
+			for ( int d = n - 1; d >= 0; --d )
+				i = i * (int)blockDim[ d ] + (int)( c.getLongPosition( d ) / downsampling[ d ] - blockMin[ d ] );
+
+			sum[ i ] += v;
+			++count[ i ];
+		}
+
+		final Cursor< FloatType > o = Views.flatIterable( block ).cursor();
+
+		for ( int i = 0; i < sum.length; ++i )
+			o.next().set( count[ i ] == 0 ? 0 : (float)( sum[ i ] / count[ i ] ) );
+	}
+
+	/**
+	 * Multithreaded min/max of a (lazily computed) image, each thread iterates different cells
+	 *
+	 * @param img - the image
+	 * @return min and max
+	 */
+	protected static float[] minMax( final RandomAccessibleInterval< FloatType > img )
+	{
+		final Vector< ImagePortion > portions = FusionTools.divideIntoPortions( Views.iterable( img ).size() );
+		final ArrayList< Callable< float[] > > tasks = new ArrayList<>();
+
+		for ( final ImagePortion portion : portions )
+		{
+			tasks.add( () ->
+			{
+				float min = Float.MAX_VALUE;
+				float max = -Float.MAX_VALUE;
+
+				final Cursor< FloatType > c = Views.iterable( img ).cursor();
+				c.jumpFwd( portion.getStartPosition() );
+
+				for ( long j = 0; j < portion.getLoopSize(); ++j )
+				{
+					final float v = c.next().get();
+
+					min = Math.min( min, v );
+					max = Math.max( max, v );
+				}
+
+				return new float[] { min, max };
+			});
+		}
+
+		final float[] minMax = new float[] { Float.MAX_VALUE, -Float.MAX_VALUE };
+		final ExecutorService service = Threads.createFixedExecutorService();
+
+		try
+		{
+			for ( final Future< float[] > future : service.invokeAll( tasks ) )
+			{
+				final float[] result = future.get();
+
+				minMax[ 0 ] = Math.min( minMax[ 0 ], result[ 0 ] );
+				minMax[ 1 ] = Math.max( minMax[ 1 ], result[ 1 ] );
+			}
+		}
+		catch ( final Exception e )
+		{
+			IOFunctions.println( "Failed to compute min/max of content-based weights: " + e );
+			e.printStackTrace();
+		}
+		finally
+		{
+			service.shutdown();
+		}
+
+		return minMax;
+	}
+
+	/**
+	 * @return the weights if the dataset exists and was computed for the same input interval, sigmas and downsampling, otherwise null
+	 */
+	protected RandomAccessibleInterval< FloatType > load( final File n5Path, final String dataset, final double[] sigma1, final double[] sigma2 )
+	{
+		if ( !n5Path.exists() )
+			return null;
+
+		try
+		{
+			final N5Reader n5 = new N5FSReader( n5Path.getAbsolutePath() );
+
+			if ( !n5.datasetExists( dataset ) ||
+					!Arrays.equals( sigma1, n5.getAttribute( dataset, sigma1Key, double[].class ) ) ||
+					!Arrays.equals( sigma2, n5.getAttribute( dataset, sigma2Key, double[].class ) ) ||
+					!Arrays.equals( downsampling, n5.getAttribute( dataset, downsamplingKey, int[].class ) ) ||
+					!Arrays.equals( min, n5.getAttribute( dataset, inputMinKey, long[].class ) ) ||
+					!Arrays.equals( max, n5.getAttribute( dataset, inputMaxKey, long[].class ) ) )
+				return null;
+
+			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Reusing content-based weights from '" + n5Path.getAbsolutePath() + "/" + dataset + "'" );
+
+			return N5Utils.open( n5, dataset );
+		}
+		catch ( final Exception e )
+		{
+			IOFunctions.println( "Cannot load content-based weights from '" + n5Path.getAbsolutePath() + "/" + dataset + "': " + e );
+			return null;
+		}
+	}
+
+	protected void save( final File n5Path, final String dataset, final double[] sigma1, final double[] sigma2 )
+	{
+		final ExecutorService service = Threads.createFixedExecutorService();
+
+		try
+		{
+			final N5Writer n5 = new N5FSWriter( n5Path.getAbsolutePath() );
+
+			if ( n5.exists( dataset ) )
+				n5.remove( dataset );
+
+			N5Utils.save( weights, n5, dataset, Util.getArrayFromValue( defaultBlockSize, n ), new Lz4Compression(), service );
+
+			n5.setAttribute( dataset, sigma1Key, sigma1 );
+			n5.setAttribute( dataset, sigma2Key, sigma2 );
+			n5.setAttribute( dataset, downsamplingKey, downsampling );
+			n5.setAttribute( dataset, inputMinKey, min );
+			n5.setAttribute( dataset, inputMaxKey, max );
+
+			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Saved content-based weights to '" + n5Path.getAbsolutePath() + "/" + dataset + "'" );
+		}
+		catch ( final Exception e )
+		{
+			IOFunctions.println( "Could not save content-based weights to '" + n5Path.getAbsolutePath() + "/" + dataset + "': " + e );
+			e.printStackTrace();
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	@Override
+	public int numDimensions() { return n; }
+
+	@Override
+	public RealRandomAccess< FloatType > realRandomAccess() { return new DownsampledRealRandomAccess(); }
+
+	@Override
+	public RealRandomAccess< FloatType > realRandomAccess( final RealInterval interval ) { return realRandomAccess(); }
+
+	/**
+	 * Maps the position from the input to the downsampled weights (the center of a block of input pixels is the position of the
+	 * downsampled pixel), returns zero outside of the input.
+	 */
+	protected class DownsampledRealRandomAccess extends RealPoint implements RealRandomAccess< FloatType >
+	{
+		final RealRandomAccess< FloatType > interpolator;
+		final FloatType zero = new FloatType();
+
+		public DownsampledRealRandomAccess()
+		{
+			super( n );
+
+			this.interpolator = Views.interpolate(
+					Views.extendBorder( weights ),
+					new NLinearInterpolatorFactory< FloatType >() ).realRandomAccess();
+		}
+
+		@Override
+		public FloatType get()
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				final double p = position[ d ];
+
+				if ( p < min[ d ] - 0.5 || p > max[ d ] + 0.5 )
+					return zero;
+
+				interpolator.setPosition( ( p - min[ d ] - ( downsampling[ d ] - 1 ) / 2.0 ) / downsampling[ d ], d );
+			}
+
+			return interpolator.get();
+		}
+
+		@Override
+		public DownsampledRealRandomAccess copy() { return copyRealRandomAccess(); }
+
+		@Override
+		public DownsampledRealRandomAccess copyRealRandomAccess()
+		{
+			final DownsampledRealRandomAccess copy = new DownsampledRealRandomAccess();
+			copy.setPosition( this );
+			return copy;
+		}
+	}
+
+}
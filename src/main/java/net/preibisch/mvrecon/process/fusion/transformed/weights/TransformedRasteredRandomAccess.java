@@ -28,6 +28,7 @@ import net.imglib2.RandomAccess;
 import net.imglib2.RealRandomAccess;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.realtransform.AffineTransform3D;
+import net.preibisch.mvrecon.process.fusion.transformed.InverseAffineStepper;
 
 public class TransformedRasteredRandomAccess< T > extends AbstractLocalizableInt implements RandomAccess< T >
 {
@@ -37,12 +38,8 @@ public class TransformedRasteredRandomAccess< T > extends AbstractLocalizableInt
 	final int[] offset;
 	final T zero;
 
-	/*
-	 * Inverse coefficients of the transformation matrix
-	 */
-	final double i00, i01, i02, i03, i10, i11, i12, i13, i20, i21, i22, i23;
-
-	final float[] tmp;
+	// the inverse-transformed position is updated incrementally while moving
+	final InverseAffineStepper stepper;
 
 	public TransformedRasteredRandomAccess(
 			final RealRandomAccessible< T > realRandomAccessible,
@@ -61,87 +58,63 @@ public class TransformedRasteredRandomAccess< T > extends AbstractLocalizableInt
 			this.offset[ d ] = offset[ d ];
 
 		this.realRandomAccess = realRandomAccessible.realRandomAccess();
-
-		final double[] imatrix = transform.inverse().getRowPackedCopy();
-
-		this.i00 = imatrix[ 0 ];
-		this.i01 = imatrix[ 1 ];
-		this.i02 = imatrix[ 2 ];
-		this.i03 = imatrix[ 3 ];
-
-		this.i10 = imatrix[ 4 ];
-		this.i11 = imatrix[ 5 ];
-		this.i12 = imatrix[ 6 ];
-		this.i13 = imatrix[ 7 ];
-
-		this.i20 = imatrix[ 8 ];
-		this.i21 = imatrix[ 9 ];
-		this.i22 = imatrix[ 10 ];
-		this.i23 = imatrix[ 11 ];
-
-		this.tmp = new float[ n ];
+		this.stepper = new InverseAffineStepper( transform );
 	}
 
 	@Override
 	public T get()
 	{
-		applyInverse( i00, i01, i02, i03, i10, i11, i12, i13, i20, i21, i22, i23, tmp, position, offset );
-		realRandomAccess.setPosition( tmp );
+		realRandomAccess.setPosition( stepper.get( position[ 0 ] + offset[ 0 ], position[ 1 ] + offset[ 1 ], position[ 2 ] + offset[ 2 ] ) );
 		return realRandomAccess.get();
 	}
 
-	private static final void applyInverse(
-			final double i00, final double i01, final double i02, final double i03,
-			final double i10, final double i11, final double i12, final double i13,
-			final double i20, final double i21, final double i22, final double i23,
-			final float[] source,
-			final int[] target,
-			final int[] offset )
+	@Override
+	public void fwd( final int d )
 	{
-		final double t0 = (double)( target[ 0 ] + offset[ 0 ] );
-		final double t1 = (double)( target[ 1 ] + offset[ 1 ] );
-		final double t2 = (double)( target[ 2 ] + offset[ 2 ] );
-
-		final double s0 = t0 * i00 + t1 * i01 + t2 * i02 + i03;
-		final double s1 = t0 * i10 + t1 * i11 + t2 * i12 + i13;
-		final double s2 = t0 * i20 + t1 * i21 + t2 * i22 + i23;
-
-		source[ 0 ] = (float)s0;
-		source[ 1 ] = (float)s1;
-		source[ 2 ] = (float)s2;
+		++this.position[ d ];
+		stepper.fwd( d );
 	}
 
 	@Override
-	public void fwd( final int d ) { ++this.position[ d ]; }
-
-	@Override
-	public void bck( final int d ) { --this.position[ d ]; }
+	public void bck( final int d )
+	{
+		--this.position[ d ];
+		stepper.bck( d );
+	}
 
 	@Override
-	public void move( final int distance, final int d ) { this.position[ d ] += distance; }
+	public void move( final int distance, final int d )
+	{
+		this.position[ d ] += distance;
+		stepper.move( distance, d );
+	}
 
 	@Override
-	public void move( final long distance, final int d ) { this.position[ d ] += (int)distance; }
+	public void move( final long distance, final int d )
+	{
+		this.position[ d ] += (int)distance;
+		stepper.move( distance, d );
+	}
 
 	@Override
 	public void move( final Localizable localizable )
 	{
 		for ( int d = 0; d < n; ++d )
-			this.position[ d ] += localizable.getIntPosition( d );
+			move( localizable.getIntPosition( d ), d );
 	}
 
 	@Override
 	public void move( final int[] distance )
 	{
 		for ( int d = 0; d < n; ++d )
-			this.position[ d ] += distance[ d ];
+			move( distance[ d ], d );
 	}
 
 	@Override
 	public void move( final long[] distance )
 	{
 		for ( int d = 0; d < n; ++d )
-			this.position[ d ] += (int)distance[ d ];
+			move( distance[ d ], d );
 	}
 
 	@Override
@@ -149,6 +122,8 @@ public class TransformedRasteredRandomAccess< T > extends AbstractLocalizableInt
 	{
 		for ( int d = 0; d < n; ++d )
 			this.position[ d ] = localizable.getIntPosition( d );
+
+		stepper.invalidate();
 	}
 
 	@Override
@@ -156,6 +131,8 @@ public class TransformedRasteredRandomAccess< T > extends AbstractLocalizableInt
 	{
 		for ( int d = 0; d < n; ++d )
 			this.position[ d ] = position[ d ];
+
+		stepper.invalidate();
 	}
 
 	@Override
@@ -163,13 +140,23 @@ public class TransformedRasteredRandomAccess< T > extends AbstractLocalizableInt
 	{
 		for ( int d = 0; d < n; ++d )
 			this.position[ d ] = (int)position[ d ];
+
+		stepper.invalidate();
 	}
 
 	@Override
-	public void setPosition( final int position, final int d ) { this.position[ d ] = position; }
+	public void setPosition( final int position, final int d )
+	{
+		this.position[ d ] = position;
+		stepper.invalidate();
+	}
 
 	@Override
-	public void setPosition( final long position, final int d ) { this.position[ d ] = (int)position; }
+	public void setPosition( final long position, final int d )
+	{
+		this.position[ d ] = (int)position;
+		stepper.invalidate();
+	}
 
 	@Override
 	public TransformedRasteredRandomAccess< T > copy() { return new TransformedRasteredRandomAccess< T >( realRandomAccessible, zero, transform, offset ); }
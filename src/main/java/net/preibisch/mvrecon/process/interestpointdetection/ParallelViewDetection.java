@@ -0,0 +1,209 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.interestpointdetection;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.IJ;
+import mpicbg.spim.data.sequence.ViewDescription;
+import mpicbg.spim.data.sequence.ViewId;
+import net.imglib2.Dimensions;
+import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.Threads;
+import net.preibisch.mvrecon.fiji.spimdata.ViewSetupUtils;
+import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
+import net.preibisch.mvrecon.process.interestpointdetection.methods.InterestPointParameters;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
+
+/**
+ * Runs the interest point detection of several views concurrently. The number of views that run at the same
+ * time is limited by InterestPointParameters.maxParallelViews and by the estimated memory requirements of each view
+ * (downsampled dimensions x bytes per pixel of the detection method), which must fit into InterestPointParameters.memoryBudget.
+ * A view that alone exceeds the budget is processed alone.
+ */
+public class ParallelViewDetection
+{
+	public interface ViewDetection
+	{
+		/**
+		 * @param vd - the view to process
+		 * @param downsampleXY - the downsampling in XY for this view (already resolved)
+		 * @return the detections in the coordinate system of the full resolution view
+		 * @throws Exception if something goes wrong (the view is skipped)
+		 */
+		public List< InterestPoint > detect( final ViewDescription vd, final int downsampleXY ) throws Exception;
+	}
+
+	/**
+	 * @param interestPoints - where the detections are stored
+	 * @param params - the parameters, including the views to process
+	 * @param bytesPerPixel - approximate memory requirements of the detection method per pixel (all images it creates)
+	 * @param detection - the detection for a single view
+	 * @param name - name of the method for logging
+	 */
+	public static void addInterestPoints(
+			final HashMap< ViewId, List< InterestPoint > > interestPoints,
+			final InterestPointParameters params,
+			final int bytesPerPixel,
+			final ViewDetection detection,
+			final String name )
+	{
+		final ArrayList< ViewDescription > views = new ArrayList<>();
+
+		for ( final ViewDescription vd : params.toProcess )
+			if ( vd.isPresent() )
+				views.add( vd );
+
+		if ( views.size() == 0 )
+			return;
+
+		if ( params.showProgress() )
+			IJ.showProgress( params.showProgressMin );
+
+		// the semaphore counts MB so we stay within int range
+		final int budgetMB = (int)Math.max( 1, Math.min( Integer.MAX_VALUE, params.memoryBudget / ( 1024 * 1024 ) ) );
+		final Semaphore memory = new Semaphore( budgetMB, true );
+
+		final int numParallel = Math.max( 1, Math.min( params.maxParallelViews, views.size() ) );
+
+		IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Detecting " + name + " in " + views.size() + " views, up to " + numParallel + " in parallel (memory budget " + budgetMB + " MB)." );
+
+		final AtomicInteger count = new AtomicInteger( 0 );
+		final ArrayList< Callable< Void > > tasks = new ArrayList<>();
+
+		for ( final ViewDescription vd : views )
+		{
+			tasks.add( new Callable< Void >()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					final int downsampleXY = params.getDownsampleXY( vd );
+					final long estimatedMB = estimateMemoryMB( vd, params, downsampleXY, params.downsampleZ, bytesPerPixel );
+
+					// a view that does not fit into the budget (or of unknown size) is processed alone
+					final int permits = estimatedMB < 0 ? budgetMB : (int)Math.min( budgetMB, Math.max( 1, estimatedMB ) );
+
+					memory.acquire( permits );
+
+					try
+					{
+						final long time = System.currentTimeMillis();
+
+						final List< InterestPoint > ips = detection.detect( vd, downsampleXY );
+
+						synchronized ( interestPoints )
+						{
+							interestPoints.put( vd, ips );
+						}
+
+						IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): " + name + " found " + ips.size() + " interest points in " + Group.pvid( vd ) + ", took " + ( System.currentTimeMillis() - time ) + " ms (estimated memory " + ( estimatedMB < 0 ? "unknown" : estimatedMB + " MB" ) + ")." );
+					}
+					catch ( Exception e )
+					{
+						// make sure not everything crashes if one file is missing
+						IOFunctions.println( "An error occured (" + name + "): " + e );
+						IOFunctions.println( "Failed to segment " + Group.pvid( vd ) + ". Continuing with next one." );
+						e.printStackTrace();
+					}
+					finally
+					{
+						memory.release( permits );
+					}
+
+					if ( params.showProgress() )
+						IJ.showProgress( params.showProgressMin +
+								( (double)count.incrementAndGet() / (double)views.size() ) * ( params.showProgressMax - params.showProgressMin ) );
+
+					return null;
+				}
+			});
+		}
+
+		// a separate pool, the detection itself uses params.service (or its own) for multithreading
+		final ExecutorService service = Threads.createFixedExecutorService( numParallel );
+
+		try
+		{
+			for ( final Future< Void > future : service.invokeAll( tasks ) )
+				future.get();
+		}
+		catch ( final Exception e )
+		{
+			IOFunctions.println( "Failed to detect interest points: " + e );
+			e.printStackTrace();
+		}
+		finally
+		{
+			service.shutdown();
+		}
+
+		if ( params.showProgress() )
+			IJ.showProgress( params.showProgressMax );
+	}
+
+	/**
+	 * @param vd - the view
+	 * @param params - the parameters
+	 * @param downsampleXY - downsampling in XY
+	 * @param downsampleZ - downsampling in Z
+	 * @param bytesPerPixel - memory requirements per pixel of the downsampled image
+	 * @return estimated memory in MB or -1 if the size of the view is unknown
+	 */
+	public static long estimateMemoryMB(
+			final ViewDescription vd,
+			final InterestPointParameters params,
+			final int downsampleXY,
+			final int downsampleZ,
+			final int bytesPerPixel )
+	{
+		final Dimensions dim;
+
+		try
+		{
+			dim = ViewSetupUtils.getSizeOrLoad( vd.getViewSetup(), vd.getTimePoint(), params.imgloader );
+		}
+		catch ( Exception e )
+		{
+			return -1;
+		}
+
+		if ( dim == null )
+			return -1;
+
+		double numPixels = 1;
+
+		for ( int d = 0; d < dim.numDimensions(); ++d )
+			numPixels *= Math.max( 1, dim.dimension( d ) / ( d < 2 ? Math.max( 1, downsampleXY ) : Math.max( 1, downsampleZ ) ) );
+
+		return Math.round( Math.ceil( numPixels * bytesPerPixel / ( 1024.0 * 1024.0 ) ) );
+	}
+}
@@ -27,6 +27,7 @@ import java.util.concurrent.ExecutorService;
 
 import mpicbg.spim.data.sequence.ImgLoader;
 import mpicbg.spim.data.sequence.ViewDescription;
+import net.preibisch.mvrecon.process.downsampling.DownsampleTools;
 
 public class InterestPointParameters
 {
@@ -50,6 +51,14 @@ public class InterestPointParameters
 	// downsampleXY == -1 : a bit more then z-resolution
 	public int downsampleXY = 1, downsampleZ = 1;
 
+	// how much memory (bytes) can be used for processing views in parallel,
+	// views are only processed in parallel if their estimated memory requirements fit
+	public static double defaultMemoryFraction = 0.5;
+	public long memoryBudget = Math.round( Runtime.getRuntime().maxMemory() * defaultMemoryFraction );
+
+	// max number of views processed in parallel (each view is processed multithreaded already)
+	public int maxParallelViews = Math.max( 1, Runtime.getRuntime().availableProcessors() / 4 );
+
 	public double showProgressMin = Double.NaN;
 	public double showProgressMax = Double.NaN;
 
@@ -63,6 +72,18 @@ public class InterestPointParameters
 		this.imgloader = imgloader;
 	}
 
+	/**
+	 * @param vd - the view
+	 * @return the downsampling in XY for this view, resolves downsampleXY == 0 and downsampleXY == -1 using the voxel size
+	 */
+	public int getDownsampleXY( final ViewDescription vd )
+	{
+		if ( downsampleXY < 1 )
+			return DownsampleTools.downsampleFactor( downsampleXY, downsampleZ, vd.getViewSetup().getVoxelSize() );
+		else
+			return downsampleXY;
+	}
+
 	public boolean showProgress() { return !Double.isNaN( showProgressMin ) && !Double.isNaN( showProgressMax ); }
 
 	/**
@@ -26,7 +26,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 
-import ij.IJ;
 import mpicbg.spim.data.sequence.ViewDescription;
 import mpicbg.spim.data.sequence.ViewId;
 import net.imglib2.RandomAccessibleInterval;
@@ -34,12 +33,13 @@ import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.FloatType;
-import net.preibisch.legacy.io.IOFunctions;
 import net.preibisch.mvrecon.Threads;
 import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
 import net.preibisch.mvrecon.process.deconvolution.DeconViews;
 import net.preibisch.mvrecon.process.downsampling.DownsampleTools;
 import net.preibisch.mvrecon.process.interestpointdetection.InterestPointTools;
+import net.preibisch.mvrecon.process.interestpointdetection.ParallelViewDetection;
+import net.preibisch.mvrecon.process.interestpointdetection.ParallelViewDetection.ViewDetection;
 import util.ImgLib1Convert;
 
 public class DoG
@@ -120,93 +120,89 @@ public class DoG
 		return ips;
 	}
 
+	/**
+	 * approximate memory requirements per pixel of the (downsampled) input image: two gaussian convolutions and
+	 * the difference-of-gaussian image (all FloatType) plus the input image
+	 */
+	public static int bytesPerPixel = 16;
+
 	public static void addInterestPoints( final HashMap< ViewId, List< InterestPoint > > interestPoints, final DoGParameters dog )
 	{
-		if ( dog.showProgress() )
-			IJ.showProgress( dog.showProgressMin );
+		// the GPU memory is managed per view, so only one view is processed at a time when using CUDA
+		if ( dog.cuda != null )
+			dog.maxParallelViews = 1;
 
-		int count = 1;
-
-		// TODO: special iterator that takes into account missing views
-		for ( final ViewDescription vd : dog.toProcess )
+		ParallelViewDetection.addInterestPoints( interestPoints, dog, bytesPerPixel, new ViewDetection()
 		{
-			// make sure not everything crashes if one file is missing
-			try
-			{
-				//
-				// open the corresponding image (if present at this timepoint)
-				//
-				if ( !vd.isPresent() )
-					continue;
-
-				final AffineTransform3D correctCoordinates = new AffineTransform3D();
-
-				@SuppressWarnings("unchecked")
-				final RandomAccessibleInterval< net.imglib2.type.numeric.real.FloatType > input =
-						DownsampleTools.openAndDownsample(
-								dog.imgloader,
-								vd,
-								correctCoordinates,
-								new long[] { dog.downsampleXY, dog.downsampleXY, dog.downsampleZ },
-								false,  //transformOnly
-								false,   //openAsFloat
-								false ); //openCompletely
-
-				List< InterestPoint > ips;
-
-				if ( dog.cuda == null )
-				{
-					ips = DoGImgLib2.computeDoG(input, null, dog.sigma, dog.threshold, dog.localization, dog.findMin, dog.findMax, dog.minIntensity,
-						dog.maxIntensity, dog.service );
-				}
-				else
-				{
-					
-					final ImgLib1Convert convert = new ImgLib1Convert( input, dog.service );
-	
-					//
-					// compute Difference-of-Gaussian (includes normalization)
-					//
-					ips = ProcessDOG.compute(
-							dog.cuda, dog.deviceList, dog.accurateCUDA, dog.percentGPUMem,
-							dog.service,
-							Threads.numThreads(),
-							convert,
-							(float) dog.sigma, (float) dog.threshold,
-							dog.localization,
-							Math.min( dog.imageSigmaX, (float) dog.sigma ),
-							Math.min( dog.imageSigmaY, (float) dog.sigma ),
-							Math.min( dog.imageSigmaZ, (float) dog.sigma ),
-							dog.findMin, dog.findMax, dog.minIntensity,
-							dog.maxIntensity,
-							dog.limitDetections );
-	
-					convert.imglib1Img().close();
-				}
-
-				if ( dog.limitDetections )
-					ips = InterestPointTools.limitList( dog.maxDetections, dog.maxDetectionsTypeIndex, ips );
-
-				DownsampleTools.correctForDownsampling( ips, correctCoordinates );
-
-				interestPoints.put( vd, ips );
-			} catch ( Exception e )
+			@Override
+			public List< InterestPoint > detect( final ViewDescription vd, final int downsampleXY ) throws Exception
 			{
-				IOFunctions.println( "An error occured (DOG): " + e );
-				IOFunctions.println( "Failed to segment angleId: "
-						+ vd.getViewSetup().getAngle().getId() + " channelId: "
-						+ vd.getViewSetup().getChannel().getId() + " illumId: "
-						+ vd.getViewSetup().getIllumination().getId()
-						+ ". Continuing with next one." );
-				e.printStackTrace();
+				return findInterestPoints( vd, downsampleXY, dog );
 			}
+		}, "DOG" );
+	}
 
-			if ( dog.showProgress() )
-				IJ.showProgress( dog.showProgressMin + 
-						( (double)(count++) / (double)dog.toProcess.size() ) / ( dog.showProgressMax - dog.showProgressMin ) );
+	/**
+	 * @param vd - the view to process
+	 * @param downsampleXY - the downsampling in XY
+	 * @param dog - the parameters
+	 * @return the detections
+	 */
+	public static List< InterestPoint > findInterestPoints( final ViewDescription vd, final int downsampleXY, final DoGParameters dog )
+	{
+		//
+		// open the corresponding image (if present at this timepoint)
+		//
+		final AffineTransform3D correctCoordinates = new AffineTransform3D();
+
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval< net.imglib2.type.numeric.real.FloatType > input =
+				DownsampleTools.openAndDownsample(
+						dog.imgloader,
+						vd,
+						correctCoordinates,
+						new long[] { downsampleXY, downsampleXY, dog.downsampleZ },
+						false,  //transformOnly
+						false,   //openAsFloat
+						false ); //openCompletely
+
+		List< InterestPoint > ips;
+
+		if ( dog.cuda == null )
+		{
+			ips = DoGImgLib2.computeDoG(input, null, dog.sigma, dog.threshold, dog.localization, dog.findMin, dog.findMax, dog.minIntensity,
+				dog.maxIntensity, dog.service );
+		}
+		else
+		{
+			
+			final ImgLib1Convert convert = new ImgLib1Convert( input, dog.service );
+
+			//
+			// compute Difference-of-Gaussian (includes normalization)
+			//
+			ips = ProcessDOG.compute(
+					dog.cuda, dog.deviceList, dog.accurateCUDA, dog.percentGPUMem,
+					dog.service,
+					Threads.numThreads(),
+					convert,
+					(float) dog.sigma, (float) dog.threshold,
+					dog.localization,
+					Math.min( dog.imageSigmaX, (float) dog.sigma ),
+					Math.min( dog.imageSigmaY, (float) dog.sigma ),
+					Math.min( dog.imageSigmaZ, (float) dog.sigma ),
+					dog.findMin, dog.findMax, dog.minIntensity,
+					dog.maxIntensity,
+					dog.limitDetections );
+
+			convert.imglib1Img().close();
 		}
 
-		if ( dog.showProgress() )
-			IJ.showProgress( dog.showProgressMax );
+		if ( dog.limitDetections )
+			ips = InterestPointTools.limitList( dog.maxDetections, dog.maxDetectionsTypeIndex, ips );
+
+		DownsampleTools.correctForDownsampling( ips, correctCoordinates );
+
+		return ips;
 	}
 }
@@ -24,6 +24,7 @@ package net.preibisch.mvrecon.process.interestpointdetection.methods.dom;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import mpicbg.imglib.image.Image;
 import mpicbg.imglib.type.numeric.real.FloatType;
@@ -33,9 +34,11 @@ import mpicbg.spim.data.sequence.ViewId;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.Threads;
 import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
 import net.preibisch.mvrecon.process.interestpointdetection.InterestPointTools;
+import net.preibisch.mvrecon.process.interestpointdetection.ParallelViewDetection;
+import net.preibisch.mvrecon.process.interestpointdetection.ParallelViewDetection.ViewDetection;
 import net.preibisch.mvrecon.process.downsampling.DownsampleTools;
 
 /**
@@ -59,72 +62,146 @@ public class DoM
 		return interestPoints;
 	}
 
+	/**
+	 * approximate memory requirements per pixel of the (downsampled) input image: the input image and the
+	 * difference-of-mean image (FloatType) plus the integral image (LongType)
+	 */
+	public static int bytesPerPixel = 16;
+
+	/**
+	 * approximate memory requirements per pixel of the (downsampled) input image for the blockwise ImgLib2
+	 * implementation, only the input image is held in memory
+	 */
+	public static int bytesPerPixelImgLib2 = 4;
+
+	/**
+	 * use the blockwise ImgLib2 implementation ({@link DoMImgLib2}) instead of the ImgLib1 integral image ({@link ProcessDOM})
+	 */
+	public static boolean useImgLib2 = true;
+
 	public static void addInterestPoints( final HashMap< ViewId, List< InterestPoint >> interestPoints, final DoMParameters dom )
 	{
-		// TODO: special iterator that takes into account missing views
-		// make sure not everything crashes if one file is missing
-		for ( final ViewDescription vd : dom.toProcess )
+		ParallelViewDetection.addInterestPoints( interestPoints, dom, useImgLib2 ? bytesPerPixelImgLib2 : bytesPerPixel, new ViewDetection()
 		{
-			// make sure not everything crashes if one file is missing
-			try
+			@Override
+			public List< InterestPoint > detect( final ViewDescription vd, final int downsampleXY ) throws Exception
 			{
-				//
-				// open the corresponding image (if present at this timepoint)
-				//
-				if ( !vd.isPresent() )
-					continue;
-
-				final AffineTransform3D correctCoordinates = new AffineTransform3D();
-
-				final RandomAccessibleInterval< net.imglib2.type.numeric.real.FloatType > input =
-					DownsampleTools.openAndDownsample(
-						dom.imgloader,
-						vd,
-						correctCoordinates,
-						new long[] { dom.downsampleXY, dom.downsampleXY, dom.downsampleZ },
-						false,  //transformOnly
-						true,   //openAsFloat
-						true ); //openCompletely
-
-				final Image< FloatType > img = ImgLib2.wrapFloatToImgLib1(
-						(Img< net.imglib2.type.numeric.real.FloatType >) input );
-
-				// Compute DifferenceOfMean
-				List< InterestPoint > ips = ProcessDOM.compute(
-						img,
-						(Img< net.imglib2.type.numeric.real.FloatType >) input,
-						dom.radius1,
-						dom.radius2,
-						dom.threshold,
-						dom.localization,
-						dom.imageSigmaX,
-						dom.imageSigmaY,
-						dom.imageSigmaZ,
-						dom.findMin,
-						dom.findMax,
-						dom.minIntensity,
-						dom.maxIntensity,
-						dom.limitDetections );
-
-				img.close();
-
-				if ( dom.limitDetections )
-					ips = InterestPointTools.limitList( dom.maxDetections, dom.maxDetectionsTypeIndex, ips );
-
-				DownsampleTools.correctForDownsampling( ips, correctCoordinates );
-
-				interestPoints.put( vd, ips );
-			}
-			catch ( Exception e )
-			{
-				IOFunctions.println( "An error occured (Difference of Mean): " + e );
-				IOFunctions.println( "Failed to segment angleId: "
-						+ vd.getViewSetup().getAngle().getId() + " channelId: "
-						+ vd.getViewSetup().getChannel().getId() + " illumId: "
-						+ vd.getViewSetup().getIllumination().getId()
-						+ ". Continuing with next one." );
-				e.printStackTrace();
+				return findInterestPoints( vd, downsampleXY, dom );
 			}
+		}, "Difference of Mean" );
+	}
+
+	/**
+	 * @param vd - the view to process
+	 * @param downsampleXY - the downsampling in XY
+	 * @param dom - the parameters
+	 * @return the detections
+	 */
+	public static List< InterestPoint > findInterestPoints( final ViewDescription vd, final int downsampleXY, final DoMParameters dom )
+	{
+		if ( useImgLib2 )
+			return findInterestPointsImgLib2( vd, downsampleXY, dom );
+
+		//
+		// open the corresponding image (if present at this timepoint)
+		//
+		final AffineTransform3D correctCoordinates = new AffineTransform3D();
+
+		final RandomAccessibleInterval< net.imglib2.type.numeric.real.FloatType > input =
+			DownsampleTools.openAndDownsample(
+				dom.imgloader,
+				vd,
+				correctCoordinates,
+				new long[] { downsampleXY, downsampleXY, dom.downsampleZ },
+				false,  //transformOnly
+				true,   //openAsFloat
+				true ); //openCompletely
+
+		final Image< FloatType > img = ImgLib2.wrapFloatToImgLib1(
+				(Img< net.imglib2.type.numeric.real.FloatType >) input );
+
+		// Compute DifferenceOfMean
+		List< InterestPoint > ips = ProcessDOM.compute(
+				img,
+				(Img< net.imglib2.type.numeric.real.FloatType >) input,
+				dom.radius1,
+				dom.radius2,
+				dom.threshold,
+				dom.localization,
+				dom.imageSigmaX,
+				dom.imageSigmaY,
+				dom.imageSigmaZ,
+				dom.findMin,
+				dom.findMax,
+				dom.minIntensity,
+				dom.maxIntensity,
+				dom.limitDetections );
+
+		img.close();
+
+		if ( dom.limitDetections )
+			ips = InterestPointTools.limitList( dom.maxDetections, dom.maxDetectionsTypeIndex, ips );
+
+		DownsampleTools.correctForDownsampling( ips, correctCoordinates );
+
+		return ips;
+	}
+
+	/**
+	 * @param vd - the view to process
+	 * @param downsampleXY - the downsampling in XY
+	 * @param dom - the parameters
+	 * @return the detections
+	 */
+	public static List< InterestPoint > findInterestPointsImgLib2( final ViewDescription vd, final int downsampleXY, final DoMParameters dom )
+	{
+		final AffineTransform3D correctCoordinates = new AffineTransform3D();
+
+		// the cells are computed from the (virtual) input, no need to load it completely
+		final RandomAccessibleInterval< net.imglib2.type.numeric.real.FloatType > input =
+			DownsampleTools.openAndDownsample(
+				dom.imgloader,
+				vd,
+				correctCoordinates,
+				new long[] { downsampleXY, downsampleXY, dom.downsampleZ },
+				false,  //transformOnly
+				true,   //openAsFloat
+				false ); //openCompletely
+
+		// use the service of the parameters (shared if several views are processed in parallel), otherwise a local one
+		final ExecutorService service = dom.service != null ? dom.service : Threads.createFixedExecutorService();
+
+		List< InterestPoint > ips;
+
+		try
+		{
+			ips = DoMImgLib2.computeDoM(
+					input,
+					dom.radius1,
+					dom.radius2,
+					dom.threshold,
+					dom.localization,
+					dom.imageSigmaX,
+					dom.imageSigmaY,
+					dom.imageSigmaZ,
+					dom.findMin,
+					dom.findMax,
+					dom.minIntensity,
+					dom.maxIntensity,
+					dom.limitDetections,
+					service );
 		}
+		finally
+		{
+			if ( service != dom.service )
+				service.shutdown();
+		}
+
+		if ( dom.limitDetections )
+			ips = InterestPointTools.limitList( dom.maxDetections, dom.maxDetectionsTypeIndex, ips );
+
+		DownsampleTools.correctForDownsampling( ips, correctCoordinates );
+
+		return ips;
 	}
 }
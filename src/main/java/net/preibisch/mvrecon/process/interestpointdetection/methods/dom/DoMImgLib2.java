@@ -0,0 +1,409 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.interestpointdetection.methods.dom;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.localextrema.RefinedPeak;
+import net.imglib2.algorithm.localextrema.SubpixelLocalization;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import net.preibisch.legacy.io.IOFunctions;
+import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
+import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPointValue;
+import net.preibisch.mvrecon.process.fusion.FusionTools;
+
+/**
+ * Difference-of-Mean detection on ImgLib2 that does not need an integral image of the entire view. The image is processed
+ * in cells (in parallel), every cell computes the integral image of the input it needs (the cell plus the radius of the
+ * larger box and a small margin), the difference-of-mean, the peaks and their quadratic subpixel localization. Memory
+ * is therefore bounded by the number of cells that are processed at the same time.
+ *
+ * The result is the same as {@link ProcessDOM} (same box sizes, same normalization, same peak definition); only the
+ * subpixel localization of a peak cannot move further than the margin out of its cell.
+ */
+public class DoMImgLib2
+{
+	public static int[] blockSize = new int[] { 64, 64, 64 };
+
+	// how far the difference-of-mean is computed around each cell (for the neighborhood of peaks and the localization)
+	public static int margin = 3;
+
+	public static < T extends RealType< T > > ArrayList< InterestPoint > computeDoM(
+			final RandomAccessibleInterval< T > input,
+			final int radius1,
+			final int radius2,
+			final float threshold,
+			final int localization,
+			final double imageSigmaX,
+			final double imageSigmaY,
+			final double imageSigmaZ,
+			final boolean findMin,
+			final boolean findMax,
+			final double minIntensity,
+			final double maxIntensity,
+			final boolean keepIntensity,
+			final ExecutorService service )
+	{
+		if ( localization == 2 )
+			throw new RuntimeException( "Gauss fit not implemented yet" );
+
+		final float min, max;
+
+		if ( Double.isNaN( minIntensity ) || Double.isNaN( maxIntensity ) || Double.isInfinite( minIntensity ) || Double.isInfinite( maxIntensity ) || minIntensity == maxIntensity )
+		{
+			final float[] minmax = FusionTools.minMax( input );
+			min = minmax[ 0 ];
+			max = minmax[ 1 ];
+		}
+		else
+		{
+			min = (float)minIntensity;
+			max = (float)maxIntensity;
+		}
+
+		IOFunctions.println("(" + new Date(System.currentTimeMillis()) + "): min intensity = " + min + ", max intensity = " + max );
+
+		// the same box sizes as ProcessDOM
+		final int sX1 = Math.max( 3, (int)Math.round( radius1 * (0.5/imageSigmaX ) ) * 2 + 1 );
+		final int sX2 = Math.max( 5, (int)Math.round( radius2 * (0.5/imageSigmaX ) ) * 2 + 1 );
+
+		final int sY1 = Math.max( 3, (int)Math.round( radius1 * (0.5/imageSigmaY ) ) * 2 + 1 );
+		final int sY2 = Math.max( 5, (int)Math.round( radius2 * (0.5/imageSigmaY ) ) * 2 + 1 );
+
+		final int sZ1 = Math.max( 3, (int)Math.round( radius1 * (0.5/imageSigmaZ ) ) * 2 + 1 );
+		final int sZ2 = Math.max( 5, (int)Math.round( radius2 * (0.5/imageSigmaZ ) ) * 2 + 1 );
+
+		final int[] s1 = new int[] { sX1, sY1, sZ1 };
+		final int[] s2 = new int[] { sX2, sY2, sZ2 };
+
+		IOFunctions.println("(" + new Date(System.currentTimeMillis()) + "): Computing Difference-of-Mean blockwise (" + Util.printCoordinates( blockSize ) + "), diameters = (" + sX1 + ", "  + sX2 + ", "  + sY1 + ", "  + sY2 + ", "  + sZ1 + ", "  + sZ2 + ")" );
+
+		final RandomAccessibleInterval< T > img = Views.zeroMin( input );
+		final long[] dim = Intervals.dimensionsAsLongArray( img );
+
+		final CellGrid grid = new CellGrid( dim, blockSize );
+		final long[] gridDim = grid.getGridDimensions();
+		final long numCells = Intervals.numElements( gridDim );
+
+		final ArrayList< Callable< ArrayList< InterestPoint > > > tasks = new ArrayList<>();
+
+		for ( long i = 0; i < numCells; ++i )
+		{
+			final long[] cellPos = new long[ 3 ];
+			final long[] cellMin = new long[ 3 ];
+			final int[] cellDim = new int[ 3 ];
+
+			IntervalIndexer.indexToPosition( i, gridDim, cellPos );
+			grid.getCellDimensions( cellPos, cellMin, cellDim );
+
+			tasks.add( () -> processCell( img, dim, cellMin, cellDim, s1, s2, max - min, threshold, localization, findMin, findMax, keepIntensity ) );
+		}
+
+		final ArrayList< InterestPoint > peaks = new ArrayList<>();
+
+		try
+		{
+			for ( final Future< ArrayList< InterestPoint > > future : service.invokeAll( tasks ) )
+				peaks.addAll( future.get() );
+		}
+		catch ( final InterruptedException | ExecutionException e )
+		{
+			IOFunctions.println( "Failed to compute Difference-of-Mean: " + e );
+			e.printStackTrace();
+			return new ArrayList<>();
+		}
+
+		// unique ids and coordinates of the input
+		final ArrayList< InterestPoint > finalPeaks = new ArrayList<>( peaks.size() );
+
+		for ( final InterestPoint p : peaks )
+		{
+			final double[] l = p.getL().clone();
+
+			for ( int d = 0; d < l.length; ++d )
+				l[ d ] += input.min( d );
+
+			if ( keepIntensity )
+				finalPeaks.add( new InterestPointValue( finalPeaks.size(), l, ( (InterestPointValue)p ).getIntensity() ) );
+			else
+				finalPeaks.add( new InterestPoint( finalPeaks.size(), l ) );
+		}
+
+		IOFunctions.println("(" + new Date(System.currentTimeMillis()) + "): Found " + finalPeaks.size() + " peaks." );
+
+		return finalPeaks;
+	}
+
+	protected static < T extends RealType< T > > ArrayList< InterestPoint > processCell(
+			final RandomAccessibleInterval< T > img,
+			final long[] dim,
+			final long[] cellMin,
+			final int[] cellDim,
+			final int[] s1,
+			final int[] s2,
+			final float diff,
+			final float threshold,
+			final int localization,
+			final boolean findMin,
+			final boolean findMax,
+			final boolean keepIntensity )
+	{
+		final ArrayList< InterestPoint > result = new ArrayList<>();
+
+		// the difference-of-mean is only defined where both boxes fit into the image, it is zero otherwise (as in ProcessDOM)
+		final long[] hMax = new long[ 3 ];
+		final long[] domMin = new long[ 3 ];
+		final long[] domMax = new long[ 3 ];
+
+		// the part of the difference-of-mean image this cell needs
+		final long[] bMin = new long[ 3 ];
+		final long[] bMax = new long[ 3 ];
+		final int[] bDim = new int[ 3 ];
+
+		for ( int d = 0; d < 3; ++d )
+		{
+			hMax[ d ] = Math.max( s1[ d ], s2[ d ] ) / 2;
+			domMin[ d ] = hMax[ d ];
+			domMax[ d ] = dim[ d ] - 1 - hMax[ d ];
+
+			bMin[ d ] = Math.max( 0, cellMin[ d ] - margin );
+			bMax[ d ] = Math.min( dim[ d ] - 1, cellMin[ d ] + cellDim[ d ] - 1 + margin );
+			bDim[ d ] = (int)( bMax[ d ] - bMin[ d ] + 1 );
+		}
+
+		final float[] dom = new float[ bDim[ 0 ] * bDim[ 1 ] * bDim[ 2 ] ];
+
+		computeDoM( img, bMin, bMax, bDim, domMin, domMax, hMax, s1, s2, diff, dom );
+
+		// find the peaks of the cell, same definition as InteractiveIntegral.findPeaks()
+		final ArrayList< Point > candidates = new ArrayList<>();
+		final ArrayList< Float > candidateValues = new ArrayList<>();
+
+		final int sy = bDim[ 0 ];
+		final int sz = bDim[ 0 ] * bDim[ 1 ];
+
+		for ( long z = Math.max( 1, cellMin[ 2 ] ); z <= Math.min( dim[ 2 ] - 2, cellMin[ 2 ] + cellDim[ 2 ] - 1 ); ++z )
+			for ( long y = Math.max( 1, cellMin[ 1 ] ); y <= Math.min( dim[ 1 ] - 2, cellMin[ 1 ] + cellDim[ 1 ] - 1 ); ++y )
+				for ( long x = Math.max( 1, cellMin[ 0 ] ); x <= Math.min( dim[ 0 ] - 2, cellMin[ 0 ] + cellDim[ 0 ] - 1 ); ++x )
+				{
+					final int i = (int)( ( x - bMin[ 0 ] ) + ( y - bMin[ 1 ] ) * sy + ( z - bMin[ 2 ] ) * sz );
+					final float v = dom[ i ];
+
+					if ( Math.abs( v ) < threshold )
+						continue;
+
+					boolean isMin = true;
+					boolean isMax = true;
+
+					for ( int dz = -sz; dz <= sz && ( isMin || isMax ); dz += sz )
+						for ( int dy = -sy; dy <= sy && ( isMin || isMax ); dy += sy )
+							for ( int dx = -1; dx <= 1; ++dx )
+							{
+								if ( dx == 0 && dy == 0 && dz == 0 )
+									continue;
+
+								final float n = dom[ i + dx + dy + dz ];
+
+								isMin &= ( n >= v );
+								isMax &= ( n <= v );
+							}
+
+					// a minimum of the difference-of-mean is a maximum in image space and vice versa
+					if ( ( isMin && findMax ) || ( !isMin && isMax && findMin ) )
+					{
+						candidates.add( new Point( x, y, z ) );
+						candidateValues.add( v );
+					}
+				}
+
+		if ( candidates.size() == 0 )
+			return result;
+
+		if ( localization == 0 )
+		{
+			for ( int j = 0; j < candidates.size(); ++j )
+			{
+				final double[] l = new double[ 3 ];
+				candidates.get( j ).localize( l );
+
+				if ( keepIntensity )
+					result.add( new InterestPointValue( 0, l, Math.abs( candidateValues.get( j ) ) ) );
+				else
+					result.add( new InterestPoint( 0, l ) );
+			}
+		}
+		else
+		{
+			final RandomAccessibleInterval< net.imglib2.type.numeric.real.FloatType > domImg =
+					Views.translate( ArrayImgs.floats( dom, bDim[ 0 ], bDim[ 1 ], bDim[ 2 ] ), bMin );
+
+			final ArrayList< RefinedPeak< Point > > refined = SubpixelLocalization.refinePeaks(
+					candidates,
+					domImg,
+					Intervals.expand( new FinalInterval( bMin, bMax ), -1 ),
+					true, // return invalid peaks
+					10, // max num moves
+					true, // allow maxima tolerance
+					0.01f, // maxima tolerance
+					new boolean[] { true, true, true } );
+
+			for ( final RefinedPeak< Point > peak : refined )
+			{
+				if ( Math.abs( peak.getValue() ) > threshold )
+				{
+					final double[] l = new double[ 3 ];
+					peak.localize( l );
+
+					if ( keepIntensity )
+						result.add( new InterestPointValue( 0, l, peak.getValue() ) );
+					else
+						result.add( new InterestPoint( 0, l ) );
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Computes the difference-of-mean for an interval of the image using an integral image of only the required input
+	 *
+	 * @param img - the zero-min input
+	 * @param bMin - min of the interval to compute
+	 * @param bMax - max of the interval to compute
+	 * @param bDim - dimensions of the interval to compute
+	 * @param domMin - min of the interval where the difference-of-mean is defined
+	 * @param domMax - max of the interval where the difference-of-mean is defined
+	 * @param hMax - half size of the larger box
+	 * @param s1 - size of the first box
+	 * @param s2 - size of the second box
+	 * @param diff - max-min intensity of the input
+	 * @param dom - the result, zero outside of [domMin, domMax]
+	 * @param <T> pixel type
+	 */
+	protected static < T extends RealType< T > > void computeDoM(
+			final RandomAccessibleInterval< T > img,
+			final long[] bMin,
+			final long[] bMax,
+			final int[] bDim,
+			final long[] domMin,
+			final long[] domMax,
+			final long[] hMax,
+			final int[] s1,
+			final int[] s2,
+			final float diff,
+			final float[] dom )
+	{
+		// the part of the interval where the difference-of-mean is defined
+		final long[] iMin = new long[ 3 ];
+		final long[] iMax = new long[ 3 ];
+
+		// the input required for it
+		final long[] rMin = new long[ 3 ];
+		final long[] rMax = new long[ 3 ];
+
+		for ( int d = 0; d < 3; ++d )
+		{
+			iMin[ d ] = Math.max( bMin[ d ], domMin[ d ] );
+			iMax[ d ] = Math.min( bMax[ d ], domMax[ d ] );
+
+			if ( iMax[ d ] < iMin[ d ] )
+				return;
+
+			rMin[ d ] = iMin[ d ] - hMax[ d ];
+			rMax[ d ] = iMax[ d ] + hMax[ d ];
+		}
+
+		// integral image with one extra row of zeros at the beginning of every dimension
+		final int w = (int)( rMax[ 0 ] - rMin[ 0 ] + 2 );
+		final int h = (int)( rMax[ 1 ] - rMin[ 1 ] + 2 );
+		final int wh = w * h;
+		final long[] integral = new long[ wh * (int)( rMax[ 2 ] - rMin[ 2 ] + 2 ) ];
+
+		final Cursor< T > c = Views.flatIterable( Views.interval( img, rMin, rMax ) ).cursor();
+
+		for ( int z = 1; z < integral.length / wh; ++z )
+			for ( int y = 1; y < h; ++y )
+			{
+				int i = 1 + y * w + z * wh;
+
+				for ( int x = 1; x < w; ++x, ++i )
+				{
+					// the integral image of ProcessDOM sums up the truncated values
+					final long v = (int)c.next().getRealFloat();
+
+					integral[ i ] = v
+							+ integral[ i - 1 ] + integral[ i - w ] + integral[ i - wh ]
+							- integral[ i - 1 - w ] - integral[ i - 1 - wh ] - integral[ i - w - wh ]
+							+ integral[ i - 1 - w - wh ];
+				}
+			}
+
+		final float d1 = s1[ 0 ] * s1[ 1 ] * s1[ 2 ] * diff;
+		final float d2 = s2[ 0 ] * s2[ 1 ] * s2[ 2 ] * diff;
+
+		for ( long z = iMin[ 2 ]; z <= iMax[ 2 ]; ++z )
+			for ( long y = iMin[ 1 ]; y <= iMax[ 1 ]; ++y )
+			{
+				int o = (int)( ( iMin[ 0 ] - bMin[ 0 ] ) + ( y - bMin[ 1 ] ) * bDim[ 0 ] + ( z - bMin[ 2 ] ) * bDim[ 0 ] * bDim[ 1 ] );
+
+				for ( long x = iMin[ 0 ]; x <= iMax[ 0 ]; ++x, ++o )
+				{
+					final long sum1 = boxSum( integral, w, wh, x - rMin[ 0 ], y - rMin[ 1 ], z - rMin[ 2 ], s1 );
+					final long sum2 = boxSum( integral, w, wh, x - rMin[ 0 ], y - rMin[ 1 ], z - rMin[ 2 ], s2 );
+
+					dom[ o ] = (float)sum2/d2 - (float)sum1/d1;
+				}
+			}
+	}
+
+	// sum of the box of size s centered at (x,y,z) (in coordinates of the input region of the integral image)
+	private static final long boxSum( final long[] integral, final int w, final int wh, final long x, final long y, final long z, final int[] s )
+	{
+		final int x0 = (int)( x - s[ 0 ] / 2 );
+		final int y0 = (int)( y - s[ 1 ] / 2 ) * w;
+		final int z0 = (int)( z - s[ 2 ] / 2 ) * wh;
+
+		final int x1 = x0 + s[ 0 ];
+		final int y1 = y0 + s[ 1 ] * w;
+		final int z1 = z0 + s[ 2 ] * wh;
+
+		return integral[ x1 + y1 + z1 ] - integral[ x0 + y1 + z1 ] - integral[ x1 + y0 + z1 ] - integral[ x1 + y1 + z0 ]
+				+ integral[ x0 + y0 + z1 ] + integral[ x0 + y1 + z0 ] + integral[ x1 + y0 + z0 ] - integral[ x0 + y0 + z0 ];
+	}
+}
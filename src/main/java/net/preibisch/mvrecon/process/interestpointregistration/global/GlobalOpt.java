@@ -44,6 +44,7 @@ import net.imglib2.util.ValuePair;
 import net.preibisch.legacy.io.IOFunctions;
 import net.preibisch.mvrecon.process.interestpointregistration.TransformationTools;
 import net.preibisch.mvrecon.process.interestpointregistration.global.convergence.ConvergenceStrategy;
+import net.preibisch.mvrecon.process.interestpointregistration.global.convergence.ConvergenceStrategy.Solver;
 import net.preibisch.mvrecon.process.interestpointregistration.global.pointmatchcreating.PointMatchCreator;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
 
@@ -95,7 +96,10 @@ public class GlobalOpt
 			else
 				IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): prealigned all tiles" );
 
-			tc.optimize( cs.getMaxError(), cs.getMaxIterations(), cs.getMaxPlateauWidth() );
+			if ( useSparseSolver( cs, tc ) )
+				SparseTileSolver.solve( tc, cs.getMaxIterations() );
+			else
+				tc.optimize( cs.getMaxError(), cs.getMaxIterations(), cs.getMaxPlateauWidth() );
 
 			IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Global optimization of " + 
 				tc.getTiles().size() +  " view-tiles (Model=" + model.getClass().getSimpleName()  + "):" );
@@ -132,6 +136,23 @@ public class GlobalOpt
 		return map;
 	}
 
+	/**
+	 * @param cs - the convergence strategy
+	 * @param tc - the tile configuration
+	 * @return true if the sparse solver was selected and supports the models of the tile configuration
+	 */
+	public static boolean useSparseSolver( final ConvergenceStrategy cs, final TileConfiguration tc )
+	{
+		if ( cs.getSolver() != Solver.SPARSE )
+			return false;
+
+		if ( SparseTileSolver.canSolve( tc ) )
+			return true;
+
+		IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Sparse solver only supports TranslationModel3D and AffineModel3D, using iterative solver." );
+		return false;
+	}
+
 	public static < M extends Model< M > > Pair< HashMap< ViewId, Tile< M > >, ArrayList< Group< ViewId > > > initGlobalOpt(
 			final M model,
 			final PointMatchCreator pmc,
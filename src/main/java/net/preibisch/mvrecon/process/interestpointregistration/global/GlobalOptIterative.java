@@ -85,21 +85,32 @@ public class GlobalOptIterative
 		final TileConfiguration tc = GlobalOpt.addAndFixTiles( views, map, fixedViews, groups );
 
 		// now perform the global optimization
+		final boolean sparse = GlobalOpt.useSparseSolver( ics, tc );
 		boolean finished = false;
+		boolean firstRound = true;
 
 		while (!finished)
 		{
 			try 
 			{
-				int unaligned = tc.preAlign().size();
-				if ( unaligned > 0 )
-					IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): pre-aligned all tiles but " + unaligned );
+				// the sparse solver starts from the previous solution after a link was removed (warm start)
+				if ( !sparse || firstRound )
+				{
+					int unaligned = tc.preAlign().size();
+					if ( unaligned > 0 )
+						IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): pre-aligned all tiles but " + unaligned );
+					else
+						IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): prealigned all tiles" );
+				}
+
+				firstRound = false;
+
+				if ( sparse )
+					SparseTileSolver.solve( tc, ics.getMaxIterations() );
 				else
-					IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): prealigned all tiles" );
-
-				TileUtil.optimizeConcurrently(
-						new ErrorStatistic( ics.getMaxPlateauWidth() + 1 ),  ics.getMaxError(), ics.getMaxIterations(), ics.getMaxPlateauWidth(), 1.0f,
-						tc, tc.getTiles(), tc.getFixedTiles(), Runtime.getRuntime().availableProcessors());
+					TileUtil.optimizeConcurrently(
+							new ErrorStatistic( ics.getMaxPlateauWidth() + 1 ),  ics.getMaxError(), ics.getMaxIterations(), ics.getMaxPlateauWidth(), 1.0f,
+							tc, tc.getTiles(), tc.getFixedTiles(), Runtime.getRuntime().availableProcessors());
 
 				IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "): Global optimization of " + tc.getTiles().size());
 				IOFunctions.println( "(" + new Date( System.currentTimeMillis() ) + "):    Avg Error: " + tc.getError() + "px" );
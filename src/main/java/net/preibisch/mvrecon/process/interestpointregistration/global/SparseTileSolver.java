@@ -0,0 +1,538 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.interestpointregistration.global;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Set;
+
+import mpicbg.models.AffineModel3D;
+import mpicbg.models.PointMatch;
+import mpicbg.models.Tile;
+import mpicbg.models.TileConfiguration;
+import mpicbg.models.TranslationModel3D;
+import net.preibisch.legacy.io.IOFunctions;
+
+/**
+ * Global optimization of translation and affine models as sparse linear least-squares problem instead of the iterative
+ * relaxation of mpicbg TileConfiguration.optimize(), which needs many sweeps on large, weakly connected tile graphs.
+ *
+ * Minimizes sum( w * | T_a( p1 ) - T_b( p2 ) |^2 ) over all point matches of all (non-fixed) tiles. The normal equations
+ * separate into one system per output dimension (x, y, z) that share the same sparse, block-structured matrix (4x4 blocks
+ * for affine, 1x1 for translation models), they are solved with block-Jacobi preconditioned conjugate gradients starting
+ * from the current models (warm start, e.g. after a link was removed).
+ */
+public class SparseTileSolver
+{
+	// converged if the residual of the normal equations dropped below this fraction of the initial one
+	public static double relativeTolerance = 1e-10;
+
+	final ArrayList< Tile< ? > > tiles;
+	final HashMap< Tile< ? >, Integer > index;
+	final Set< Tile< ? > > fixedTiles;
+	final boolean affine;
+	final int k; // unknowns per tile and dimension
+
+	// block-sparse matrix in compressed rows: column indices and k*k blocks of each row of tiles
+	final int[][] cols;
+	final double[][][] blocks;
+	final double[][] invDiag;
+
+	// one right-hand side and solution per dimension
+	final double[][] b, x;
+
+	// affine models are parameterized relative to the center of the matches of each tile, which decouples the linear
+	// part from the translation and makes the system much better conditioned
+	final double[][] center;
+
+	protected SparseTileSolver( final TileConfiguration tc )
+	{
+		this.fixedTiles = tc.getFixedTiles();
+		this.tiles = new ArrayList<>();
+		this.index = new HashMap<>();
+
+		for ( final Tile< ? > tile : tc.getTiles() )
+			if ( !fixedTiles.contains( tile ) )
+			{
+				index.put( tile, tiles.size() );
+				tiles.add( tile );
+			}
+
+		this.affine = !tiles.isEmpty() && tiles.get( 0 ).getModel() instanceof AffineModel3D;
+		this.k = affine ? 4 : 1;
+
+		final int n = tiles.size();
+
+		this.b = new double[ 3 ][ n * k ];
+		this.x = new double[ 3 ][ n * k ];
+		this.center = new double[ n ][ 3 ];
+
+		for ( int i = 0; i < n; ++i )
+		{
+			final Tile< ? > tile = tiles.get( i );
+
+			if ( affine && tile.getMatches().size() > 0 )
+			{
+				for ( final PointMatch pm : tile.getMatches() )
+					for ( int d = 0; d < 3; ++d )
+						center[ i ][ d ] += pm.getP1().getL()[ d ];
+
+				for ( int d = 0; d < 3; ++d )
+					center[ i ][ d ] /= tile.getMatches().size();
+			}
+
+			getModel( tile, x, i );
+
+			// translation relative to the center
+			if ( affine )
+				for ( int d = 0; d < 3; ++d )
+					x[ d ][ i * k + 3 ] += x[ d ][ i * k ] * center[ i ][ 0 ] + x[ d ][ i * k + 1 ] * center[ i ][ 1 ] + x[ d ][ i * k + 2 ] * center[ i ][ 2 ];
+		}
+
+		// assemble the normal equations
+		final ArrayList< HashMap< Integer, double[] > > rows = new ArrayList<>( n );
+
+		for ( int i = 0; i < n; ++i )
+			rows.add( new HashMap<>() );
+
+		final double[] f1 = new double[ k ];
+		final double[] f2 = new double[ k ];
+		final double[] c = new double[ 3 ];
+		final double[][] fixed = new double[ 3 ][ k ];
+
+		for ( final Tile< ? > tileA : tc.getTiles() )
+		{
+			final Integer ia = index.get( tileA );
+
+			// contributions are collected from the rows of the non-fixed tiles only (each match is stored in both tiles)
+			if ( ia == null )
+				continue;
+
+			for ( final PointMatch pm : tileA.getMatches() )
+			{
+				final Tile< ? > tileB = tileA.findConnectedTile( pm );
+				final Integer ib = index.get( tileB );
+				final double w = pm.getWeight();
+
+				final double[] p1 = pm.getP1().getL();
+				final double[] p2 = pm.getP2().getL();
+
+				features( p1, center[ ia ], f1 );
+				features( p2, ib == null ? null : center[ ib ], f2 );
+
+				// constant part of the residual T_a( p1 ) - T_b( p2 )
+				for ( int d = 0; d < 3; ++d )
+					c[ d ] = affine ? 0 : p1[ d ] - p2[ d ];
+
+				if ( ib == null )
+				{
+					// tileB is fixed (or not part of the optimization), its transformed point is constant
+					getModel( tileB, fixed, 0 );
+
+					for ( int d = 0; d < 3; ++d )
+						c[ d ] -= dot( f2, fixed[ d ], 0 );
+				}
+
+				// row a: w * f1 * ( f1 * x_a - f2 * x_b + c ) = 0
+				addOuter( block( rows, ia, ia ), f1, f1, w );
+
+				if ( ib != null )
+					addOuter( block( rows, ia, ib ), f1, f2, -w );
+
+				for ( int d = 0; d < 3; ++d )
+					for ( int j = 0; j < k; ++j )
+						b[ d ][ ia * k + j ] -= w * f1[ j ] * c[ d ];
+			}
+		}
+
+		this.cols = new int[ n ][];
+		this.blocks = new double[ n ][][];
+		this.invDiag = new double[ n ][];
+
+		for ( int i = 0; i < n; ++i )
+		{
+			final HashMap< Integer, double[] > row = rows.get( i );
+
+			cols[ i ] = new int[ row.size() ];
+			blocks[ i ] = new double[ row.size() ][];
+
+			int j = 0;
+
+			for ( final Integer col : row.keySet() )
+			{
+				cols[ i ][ j ] = col;
+				blocks[ i ][ j++ ] = row.get( col );
+			}
+
+			invDiag[ i ] = invert( row.containsKey( i ) ? row.get( i ) : new double[ k * k ], k );
+		}
+	}
+
+	/**
+	 * @param tc - the tile configuration
+	 * @return true if all non-fixed tiles of the configuration have a TranslationModel3D or all an AffineModel3D
+	 */
+	public static boolean canSolve( final TileConfiguration tc )
+	{
+		Class< ? > modelClass = null;
+
+		for ( final Tile< ? > tile : tc.getTiles() )
+		{
+			final Class< ? > c = tile.getModel().getClass();
+
+			if ( c != TranslationModel3D.class && c != AffineModel3D.class )
+				return false;
+
+			if ( modelClass == null )
+				modelClass = c;
+			else if ( modelClass != c )
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Solves the global optimization, updates the models of all non-fixed tiles, applies them and updates the errors
+	 * of the tile configuration
+	 *
+	 * @param tc - the tile configuration, must satisfy {@link #canSolve(TileConfiguration)}
+	 * @param maxIterations - maximal number of conjugate gradient iterations
+	 */
+	public static void solve( final TileConfiguration tc, final int maxIterations )
+	{
+		final long time = System.currentTimeMillis();
+
+		final SparseTileSolver solver = new SparseTileSolver( tc );
+
+		int iterations = 0;
+
+		for ( int d = 0; d < 3; ++d )
+			iterations = Math.max( iterations, solver.pcg( solver.b[ d ], solver.x[ d ], maxIterations ) );
+
+		for ( int i = 0; i < solver.tiles.size(); ++i )
+			solver.setModel( solver.tiles.get( i ), i );
+
+		for ( final Tile< ? > tile : tc.getTiles() )
+			tile.apply();
+
+		tc.updateErrors();
+
+		IOFunctions.println(
+				"(" + new Date( System.currentTimeMillis() ) + "): Sparse solver: " + solver.tiles.size() + " tiles (" +
+				( solver.affine ? "affine" : "translation" ) + "), " + iterations + " CG iterations, " + ( System.currentTimeMillis() - time ) + " ms" );
+	}
+
+	/**
+	 * Block-Jacobi preconditioned conjugate gradients for H x = b
+	 *
+	 * @return the number of iterations
+	 */
+	protected int pcg( final double[] b, final double[] x, final int maxIterations )
+	{
+		final int size = x.length;
+
+		final double[] r = new double[ size ];
+		final double[] z = new double[ size ];
+		final double[] p = new double[ size ];
+		final double[] q = new double[ size ];
+
+		multiply( x, q );
+
+		for ( int i = 0; i < size; ++i )
+			r[ i ] = b[ i ] - q[ i ];
+
+		final double r0 = Math.sqrt( dot( r, r ) );
+
+		if ( r0 == 0 )
+			return 0;
+
+		precondition( r, z );
+		System.arraycopy( z, 0, p, 0, size );
+
+		double rz = dot( r, z );
+
+		int it = 0;
+
+		while ( it < maxIterations )
+		{
+			++it;
+
+			multiply( p, q );
+
+			final double pq = dot( p, q );
+
+			// no further progress possible (e.g. remaining direction in the null space)
+			if ( pq <= 0 )
+				break;
+
+			final double alpha = rz / pq;
+
+			for ( int i = 0; i < size; ++i )
+			{
+				x[ i ] += alpha * p[ i ];
+				r[ i ] -= alpha * q[ i ];
+			}
+
+			if ( Math.sqrt( dot( r, r ) ) <= relativeTolerance * r0 )
+				break;
+
+			precondition( r, z );
+
+			final double rzNew = dot( r, z );
+			final double beta = rzNew / rz;
+			rz = rzNew;
+
+			for ( int i = 0; i < size; ++i )
+				p[ i ] = z[ i ] + beta * p[ i ];
+		}
+
+		return it;
+	}
+
+	protected void multiply( final double[] v, final double[] result )
+	{
+		for ( int i = 0; i < cols.length; ++i )
+		{
+			final int ri = i * k;
+
+			for ( int l = 0; l < k; ++l )
+				result[ ri + l ] = 0;
+
+			for ( int j = 0; j < cols[ i ].length; ++j )
+			{
+				final double[] block = blocks[ i ][ j ];
+				final int cj = cols[ i ][ j ] * k;
+
+				for ( int l = 0; l < k; ++l )
+				{
+					double sum = 0;
+
+					for ( int m = 0; m < k; ++m )
+						sum += block[ l * k + m ] * v[ cj + m ];
+
+					result[ ri + l ] += sum;
+				}
+			}
+		}
+	}
+
+	protected void precondition( final double[] r, final double[] z )
+	{
+		for ( int i = 0; i < invDiag.length; ++i )
+		{
+			final double[] inv = invDiag[ i ];
+			final int ri = i * k;
+
+			for ( int l = 0; l < k; ++l )
+			{
+				double sum = 0;
+
+				for ( int m = 0; m < k; ++m )
+					sum += inv[ l * k + m ] * r[ ri + m ];
+
+				z[ ri + l ] = sum;
+			}
+		}
+	}
+
+	protected void features( final double[] p, final double[] center, final double[] f )
+	{
+		if ( affine )
+		{
+			for ( int d = 0; d < 3; ++d )
+				f[ d ] = center == null ? p[ d ] : p[ d ] - center[ d ];
+
+			f[ 3 ] = 1;
+		}
+		else
+		{
+			f[ 0 ] = 1;
+		}
+	}
+
+	protected double[] block( final ArrayList< HashMap< Integer, double[] > > rows, final int row, final int col )
+	{
+		double[] block = rows.get( row ).get( col );
+
+		if ( block == null )
+		{
+			block = new double[ k * k ];
+			rows.get( row ).put( col, block );
+		}
+
+		return block;
+	}
+
+	// the unknowns of tile i for each dimension: the row of the affine matrix or the translation
+	protected void getModel( final Tile< ? > tile, final double[][] target, final int i )
+	{
+		if ( tile.getModel() instanceof AffineModel3D )
+		{
+			final double[][] m = new double[ 3 ][ 4 ];
+			( (AffineModel3D)tile.getModel() ).toMatrix( m );
+
+			for ( int d = 0; d < 3; ++d )
+				for ( int j = 0; j < 4; ++j )
+					target[ d ][ i * k + j ] = m[ d ][ j ];
+		}
+		else
+		{
+			final double[] t = ( (TranslationModel3D)tile.getModel() ).getTranslation();
+
+			for ( int d = 0; d < 3; ++d )
+				target[ d ][ i * k ] = t[ d ];
+		}
+	}
+
+	protected void setModel( final Tile< ? > tile, final int i )
+	{
+		final int o = i * k;
+
+		if ( affine )
+		{
+			final double[] t = new double[ 3 ];
+			final double[] c = center[ i ];
+
+			for ( int d = 0; d < 3; ++d )
+				t[ d ] = x[ d ][ o + 3 ] - x[ d ][ o ] * c[ 0 ] - x[ d ][ o + 1 ] * c[ 1 ] - x[ d ][ o + 2 ] * c[ 2 ];
+
+			( (AffineModel3D)tile.getModel() ).set(
+					x[ 0 ][ o ], x[ 0 ][ o + 1 ], x[ 0 ][ o + 2 ], t[ 0 ],
+					x[ 1 ][ o ], x[ 1 ][ o + 1 ], x[ 1 ][ o + 2 ], t[ 1 ],
+					x[ 2 ][ o ], x[ 2 ][ o + 1 ], x[ 2 ][ o + 2 ], t[ 2 ] );
+		}
+		else
+			( (TranslationModel3D)tile.getModel() ).set( x[ 0 ][ o ], x[ 1 ][ o ], x[ 2 ][ o ] );
+	}
+
+	protected static void addOuter( final double[] block, final double[] a, final double[] b, final double w )
+	{
+		final int k = a.length;
+
+		for ( int l = 0; l < k; ++l )
+			for ( int m = 0; m < k; ++m )
+				block[ l * k + m ] += w * a[ l ] * b[ m ];
+	}
+
+	protected static double dot( final double[] a, final double[] b )
+	{
+		double sum = 0;
+
+		for ( int i = 0; i < a.length; ++i )
+			sum += a[ i ] * b[ i ];
+
+		return sum;
+	}
+
+	protected static double dot( final double[] f, final double[] v, final int offset )
+	{
+		double sum = 0;
+
+		for ( int i = 0; i < f.length; ++i )
+			sum += f[ i ] * v[ offset + i ];
+
+		return sum;
+	}
+
+	/**
+	 * Inverts a symmetric, positive semi-definite k*k block (Gauss-Jordan), slightly regularized so that blocks of
+	 * under-determined tiles (e.g. coplanar points) can still be used as preconditioner
+	 */
+	protected static double[] invert( final double[] block, final int k )
+	{
+		final double[] a = block.clone();
+		final double[] inv = new double[ k * k ];
+
+		double trace = 0;
+
+		for ( int l = 0; l < k; ++l )
+			trace += a[ l * k + l ];
+
+		// no matches at all, no preconditioning
+		if ( trace <= 0 )
+		{
+			for ( int l = 0; l < k; ++l )
+				inv[ l * k + l ] = 1;
+
+			return inv;
+		}
+
+		for ( int l = 0; l < k; ++l )
+		{
+			a[ l * k + l ] += 1e-10 * trace;
+			inv[ l * k + l ] = 1;
+		}
+
+		for ( int col = 0; col < k; ++col )
+		{
+			// pivot
+			int pivot = col;
+
+			for ( int row = col + 1; row < k; ++row )
+				if ( Math.abs( a[ row * k + col ] ) > Math.abs( a[ pivot * k + col ] ) )
+					pivot = row;
+
+			swapRows( a, col, pivot, k );
+			swapRows( inv, col, pivot, k );
+
+			final double div = a[ col * k + col ];
+
+			for ( int m = 0; m < k; ++m )
+			{
+				a[ col * k + m ] /= div;
+				inv[ col * k + m ] /= div;
+			}
+
+			for ( int row = 0; row < k; ++row )
+			{
+				if ( row == col )
+					continue;
+
+				final double factor = a[ row * k + col ];
+
+				for ( int m = 0; m < k; ++m )
+				{
+					a[ row * k + m ] -= factor * a[ col * k + m ];
+					inv[ row * k + m ] -= factor * inv[ col * k + m ];
+				}
+			}
+		}
+
+		return inv;
+	}
+
+	protected static void swapRows( final double[] a, final int r1, final int r2, final int k )
+	{
+		if ( r1 == r2 )
+			return;
+
+		for ( int m = 0; m < k; ++m )
+		{
+			final double tmp = a[ r1 * k + m ];
+			a[ r1 * k + m ] = a[ r2 * k + m ];
+			a[ r2 * k + m ] = tmp;
+		}
+	}
+}
@@ -24,9 +24,19 @@ package net.preibisch.mvrecon.process.interestpointregistration.global.convergen
 
 public class ConvergenceStrategy
 {
+	/**
+	 * ITERATIVE: mpicbg TileConfiguration/TileUtil relaxation
+	 * SPARSE: sparse least-squares system solved by preconditioned conjugate gradients (translation and affine models only,
+	 * see SparseTileSolver), maxIterations is used as maximal number of CG iterations
+	 */
+	public static enum Solver { ITERATIVE, SPARSE };
+
+	public static Solver defaultSolver = Solver.ITERATIVE;
+
 	double maxAllowedError;
 	int maxIterations;
 	int maxPlateauwidth;
+	Solver solver = defaultSolver;
 
 	public ConvergenceStrategy( final double maxAllowedError )
 	{
@@ -46,4 +56,11 @@ public class ConvergenceStrategy
 	public double getMaxError() { return maxAllowedError; }
 	public int getMaxIterations() { return maxIterations; }
 	public int getMaxPlateauWidth() { return maxPlateauwidth; }
+	public Solver getSolver() { return solver; }
+
+	public ConvergenceStrategy setSolver( final Solver solver )
+	{
+		this.solver = solver;
+		return this;
+	}
 }
@@ -37,9 +37,11 @@ import mpicbg.spim.data.registration.ViewRegistration;
 import mpicbg.spim.data.sequence.ViewId;
 import net.imglib2.RealInterval;
 import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.Pair;
 import net.preibisch.mvrecon.process.interestpointregistration.TransformationTools;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.overlap.OverlapDetection;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.overlap.OverlapIndex;
 
 /**
  * Uses the previous state as an approximate knowledge for the metadata of the acquisition. New Groups (connected through strong links) will be transformed together,
@@ -88,6 +90,24 @@ A:		for ( final ViewId v : views )
 		for ( final ViewId viewId : allViews )
 			viewRegistrations.get( viewId ).updateModel();
 
+		// if possible, find the overlapping pairs and their overlap with a bounding volume hierarchy instead of testing all pairs
+		final OverlapIndex< ViewId > index = OverlapIndex.create( views, overlapDetection );
+
+		if ( index != null )
+		{
+			for ( final Pair< Pair< ViewId, ViewId >, RealInterval > pair : index.overlappingPairsWithIntervals() )
+			{
+				final ViewId viewA = pair.getA().getA();
+				final ViewId viewB = pair.getA().getB();
+
+				// they will be part of the same group, no reason to create pointmatches
+				if ( groupMap.get( viewA ) != groupMap.get( viewB ) )
+					connect( viewA, viewB, pair.getB(), models2 );
+			}
+
+			return;
+		}
+
 		for ( int a = 0; a < this.allViews.size() - 1; ++a )
 			for ( int b = a + 1; b < this.allViews.size(); ++b )
 			{
@@ -98,50 +118,55 @@ A:		for ( final ViewId v : views )
 				if ( groupMap.get( viewA ) == groupMap.get( viewB ) )
 					continue;
 
-				final ArrayList< PointMatch > pm = new ArrayList< PointMatch >();
-
 				if ( overlapDetection.overlaps( viewA, viewB ) )
 				{
-					// we always transform, no matter if the result from the first run was useful or not as it doesn't matter
-
-					// we use the vertices of the intersection cube between the two views, they are
-					// in the coordinate system defined by the state of registrations BEFORE the first run of the global opt
 					final RealInterval overlap = overlapDetection.getOverlapInterval( viewA, viewB );
 
 					if ( overlap == null )
 						continue;
 
-					final double[][] pa = TransformationTools.cubeFor( overlap );
-					final double[][] pb = TransformationTools.cubeFor( overlap );
+					connect( viewA, viewB, overlap, models2 );
+				}
+			}
+	}
 
-					// and transform them with the respective models from the first round of global optimization,
-					// which will make the deviate from one another >> the second run should try to bring this back
-					// together as good as possible, but will most likely not be able to succeed since parts of them
-					// are now grouped together (the strong links)
+	protected < M extends Model< M > > void connect( final ViewId viewA, final ViewId viewB, final RealInterval overlap, final HashMap< ViewId, Tile< M > > models2 )
+	{
+		// we always transform, no matter if the result from the first run was useful or not as it doesn't matter
 
-					// the result from the first run of the global opt
-					final AffineTransform3D tA = TransformationTools.getAffineTransform( (Affine3D< ? >)models1.get( viewA ).getModel() );
-					final AffineTransform3D tB = TransformationTools.getAffineTransform( (Affine3D< ? >)models1.get( viewB ).getModel() );
+		// we use the vertices of the intersection cube between the two views, they are
+		// in the coordinate system defined by the state of registrations BEFORE the first run of the global opt
+		final ArrayList< PointMatch > pm = new ArrayList< PointMatch >();
 
-					// the transformed cubes are then our corresponding features stored as pointmatches
-					for ( int i = 0; i < pa.length; ++i )
-					{
-						tA.apply( pa[ i ], pa[ i ] );
-						tB.apply( pb[ i ], pb[ i ] );
+		final double[][] pa = TransformationTools.cubeFor( overlap );
+		final double[][] pb = TransformationTools.cubeFor( overlap );
 
-						pm.add( new PointMatch( new Point( pa[ i ] ), new Point( pb[ i ] ) ) );
-					}
+		// and transform them with the respective models from the first round of global optimization,
+		// which will make the deviate from one another >> the second run should try to bring this back
+		// together as good as possible, but will most likely not be able to succeed since parts of them
+		// are now grouped together (the strong links)
 
-					// connect Tiles
-					final Tile< M > tileA = models2.get( viewA );
-					final Tile< M > tileB = models2.get( viewB );
+		// the result from the first run of the global opt
+		final AffineTransform3D tA = TransformationTools.getAffineTransform( (Affine3D< ? >)models1.get( viewA ).getModel() );
+		final AffineTransform3D tB = TransformationTools.getAffineTransform( (Affine3D< ? >)models1.get( viewB ).getModel() );
 
-					tileA.addMatches( pm );
-					tileB.addMatches( PointMatch.flip( pm ) );
-					tileA.addConnectedTile( tileB );
-					tileB.addConnectedTile( tileA );
-				}
-			}
+		// the transformed cubes are then our corresponding features stored as pointmatches
+		for ( int i = 0; i < pa.length; ++i )
+		{
+			tA.apply( pa[ i ], pa[ i ] );
+			tB.apply( pb[ i ], pb[ i ] );
+
+			pm.add( new PointMatch( new Point( pa[ i ] ), new Point( pb[ i ] ) ) );
+		}
+
+		// connect Tiles
+		final Tile< M > tileA = models2.get( viewA );
+		final Tile< M > tileB = models2.get( viewB );
+
+		tileA.addMatches( pm );
+		tileB.addMatches( PointMatch.flip( pm ) );
+		tileA.addConnectedTile( tileB );
+		tileB.addConnectedTile( tileA );
 	}
 
 	@Override
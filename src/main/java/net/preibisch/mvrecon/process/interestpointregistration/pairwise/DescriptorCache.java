@@ -0,0 +1,114 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.interestpointregistration.pairwise;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
+
+/**
+ * Caches the per-view data of a pairwise matching method (e.g. KDTrees and local descriptors), so it is computed
+ * only once for each list of interest points and shared by all pairs (and threads) that use this list.
+ *
+ * Lists are identified by instance, not by content. MatcherPairwiseTools.computePairs() passes the same list instance
+ * for every pair a view (or group) takes part in, so one entry corresponds to one view and label. The matching
+ * parameters are constant for one instance of a MatcherPairwise, which is why each instance holds its own cache.
+ *
+ * The cached data must be treated as read-only by the matching.
+ *
+ * @param <I> interest point type
+ * @param <D> type of the cached data
+ */
+public class DescriptorCache< I extends InterestPoint, D >
+{
+	public interface DescriptorFactory< I extends InterestPoint, D >
+	{
+		public D create( final List< I > points );
+	}
+
+	final DescriptorFactory< I, D > factory;
+	final ConcurrentHashMap< ListKey< I >, Entry< I, D > > cache = new ConcurrentHashMap<>();
+
+	public DescriptorCache( final DescriptorFactory< I, D > factory )
+	{
+		this.factory = factory;
+	}
+
+	/**
+	 * @param points - the interest points of one view
+	 * @return the cached data, computed by the first thread that asks for it (other threads asking wait for it)
+	 */
+	public D get( final List< I > points )
+	{
+		final ListKey< I > key = new ListKey<>( points );
+
+		Entry< I, D > entry = cache.get( key );
+
+		if ( entry == null )
+		{
+			final Entry< I, D > newEntry = new Entry<>( points );
+			entry = cache.putIfAbsent( key, newEntry );
+
+			if ( entry == null )
+				entry = newEntry;
+		}
+
+		return entry.get( factory );
+	}
+
+	public int size() { return cache.size(); }
+	public void clear() { cache.clear(); }
+
+	protected static class Entry< I extends InterestPoint, D >
+	{
+		final List< I > points;
+		D data = null;
+
+		public Entry( final List< I > points ) { this.points = points; }
+
+		public synchronized D get( final DescriptorFactory< I, D > factory )
+		{
+			if ( data == null )
+				data = factory.create( points );
+
+			return data;
+		}
+	}
+
+	protected static class ListKey< I >
+	{
+		final List< I > list;
+
+		public ListKey( final List< I > list ) { this.list = list; }
+
+		@Override
+		public int hashCode() { return System.identityHashCode( list ); }
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			return ListKey.class.isInstance( o ) && ((ListKey< ? >)o).list == list;
+		}
+	}
+}
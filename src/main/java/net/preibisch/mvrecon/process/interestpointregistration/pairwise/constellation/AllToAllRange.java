@@ -30,6 +30,8 @@ import java.util.Set;
 import net.imglib2.util.Pair;
 import net.imglib2.util.ValuePair;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.overlap.OverlapDetection;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.overlap.OverlapIndex;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.range.RangeComparator;
 
 public class AllToAllRange< V extends Comparable< V >, R extends RangeComparator< V > > extends PairwiseSetup< V >
@@ -51,9 +53,43 @@ public class AllToAllRange< V extends Comparable< V >, R extends RangeComparator
 		return allPairs( views, groups, rangeComparator );
 	}
 
+	@Override
+	protected List< Pair< V, V > > definePairsAbstract( final OverlapDetection< V > ovlp )
+	{
+		return allPairs( views, groups, rangeComparator, ovlp );
+	}
+
 	@Override
 	public List< V > getDefaultFixedViews() { return new ArrayList<>(); }
 
+	/**
+	 * All pairs that need to be compared and overlap, in the same order as allPairs(). If possible an {@link OverlapIndex}
+	 * is used so not all pairs of views need to be tested.
+	 *
+	 * @param views - the views
+	 * @param groups - the groups
+	 * @param rangeComparator - the range
+	 * @param ovlp - implementation of {@link OverlapDetection}
+	 * @param <V> view id type
+	 * @return the pairs
+	 */
+	public static < V > List< Pair< V, V > > allPairs(
+			final List< ? extends V > views,
+			final Collection< ? extends Group< V > > groups,
+			final RangeComparator< V > rangeComparator,
+			final OverlapDetection< V > ovlp )
+	{
+		final OverlapIndex< V > index = OverlapIndex.create( views, ovlp );
+
+		if ( index != null )
+			return index.overlappingPairs( groups, rangeComparator );
+
+		final List< Pair< V, V > > pairs = allPairs( views, groups, rangeComparator );
+		PairwiseSetup.removeNonOverlappingPairs( pairs, ovlp );
+
+		return pairs;
+	}
+
 	public static < V > List< Pair< V, V > > allPairs(
 			final List< ? extends V > views,
 			final Collection< ? extends Group< V > > groups,
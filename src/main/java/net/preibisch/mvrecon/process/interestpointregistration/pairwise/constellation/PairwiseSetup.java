@@ -93,12 +93,44 @@ public abstract class PairwiseSetup< V extends Comparable< V > >
 		return removed;
 	}
 
+	/**
+	 * Given a list of views and their grouping, identify all pairs that need to be compared and overlap. This is the same
+	 * as definePairs() followed by removeNonOverlappingPairs(), but implementations can avoid testing all pairs.
+	 * 
+	 * @param ovlp - implementation of {@link OverlapDetection}
+	 * @return - redundant pairs that were removed (non-overlapping pairs are not included)
+	 */
+	public ArrayList< Pair< V, V > > definePairs( final OverlapDetection< V > ovlp )
+	{
+		// define all overlapping pairs
+		this.pairs = definePairsAbstract( ovlp );
+
+		// removed those who were in the same group
+		final ArrayList< Pair< V, V > > removed = removeRedundantPairs( pairs, groups );
+
+		// return the removed ones
+		return removed;
+	}
+
 	/**
 	 * abstract method called by the public definePairs method
 	 * @return - the list of pairs
 	 */
 	protected abstract List< Pair< V, V > > definePairsAbstract();
 
+	/**
+	 * method called by the public definePairs( ovlp ) method, by default all pairs are defined and the non-overlapping removed
+	 * @param ovlp - implementation of {@link OverlapDetection}
+	 * @return - the list of overlapping pairs
+	 */
+	protected List< Pair< V, V > > definePairsAbstract( final OverlapDetection< V > ovlp )
+	{
+		final List< Pair< V, V > > pairs = definePairsAbstract();
+		removeNonOverlappingPairs( pairs, ovlp );
+
+		return pairs;
+	}
+
 	/**
 	 * Remove pairs that are not overlapping
 	 * 
@@ -28,4 +28,11 @@ public interface OverlapDetection< V >
 {
 	public boolean overlaps( final V view1, final V view2 );
 	public RealInterval getOverlapInterval( final V view1, final V view2 );
+
+	/**
+	 * @param view - the view
+	 * @return an interval such that two views overlap if and only if their intervals intersect (boundaries included), or null
+	 * if overlaps() cannot be decided this way (then an {@link OverlapIndex} cannot be used)
+	 */
+	public default RealInterval getOverlapTestInterval( final V view ) { return null; }
 }
@@ -0,0 +1,343 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.overlap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.grouping.Group;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.range.RangeComparator;
+
+/**
+ * Bounding volume hierarchy over the intervals of {@link OverlapDetection#getOverlapTestInterval(Object)} of a list of views,
+ * so all overlapping pairs are found without testing all pairs of views.
+ *
+ * The tree is implicit and balanced: the node of a range [lo,hi) of the sorted views is at (lo+hi)/2, it holds one view and
+ * the bounds of all views in the range.
+ */
+public class OverlapIndex< V >
+{
+	final List< ? extends V > views;
+	final int n, numViews;
+
+	// intervals of the views (by index in views)
+	final double[] min, max;
+
+	// view index of each node and bounds of each subtree
+	final int[] order;
+	final double[] nodeMin, nodeMax;
+
+	/**
+	 * @param views - the views
+	 * @param intervals - the interval of each view, see {@link OverlapDetection#getOverlapTestInterval(Object)}
+	 */
+	public OverlapIndex( final List< ? extends V > views, final List< ? extends RealInterval > intervals )
+	{
+		this.views = views;
+		this.numViews = views.size();
+		this.n = numViews == 0 ? 3 : intervals.get( 0 ).numDimensions();
+
+		this.min = new double[ numViews * n ];
+		this.max = new double[ numViews * n ];
+
+		for ( int i = 0; i < numViews; ++i )
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ i * n + d ] = intervals.get( i ).realMin( d );
+				max[ i * n + d ] = intervals.get( i ).realMax( d );
+			}
+
+		this.order = new int[ numViews ];
+		this.nodeMin = new double[ numViews * n ];
+		this.nodeMax = new double[ numViews * n ];
+
+		for ( int i = 0; i < numViews; ++i )
+			order[ i ] = i;
+
+		build( 0, numViews );
+	}
+
+	/**
+	 * @param views - the views
+	 * @param ovlp - the overlap detection
+	 * @param <V> view type
+	 * @return the index or null if the overlap detection does not provide intervals for all views
+	 */
+	public static < V > OverlapIndex< V > create( final List< ? extends V > views, final OverlapDetection< V > ovlp )
+	{
+		final ArrayList< RealInterval > intervals = new ArrayList<>( views.size() );
+
+		for ( final V view : views )
+		{
+			final RealInterval interval = ovlp.getOverlapTestInterval( view );
+
+			if ( interval == null )
+				return null;
+
+			intervals.add( interval );
+		}
+
+		return new OverlapIndex<>( views, intervals );
+	}
+
+	public int numViews() { return numViews; }
+
+	/**
+	 * @param view - index of a view
+	 * @return indices of all views (including itself) whose interval intersects the interval of the view, sorted
+	 */
+	public int[] overlapping( final int view )
+	{
+		final double[] qMin = Arrays.copyOfRange( min, view * n, view * n + n );
+		final double[] qMax = Arrays.copyOfRange( max, view * n, view * n + n );
+
+		return overlapping( qMin, qMax );
+	}
+
+	/**
+	 * @param qMin - min of the query interval
+	 * @param qMax - max of the query interval
+	 * @return indices of all views whose interval intersects the query interval (boundaries included), sorted
+	 */
+	public int[] overlapping( final double[] qMin, final double[] qMax )
+	{
+		final int[] result = new int[ numViews ];
+		final int size = query( qMin, qMax, 0, numViews, result, 0 );
+
+		final int[] sorted = Arrays.copyOf( result, size );
+		Arrays.sort( sorted );
+
+		return sorted;
+	}
+
+	/**
+	 * All pairs (a,b) of views with index(a) &lt; index(b) whose intervals intersect, in the same order as testing all pairs
+	 *
+	 * @return the pairs
+	 */
+	public ArrayList< Pair< V, V > > overlappingPairs()
+	{
+		return overlappingPairs( null, null );
+	}
+
+	/**
+	 * All pairs (a,b) of views with index(a) &lt; index(b) whose intervals intersect and that are not part of the same group
+	 * and in range, in the same order as AllToAllRange.allPairs()
+	 *
+	 * @param groups - the groups (can be null)
+	 * @param rangeComparator - the range (can be null)
+	 * @return the pairs
+	 */
+	public ArrayList< Pair< V, V > > overlappingPairs( final Collection< ? extends Group< V > > groups, final RangeComparator< V > rangeComparator )
+	{
+		final ArrayList< Pair< V, V > > pairs = new ArrayList<>();
+
+		forEachOverlappingPair( groups, rangeComparator, ( a, b ) -> pairs.add( new ValuePair< V, V >( views.get( a ), views.get( b ) ) ) );
+
+		return pairs;
+	}
+
+	/**
+	 * All overlapping pairs as in overlappingPairs() together with their overlap, which is the intersection of the intervals
+	 * of both views ({@link OverlapDetection#getOverlapTestInterval(Object)}). Pairs that only touch (no extent in one
+	 * dimension) are not included.
+	 *
+	 * @param groups - the groups (can be null)
+	 * @param rangeComparator - the range (can be null)
+	 * @return the pairs and their overlap
+	 */
+	public ArrayList< Pair< Pair< V, V >, RealInterval > > overlappingPairsWithIntervals(
+			final Collection< ? extends Group< V > > groups,
+			final RangeComparator< V > rangeComparator )
+	{
+		final ArrayList< Pair< Pair< V, V >, RealInterval > > result = new ArrayList<>();
+
+		forEachOverlappingPair( groups, rangeComparator, ( a, b ) ->
+		{
+			final double[] oMin = new double[ n ];
+			final double[] oMax = new double[ n ];
+
+			for ( int d = 0; d < n; ++d )
+			{
+				oMin[ d ] = Math.max( min[ a * n + d ], min[ b * n + d ] );
+				oMax[ d ] = Math.min( max[ a * n + d ], max[ b * n + d ] );
+
+				if ( oMax[ d ] <= oMin[ d ] )
+					return;
+			}
+
+			result.add( new ValuePair<>( new ValuePair< V, V >( views.get( a ), views.get( b ) ), new FinalRealInterval( oMin, oMax ) ) );
+		});
+
+		return result;
+	}
+
+	public ArrayList< Pair< Pair< V, V >, RealInterval > > overlappingPairsWithIntervals()
+	{
+		return overlappingPairsWithIntervals( null, null );
+	}
+
+	// calls consumer for all overlapping pairs (index a < index b) in order, one result buffer for all queries
+	protected void forEachOverlappingPair(
+			final Collection< ? extends Group< V > > groups,
+			final RangeComparator< V > rangeComparator,
+			final BiConsumer< Integer, Integer > consumer )
+	{
+		final int[] result = new int[ numViews ];
+		final double[] qMin = new double[ n ];
+		final double[] qMax = new double[ n ];
+
+		for ( int a = 0; a < numViews - 1; ++a )
+		{
+			final V viewA = views.get( a );
+
+			System.arraycopy( min, a * n, qMin, 0, n );
+			System.arraycopy( max, a * n, qMax, 0, n );
+
+			final int size = query( qMin, qMax, 0, numViews, result, 0 );
+			Arrays.sort( result, 0, size );
+
+			for ( int i = 0; i < size; ++i )
+			{
+				final int b = result[ i ];
+
+				if ( b <= a )
+					continue;
+
+				final V viewB = views.get( b );
+
+				if ( ( groups == null || !Group.containsBoth( viewA, viewB, groups ) ) &&
+					 ( rangeComparator == null || rangeComparator.inRange( viewA, viewB ) ) )
+					consumer.accept( a, b );
+			}
+		}
+	}
+
+	protected int query( final double[] qMin, final double[] qMax, final int lo, final int hi, final int[] result, int size )
+	{
+		if ( lo >= hi )
+			return size;
+
+		final int mid = ( lo + hi ) >>> 1;
+
+		if ( !intersects( qMin, qMax, nodeMin, nodeMax, mid ) )
+			return size;
+
+		if ( intersects( qMin, qMax, min, max, order[ mid ] ) )
+			result[ size++ ] = order[ mid ];
+
+		size = query( qMin, qMax, lo, mid, result, size );
+		size = query( qMin, qMax, mid + 1, hi, result, size );
+
+		return size;
+	}
+
+	protected boolean intersects( final double[] qMin, final double[] qMax, final double[] bMin, final double[] bMax, final int i )
+	{
+		for ( int d = 0, j = i * n; d < n; ++d, ++j )
+			if ( qMax[ d ] < bMin[ j ] || qMin[ d ] > bMax[ j ] )
+				return false;
+
+		return true;
+	}
+
+	protected void build( final int lo, final int hi )
+	{
+		if ( lo >= hi )
+			return;
+
+		final int mid = ( lo + hi ) >>> 1;
+
+		// bounds of the subtree, split at the median center along its largest extent
+		int splitD = 0;
+		double largestExtent = -1;
+
+		for ( int d = 0; d < n; ++d )
+		{
+			double bMin = Double.MAX_VALUE, bMax = -Double.MAX_VALUE;
+
+			for ( int i = lo; i < hi; ++i )
+			{
+				bMin = Math.min( bMin, min[ order[ i ] * n + d ] );
+				bMax = Math.max( bMax, max[ order[ i ] * n + d ] );
+			}
+
+			nodeMin[ mid * n + d ] = bMin;
+			nodeMax[ mid * n + d ] = bMax;
+
+			if ( bMax - bMin > largestExtent )
+			{
+				largestExtent = bMax - bMin;
+				splitD = d;
+			}
+		}
+
+		select( lo, hi - 1, mid, splitD );
+
+		build( lo, mid );
+		build( mid + 1, hi );
+	}
+
+	protected double center( final int view, final int d ) { return min[ view * n + d ] + max[ view * n + d ]; }
+
+	// quickselect, afterwards order[k] is the k-th smallest center of [left,right] in dimension d
+	protected void select( int left, int right, final int k, final int d )
+	{
+		while ( right > left )
+		{
+			final double pivot = center( order[ ( left + right ) >>> 1 ], d );
+
+			int i = left, j = right;
+
+			while ( i <= j )
+			{
+				while ( center( order[ i ], d ) < pivot )
+					++i;
+
+				while ( center( order[ j ], d ) > pivot )
+					--j;
+
+				if ( i <= j )
+				{
+					final int tmp = order[ i ];
+					order[ i++ ] = order[ j ];
+					order[ j-- ] = tmp;
+				}
+			}
+
+			if ( k <= j )
+				right = j;
+			else if ( k >= i )
+				left = i;
+			else
+				return;
+		}
+	}
+}
@@ -22,6 +22,7 @@
  */
 package net.preibisch.mvrecon.process.interestpointregistration.pairwise.constellation.overlap;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import mpicbg.spim.data.generic.AbstractSpimData;
@@ -42,6 +43,10 @@ public class SimpleBoundingBoxOverlap< V extends ViewId > implements OverlapDete
 	final ViewRegistrations vrs;
 	final Map< Integer, ? extends BasicViewSetup > vss;
 
+	// the transformed bounding boxes are computed only once per view (call clearCache() if the registrations change)
+	final HashMap< V, BoundingBox > boundingBoxes = new HashMap<>();
+	final HashMap< V, RealInterval > boundingBoxesReal = new HashMap<>();
+
 	public SimpleBoundingBoxOverlap( final AbstractSpimData< ? extends AbstractSequenceDescription< ? extends BasicViewSetup, ?, ? > > spimData )
 	{
 		this.vss = spimData.getSequenceDescription().getViewSetups();
@@ -54,11 +59,44 @@ public class SimpleBoundingBoxOverlap< V extends ViewId > implements OverlapDete
 		this.vrs = vrs;
 	}
 
+	public synchronized void clearCache()
+	{
+		boundingBoxes.clear();
+		boundingBoxesReal.clear();
+	}
+
+	/**
+	 * @param view - the view
+	 * @return the (cached) transformed bounding box of the view, extended by one pixel, or null if the size is unknown
+	 */
+	public synchronized BoundingBox getBoundingBox( final V view )
+	{
+		if ( !boundingBoxes.containsKey( view ) )
+			boundingBoxes.put( view, getBoundingBox( view, vss, vrs ) );
+
+		return boundingBoxes.get( view );
+	}
+
+	/**
+	 * @param view - the view
+	 * @return the (cached) transformed bounding box of the view, or null if the size is unknown
+	 */
+	public synchronized RealInterval getBoundingBoxReal( final V view )
+	{
+		if ( !boundingBoxesReal.containsKey( view ) )
+			boundingBoxesReal.put( view, getBoundingBoxReal( view, vss, vrs ) );
+
+		return boundingBoxesReal.get( view );
+	}
+
+	@Override
+	public RealInterval getOverlapTestInterval( final V view ) { return getBoundingBox( view ); }
+
 	@Override
 	public boolean overlaps( final V view1, final V view2 )
 	{
-		final BoundingBox bb1 = getBoundingBox( view1, vss, vrs );
-		final BoundingBox bb2 = getBoundingBox( view2, vss, vrs );
+		final BoundingBox bb1 = getBoundingBox( view1 );
+		final BoundingBox bb2 = getBoundingBox( view2 );
 
 		if ( bb1 == null )
 			throw new RuntimeException( "view1 has no image size" );
@@ -72,8 +110,8 @@ public class SimpleBoundingBoxOverlap< V extends ViewId > implements OverlapDete
 	@Override
 	public RealInterval getOverlapInterval( final V view1, final V view2 )
 	{
-		final RealInterval bb1 = getBoundingBoxReal( view1, vss, vrs );
-		final RealInterval bb2 = getBoundingBoxReal( view2, vss, vrs );
+		final RealInterval bb1 = getBoundingBoxReal( view1 );
+		final RealInterval bb2 = getBoundingBoxReal( view2 );
 
 		if ( bb1 == null )
 			throw new RuntimeException( "view1 has no image size" );
@@ -84,7 +122,7 @@ public class SimpleBoundingBoxOverlap< V extends ViewId > implements OverlapDete
 		double[] min = new double[ bb1.numDimensions() ];
 		double[] max = new double[ bb1.numDimensions() ];
 
-		if ( overlaps( getBoundingBox( view1, vss, vrs ), getBoundingBox( view2, vss, vrs ) ) )
+		if ( overlaps( getBoundingBox( view1 ), getBoundingBox( view2 ) ) )
 		{
 			for ( int d = 0; d < bb1.numDimensions(); ++d )
 			{
@@ -25,25 +25,41 @@ package net.preibisch.mvrecon.process.interestpointregistration.pairwise.methods
 import java.util.ArrayList;
 import java.util.List;
 
+import net.imglib2.KDTree;
 import net.preibisch.legacy.mpicbg.PointMatchGeneric;
 import net.preibisch.mvrecon.fiji.ImgLib2Temp.Pair;
 import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.DescriptorCache;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.DescriptorCache.DescriptorFactory;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.MatcherPairwise;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.PairwiseResult;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.methods.ransac.RANSAC;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.methods.ransac.RANSACParameters;
+import net.preibisch.mvrecon.process.pointcloud.pointdescriptor.TranslationInvariantLocalCoordinateSystemPointDescriptor;
 
 public class FRGLDMPairwise< I extends InterestPoint > implements MatcherPairwise< I >
 {
 	final RANSACParameters rp;
 	final FRGLDMParameters fp;
 
+	// descriptors are computed once per view and shared by all pairs
+	final DescriptorCache< I, net.imglib2.util.Pair< ArrayList< TranslationInvariantLocalCoordinateSystemPointDescriptor< I > >, KDTree< TranslationInvariantLocalCoordinateSystemPointDescriptor< I > > > > descriptorCache;
+
 	public FRGLDMPairwise(
 			final RANSACParameters rp,
 			final FRGLDMParameters fp )
 	{ 
 		this.rp = rp;
 		this.fp = fp;
+
+		this.descriptorCache = new DescriptorCache<>( new DescriptorFactory< I, net.imglib2.util.Pair< ArrayList< TranslationInvariantLocalCoordinateSystemPointDescriptor< I > >, KDTree< TranslationInvariantLocalCoordinateSystemPointDescriptor< I > > > >()
+		{
+			@Override
+			public net.imglib2.util.Pair< ArrayList< TranslationInvariantLocalCoordinateSystemPointDescriptor< I > >, KDTree< TranslationInvariantLocalCoordinateSystemPointDescriptor< I > > > create( final List< I > points )
+			{
+				return FRGLDMMatcher.createDescriptors( points, fp.getRedundancy() );
+			}
+		});
 	}
 
 	@Override
@@ -52,18 +68,9 @@ public class FRGLDMPairwise< I extends InterestPoint > implements MatcherPairwis
 		final PairwiseResult< I > result = new PairwiseResult<>( true );
 		final FRGLDMMatcher< I > hasher = new FRGLDMMatcher<>();
 		
-		final ArrayList< I > listA = new ArrayList<>();
-		final ArrayList< I > listB = new ArrayList<>();
-
-		for ( final I i : listAIn )
-			listA.add( i );
-
-		for ( final I i : listBIn )
-			listB.add( i );
-
 		final int minPoints = fp.getNumNeighbors() + fp.getRedundancy() + 1;
 
-		if ( listA.size() < minPoints || listB.size() < minPoints )
+		if ( listAIn.size() < minPoints || listBIn.size() < minPoints )
 		{
 			result.setResult( System.currentTimeMillis(), "Not enough detections to match" );
 			result.setCandidates( new ArrayList< PointMatchGeneric< I > >() );
@@ -72,9 +79,8 @@ public class FRGLDMPairwise< I extends InterestPoint > implements MatcherPairwis
 		}
 
 		final ArrayList< PointMatchGeneric< I > > candidates = hasher.extractCorrespondenceCandidates(
-				listA,
-				listB,
-				fp.getRedundancy(),
+				descriptorCache.get( listAIn ),
+				descriptorCache.get( listBIn ),
 				fp.getRatioOfDistance() );
 
 		result.setCandidates( candidates );
@@ -24,6 +24,7 @@ package net.preibisch.mvrecon.process.interestpointregistration.pairwise.methods
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 import net.imglib2.KDTree;
 import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
@@ -50,18 +51,32 @@ public class GeometricHasher< I extends InterestPoint >
 			final int redundancy,
 			final double ratioOfDistance )
 	{
-		final KDTree< I > tree1 = new KDTree<>( nodeListA, nodeListA );
-		final KDTree< I > tree2 = new KDTree<>( nodeListB, nodeListB );
+		return extractCorrespondenceCandidates(
+				createDescriptors( nodeListA, redundancy ),
+				createDescriptors( nodeListB, redundancy ),
+				differenceThreshold,
+				ratioOfDistance );
+	}
 
-		final ArrayList< LocalCoordinateSystemPointDescriptor< I > > descriptors1 =
-			createLocalCoordinateSystemPointDescriptors( tree1, nodeListA, redundancy, false );
-		
-		final ArrayList< LocalCoordinateSystemPointDescriptor< I > > descriptors2 =
-			createLocalCoordinateSystemPointDescriptors( tree2, nodeListB, redundancy, false );
-		
-		// create lookup tree for descriptors2
-		final KDTree< LocalCoordinateSystemPointDescriptor< I > > lookUpTree2 = new KDTree<>( descriptors2, descriptors2 );
-		final KNearestNeighborSearchOnKDTree< LocalCoordinateSystemPointDescriptor< I > > nnsearch = new KNearestNeighborSearchOnKDTree<>( lookUpTree2, 2 );
+	/**
+	 * Matches precomputed descriptors, they are only read and can therefore be shared by several pairs and threads
+	 * 
+	 * @param descriptorsA - descriptors of view A, see {@link #createDescriptors(List, int)}
+	 * @param descriptorsB - descriptors and lookup tree of view B, see {@link #createDescriptors(List, int)}
+	 * @param differenceThreshold - maximal difference of two descriptors
+	 * @param ratioOfDistance - how much better the best match has to be compared to the second best
+	 * @return the correspondence candidates
+	 */
+	public ArrayList< PointMatchGeneric< I > > extractCorrespondenceCandidates(
+			final Pair< ArrayList< LocalCoordinateSystemPointDescriptor< I > >, KDTree< LocalCoordinateSystemPointDescriptor< I > > > descriptorsA,
+			final Pair< ArrayList< LocalCoordinateSystemPointDescriptor< I > >, KDTree< LocalCoordinateSystemPointDescriptor< I > > > descriptorsB,
+			final double differenceThreshold,
+			final double ratioOfDistance )
+	{
+		final ArrayList< LocalCoordinateSystemPointDescriptor< I > > descriptors1 = descriptorsA.getA();
+
+		// lookup tree for descriptors2 (shared), only the search is not thread-safe
+		final KNearestNeighborSearchOnKDTree< LocalCoordinateSystemPointDescriptor< I > > nnsearch = new KNearestNeighborSearchOnKDTree<>( descriptorsB.getB(), 2 );
 
 		// store the candidates for corresponding beads
 		final ArrayList< PointMatchGeneric< I > > correspondences = new ArrayList<>();
@@ -72,6 +87,26 @@ public class GeometricHasher< I extends InterestPoint >
 		return correspondences;
 	}
 	
+	/**
+	 * Builds the KDTree, the descriptors and the lookup KDTree of the descriptors for one list of interest points
+	 * 
+	 * @param nodeList - the interest points
+	 * @param redundancy - redundancy
+	 * @param <I> interest point type
+	 * @return the descriptors and their lookup tree
+	 */
+	public static < I extends InterestPoint > Pair< ArrayList< LocalCoordinateSystemPointDescriptor< I > >, KDTree< LocalCoordinateSystemPointDescriptor< I > > > createDescriptors(
+			final List< I > nodeList,
+			final int redundancy )
+	{
+		final KDTree< I > tree = new KDTree<>( nodeList, nodeList );
+
+		final ArrayList< LocalCoordinateSystemPointDescriptor< I > > descriptors =
+				createLocalCoordinateSystemPointDescriptors( tree, nodeList, redundancy, false );
+
+		return new ValuePair<>( descriptors, new KDTree<>( descriptors, descriptors ) );
+	}
+
 	protected void computeMatching( 
 			final ArrayList< LocalCoordinateSystemPointDescriptor< I > > descriptors1,
 			final KNearestNeighborSearchOnKDTree< LocalCoordinateSystemPointDescriptor< I > > nnsearch2,
@@ -113,7 +148,7 @@ public class GeometricHasher< I extends InterestPoint >
 
 	public static < I extends InterestPoint > ArrayList< LocalCoordinateSystemPointDescriptor< I > > createLocalCoordinateSystemPointDescriptors( 
 			final KDTree< I > tree,
-			final ArrayList< I > basisPoints,
+			final List< I > basisPoints,
 			final int redundancy,
 			final boolean normalize )
 	{
@@ -39,6 +39,7 @@ import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.MatcherPairwise;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.PairwiseResult;
 import net.preibisch.mvrecon.process.pointcloud.icp.ICP;
+import net.preibisch.mvrecon.process.pointcloud.icp.ParallelICP;
 import net.preibisch.mvrecon.process.pointcloud.pointdescriptor.exception.NoSuitablePointsException;
 
 /**
@@ -49,6 +50,9 @@ import net.preibisch.mvrecon.process.pointcloud.pointdescriptor.exception.NoSuit
  */
 public class IterativeClosestPointPairwise< I extends InterestPoint > implements MatcherPairwise< I >
 {
+	// threads per ParallelICP, match() is already called for many pairs in parallel (see MatcherPairwiseTools)
+	public static int numThreads = 1;
+
 	final IterativeClosestPointParameters ip;
 
 	public IterativeClosestPointPairwise( final IterativeClosestPointParameters ip  )
@@ -81,44 +85,28 @@ public class IterativeClosestPointPairwise< I extends InterestPoint > implements
 			return result;
 		}
 
-		final ICP< I > icp = new ICP< I >( listA, listB, (float)ip.getMaxDistance() );
+		final ParallelICP< I > icp = new ParallelICP< I >( listA, listB, (float)ip.getMaxDistance(), numThreads );
 
-		int i = 0;
-		double lastAvgError = 0;
-		int lastNumCorresponding = 0;
+		final int i;
 
-		boolean converged = false;
-
-		do
+		try
 		{
-			try
-			{
-				icp.runICPIteration( model, model );
-			}
-			catch ( NotEnoughDataPointsException e )
-			{
-				failWith( result, "ICP", "NotEnoughDataPointsException", e );
-			}
-			catch ( IllDefinedDataPointsException e )
-			{
-				failWith( result, "ICP", "IllDefinedDataPointsException", e );
-			}
-			catch ( NoSuitablePointsException e )
-			{
-				failWith( result, "ICP", "NoSuitablePointsException", e );
-			}
-
-			if ( lastNumCorresponding == icp.getNumPointMatches() && lastAvgError == icp.getAverageError() )
-				converged = true;
-
-			lastNumCorresponding = icp.getNumPointMatches();
-			lastAvgError = icp.getAverageError();
-			
-			System.out.println( i + ": " + icp.getNumPointMatches() + " matches, avg error [px] " + icp.getAverageError() + ", max error [px] " + icp.getMaximalError() );
+			i = icp.run( model, ip.getMaxNumIterations(), ParallelICP.defaultMinErrorChange );
+		}
+		catch ( NotEnoughDataPointsException e )
+		{
+			failWith( result, "ICP", "NotEnoughDataPointsException", e );
+			return result;
 		}
-		while ( !converged && ++i < ip.getMaxNumIterations() );
+		catch ( IllDefinedDataPointsException e )
+		{
+			failWith( result, "ICP", "IllDefinedDataPointsException", e );
+			return result;
+		}
+
+		final ArrayList< PointMatchGeneric< I > > matches = icp.getPointMatches();
 
-		if ( icp.getPointMatches() == null )
+		if ( matches == null )
 		{
 			result.setCandidates( new ArrayList<>() );
 			result.setInliers( new ArrayList<>(), Double.NaN );
@@ -126,8 +114,8 @@ public class IterativeClosestPointPairwise< I extends InterestPoint > implements
 		}
 		else
 		{
-			result.setCandidates( ICP.unwrapPointMatches( icp.getPointMatches() ) );
-			result.setInliers( ICP.unwrapPointMatches( icp.getPointMatches() ), icp.getAverageError() );
+			result.setCandidates( matches );
+			result.setInliers( icp.getPointMatches(), icp.getAverageError() );
 			result.setResult( System.currentTimeMillis(), "Found " + icp.getNumPointMatches() + " matches, avg error [px] " + icp.getAverageError() + " after " + i + " iterations" );
 		}
 		
@@ -0,0 +1,412 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.interestpointregistration.pairwise.methods.ransac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.Model;
+import mpicbg.models.NotEnoughDataPointsException;
+import net.preibisch.mvrecon.Threads;
+import net.preibisch.mvrecon.process.fusion.FusionTools;
+
+/**
+ * RANSAC followed by the robust filter (equivalent to mpicbg Model.filterRansac) on primitive coordinate arrays.
+ *
+ * Hypotheses are evaluated in parallel in batches of fixed size. After each batch the number of required iterations is
+ * updated from the best inlier ratio so far and the desired confidence (adaptive termination), it never exceeds the
+ * given number of iterations. The minimal sample of each hypothesis only depends on the seed and the index of the
+ * hypothesis, and ties are resolved by the lower index, so the result is the same for a given seed independent of the
+ * number of threads.
+ */
+public class ParallelRANSAC
+{
+	public static long defaultSeed = 69997; // same as mpicbg Model.ransac()
+	public static double defaultConfidence = 0.999;
+	public static int defaultNumThreads = Threads.numThreads();
+
+	// hypotheses per batch, fixed so the adaptive termination does not depend on the number of threads
+	public static int batchSize = 256;
+
+	// below this number of candidates*iterations it is not worth to use more than one thread
+	public static long minWorkForThreads = 1000000;
+
+	final Model< ? > model;
+	final double[][] p, q; // [dim][n], p is transformed to q
+	final double[] w;
+	final int n, numDimensions, minNumMatches;
+
+	/**
+	 * @param model - the model, will be set to the result
+	 * @param p - source coordinates [dim][n]
+	 * @param q - target coordinates [dim][n]
+	 * @param w - weights [n]
+	 */
+	public ParallelRANSAC( final Model< ? > model, final double[][] p, final double[][] q, final double[] w )
+	{
+		this.model = model;
+		this.p = p;
+		this.q = q;
+		this.w = w;
+		this.n = w.length;
+		this.numDimensions = p.length;
+		this.minNumMatches = model.getMinNumMatches();
+	}
+
+	/**
+	 * RANSAC and filter, see mpicbg Model.filterRansac()
+	 *
+	 * @param numIterations - maximal number of hypotheses
+	 * @param epsilon - maximal distance of inliers
+	 * @param minInlierRatio - minimal ratio of inliers
+	 * @param minNumInliers - minimal number of inliers
+	 * @param maxTrust - outliers of the filter are further away than maxTrust * median distance
+	 * @param confidence - confidence for the adaptive termination (&gt;= 1 disables it)
+	 * @param seed - the seed for the minimal samples
+	 * @param numThreads - number of threads
+	 * @return the indices of the inliers (sorted), or null if no model was found
+	 * @throws NotEnoughDataPointsException if there are less candidates than required for the model
+	 */
+	public int[] filterRansac(
+			final int numIterations,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double maxTrust,
+			final double confidence,
+			final long seed,
+			final int numThreads ) throws NotEnoughDataPointsException
+	{
+		final int[] inliers = ransac( numIterations, epsilon, minInlierRatio, minNumInliers, confidence, seed, numThreads );
+
+		if ( inliers == null )
+			return null;
+
+		return filter( inliers, maxTrust, minNumInliers );
+	}
+
+	/**
+	 * @return the indices of the inliers of the best hypothesis (sorted), or null if no hypothesis has enough inliers;
+	 * the model is set to the best hypothesis
+	 * @throws NotEnoughDataPointsException if there are less candidates than required for the model
+	 */
+	public int[] ransac(
+			final int numIterations,
+			final double epsilon,
+			final double minInlierRatio,
+			final int minNumInliers,
+			final double confidence,
+			final long seed,
+			final int numThreads ) throws NotEnoughDataPointsException
+	{
+		if ( n < minNumMatches )
+			throw new NotEnoughDataPointsException( n + " data points are not enough to solve the Model, at least " + minNumMatches + " data points required." );
+
+		final double epsilonSq = epsilon * epsilon;
+		final int threads = (long)n * numIterations < minWorkForThreads ? 1 : Math.max( 1, numThreads );
+
+		final ExecutorService service = threads > 1 ? Executors.newFixedThreadPool( threads ) : null;
+
+		// the best hypothesis so far (index and number of inliers)
+		long bestHypothesis = -1;
+		int bestCount = 0;
+
+		long requiredIterations = numIterations;
+
+		try
+		{
+			for ( long start = 0; start < requiredIterations; start += batchSize )
+			{
+				final long end = Math.min( start + batchSize, requiredIterations );
+				final int minCount = bestCount;
+
+				final long[][] results = new long[ threads ][];
+
+				if ( threads == 1 )
+				{
+					results[ 0 ] = evaluate( start, end, 1, model.copy(), seed, epsilonSq, minCount );
+				}
+				else
+				{
+					final ArrayList< Callable< Void > > tasks = new ArrayList<>();
+
+					for ( int t = 0; t < threads; ++t )
+					{
+						final int thread = t;
+						final long first = start;
+
+						tasks.add( () ->
+						{
+							results[ thread ] = evaluate( first + thread, end, threads, model.copy(), seed, epsilonSq, minCount );
+							return null;
+						});
+					}
+
+					FusionTools.execTasks( tasks, service, "RANSAC" );
+				}
+
+				// merge, more inliers or the same number and lower index
+				for ( final long[] result : results )
+					if ( result[ 0 ] >= 0 && ( result[ 1 ] > bestCount || ( result[ 1 ] == bestCount && result[ 0 ] < bestHypothesis ) ) )
+					{
+						bestHypothesis = result[ 0 ];
+						bestCount = (int)result[ 1 ];
+					}
+
+				// adaptive termination
+				if ( bestCount > 0 && confidence < 1 )
+					requiredIterations = Math.min( numIterations, requiredIterations( (double)bestCount / n, confidence ) );
+			}
+		}
+		finally
+		{
+			if ( service != null )
+				service.shutdown();
+		}
+
+		if ( bestHypothesis < 0 || bestCount < minNumInliers || (double)bestCount / n < minInlierRatio )
+			return null;
+
+		// set the model to the best hypothesis and collect its inliers
+		final int[] sample = new int[ minNumMatches ];
+		sample( seed, bestHypothesis, sample );
+
+		try
+		{
+			fit( model, sample, sample.length );
+		}
+		catch ( IllDefinedDataPointsException e )
+		{
+			// cannot happen, it was fit before
+			return null;
+		}
+
+		final int[] inliers = new int[ n ];
+		final double[] tmp = new double[ numDimensions ];
+		int count = 0;
+
+		for ( int i = 0; i < n; ++i )
+			if ( squareDistance( model, i, tmp ) < epsilonSq )
+				inliers[ count++ ] = i;
+
+		return Arrays.copyOf( inliers, count );
+	}
+
+	/**
+	 * Iteratively fits the model to the inliers and removes those with a distance larger than maxTrust * median
+	 * distance until no more inliers are removed, see mpicbg Model.filter(). Sets the cost of the model to the mean
+	 * distance of the remaining inliers.
+	 *
+	 * @param inliers - indices of the candidates
+	 * @param maxTrust - outliers are further away than maxTrust * median distance
+	 * @param minNumInliers - minimal number of inliers
+	 * @return the remaining inliers or null if not enough remain
+	 * @throws NotEnoughDataPointsException if there are not enough inliers to fit the model
+	 */
+	public int[] filter( final int[] inliers, final double maxTrust, final int minNumInliers ) throws NotEnoughDataPointsException
+	{
+		int[] current = inliers.clone();
+		int numInliers;
+		double mean = 0;
+
+		final double[] tmp = new double[ numDimensions ];
+
+		do
+		{
+			numInliers = current.length;
+
+			try
+			{
+				fit( model, current, numInliers );
+			}
+			catch ( IllDefinedDataPointsException e )
+			{
+				return null;
+			}
+
+			final double[] distances = new double[ numInliers ];
+			mean = 0;
+
+			for ( int i = 0; i < numInliers; ++i )
+			{
+				distances[ i ] = Math.sqrt( squareDistance( model, current[ i ], tmp ) );
+				mean += distances[ i ];
+			}
+
+			mean /= numInliers;
+
+			final double[] sorted = distances.clone();
+			Arrays.sort( sorted );
+			final double median = sorted[ numInliers / 2 ];
+
+			final int[] next = new int[ numInliers ];
+			int count = 0;
+
+			for ( int i = 0; i < numInliers; ++i )
+				if ( distances[ i ] <= maxTrust * median )
+					next[ count++ ] = current[ i ];
+
+			current = Arrays.copyOf( next, count );
+		}
+		while ( numInliers > current.length );
+
+		if ( current.length < minNumInliers )
+			return null;
+
+		model.setCost( mean );
+
+		return current;
+	}
+
+	/**
+	 * @param inlierRatio - ratio of inliers
+	 * @param confidence - probability that at least one sample is free of outliers
+	 * @return the number of hypotheses required
+	 */
+	public long requiredIterations( final double inlierRatio, final double confidence )
+	{
+		final double pGood = Math.pow( inlierRatio, minNumMatches );
+
+		if ( pGood >= 1 )
+			return 1;
+
+		if ( pGood <= 0 )
+			return Long.MAX_VALUE;
+
+		return (long)Math.ceil( Math.log( 1.0 - confidence ) / Math.log( 1.0 - pGood ) );
+	}
+
+	// evaluates hypotheses first, first + step, ... < end, returns { best index (-1 if none is better than minCount), number of inliers }
+	protected long[] evaluate( final long first, final long end, final int step, final Model< ? > m, final long seed, final double epsilonSq, final int minCount )
+	{
+		final int[] sample = new int[ minNumMatches ];
+		final double[] tmp = new double[ numDimensions ];
+
+		long bestHypothesis = -1;
+		int bestCount = minCount;
+
+		for ( long h = first; h < end; h += step )
+		{
+			sample( seed, h, sample );
+
+			try
+			{
+				fit( m, sample, sample.length );
+			}
+			catch ( NotEnoughDataPointsException | IllDefinedDataPointsException e )
+			{
+				continue;
+			}
+
+			// stop counting as soon as this hypothesis cannot beat the best one anymore (ties keep the lower index)
+			int count = 0;
+
+			for ( int i = 0; i < n && count + ( n - i ) > bestCount; ++i )
+				if ( squareDistance( m, i, tmp ) < epsilonSq )
+					++count;
+
+			if ( count > bestCount )
+			{
+				bestHypothesis = h;
+				bestCount = count;
+			}
+		}
+
+		return new long[] { bestHypothesis, bestCount };
+	}
+
+	// minimal sample of hypothesis h (distinct indices), only depends on seed and h
+	protected void sample( final long seed, final long h, final int[] sample )
+	{
+		long state = mix( seed ^ mix( h + 0x9E3779B97F4A7C15L ) );
+
+		for ( int j = 0; j < sample.length; ++j )
+		{
+			int index;
+			boolean duplicate;
+
+			do
+			{
+				state = mix( state + 0x9E3779B97F4A7C15L );
+				index = (int)( ( ( state >>> 33 ) * n ) >>> 31 );
+
+				duplicate = false;
+				for ( int k = 0; k < j; ++k )
+					duplicate |= sample[ k ] == index;
+			}
+			while ( duplicate );
+
+			sample[ j ] = index;
+		}
+	}
+
+	protected void fit( final Model< ? > m, final int[] indices, final int count ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		final double[][] ps = new double[ numDimensions ][ count ];
+		final double[][] qs = new double[ numDimensions ][ count ];
+		final double[] ws = new double[ count ];
+
+		for ( int i = 0; i < count; ++i )
+		{
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				ps[ d ][ i ] = p[ d ][ indices[ i ] ];
+				qs[ d ][ i ] = q[ d ][ indices[ i ] ];
+			}
+
+			ws[ i ] = w[ indices[ i ] ];
+		}
+
+		m.fit( ps, qs, ws );
+	}
+
+	protected double squareDistance( final Model< ? > m, final int i, final double[] tmp )
+	{
+		for ( int d = 0; d < numDimensions; ++d )
+			tmp[ d ] = p[ d ][ i ];
+
+		m.applyInPlace( tmp );
+
+		double sum = 0;
+
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			final double diff = tmp[ d ] - q[ d ][ i ];
+			sum += diff * diff;
+		}
+
+		return sum;
+	}
+
+	// splitmix64 finalizer
+	protected static long mix( long z )
+	{
+		z = ( z ^ ( z >>> 30 ) ) * 0xBF58476D1CE4E5B9L;
+		z = ( z ^ ( z >>> 27 ) ) * 0x94D049BB133111EBL;
+		return z ^ ( z >>> 31 );
+	}
+}
@@ -41,6 +41,15 @@ import mpicbg.models.PointMatch;
  */
 public class RANSAC
 {
+	// use ParallelRANSAC on coordinate arrays instead of mpicbg Model.filterRansac()
+	public static boolean useParallelRANSAC = true;
+
+	// threads per ParallelRANSAC, computeRANSAC() is already called for many pairs in parallel (see MatcherPairwiseTools)
+	public static int numThreads = 1;
+
+	// see mpicbg Model.filterRansac()
+	public static double maxTrust = 4.0;
+
 	public static < I extends InterestPoint > Pair< String, Double > computeRANSAC( 
 			final ArrayList< PointMatchGeneric < I > > correspondenceCandidates, 
 			final ArrayList< PointMatchGeneric < I > > inlierList, 
@@ -63,6 +72,9 @@ public class RANSAC
 		if ( numCorrespondences < minNumCorrespondences )
 			return new ValuePair< String, Double >( "Not enough correspondences found " + numCorrespondences + ", should be at least " + minNumCorrespondences, Double.NaN );
 
+		if ( useParallelRANSAC )
+			return computeParallelRANSAC( correspondenceCandidates, inlierList, model, maxEpsilon, minInlierRatio, minNumCorrespondences, numIterations );
+
 		/**
 		 * The ArrayList that stores the inliers after RANSAC, contains PointMatches of LinkedPoints
 		 * so that MultiThreading is possible
@@ -132,4 +144,73 @@ public class RANSAC
 				return new ValuePair< String, Double >( "NO Model found after RANSAC of " + candidates.size(), Double.NaN );
 		}
 	}
+
+	protected static < I extends InterestPoint > Pair< String, Double > computeParallelRANSAC(
+			final ArrayList< PointMatchGeneric < I > > correspondenceCandidates,
+			final ArrayList< PointMatchGeneric < I > > inlierList,
+			final Model<?> model,
+			final double maxEpsilon,
+			final double minInlierRatio,
+			final int minNumCorrespondences,
+			final int numIterations )
+	{
+		final int numCandidates = correspondenceCandidates.size();
+		final int n = correspondenceCandidates.get( 0 ).getPoint1().getL().length;
+
+		// local coordinates of A are mapped onto the world coordinates of B (as in mpicbg)
+		final double[][] p = new double[ n ][ numCandidates ];
+		final double[][] q = new double[ n ][ numCandidates ];
+		final double[] w = new double[ numCandidates ];
+
+		for ( int i = 0; i < numCandidates; ++i )
+		{
+			final PointMatchGeneric< I > correspondence = correspondenceCandidates.get( i );
+			final double[] l = correspondence.getPoint1().getL();
+			final double[] wB = correspondence.getPoint2().getW();
+
+			for ( int d = 0; d < n; ++d )
+			{
+				p[ d ][ i ] = l[ d ];
+				q[ d ][ i ] = wB[ d ];
+			}
+
+			w[ i ] = correspondence.getWeight();
+		}
+
+		final int[] inliers;
+
+		try
+		{
+			inliers = new ParallelRANSAC( model, p, q, w ).filterRansac(
+					numIterations,
+					maxEpsilon,
+					minInlierRatio,
+					model.getMinNumMatches(),
+					maxTrust,
+					ParallelRANSAC.defaultConfidence,
+					ParallelRANSAC.defaultSeed,
+					numThreads );
+		}
+		catch ( NotEnoughDataPointsException e )
+		{
+			return new ValuePair< String, Double >( e.toString(), Double.NaN );
+		}
+
+		if ( inliers == null )
+			return new ValuePair< String, Double >( "NO Model found after RANSAC of " + numCandidates, Double.NaN );
+
+		final NumberFormat nf = NumberFormat.getPercentInstance();
+		final double ratio = ( (double)inliers.length / (double)numCandidates );
+
+		if ( inliers.length < minNumCorrespondences )
+			return new ValuePair< String, Double >( "Model found but not enough remaining inliers (" + inliers.length + "/" + minNumCorrespondences + ") after RANSAC of " + numCandidates, Double.NaN );
+
+		for ( final int i : inliers )
+		{
+			final PointMatchGeneric< I > correspondence = correspondenceCandidates.get( i );
+			inlierList.add( new PointMatchGeneric< I >( correspondence.getPoint1(), correspondence.getPoint2() ) );
+		}
+
+		return new ValuePair< String, Double >( "Remaining inliers after RANSAC: " + inliers.length + " of " + numCandidates + " (" + nf.format(ratio) + ") with average error " + model.getCost(), model.getCost() );
+	}
 }
@@ -0,0 +1,291 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.interestpointregistration.pairwise.methods.rgldm;
+
+import java.util.List;
+
+import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
+import net.preibisch.mvrecon.process.pointcloud.pointdescriptor.SimplePointDescriptor;
+import net.preibisch.mvrecon.process.pointcloud.pointdescriptor.matcher.SubsetMatcher;
+
+/**
+ * KD-tree over the descriptor vectors of one view, used to find the most similar descriptors without comparing all pairs.
+ *
+ * The difference of two {@link SimplePointDescriptor}s (using a {@link SubsetMatcher} and the square distance) is the minimal
+ * sum of squared distances over all combinations of neighbor subsets. Every subset of a descriptor therefore becomes one
+ * vector (the concatenated relative coordinates of its neighbors), and the difference of two descriptors is the minimal squared
+ * euclidean distance of their vectors.
+ *
+ * The search can be approximate: with approximation e &gt; 0 a branch is skipped if it cannot contain a vector that is more
+ * than (1+e) times closer than the current k-th nearest, which is much faster in high dimensions but may miss matches.
+ * With e = 0 the result is identical to comparing all descriptors.
+ */
+public class RGLDMDescriptorIndex< I extends InterestPoint >
+{
+	final List< SimplePointDescriptor< I > > descriptors;
+	final int[][] combinations;
+	final int numCombinations, subsetSize, numDimensions, vectorDimensions;
+
+	final int numVectors;
+	final double[] vectors;
+
+	// implicit balanced tree, the node of a range [lo,hi) is at (lo+hi)/2
+	final int[] order;
+	final byte[] splitDimension;
+
+	/**
+	 * @param descriptors - the descriptors, created by {@link RGLDMMatcher#createDescriptors(List, int, int)}
+	 * @param numNeighbors - number of neighbors used to create the descriptors
+	 * @param redundancy - redundancy used to create the descriptors
+	 */
+	public RGLDMDescriptorIndex( final List< SimplePointDescriptor< I > > descriptors, final int numNeighbors, final int redundancy )
+	{
+		this.descriptors = descriptors;
+
+		// the same subsets as the SubsetMatcher of the descriptors
+		this.combinations = new SubsetMatcher( numNeighbors, numNeighbors + redundancy ).getNeighbors();
+		this.numCombinations = combinations.length;
+		this.subsetSize = numNeighbors;
+		this.numDimensions = descriptors.size() == 0 ? 3 : descriptors.get( 0 ).numDimensions();
+		this.vectorDimensions = subsetSize * numDimensions;
+
+		if ( vectorDimensions > Byte.MAX_VALUE )
+			throw new RuntimeException( "Descriptor vectors with " + vectorDimensions + " dimensions are not supported." );
+
+		this.numVectors = descriptors.size() * numCombinations;
+		this.vectors = new double[ numVectors * vectorDimensions ];
+
+		for ( int i = 0; i < descriptors.size(); ++i )
+			for ( int c = 0; c < numCombinations; ++c )
+				vector( descriptors.get( i ), c, vectors, ( i * numCombinations + c ) * vectorDimensions );
+
+		this.order = new int[ numVectors ];
+		this.splitDimension = new byte[ numVectors ];
+
+		for ( int i = 0; i < numVectors; ++i )
+			order[ i ] = i;
+
+		build( 0, numVectors );
+	}
+
+	public List< SimplePointDescriptor< I > > getDescriptors() { return descriptors; }
+	public int numCombinations() { return numCombinations; }
+	public int numVectorDimensions() { return vectorDimensions; }
+
+	/**
+	 * Writes the vector of one neighbor subset of a descriptor
+	 *
+	 * @param descriptor - the descriptor (of any view, built with the same parameters)
+	 * @param combination - which neighbor subset [0 ... numCombinations()-1]
+	 * @param target - where to write
+	 * @param offset - at which position
+	 */
+	public void vector( final SimplePointDescriptor< ? > descriptor, final int combination, final double[] target, final int offset )
+	{
+		final int[] neighbors = combinations[ combination ];
+
+		for ( int i = 0, j = offset; i < subsetSize; ++i )
+		{
+			final double[] w = descriptor.getDescriptorPoint( neighbors[ i ] ).getW();
+
+			for ( int d = 0; d < numDimensions; ++d )
+				target[ j++ ] = w[ d ];
+		}
+	}
+
+	/**
+	 * @param k - how many nearest vectors to find
+	 * @return a new search, not thread-safe (create one per thread)
+	 */
+	public Search createSearch( final int k ) { return new Search( k ); }
+
+	/**
+	 * Finds the k nearest vectors of a query vector
+	 *
+	 * @param query - the query vector, see {@link #vector(SimplePointDescriptor, int, double[], int)}
+	 * @param approximation - 0 for an exact search, larger values are faster but may miss neighbors
+	 * @param search - stores the result
+	 */
+	public void search( final double[] query, final double approximation, final Search search )
+	{
+		search.reset();
+
+		final double f = 1.0 + approximation;
+		search( query, 0, numVectors, 1.0 / ( f * f ), search );
+	}
+
+	protected void search( final double[] query, final int lo, final int hi, final double pruneFactor, final Search search )
+	{
+		if ( lo >= hi )
+			return;
+
+		final int mid = ( lo + hi ) >>> 1;
+		final int v = order[ mid ];
+		final int d = splitDimension[ mid ];
+
+		search.offer( v / numCombinations, squareDistance( query, v ) );
+
+		final double diff = query[ d ] - vectors[ v * vectorDimensions + d ];
+
+		if ( diff < 0 )
+		{
+			search( query, lo, mid, pruneFactor, search );
+
+			if ( diff * diff < search.worst() * pruneFactor )
+				search( query, mid + 1, hi, pruneFactor, search );
+		}
+		else
+		{
+			search( query, mid + 1, hi, pruneFactor, search );
+
+			if ( diff * diff < search.worst() * pruneFactor )
+				search( query, lo, mid, pruneFactor, search );
+		}
+	}
+
+	protected double squareDistance( final double[] query, final int v )
+	{
+		double sum = 0;
+
+		for ( int d = 0, j = v * vectorDimensions; d < vectorDimensions; ++d, ++j )
+		{
+			final double diff = query[ d ] - vectors[ j ];
+			sum += diff * diff;
+		}
+
+		return sum;
+	}
+
+	protected void build( final int lo, final int hi )
+	{
+		if ( hi - lo <= 1 )
+			return;
+
+		// split along the dimension with the largest extent
+		int bestD = 0;
+		double bestExtent = -1;
+
+		for ( int d = 0; d < vectorDimensions; ++d )
+		{
+			double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+
+			for ( int i = lo; i < hi; ++i )
+			{
+				final double value = vectors[ order[ i ] * vectorDimensions + d ];
+				min = Math.min( min, value );
+				max = Math.max( max, value );
+			}
+
+			if ( max - min > bestExtent )
+			{
+				bestExtent = max - min;
+				bestD = d;
+			}
+		}
+
+		final int mid = ( lo + hi ) >>> 1;
+
+		select( lo, hi - 1, mid, bestD );
+		splitDimension[ mid ] = (byte)bestD;
+
+		build( lo, mid );
+		build( mid + 1, hi );
+	}
+
+	// quickselect, afterwards order[k] is the k-th smallest of [left,right] in dimension d
+	protected void select( int left, int right, final int k, final int d )
+	{
+		while ( right > left )
+		{
+			final double pivot = vectors[ order[ ( left + right ) >>> 1 ] * vectorDimensions + d ];
+
+			int i = left, j = right;
+
+			while ( i <= j )
+			{
+				while ( vectors[ order[ i ] * vectorDimensions + d ] < pivot )
+					++i;
+
+				while ( vectors[ order[ j ] * vectorDimensions + d ] > pivot )
+					--j;
+
+				if ( i <= j )
+				{
+					final int tmp = order[ i ];
+					order[ i++ ] = order[ j ];
+					order[ j-- ] = tmp;
+				}
+			}
+
+			if ( k <= j )
+				right = j;
+			else if ( k >= i )
+				left = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * The k nearest vectors (as descriptor index and squared distance), sorted by distance
+	 */
+	public static class Search
+	{
+		final int k;
+		final int[] descriptor;
+		final double[] distance;
+		int size = 0;
+
+		Search( final int k )
+		{
+			this.k = k;
+			this.descriptor = new int[ k ];
+			this.distance = new double[ k ];
+		}
+
+		public int size() { return size; }
+		public int descriptor( final int i ) { return descriptor[ i ]; }
+		public double distance( final int i ) { return distance[ i ]; }
+
+		protected void reset() { size = 0; }
+		protected double worst() { return size < k ? Double.MAX_VALUE : distance[ k - 1 ]; }
+
+		protected void offer( final int desc, final double dist )
+		{
+			if ( size == k && dist >= distance[ k - 1 ] )
+				return;
+
+			int i = size < k ? size++ : k - 1;
+
+			while ( i > 0 && distance[ i - 1 ] > dist )
+			{
+				distance[ i ] = distance[ i - 1 ];
+				descriptor[ i ] = descriptor[ i - 1 ];
+				--i;
+			}
+
+			distance[ i ] = dist;
+			descriptor[ i ] = desc;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.interestpointregistration.pairwise.methods.rgldm;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import net.preibisch.legacy.mpicbg.PointMatchGeneric;
+import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
+import net.preibisch.mvrecon.process.pointcloud.pointdescriptor.SimplePointDescriptor;
+
+/**
+ * Compares the candidates and runtime of the indexed descriptor matching (for several approximations) to comparing all
+ * pairs of descriptors, using two simulated, overlapping point clouds.
+ *
+ * Arguments (optional): number of points, number of neighbors, redundancy
+ */
+public class RGLDMIndexBenchmark
+{
+	public static void main( String[] args )
+	{
+		final int numPoints = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 10000;
+		final int numNeighbors = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : RGLDMParameters.numNeighbors;
+		final int redundancy = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : RGLDMParameters.redundancy;
+
+		final double ratioOfDistance = RGLDMParameters.ratioOfDistance;
+		final double differenceThreshold = RGLDMParameters.differenceThreshold;
+		final double[] approximations = new double[] { 0.0, 0.5, 1.0, 2.0, 5.0 };
+
+		// ~1 point per 1000 px^3, each view misses 10% of the points, B is shifted and noisy
+		final Random rnd = new Random( 123 );
+		final double size = Math.cbrt( numPoints * 1000.0 );
+
+		final ArrayList< InterestPoint > listA = new ArrayList<>();
+		final ArrayList< InterestPoint > listB = new ArrayList<>();
+
+		for ( int i = 0; i < numPoints; ++i )
+		{
+			final double[] p = new double[] { rnd.nextDouble() * size, rnd.nextDouble() * size, rnd.nextDouble() * size };
+
+			if ( rnd.nextDouble() < 0.9 )
+				listA.add( new InterestPoint( i, p.clone() ) );
+
+			if ( rnd.nextDouble() < 0.9 )
+				listB.add( new InterestPoint( i, new double[] { p[ 0 ] + 10 + rnd.nextGaussian() * 0.5, p[ 1 ] - 5 + rnd.nextGaussian() * 0.5, p[ 2 ] + rnd.nextGaussian() * 0.5 } ) );
+		}
+
+		System.out.println( "A: " + listA.size() + " points, B: " + listB.size() + " points, numNeighbors=" + numNeighbors + ", redundancy=" + redundancy );
+
+		long time = System.currentTimeMillis();
+
+		final ArrayList< SimplePointDescriptor< InterestPoint > > descriptorsA = RGLDMMatcher.createDescriptors( listA, numNeighbors, redundancy );
+		final ArrayList< SimplePointDescriptor< InterestPoint > > descriptorsB = RGLDMMatcher.createDescriptors( listB, numNeighbors, redundancy );
+
+		System.out.println( "descriptors: " + ( System.currentTimeMillis() - time ) + " ms" );
+
+		final RGLDMMatcher< InterestPoint > matcher = new RGLDMMatcher<>();
+
+		time = System.currentTimeMillis();
+		final HashSet< String > bruteForce = toSet( matcher.extractCorrespondenceCandidates( descriptorsA, descriptorsB, ratioOfDistance, differenceThreshold ) );
+		final long timeBruteForce = System.currentTimeMillis() - time;
+
+		System.out.println( "all pairs: " + bruteForce.size() + " candidates (" + correct( bruteForce ) + " correct), " + timeBruteForce + " ms" );
+
+		time = System.currentTimeMillis();
+		final RGLDMDescriptorIndex< InterestPoint > indexB = RGLDMMatcher.createIndex( descriptorsB, numNeighbors, redundancy );
+
+		System.out.println( "index: " + ( System.currentTimeMillis() - time ) + " ms" );
+
+		for ( final double approximation : approximations )
+		{
+			time = System.currentTimeMillis();
+			final HashSet< String > indexed = toSet( matcher.extractCorrespondenceCandidates( descriptorsA, indexB, ratioOfDistance, differenceThreshold, approximation ) );
+			final long timeIndexed = System.currentTimeMillis() - time;
+
+			final HashSet< String > common = new HashSet<>( indexed );
+			common.retainAll( bruteForce );
+
+			System.out.println(
+					"approximation=" + approximation + ": " + indexed.size() + " candidates (" + correct( indexed ) + " correct), " +
+					"recall vs. all pairs=" + ( bruteForce.size() == 0 ? 1.0 : (double)common.size() / bruteForce.size() ) + ", " +
+					"not found by all pairs=" + ( indexed.size() - common.size() ) + ", " +
+					timeIndexed + " ms (speedup " + ( (double)timeBruteForce / Math.max( 1, timeIndexed ) ) + "x)" );
+		}
+	}
+
+	protected static HashSet< String > toSet( final ArrayList< PointMatchGeneric< InterestPoint > > candidates )
+	{
+		final HashSet< String > set = new HashSet<>();
+
+		for ( final PointMatchGeneric< InterestPoint > pm : candidates )
+			set.add( pm.getPoint1().getId() + "-" + pm.getPoint2().getId() );
+
+		return set;
+	}
+
+	// points of A and B were simulated from the same point if they have the same id
+	protected static int correct( final HashSet< String > candidates )
+	{
+		int correct = 0;
+
+		for ( final String c : candidates )
+		{
+			final String[] ids = c.split( "-" );
+
+			if ( ids[ 0 ].equals( ids[ 1 ] ) )
+				++correct;
+		}
+
+		return correct;
+	}
+}
@@ -23,6 +23,7 @@
 package net.preibisch.mvrecon.process.interestpointregistration.pairwise.methods.rgldm;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import net.imglib2.KDTree;
 import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
@@ -46,20 +47,92 @@ public class RGLDMMatcher< I extends InterestPoint >
 			final double ratioOfDistance,
 			final double differenceThreshold ) 
 	{
-		/* create KDTrees */	
-		final KDTree< I > treeA = new KDTree< I >( nodeListA, nodeListA );
-		final KDTree< I > treeB = new KDTree< I >( nodeListB, nodeListB );
-		
+		final ArrayList< SimplePointDescriptor< I > > descriptorsA = createDescriptors( nodeListA, numNeighbors, redundancy );
+		final ArrayList< SimplePointDescriptor< I > > descriptorsB = createDescriptors( nodeListB, numNeighbors, redundancy );
+
+		return extractCorrespondenceCandidates( descriptorsA, descriptorsB, ratioOfDistance, differenceThreshold );
+	}
+
+	/**
+	 * Matches precomputed descriptors, they are only read and can therefore be shared by several pairs and threads
+	 * 
+	 * @param descriptorsA - descriptors of view A, see {@link #createDescriptors(List, int, int)}
+	 * @param descriptorsB - descriptors of view B, see {@link #createDescriptors(List, int, int)}
+	 * @param ratioOfDistance - how much better the best match has to be compared to the second best
+	 * @param differenceThreshold - maximal difference of two descriptors
+	 * @return the correspondence candidates
+	 */
+	public ArrayList< PointMatchGeneric< I > > extractCorrespondenceCandidates(
+			final ArrayList< SimplePointDescriptor< I > > descriptorsA,
+			final ArrayList< SimplePointDescriptor< I > > descriptorsB,
+			final double ratioOfDistance,
+			final double differenceThreshold )
+	{
+		return findCorrespondingDescriptors( descriptorsA, descriptorsB, ratioOfDistance, differenceThreshold );
+	}
+
+	/**
+	 * Matches precomputed descriptors of A against an index of the descriptors of B, which avoids comparing all pairs
+	 * of descriptors. With approximation 0 the result is identical to {@link #extractCorrespondenceCandidates(ArrayList, ArrayList, double, double)}.
+	 * 
+	 * @param descriptorsA - descriptors of view A, see {@link #createDescriptors(List, int, int)}
+	 * @param indexB - index of the descriptors of view B, see {@link #createIndex(List, int, int)}
+	 * @param ratioOfDistance - how much better the best match has to be compared to the second best
+	 * @param differenceThreshold - maximal difference of two descriptors
+	 * @param approximation - 0 means exact, larger values (e.g. 0.5 or 1) are faster but may miss correspondences
+	 * @return the correspondence candidates
+	 */
+	public ArrayList< PointMatchGeneric< I > > extractCorrespondenceCandidates(
+			final List< SimplePointDescriptor< I > > descriptorsA,
+			final RGLDMDescriptorIndex< I > indexB,
+			final double ratioOfDistance,
+			final double differenceThreshold,
+			final double approximation )
+	{
+		return findCorrespondingDescriptors( descriptorsA, indexB, ratioOfDistance, differenceThreshold, approximation );
+	}
+
+	/**
+	 * Builds the index for matching the descriptors of one view
+	 * 
+	 * @param descriptors - the descriptors, see {@link #createDescriptors(List, int, int)}
+	 * @param numNeighbors - number of neighbors
+	 * @param redundancy - redundancy
+	 * @param <I> interest point type
+	 * @return the index
+	 */
+	public static < I extends InterestPoint > RGLDMDescriptorIndex< I > createIndex(
+			final List< SimplePointDescriptor< I > > descriptors,
+			final int numNeighbors,
+			final int redundancy )
+	{
+		return new RGLDMDescriptorIndex<>( descriptors, numNeighbors, redundancy );
+	}
+
+	/**
+	 * Builds the KDTree and the descriptors for one list of interest points
+	 * 
+	 * @param nodeList - the interest points
+	 * @param numNeighbors - number of neighbors
+	 * @param redundancy - redundancy
+	 * @param <I> interest point type
+	 * @return the descriptors
+	 */
+	public static < I extends InterestPoint > ArrayList< SimplePointDescriptor< I > > createDescriptors(
+			final List< I > nodeList,
+			final int numNeighbors,
+			final int redundancy )
+	{
+		/* create KDTree */
+		final KDTree< I > tree = new KDTree< I >( nodeList, nodeList );
+
 		/* extract point descriptors */
 		final Matcher matcher = new SubsetMatcher( numNeighbors, numNeighbors + redundancy );
 		final int numRequiredNeighbors = matcher.getRequiredNumNeighbors();
-		
+
 		final SimilarityMeasure similarityMeasure = new SquareDistance();
-		
-		final ArrayList< SimplePointDescriptor< I > > descriptorsA = createSimplePointDescriptors( treeA, nodeListA, numRequiredNeighbors, matcher, similarityMeasure );
-		final ArrayList< SimplePointDescriptor< I > > descriptorsB = createSimplePointDescriptors( treeB, nodeListB, numRequiredNeighbors, matcher, similarityMeasure );
 
-		return findCorrespondingDescriptors( descriptorsA, descriptorsB, ratioOfDistance, differenceThreshold );
+		return createSimplePointDescriptors( tree, nodeList, numRequiredNeighbors, matcher, similarityMeasure );
 	}
 	
 	protected static final < I extends InterestPoint, D extends AbstractPointDescriptor< I , D > > ArrayList< PointMatchGeneric< I > > findCorrespondingDescriptors(
@@ -115,9 +188,75 @@ public class RGLDMMatcher< I extends InterestPoint >
 		return correspondenceCandidates;
 	}
 
+	protected static final < I extends InterestPoint > ArrayList< PointMatchGeneric< I > > findCorrespondingDescriptors(
+			final List< SimplePointDescriptor< I > > descriptorsA,
+			final RGLDMDescriptorIndex< I > indexB,
+			final double nTimesBetter,
+			final double differenceThreshold,
+			final double approximation )
+	{
+		final ArrayList< PointMatchGeneric< I > > correspondenceCandidates = new ArrayList<>();
+
+		if ( descriptorsA.size() == 0 || indexB.getDescriptors().size() == 0 )
+			return correspondenceCandidates;
+
+		// one descriptor of B contributes numCombinations vectors, so the k nearest vectors always contain the two most similar descriptors
+		final RGLDMDescriptorIndex.Search search = indexB.createSearch( indexB.numCombinations() + 1 );
+		final double[] query = new double[ indexB.numVectorDimensions() ];
+		final double numDimensions = descriptorsA.get( 0 ).numDimensions();
+
+		for ( final SimplePointDescriptor< I > descriptorA : descriptorsA )
+		{
+			double bestDifference = Double.MAX_VALUE;
+			double secondBestDifference = Double.MAX_VALUE;
+
+			int bestMatch = -1;
+
+			for ( int c = 0; c < indexB.numCombinations(); ++c )
+			{
+				indexB.vector( descriptorA, c, query, 0 );
+				indexB.search( query, approximation, search );
+
+				for ( int i = 0; i < search.size(); ++i )
+				{
+					// same normalization as SquareDistance
+					final double difference = search.distance( i ) / numDimensions;
+					final int descriptorB = search.descriptor( i );
+
+					if ( descriptorB == bestMatch )
+					{
+						bestDifference = Math.min( bestDifference, difference );
+					}
+					else if ( difference < bestDifference )
+					{
+						secondBestDifference = bestDifference;
+						bestDifference = difference;
+						bestMatch = descriptorB;
+					}
+					else if ( difference < secondBestDifference )
+					{
+						secondBestDifference = difference;
+					}
+				}
+			}
+
+			if ( bestDifference < differenceThreshold && bestDifference * nTimesBetter < secondBestDifference )
+			{
+				// add correspondence for the two basis points of the descriptor
+				I detectionA = descriptorA.getBasisPoint();
+				I detectionB = indexB.getDescriptors().get( bestMatch ).getBasisPoint();
+
+				// for RANSAC
+				correspondenceCandidates.add( new PointMatchGeneric< I >( detectionA, detectionB ) );
+			}
+		}
+
+		return correspondenceCandidates;
+	}
+
 	protected static < I extends InterestPoint > ArrayList< SimplePointDescriptor< I > > createSimplePointDescriptors(
 			final KDTree< I > tree,
-			final ArrayList< I > basisPoints,
+			final List< I > basisPoints,
 			final int numNeighbors,
 			final Matcher matcher,
 			final SimilarityMeasure similarityMeasure )
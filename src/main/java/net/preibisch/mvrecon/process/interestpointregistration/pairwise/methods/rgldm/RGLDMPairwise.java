@@ -28,10 +28,13 @@ import java.util.List;
 import net.preibisch.legacy.mpicbg.PointMatchGeneric;
 import net.preibisch.mvrecon.fiji.ImgLib2Temp.Pair;
 import net.preibisch.mvrecon.fiji.spimdata.interestpoints.InterestPoint;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.DescriptorCache;
+import net.preibisch.mvrecon.process.interestpointregistration.pairwise.DescriptorCache.DescriptorFactory;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.MatcherPairwise;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.PairwiseResult;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.methods.ransac.RANSAC;
 import net.preibisch.mvrecon.process.interestpointregistration.pairwise.methods.ransac.RANSACParameters;
+import net.preibisch.mvrecon.process.pointcloud.pointdescriptor.SimplePointDescriptor;
 
 public class RGLDMPairwise< I extends InterestPoint > implements MatcherPairwise< I >
 {
@@ -39,12 +42,34 @@ public class RGLDMPairwise< I extends InterestPoint > implements MatcherPairwise
 	final RGLDMParameters dp;
 	boolean printResult = true;
 
+	// descriptors (and their index) are computed once per view and shared by all pairs
+	final DescriptorCache< I, ArrayList< SimplePointDescriptor< I > > > descriptorCache;
+	final DescriptorCache< I, RGLDMDescriptorIndex< I > > indexCache;
+
 	public RGLDMPairwise(
 			final RANSACParameters rp,
 			final RGLDMParameters dp  )
 	{
 		this.rp = rp;
 		this.dp = dp;
+
+		this.descriptorCache = new DescriptorCache<>( new DescriptorFactory< I, ArrayList< SimplePointDescriptor< I > > >()
+		{
+			@Override
+			public ArrayList< SimplePointDescriptor< I > > create( final List< I > points )
+			{
+				return RGLDMMatcher.createDescriptors( points, dp.getNumNeighbors(), dp.getRedundancy() );
+			}
+		});
+
+		this.indexCache = new DescriptorCache<>( new DescriptorFactory< I, RGLDMDescriptorIndex< I > >()
+		{
+			@Override
+			public RGLDMDescriptorIndex< I > create( final List< I > points )
+			{
+				return RGLDMMatcher.createIndex( descriptorCache.get( points ), dp.getNumNeighbors(), dp.getRedundancy() );
+			}
+		});
 	}
 
 	public void setPrintResult( final boolean printResult ) { this.printResult = printResult; }
@@ -56,18 +81,9 @@ public class RGLDMPairwise< I extends InterestPoint > implements MatcherPairwise
 		final PairwiseResult< I > result = new PairwiseResult< I >( true );
 		result.setPrintOut( printResult );
 
-		final ArrayList< I > listA = new ArrayList< I >();
-		final ArrayList< I > listB = new ArrayList< I >();
-
-		for ( final I i : listAIn )
-			listA.add( i );
-
-		for ( final I i : listBIn )
-			listB.add( i );
-
 		final int minPoints = dp.getNumNeighbors() + dp.getRedundancy() + 1;
 
-		if ( listA.size() < minPoints || listB.size() < minPoints )
+		if ( listAIn.size() < minPoints || listBIn.size() < minPoints )
 		{
 			result.setResult( System.currentTimeMillis(), "Not enough detections to match" );
 			result.setCandidates( new ArrayList< PointMatchGeneric< I > >() );
@@ -76,13 +92,21 @@ public class RGLDMPairwise< I extends InterestPoint > implements MatcherPairwise
 		}
 
 		final RGLDMMatcher< I > matcher = new RGLDMMatcher< I >();
-		final ArrayList< PointMatchGeneric< I > > candidates = matcher.extractCorrespondenceCandidates(
-				listA,
-				listB,
-				dp.getNumNeighbors(),
-				dp.getRedundancy(),
-				dp.getRatioOfDistance(),
-				dp.getDifferenceThreshold() );
+		final ArrayList< PointMatchGeneric< I > > candidates;
+
+		if ( dp.useIndex() )
+			candidates = matcher.extractCorrespondenceCandidates(
+					descriptorCache.get( listAIn ),
+					indexCache.get( listBIn ),
+					dp.getRatioOfDistance(),
+					dp.getDifferenceThreshold(),
+					dp.getIndexApproximation() );
+		else
+			candidates = matcher.extractCorrespondenceCandidates(
+					descriptorCache.get( listAIn ),
+					descriptorCache.get( listBIn ),
+					dp.getRatioOfDistance(),
+					dp.getDifferenceThreshold() );
 
 		result.setCandidates( candidates );
 
@@ -102,5 +126,5 @@ public class RGLDMPairwise< I extends InterestPoint > implements MatcherPairwise
 	 * We only read the points, no reason to duplicate, RANSAC does its own duplication
 	 */
 	@Override
-	public boolean requiresInterestPointDuplication() { return true; }
+	public boolean requiresInterestPointDuplication() { return false; }
 }
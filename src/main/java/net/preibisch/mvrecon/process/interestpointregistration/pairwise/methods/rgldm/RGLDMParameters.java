@@ -31,9 +31,15 @@ public class RGLDMParameters
 
 	public static int numNeighbors = 3;
 	public static int redundancy = 1;
+
+	// match descriptors using a KD-tree instead of comparing all pairs, approximation 0 gives the identical result
+	public static boolean useIndex = true;
+	public static double indexApproximation = 0.0;
 	
 	protected final float dt, rod;
 	protected final int nn, re;
+	protected final boolean ui;
+	protected final double ia;
 
 	private Model< ? > model = null;
 	public Model< ? > getModel() { return model.copy(); }
@@ -44,20 +50,40 @@ public class RGLDMParameters
 		this.rod = ratioOfDistance;
 		this.nn = numNeighbors;
 		this.re = redundancy;
+		this.ui = useIndex;
+		this.ia = indexApproximation;
 		this.model = model;
 	}
 	
 	public RGLDMParameters( final Model< ? > model, final float differenceThreshold, final float ratioOfDistance, final int numNeighbors, final int redundancy )
+	{
+		this( model, differenceThreshold, ratioOfDistance, numNeighbors, redundancy, useIndex, indexApproximation );
+	}
+
+	/**
+	 * @param model - the transformation model
+	 * @param differenceThreshold - maximal difference of two descriptors
+	 * @param ratioOfDistance - how much better the best match has to be compared to the second best
+	 * @param numNeighbors - number of neighbors of a descriptor
+	 * @param redundancy - redundancy of a descriptor
+	 * @param useIndex - match descriptors using a KD-tree instead of comparing all pairs
+	 * @param indexApproximation - 0 means exact, larger values are faster but find fewer correspondences (only if useIndex)
+	 */
+	public RGLDMParameters( final Model< ? > model, final float differenceThreshold, final float ratioOfDistance, final int numNeighbors, final int redundancy, final boolean useIndex, final double indexApproximation )
 	{
 		this.model = model;
 		this.dt = differenceThreshold;
 		this.rod = ratioOfDistance;
 		this.nn = numNeighbors;
 		this.re = redundancy;
+		this.ui = useIndex;
+		this.ia = indexApproximation;
 	}
 	
 	public float getDifferenceThreshold() { return dt; }
 	public float getRatioOfDistance() { return rod; }
 	public int getNumNeighbors() { return nn; }
 	public int getRedundancy() { return re; }
+	public boolean useIndex() { return ui; }
+	public double getIndexApproximation() { return ia; }
 }
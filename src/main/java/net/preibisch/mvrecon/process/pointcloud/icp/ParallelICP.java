@@ -0,0 +1,356 @@
+/*-
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.preibisch.mvrecon.process.pointcloud.icp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.Model;
+import mpicbg.models.NotEnoughDataPointsException;
+import mpicbg.models.Point;
+import net.imglib2.KDTree;
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPoint;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnKDTree;
+import net.preibisch.legacy.mpicbg.PointMatchGeneric;
+import net.preibisch.mvrecon.Threads;
+import net.preibisch.mvrecon.process.fusion.FusionTools;
+
+/**
+ * ICP on primitive coordinates. Unlike {@link ICP}, the KDTree is built only once on the (static) reference points
+ * and the transformed target points are queried in parallel chunks. The matching direction is therefore reversed
+ * compared to {@link ICP}, which searches the nearest transformed target point for each reference point: here each
+ * target point is matched to its nearest reference point within the distance threshold, reference points that are the
+ * nearest neighbor of more than one target point are ambiguous and not used. The coordinate buffers for fitting the
+ * model are reused between iterations, {@link PointMatchGeneric}s are only created on request.
+ *
+ * @param <P> - something extending point
+ */
+public class ParallelICP< P extends Point & RealLocalizable >
+{
+	public static int defaultNumThreads = Threads.numThreads();
+
+	// converged if the number of matches does not change and the average error changes less than this [px]
+	public static double defaultMinErrorChange = 0.0001;
+
+	final List< P > target, reference;
+	final int n, numTarget, numReference;
+
+	// target.localize() and reference.localize() coordinates [dim][index]
+	final double[][] targetL, referenceL;
+
+	final KDTree< Integer > tree;
+	final double maxDistanceSq;
+	final int numThreads;
+
+	// nearest reference point of each target point within the threshold, -1 if none
+	final int[] nearest;
+
+	// number of target points whose nearest neighbor is a reference point
+	final int[] hits;
+
+	// the current matches (target index, reference index) and the buffers for fitting
+	final int[] matchTarget, matchReference;
+	double[][] p, q;
+	double[] w;
+
+	double avgError, maxError;
+	int numMatches, numAmbiguous;
+
+	/**
+	 * @param target - the target points (localize() coordinates are transformed by the model)
+	 * @param reference - the reference points
+	 * @param distanceThreshold - the maximal distance of corresponding points
+	 * @param numThreads - number of threads for the nearest neighbor search
+	 */
+	public ParallelICP( final List< P > target, final List< P > reference, final double distanceThreshold, final int numThreads )
+	{
+		this.target = target;
+		this.reference = reference;
+		this.numTarget = target.size();
+		this.numReference = reference.size();
+		this.n = reference.get( 0 ).numDimensions();
+		this.maxDistanceSq = distanceThreshold * distanceThreshold;
+		this.numThreads = Math.max( 1, numThreads );
+
+		this.targetL = coordinates( target, n );
+		this.referenceL = coordinates( reference, n );
+
+		final ArrayList< Integer > indices = new ArrayList<>( numReference );
+		final ArrayList< RealPoint > positions = new ArrayList<>( numReference );
+
+		final double[] l = new double[ n ];
+
+		for ( int i = 0; i < numReference; ++i )
+		{
+			for ( int d = 0; d < n; ++d )
+				l[ d ] = referenceL[ d ][ i ];
+
+			indices.add( i );
+			positions.add( new RealPoint( l ) );
+		}
+
+		this.tree = new KDTree<>( indices, positions );
+
+		this.nearest = new int[ numTarget ];
+		this.hits = new int[ numReference ];
+		this.matchTarget = new int[ numTarget ];
+		this.matchReference = new int[ numTarget ];
+
+		this.avgError = -1;
+		this.maxError = -1;
+		this.numMatches = -1;
+		this.numAmbiguous = -1;
+	}
+
+	public ParallelICP( final List< P > target, final List< P > reference, final double distanceThreshold )
+	{
+		this( target, reference, distanceThreshold, defaultNumThreads );
+	}
+
+	/**
+	 * Runs ICP iterations until convergence (same number of matches and change of the average error below minErrorChange)
+	 * or until maxIterations is reached.
+	 *
+	 * @param model - the initial model that maps target onto reference, will be updated
+	 * @param maxIterations - the maximal number of iterations
+	 * @param minErrorChange - see above
+	 * @return the number of iterations
+	 * @throws NotEnoughDataPointsException - if there are not enough points
+	 * @throws IllDefinedDataPointsException - if the points are ill-defined
+	 */
+	public int run( final Model< ? > model, final int maxIterations, final double minErrorChange ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		// no pool for a single thread, e.g. if called for many pairs in parallel
+		final ExecutorService service = numThreads > 1 ? Threads.createFixedExecutorService( numThreads ) : null;
+
+		try
+		{
+			int i = 0;
+			double lastAvgError = 0;
+			int lastNumMatches = 0;
+
+			boolean converged = false;
+
+			do
+			{
+				runICPIteration( model, model, service );
+
+				converged = lastNumMatches == numMatches && Math.abs( lastAvgError - avgError ) < minErrorChange;
+
+				lastNumMatches = numMatches;
+				lastAvgError = avgError;
+			}
+			while ( !converged && ++i < maxIterations );
+
+			return i;
+		}
+		finally
+		{
+			if ( service != null )
+				service.shutdown();
+		}
+	}
+
+	/**
+	 * Performs one iteration, see {@link ICP#runICPIteration(Model, Model)}. lastModel and newModel can be the same instance.
+	 *
+	 * @param lastModel - the model that maps target onto reference, used to find the corresponding points
+	 * @param newModel - will be fitted to the corresponding points
+	 * @param service - for the nearest neighbor search, null runs it in the calling thread
+	 * @throws NotEnoughDataPointsException - if there are not enough points
+	 * @throws IllDefinedDataPointsException - if the points are ill-defined
+	 */
+	public void runICPIteration( final Model< ? > lastModel, final Model< ? > newModel, final ExecutorService service ) throws NotEnoughDataPointsException, IllDefinedDataPointsException
+	{
+		/* nearest reference point of each transformed target point */
+		if ( service == null )
+		{
+			findNearest( lastModel, 0, numTarget );
+		}
+		else
+		{
+			final int numChunks = Math.min( numTarget, numThreads * 4 );
+			final ArrayList< Callable< Void > > tasks = new ArrayList<>();
+
+			for ( int c = 0; c < numChunks; ++c )
+			{
+				final int start = (int)( (long)numTarget * c / numChunks );
+				final int end = (int)( (long)numTarget * ( c + 1 ) / numChunks );
+
+				tasks.add( () ->
+				{
+					findNearest( lastModel, start, end );
+					return null;
+				});
+			}
+
+			FusionTools.execTasks( tasks, service, "find nearest neighbors" );
+		}
+
+		/* remove ambiguous correspondences (reference points that are the nearest neighbor of more than one target point) */
+		Arrays.fill( hits, 0 );
+
+		for ( int i = 0; i < numTarget; ++i )
+			if ( nearest[ i ] >= 0 )
+				++hits[ nearest[ i ] ];
+
+		numMatches = 0;
+		numAmbiguous = 0;
+
+		for ( int i = 0; i < numTarget; ++i )
+		{
+			if ( nearest[ i ] < 0 )
+				continue;
+
+			if ( hits[ nearest[ i ] ] == 1 )
+			{
+				matchTarget[ numMatches ] = i;
+				matchReference[ numMatches++ ] = nearest[ i ];
+			}
+			else
+			{
+				++numAmbiguous;
+			}
+		}
+
+		if ( numMatches < newModel.getMinNumMatches() )
+			throw new NotEnoughDataPointsException( numMatches + " corresponding points are not enough to solve the Model, at least " + newModel.getMinNumMatches() + " required." );
+
+		/* fit the model, the buffers are only reallocated if the number of matches changed */
+		if ( w == null || w.length != numMatches )
+		{
+			p = new double[ n ][ numMatches ];
+			q = new double[ n ][ numMatches ];
+			w = new double[ numMatches ];
+			Arrays.fill( w, 1.0 );
+		}
+
+		for ( int m = 0; m < numMatches; ++m )
+			for ( int d = 0; d < n; ++d )
+			{
+				p[ d ][ m ] = targetL[ d ][ matchTarget[ m ] ];
+				q[ d ][ m ] = referenceL[ d ][ matchReference[ m ] ];
+			}
+
+		newModel.fit( p, q, w );
+
+		/* errors of the new model */
+		final double[] l = new double[ n ];
+		double sum = 0;
+		double max = -Double.MAX_VALUE;
+
+		for ( int m = 0; m < numMatches; ++m )
+		{
+			for ( int d = 0; d < n; ++d )
+				l[ d ] = p[ d ][ m ];
+
+			newModel.applyInPlace( l );
+
+			double distSq = 0;
+
+			for ( int d = 0; d < n; ++d )
+			{
+				final double diff = l[ d ] - q[ d ][ m ];
+				distSq += diff * diff;
+			}
+
+			final double dist = Math.sqrt( distSq );
+			sum += dist;
+			max = Math.max( max, dist );
+		}
+
+		avgError = sum / numMatches;
+		maxError = max;
+	}
+
+	protected void findNearest( final Model< ? > lastModel, final int start, final int end )
+	{
+		final NearestNeighborSearchOnKDTree< Integer > search = new NearestNeighborSearchOnKDTree<>( tree );
+		final double[] l = new double[ n ];
+		final RealPoint query = RealPoint.wrap( l );
+
+		for ( int i = start; i < end; ++i )
+		{
+			for ( int d = 0; d < n; ++d )
+				l[ d ] = targetL[ d ][ i ];
+
+			lastModel.applyInPlace( l );
+
+			search.search( query );
+
+			nearest[ i ] = search.getSquareDistance() <= maxDistanceSq ? search.getSampler().get() : -1;
+		}
+	}
+
+	/**
+	 * @return the corresponding points (target, reference) of the last iteration
+	 */
+	public ArrayList< PointMatchGeneric< P > > getPointMatches()
+	{
+		if ( numMatches < 0 )
+			return null;
+
+		final ArrayList< PointMatchGeneric< P > > matches = new ArrayList<>( numMatches );
+
+		for ( int m = 0; m < numMatches; ++m )
+			matches.add( new PointMatchGeneric< P >( target.get( matchTarget[ m ] ), reference.get( matchReference[ m ] ) ) );
+
+		return matches;
+	}
+
+	/**
+	 * @return the average error of the last iteration, or -1 if no iteration has been computed yet
+	 */
+	public double getAverageError() { return avgError; }
+
+	/**
+	 * @return the maximal error of the last iteration, or -1 if no iteration has been computed yet
+	 */
+	public double getMaximalError() { return maxError; }
+
+	/**
+	 * @return the number of corresponding points of the last iteration, or -1 if no iteration has been computed yet
+	 */
+	public int getNumPointMatches() { return numMatches; }
+
+	/**
+	 * @return the number of target points with an ambiguous nearest neighbor in the last iteration, or -1 if no iteration has been computed yet
+	 */
+	public int getNumAmbigousMatches() { return numAmbiguous; }
+
+	protected static double[][] coordinates( final List< ? extends RealLocalizable > points, final int n )
+	{
+		final double[][] coordinates = new double[ n ][ points.size() ];
+
+		for ( int i = 0; i < points.size(); ++i )
+			for ( int d = 0; d < n; ++d )
+				coordinates[ d ][ i ] = points.get( i ).getDoublePosition( d );
+
+		return coordinates;
+	}
+}
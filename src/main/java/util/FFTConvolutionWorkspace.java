@@ -0,0 +1,160 @@
+package util;
+/*
+ * #%L
+ * Software for the reconstruction of multi-view microscopic acquisitions
+ * like Selective Plane Illumination Microscopy (SPIM) Data.
+ * %%
+ * Copyright (C) 2012 - 2017 Multiview Reconstruction developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.fft2.FFT;
+import net.imglib2.algorithm.fft2.FFTMethods;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Pair;
+import net.imglib2.view.Views;
+
+/**
+ * Persistent buffers for repeated FFT convolutions of images of the same size with precomputed kernel FFTs
+ * (e.g. blocks in the deconvolution). Unlike a new {@link FFTConvolution} per call, the complex-valued image
+ * is not reallocated, the forward FFT is computed into the existing buffer, multiplied with the kernel FFT
+ * and transformed back in place.
+ *
+ * Not thread-safe, use one instance per thread (the FFTs themselves are multithreaded using the service).
+ */
+public class FFTConvolutionWorkspace
+{
+	final ImgFactory< ComplexFloatType > fftFactory;
+
+	// backing array of the complex image if it fits into one array (grows to the largest size required)
+	float[] data = new float[ 0 ];
+
+	// complex image if it does not fit into one array, reused as long as the dimensions do not change
+	Img< ComplexFloatType > fftImg = null;
+
+	public FFTConvolutionWorkspace( final ImgFactory< ComplexFloatType > fftFactory )
+	{
+		this.fftFactory = fftFactory;
+	}
+
+	/**
+	 * Computes the convolution of img with the kernel whose FFT is provided, see {@link FFTConvolution#convolve()}
+	 *
+	 * @param img - the (extended) image
+	 * @param imgInterval - the interval of the image that is convolved
+	 * @param kernelInterval - the interval of the kernel
+	 * @param kernelFFT - the FFT of the kernel, computed with {@link FFTConvolution#computeKernelFFT(Interval, long[], long[], boolean, RandomAccessible, ImgFactory, ExecutorService)}
+	 * @param output - the output (size of imgInterval)
+	 * @param service - the service for the FFTs
+	 * @param <R> - pixel type
+	 */
+	public < R extends RealType< R > > void convolve(
+			final RandomAccessible< R > img,
+			final Interval imgInterval,
+			final Interval kernelInterval,
+			final Img< ComplexFloatType > kernelFFT,
+			final RandomAccessibleInterval< R > output,
+			final ExecutorService service )
+	{
+		final int n = imgInterval.numDimensions();
+
+		final Pair< Interval, Interval > fftIntervals = FFTConvolution.setupFFTs( imgInterval, kernelInterval, new long[ n ], new long[ n ] );
+		final RandomAccessibleInterval< R > imgInput = Views.interval( img, fftIntervals.getA() );
+
+		if ( imgInput.dimension( 0 ) / 2 + 1 != kernelFFT.dimension( 0 ) )
+			throw new RuntimeException( "Dimensions of the kernel FFT do not match the padded image." );
+
+		// forward FFT into the existing buffer
+		final Img< ComplexFloatType > fft = getFFTImg( kernelFFT );
+
+		FFTMethods.realToComplex( imgInput, fft, 0, false, service );
+
+		for ( int d = 1; d < n; ++d )
+			FFTMethods.complexToComplex( fft, d, true, false, service );
+
+		// multiply in place
+		multiplyComplex( fft, kernelFFT );
+
+		// inverse FFT in place
+		FFT.complexToRealUnpad( fft, output, service );
+	}
+
+	protected Img< ComplexFloatType > getFFTImg( final Img< ComplexFloatType > kernelFFT )
+	{
+		final long[] fftDim = new long[ kernelFFT.numDimensions() ];
+		kernelFFT.dimensions( fftDim );
+
+		final long numEntities = kernelFFT.size() * 2;
+
+		if ( numEntities <= Integer.MAX_VALUE - 8 )
+		{
+			if ( data.length < numEntities )
+				data = new float[ (int)numEntities ];
+
+			return ArrayImgs.complexFloats( data, fftDim );
+		}
+
+		if ( fftImg == null || !Arrays.equals( fftDim, Intervals.dimensionsAsLongArray( fftImg ) ) )
+			fftImg = fftFactory.create( fftDim, new ComplexFloatType() );
+
+		return fftImg;
+	}
+
+	/**
+	 * Same as {@link FFTConvolution#multiplyComplex(Img, Img)}, directly on the arrays if both images are ArrayImgs
+	 *
+	 * @param img - is multiplied in place
+	 * @param kernel - the kernel
+	 */
+	public static void multiplyComplex( final Img< ComplexFloatType > img, final Img< ComplexFloatType > kernel )
+	{
+		if ( img instanceof ArrayImg && kernel instanceof ArrayImg &&
+			( (ArrayImg< ?, ? >)img ).update( null ) instanceof FloatArray &&
+			( (ArrayImg< ?, ? >)kernel ).update( null ) instanceof FloatArray )
+		{
+			final float[] a = ( (FloatArray)( (ArrayImg< ?, ? >)img ).update( null ) ).getCurrentStorageArray();
+			final float[] b = ( (FloatArray)( (ArrayImg< ?, ? >)kernel ).update( null ) ).getCurrentStorageArray();
+			final int numEntities = (int)img.size() * 2;
+
+			for ( int i = 0; i < numEntities; i += 2 )
+			{
+				final float re = a[ i ] * b[ i ] - a[ i + 1 ] * b[ i + 1 ];
+				final float im = a[ i ] * b[ i + 1 ] + a[ i + 1 ] * b[ i ];
+
+				a[ i ] = re;
+				a[ i + 1 ] = im;
+			}
+		}
+		else
+		{
+			FFTConvolution.multiplyComplex( img, kernel );
+		}
+	}
+}